@@ -4,35 +4,221 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.config.CHProfileConfig;
+import com.graphhopper.config.LMProfileConfig;
 import com.graphhopper.config.ProfileConfig;
 import com.graphhopper.reader.osm.GraphHopperOSM;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
 
 public class GraphPreprocessor {
-	
+
 	@NotNull
     private static final Logger log = LoggerFactory.getLogger(GraphPreprocessor.class);
 
 	@NotNull
     public static final String OSM_FILE_ENV = "OSM_FILE";
-    
+
+    /* Same variables as the payload generator's GraphLoader, so both can share one environment */
+    @NotNull
+    public static final String GRAPH_LOCATION_ENV = "GRAPH_LOCATION";
+    @NotNull
+    public static final String DEFAULT_GRAPH_LOCATION = "/tmp/graphhopper";
+    /**
+     * ram (default) or mmap. The written graph files are the same for both, so the agents can open them read-only
+     * memory-mapped either way. mmap keeps the graph out of the heap while importing.
+     */
+    @NotNull
+    public static final String GRAPH_STORAGE_ENV = "GRAPH_STORAGE";
+    /**
+     * Comma separated speed-up preparations to build and persist for the car profile: ch, lm or none (default).
+     * The payload generator uses the preparations it finds in the graph directory.
+     */
+    @NotNull
+    public static final String GRAPH_PREPARATION_ENV = "GRAPH_PREPARATION";
+    /**
+     * Number of random long distance queries to time with and without each preparation after loading, 0 (default)
+     * skips the comparison.
+     */
+    @NotNull
+    public static final String BENCHMARK_QUERIES_ENV = "BENCHMARK_QUERIES";
+    /**
+     * Route corpus file to write after loading, so agents can run without the graph. Not written if unset.
+     */
+    @NotNull
+    public static final String CORPUS_FILE_ENV = "CORPUS_FILE";
+    /* GeoJSON file with the warehouses to route between for the corpus */
+    @NotNull
+    public static final String LOCATION_FILE_ENV = "LOCATION_FILE";
+    @NotNull
+    public static final String DEFAULT_LOCATION_FILE = "warehouses_de.geojson";
+    /**
+     * Maximum number of corpus routes starting at each location, 0 for all pairs. All pairs of the German warehouses
+     * would be tens of millions of routes.
+     */
+    @NotNull
+    public static final String CORPUS_ROUTES_PER_LOCATION_ENV = "CORPUS_ROUTES_PER_LOCATION";
+    public static final int DEFAULT_CORPUS_ROUTES_PER_LOCATION = 10;
+
+    @NotNull
+    private static final String PROFILE = "car";
+    /* Same as the payload generator's minimum distance between warehouses */
+    private static final double MINIMUM_DISTANCE_M = 200_000D;
+
     public static void main(String[] args) {
 		initCache();
 	}
-	
+
 	private static void initCache() {
         final String path = System.getenv(OSM_FILE_ENV);
+        final String location = System.getenv(GRAPH_LOCATION_ENV);
+        final String graphLocation = location == null || location.isBlank() ? DEFAULT_GRAPH_LOCATION : location.trim();
+        final String storage = System.getenv(GRAPH_STORAGE_ENV);
+        // mmap_readonly as used by the agents still needs writes here
+        final boolean memoryMapped = storage != null && storage.trim().toLowerCase(Locale.ROOT).startsWith("mmap");
+        final String preparation = System.getenv(GRAPH_PREPARATION_ENV);
+        final List<String> preparations = preparation == null ? List.of() : Arrays.asList(preparation.trim().toLowerCase(Locale.ROOT).split("\\s*,\\s*"));
+        final boolean ch = preparations.contains("ch");
+        final boolean lm = preparations.contains("lm");
         GraphHopper hopper = new GraphHopperOSM().forServer();
         hopper.setDataReaderFile(path);
-        hopper.setGraphHopperLocation("/tmp/graphhopper");
+        hopper.setGraphHopperLocation(graphLocation);
+        if (memoryMapped) {
+            hopper.setMemoryMapped();
+        }
         final EncodingManager car = EncodingManager.create("car");
-        final ProfileConfig profileConfig = new ProfileConfig("car");
+        final ProfileConfig profileConfig = new ProfileConfig(PROFILE);
         profileConfig.setWeighting("fastest").setVehicle("car").setTurnCosts(false);
         hopper.setProfiles(profileConfig);
         hopper.setEncodingManager(car);
+        if (ch) {
+            hopper.getCHPreparationHandler().setCHProfileConfigs(new CHProfileConfig(PROFILE));
+            // Allows comparing against queries without the preparation
+            hopper.getCHPreparationHandler().setDisablingAllowed(true);
+        }
+        if (lm) {
+            hopper.getLMPreparationHandler().setLMProfileConfigs(new LMProfileConfig(PROFILE));
+            hopper.getLMPreparationHandler().setDisablingAllowed(true);
+        }
         final long startTime = System.currentTimeMillis();
         hopper.importOrLoad();
-        log.info("Loaded OSM file at {} in {}ms", path, System.currentTimeMillis() - startTime);
+        final Runtime runtime = Runtime.getRuntime();
+        log.info("Loaded OSM file at {} into {} with {} storage and preparations {} in {}ms. Resident memory: {}MB, heap used: {}MB",
+                path, graphLocation, memoryMapped ? "mmap" : "ram", preparations, System.currentTimeMillis() - startTime,
+                residentMemoryKb() / 1024, (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+
+        final String queries = System.getenv(BENCHMARK_QUERIES_ENV);
+        if (queries != null && !queries.isBlank()) {
+            final int count = Integer.parseInt(queries.trim());
+            if (count > 0) {
+                benchmark(hopper, count, false, false);
+                if (lm) {
+                    benchmark(hopper, count, false, true);
+                }
+                if (ch) {
+                    benchmark(hopper, count, true, lm);
+                }
+            }
+        }
+
+        final String corpusFile = System.getenv(CORPUS_FILE_ENV);
+        if (corpusFile != null && !corpusFile.isBlank()) {
+            final String locationFile = System.getenv(LOCATION_FILE_ENV);
+            final String routesPerLocation = System.getenv(CORPUS_ROUTES_PER_LOCATION_ENV);
+            try {
+                final RouteCorpusWriter writer = new RouteCorpusWriter(hopper, PROFILE, MINIMUM_DISTANCE_M);
+                writer.write(RouteCorpusWriter.readLocations(locationFile == null || locationFile.isBlank() ? DEFAULT_LOCATION_FILE : locationFile.trim()),
+                        routesPerLocation == null || routesPerLocation.isBlank() ? DEFAULT_CORPUS_ROUTES_PER_LOCATION : Integer.parseInt(routesPerLocation.trim()),
+                        42, Paths.get(corpusFile.trim()));
+            } catch (IOException e) {
+                log.error("Failed to write route corpus {}", corpusFile, e);
+            }
+        }
+        hopper.close();
+    }
+
+    /**
+     * Logs the latency of random queries between points more than {@link #MINIMUM_DISTANCE_M} apart, like the routes
+     * between warehouses. Every run uses the same points.
+     */
+    private static void benchmark(final @NotNull GraphHopper hopper, final int count, final boolean ch, final boolean lm) {
+        final String mode = ch ? "CH" : lm ? "LM" : "no preparation";
+        final BBox bounds = hopper.getGraphHopperStorage().getBounds();
+        final DistanceCalcEarth distanceCalc = new DistanceCalcEarth();
+        final Random random = new Random(42);
+        final long[] nanos = new long[count];
+        int found = 0;
+        int errors = 0;
+        while (found < count && errors < count) {
+            final GHPoint from = new GHPoint(bounds.minLat + random.nextDouble() * (bounds.maxLat - bounds.minLat),
+                    bounds.minLon + random.nextDouble() * (bounds.maxLon - bounds.minLon));
+            final GHPoint to = new GHPoint(bounds.minLat + random.nextDouble() * (bounds.maxLat - bounds.minLat),
+                    bounds.minLon + random.nextDouble() * (bounds.maxLon - bounds.minLon));
+            if (distanceCalc.calcDist(from.lat, from.lon, to.lat, to.lon) <= MINIMUM_DISTANCE_M) {
+                continue;
+            }
+            final GHRequest request = new GHRequest(from, to);
+            request.setProfile(PROFILE);
+            request.putHint(Parameters.CH.DISABLE, !ch);
+            request.putHint(Parameters.Landmark.DISABLE, !lm);
+            final long start = System.nanoTime();
+            final GHResponse response = hopper.route(request);
+            final long duration = System.nanoTime() - start;
+            if (response.hasErrors()) {
+                // e.g. a point in the sea, the same points fail in every mode
+                errors++;
+                continue;
+            }
+            nanos[found++] = duration;
+        }
+        if (found == 0) {
+            log.warn("No route found for the {} benchmark", mode);
+            return;
+        }
+        final long[] measured = Arrays.copyOf(nanos, found);
+        Arrays.sort(measured);
+        final double total = Arrays.stream(measured).sum();
+        log.info("Query latency with {} over {} routes: mean {}ms, median {}ms, p95 {}ms, max {}ms",
+                mode, found, millis(total / found), millis(measured[found / 2]),
+                millis(measured[Math.min(found - 1, (int) (found * 0.95))]), millis(measured[found - 1]));
+    }
+
+    private static double millis(final double nanos) {
+        return Math.round(nanos / 10_000D) / 100D;
+    }
+
+    /**
+     * @return resident set size of this process in kB, -1 if it is not available (only supported on Linux)
+     */
+    private static long residentMemoryKb() {
+        final Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Failed to read resident memory", e);
+        }
+        return -1;
     }
 }
@@ -0,0 +1,222 @@
+package com.hivemq.generator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import org.geojson.Feature;
+import org.geojson.FeatureCollection;
+import org.geojson.LngLatAlt;
+import org.geojson.Point;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Routes between warehouse pairs and writes them to a route corpus file, which the payload generator can drive
+ * without loading the graph. The format is documented in the payload generator's RouteCorpus and must match it,
+ * the payload generator's RouteCorpusRoundTripTest reads records written by {@link #encode} back.
+ */
+public class RouteCorpusWriter {
+
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(RouteCorpusWriter.class);
+
+    private static final int MAGIC = 0x52435053;
+    private static final int VERSION = 2;
+    private static final double COORDINATE_SCALE = 1e6;
+    /* magic, version, location count, route count */
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int LOCATION_SIZE = 2 * Double.BYTES;
+    private static final int INDEX_ENTRY_SIZE = 2 * Integer.BYTES + Long.BYTES;
+
+    @NotNull
+    private final GraphHopper hopper;
+    @NotNull
+    private final String profile;
+    private final double minimumDistanceM;
+
+    public RouteCorpusWriter(@NotNull GraphHopper hopper, @NotNull String profile, double minimumDistanceM) {
+        this.hopper = hopper;
+        this.profile = profile;
+        this.minimumDistanceM = minimumDistanceM;
+    }
+
+    /**
+     * Reads the points of a GeoJSON feature collection as (lat, lon) pairs.
+     */
+    @NotNull
+    public static List<double[]> readLocations(final @NotNull String locationFile) throws IOException {
+        final List<Feature> features = new ObjectMapper().readValue(new File(locationFile), FeatureCollection.class).getFeatures();
+        return features.stream()
+                .map(f -> {
+                    final LngLatAlt point = ((Point) f.getGeometry()).getCoordinates();
+                    return new double[]{point.getLatitude(), point.getLongitude()};
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Routes from every location to a random sample of the locations more than the minimum distance away and writes
+     * the found routes to the corpus file. Routes of one start location are planned in parallel.
+     *
+     * @param routesPerLocation maximum number of routes per start location, 0 for all eligible destinations
+     * @param seed              seed for sampling the destinations
+     */
+    public void write(final @NotNull List<double[]> locations,
+                      final int routesPerLocation,
+                      final long seed,
+                      final @NotNull Path corpusFile) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final DistanceCalcEarth distanceCalc = new DistanceCalcEarth();
+        final Random random = new Random(seed);
+        final List<int[]> index = new ArrayList<>();
+        // The route records are collected first, the index in front of them is only known at the end
+        final Path recordFile = Paths.get(corpusFile + ".routes");
+        long recordOffset = 0;
+        long failed = 0;
+        try (OutputStream records = new BufferedOutputStream(Files.newOutputStream(recordFile))) {
+            final List<Long> routeOffsets = new ArrayList<>();
+            for (int from = 0; from < locations.size(); ++from) {
+                final double[] start = locations.get(from);
+                final List<Integer> eligible = new ArrayList<>();
+                for (int to = 0; to < locations.size(); ++to) {
+                    final double[] end = locations.get(to);
+                    if (to != from && distanceCalc.calcDist(start[0], start[1], end[0], end[1]) > minimumDistanceM) {
+                        eligible.add(to);
+                    }
+                }
+                Collections.shuffle(eligible, random);
+                final List<Integer> destinations = routesPerLocation > 0 && eligible.size() > routesPerLocation
+                        ? eligible.subList(0, routesPerLocation)
+                        : eligible;
+                final List<byte[]> encoded = destinations.parallelStream()
+                        .map(to -> encode(route(start, locations.get(to))))
+                        .collect(Collectors.toList());
+                for (int i = 0; i < destinations.size(); ++i) {
+                    final byte[] record = encoded.get(i);
+                    if (record == null) {
+                        failed++;
+                        continue;
+                    }
+                    index.add(new int[]{from, destinations.get(i)});
+                    routeOffsets.add(recordOffset);
+                    records.write(record);
+                    recordOffset += record.length;
+                }
+                if ((from + 1) % 100 == 0) {
+                    log.info("Routed {} of {} locations, {} routes ({}MB) so far", from + 1, locations.size(), index.size(), recordOffset / (1024 * 1024));
+                }
+            }
+
+            final long dataStart = HEADER_SIZE + (long) locations.size() * LOCATION_SIZE + (long) index.size() * INDEX_ENTRY_SIZE;
+            records.flush();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(corpusFile)));
+                 InputStream in = new BufferedInputStream(Files.newInputStream(recordFile))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(locations.size());
+                out.writeInt(index.size());
+                for (double[] location : locations) {
+                    out.writeDouble(location[0]);
+                    out.writeDouble(location[1]);
+                }
+                for (int i = 0; i < index.size(); ++i) {
+                    out.writeInt(index.get(i)[0]);
+                    out.writeInt(index.get(i)[1]);
+                    out.writeLong(dataStart + routeOffsets.get(i));
+                }
+                in.transferTo(out);
+            }
+        } finally {
+            Files.deleteIfExists(recordFile);
+        }
+        log.info("Wrote route corpus {} with {} routes between {} locations ({} failed, {}MB) in {}ms",
+                corpusFile, index.size(), locations.size(), failed, Files.size(corpusFile) / (1024 * 1024),
+                System.currentTimeMillis() - startTime);
+    }
+
+    @Nullable
+    private PathWrapper route(final @NotNull double[] from, final @NotNull double[] to) {
+        final GHRequest request = new GHRequest(from[0], from[1], to[0], to[1]);
+        request.setProfile(profile);
+        final GHResponse response = hopper.route(request);
+        if (response.hasErrors()) {
+            log.debug("No route from {},{} to {},{}: {}", from[0], from[1], to[0], to[1], response.getErrors());
+            return null;
+        }
+        return response.getBest();
+    }
+
+    /**
+     * @return the route record, or null if there is no route
+     */
+    @Nullable
+    static byte[] encode(final @Nullable PathWrapper path) {
+        if (path == null) {
+            return null;
+        }
+        final PointList points = path.getPoints();
+        final InstructionList instructions = path.getInstructions();
+        final int pointCount = points.size();
+        final ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES + Long.BYTES + 2 * Integer.BYTES
+                + pointCount * (2 * Integer.BYTES + Double.BYTES)
+                + instructions.size() * (3 * Integer.BYTES + Float.BYTES));
+        buffer.putDouble(path.getDistance());
+        buffer.putLong(path.getTime());
+        buffer.putInt(pointCount);
+        buffer.putInt(instructions.size());
+        final int[] lats = new int[pointCount];
+        final int[] lons = new int[pointCount];
+        for (int i = 0; i < pointCount; ++i) {
+            lats[i] = (int) Math.round(points.getLat(i) * COORDINATE_SCALE);
+            lons[i] = (int) Math.round(points.getLon(i) * COORDINATE_SCALE);
+        }
+        for (int lat : lats) {
+            buffer.putInt(lat);
+        }
+        for (int lon : lons) {
+            buffer.putInt(lon);
+        }
+        // Measured along the rounded points, exactly like a reader measuring the decoded geometry
+        final DistanceCalcEarth distanceCalc = new DistanceCalcEarth();
+        double cumulative = 0;
+        for (int i = 0; i < pointCount; ++i) {
+            if (i > 0) {
+                cumulative += distanceCalc.calcDist(lats[i - 1] / COORDINATE_SCALE, lons[i - 1] / COORDINATE_SCALE,
+                        lats[i] / COORDINATE_SCALE, lons[i] / COORDINATE_SCALE);
+            }
+            buffer.putDouble(cumulative);
+        }
+        for (Instruction instruction : instructions) {
+            buffer.putInt(instruction.getLength());
+            buffer.putFloat((float) instruction.getDistance());
+            buffer.putInt((int) Math.min(Integer.MAX_VALUE, instruction.getTime()));
+            buffer.putInt(instruction.getSign());
+        }
+        return buffer.array();
+    }
+}
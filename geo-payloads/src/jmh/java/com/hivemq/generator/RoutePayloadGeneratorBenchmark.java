@@ -0,0 +1,156 @@
+package com.hivemq.generator;
+
+import com.hivemq.generator.payload.BinaryCarDataCodec;
+import com.hivemq.model.Sample;
+import com.hivemq.simulator.plugin.sdk.load.generators.PluginPayloadGeneratorInput;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link RoutePayloadGenerator#nextPayload} for a vehicle driving a route and for one on a break.
+ * <p>
+ * The generators drive a synthetic route corpus, so no graph is loaded. The planner and corpus are static, JMH runs
+ * every benchmark in its own JVM so each gets the corpus its state writes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class RoutePayloadGeneratorBenchmark {
+
+    /* Give up waiting for the planner after this many payloads */
+    private static final int MAX_SETUP_PAYLOADS = 1_000_000;
+
+    @State(Scope.Thread)
+    public static abstract class Vehicle {
+        /* Number of route points, real routes between warehouses have 1000 to 50000 */
+        @Param({"10000"})
+        public int points;
+        @Param({"json", "binary"})
+        public String payloadFormat;
+        @Param({"1"})
+        public int batchSize;
+
+        RoutePayloadGenerator generator;
+        PluginPayloadGeneratorInput input;
+
+        void setUp(final long routeTime, final boolean onBreak) throws IOException, InterruptedException {
+            final Path directory = Files.createTempDirectory("route-payload-benchmark");
+            directory.toFile().deleteOnExit();
+            final Path corpus = directory.resolve("benchmark.corpus");
+            SyntheticRoutes.writeCorpus(corpus, points, routeTime);
+            input = new Input(SyntheticRoutes.writeConfig(directory, payloadFormat, batchSize));
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().deleteOnExit());
+            }
+            // Must be set before the generator class is initialized
+            System.setProperty(RoutePayloadGenerator.ROUTE_CORPUS_FILE_PROPERTY, corpus.toString());
+            generator = new RoutePayloadGenerator();
+
+            // Routes are planned in the background, publish until the vehicle is in the benchmarked state
+            for (int i = 0; i < MAX_SETUP_PAYLOADS; ++i) {
+                final ByteBuffer payload = generator.nextPayload(input);
+                if (payload != RoutePayloadGenerator.FAILURE_PAYLOAD && isBreak(payload) == onBreak) {
+                    return;
+                }
+                Thread.sleep(1);
+            }
+            throw new IllegalStateException("Vehicle did not get " + (onBreak ? "on a break" : "on a route"));
+        }
+    }
+
+    /**
+     * Drives a route that takes 100 hours, so it doesn't end during the benchmark.
+     */
+    public static class Driving extends Vehicle {
+        @Setup
+        public void setUp() throws IOException, InterruptedException {
+            setUp(TimeUnit.HOURS.toMillis(100), false);
+        }
+    }
+
+    /**
+     * Ends a route that takes 1ms right away and then takes the 30 minute break after every trip.
+     */
+    public static class OnBreak extends Vehicle {
+        @Setup
+        public void setUp() throws IOException, InterruptedException {
+            setUp(1, true);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer driving(final @NotNull Driving vehicle) {
+        return vehicle.generator.nextPayload(vehicle.input);
+    }
+
+    @Benchmark
+    public ByteBuffer onBreak(final @NotNull OnBreak vehicle) {
+        return vehicle.generator.nextPayload(vehicle.input);
+    }
+
+    private static boolean isBreak(final @NotNull ByteBuffer payload) {
+        if (BinaryCarDataCodec.isBinary(payload)) {
+            if (BinaryCarDataCodec.isBatch(payload)) {
+                final List<Sample> samples = BinaryCarDataCodec.decodeBatch(payload.duplicate()).getSamples();
+                return samples.get(samples.size() - 1).getBreak();
+            }
+            return BinaryCarDataCodec.decode(payload.duplicate()).getBreak();
+        }
+        final ByteBuffer duplicate = payload.duplicate();
+        final byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get(bytes);
+        // The last sample of a batch decides
+        final String json = new String(bytes, StandardCharsets.UTF_8);
+        return json.lastIndexOf("\"break\":true") > json.lastIndexOf("\"break\":false");
+    }
+
+    private static class Input implements PluginPayloadGeneratorInput {
+        @NotNull
+        private final String configFile;
+
+        Input(@NotNull String configFile) {
+            this.configFile = configFile;
+        }
+
+        @Override
+        public String getTopic() {
+            return "benchmark/truck";
+        }
+
+        @Override
+        public long getRate() {
+            return 1;
+        }
+
+        @Override
+        public long getCount() {
+            return 1;
+        }
+
+        @Override
+        public String getMessage() {
+            return configFile;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.hivemq.generator;
+
+import com.graphhopper.util.DistanceCalcEarth;
+import com.hivemq.generator.geo.SharedRoute;
+import com.hivemq.generator.route.RouteCorpus;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Synthetic routes for the benchmarks, so they run without OpenStreetMap data.
+ * Routes run between two warehouses in Hamburg and Munich, with jittered points and instructions of varying length.
+ */
+public final class SyntheticRoutes {
+
+    /* Warehouses far enough apart for the minimum route distance */
+    public static final double[][] WAREHOUSES = {{53.55, 9.99}, {48.14, 11.58}};
+
+    @NotNull
+    private static final DistanceCalcEarth calc = new DistanceCalcEarth();
+
+    private SyntheticRoutes() {
+    }
+
+    /**
+     * @return a route with the given number of points from the first to the second warehouse
+     */
+    @NotNull
+    public static SharedRoute route(final int points, final long time, final long seed) {
+        final Random random = new Random(seed);
+        final double[] lats = new double[points];
+        final double[] lons = new double[points];
+        for (int i = 0; i < points; ++i) {
+            final double fraction = points > 1 ? i / (double) (points - 1) : 0;
+            lats[i] = WAREHOUSES[0][0] + fraction * (WAREHOUSES[1][0] - WAREHOUSES[0][0]) + (random.nextDouble() - 0.5) * 1e-3;
+            lons[i] = WAREHOUSES[0][1] + fraction * (WAREHOUSES[1][1] - WAREHOUSES[0][1]) + (random.nextDouble() - 0.5) * 1e-3;
+        }
+        // Instructions of 1 to 12 points with speeds between 30 and 130km/h
+        final int[] lengths = new int[points];
+        int count = 0;
+        for (int start = 0; start < points; ) {
+            lengths[count] = Math.min(points - start, 1 + random.nextInt(12));
+            start += lengths[count++];
+        }
+        double distance = 0;
+        for (int i = 1; i < points; ++i) {
+            distance += calc.calcDist(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+        }
+        final int[] instructionLengths = new int[count];
+        final double[] distances = new double[count];
+        final long[] times = new long[count];
+        for (int k = 0; k < count; ++k) {
+            instructionLengths[k] = lengths[k];
+            distances[k] = distance * lengths[k] / points;
+            times[k] = (long) (distances[k] / ((30 + random.nextInt(100)) / 3.6) * 1000);
+        }
+        return new SharedRoute(lats, lons, null, instructionLengths, distances, times, distance, time);
+    }
+
+    /**
+     * Writes a route corpus with one route in each direction between the {@link #WAREHOUSES}, in the format read by
+     * {@link RouteCorpus} and written by the init cache's RouteCorpusWriter.
+     *
+     * @param time duration of each route in ms
+     */
+    public static void writeCorpus(final @NotNull Path file, final int points, final long time) throws IOException {
+        final byte[][] records = {record(route(points, time, 1), false), record(route(points, time, 2), true)};
+        final long dataStart = 16 + WAREHOUSES.length * 16 + 2 * 16;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(RouteCorpus.MAGIC);
+            out.writeInt(RouteCorpus.VERSION);
+            out.writeInt(WAREHOUSES.length);
+            out.writeInt(records.length);
+            for (double[] warehouse : WAREHOUSES) {
+                out.writeDouble(warehouse[0]);
+                out.writeDouble(warehouse[1]);
+            }
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeLong(dataStart);
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeLong(dataStart + records[0].length);
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        }
+    }
+
+    @NotNull
+    private static byte[] record(final @NotNull SharedRoute route, final boolean reverse) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            final int size = route.size();
+            out.writeDouble(route.getDistance());
+            out.writeLong(route.getTime());
+            out.writeInt(size);
+            // A single instruction, the corpus routes only need a plausible speed
+            out.writeInt(1);
+            final int[] lats = new int[size];
+            final int[] lons = new int[size];
+            for (int i = 0; i < size; ++i) {
+                final int index = reverse ? size - 1 - i : i;
+                lats[i] = (int) Math.round(route.getLat(index) * RouteCorpus.COORDINATE_SCALE);
+                lons[i] = (int) Math.round(route.getLon(index) * RouteCorpus.COORDINATE_SCALE);
+            }
+            for (int lat : lats) {
+                out.writeInt(lat);
+            }
+            for (int lon : lons) {
+                out.writeInt(lon);
+            }
+            double cumulative = 0;
+            for (int i = 0; i < size; ++i) {
+                if (i > 0) {
+                    cumulative += calc.calcDist(lats[i - 1] / RouteCorpus.COORDINATE_SCALE, lons[i - 1] / RouteCorpus.COORDINATE_SCALE,
+                            lats[i] / RouteCorpus.COORDINATE_SCALE, lons[i] / RouteCorpus.COORDINATE_SCALE);
+                }
+                out.writeDouble(cumulative);
+            }
+            out.writeInt(size);
+            out.writeFloat((float) route.getDistance());
+            out.writeInt((int) Math.min(Integer.MAX_VALUE, route.getTime()));
+            out.writeInt(0);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a payload generator config and its location file into the directory.
+     *
+     * @return path of the config file, the message passed to the generator
+     */
+    @NotNull
+    public static String writeConfig(final @NotNull Path directory, final @NotNull String payloadFormat, final int batchSize) throws IOException {
+        final Path locations = directory.resolve("warehouses.geojson");
+        final StringBuilder features = new StringBuilder();
+        for (double[] warehouse : WAREHOUSES) {
+            if (features.length() > 0) {
+                features.append(',');
+            }
+            features.append("{\"type\":\"Feature\",\"properties\":{},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(warehouse[1]).append(',').append(warehouse[0]).append("]}}");
+        }
+        Files.write(locations, ("{\"type\":\"FeatureCollection\",\"features\":[" + features + "]}").getBytes(StandardCharsets.UTF_8));
+        final Path config = directory.resolve("config-" + payloadFormat + "-" + batchSize + ".json");
+        Files.write(config, ("{\"locationFile\":\"" + locations.toAbsolutePath() + "\",\"timeMultiplier\":1,"
+                + "\"payloadFormat\":\"" + payloadFormat + "\",\"batchSize\":" + batchSize + "}").getBytes(StandardCharsets.UTF_8));
+        return config.toAbsolutePath().toString();
+    }
+}
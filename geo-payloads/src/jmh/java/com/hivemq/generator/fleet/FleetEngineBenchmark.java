@@ -0,0 +1,135 @@
+package com.hivemq.generator.fleet;
+
+import com.hivemq.generator.RoutePayloadGenerator;
+import com.hivemq.generator.SyntheticRoutes;
+import com.hivemq.generator.geo.SharedRoute;
+import com.hivemq.generator.offline.SimulatedClock;
+import com.hivemq.generator.payload.CarDataSamples;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Advancing a whole fleet by one second of simulated time, with a {@link FleetEngine#tick} in parallel and on one
+ * thread, and vehicle by vehicle with {@link FleetEngine#step} as every publish of an unticked generator does.
+ * <p>
+ * The fleet is static, JMH runs every benchmark in its own JVM so each fleet only holds the vehicles of its benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class FleetEngineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static abstract class Fleet {
+        @Param({"100000"})
+        public int vehicles;
+
+        /* Referenced until the tear down, a collected generator releases its truck */
+        RoutePayloadGenerator[] generators;
+        FleetEngine fleet;
+        ForkJoinPool pool;
+        CarDataSamples samples;
+        double[] point;
+        long time;
+
+        void setUp(final boolean ticked) throws IOException {
+            final Path directory = Files.createTempDirectory("fleet-engine-benchmark");
+            directory.toFile().deleteOnExit();
+            final Path corpus = directory.resolve("benchmark.corpus");
+            // Routes of 100 hours don't end during the benchmark
+            SyntheticRoutes.writeCorpus(corpus, 10_000, TimeUnit.HOURS.toMillis(100));
+            final String config = SyntheticRoutes.writeConfig(directory, "json", 1);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().deleteOnExit());
+            }
+            // Must be set before the generator class is initialized
+            System.setProperty(RoutePayloadGenerator.ROUTE_CORPUS_FILE_PROPERTY, corpus.toString());
+
+            time = System.currentTimeMillis();
+            final Random seeds = new Random(42);
+            generators = new RoutePayloadGenerator[vehicles];
+            for (int i = 0; i < vehicles; ++i) {
+                generators[i] = new RoutePayloadGenerator(new SimulatedClock(time), new Random(seeds.nextLong()), true, ticked);
+                generators[i].bind(config, "benchmark/truck/" + i);
+            }
+            fleet = RoutePayloadGenerator.getFleet();
+            pool = ForkJoinPool.commonPool();
+            samples = new CarDataSamples(1);
+            point = new double[SharedRoute.POINT_SIZE];
+            // The first step plans the routes
+            if (ticked) {
+                fleet.tick(time, null);
+            } else {
+                step();
+            }
+        }
+
+        int step() {
+            int located = 0;
+            for (int i = 0; i < vehicles; ++i) {
+                samples.clear();
+                located += fleet.step(generators[i].getVehicle(), time, samples, point) ? 1 : 0;
+            }
+            return located;
+        }
+
+        @TearDown
+        public void tearDown() {
+            for (RoutePayloadGenerator generator : generators) {
+                generator.release();
+            }
+        }
+    }
+
+    public static class Ticked extends Fleet {
+        @Setup
+        public void setUp() throws IOException {
+            setUp(true);
+        }
+    }
+
+    public static class Stepped extends Fleet {
+        @Setup
+        public void setUp() throws IOException {
+            setUp(false);
+        }
+    }
+
+    @Benchmark
+    public void tickParallel(final Ticked state) {
+        state.time += 1000;
+        state.fleet.tick(state.time, state.pool);
+    }
+
+    @Benchmark
+    public void tickSequential(final Ticked state) {
+        state.time += 1000;
+        state.fleet.tick(state.time, null);
+    }
+
+    @Benchmark
+    public int stepEach(final Stepped state) {
+        state.time += 1000;
+        return state.step();
+    }
+}
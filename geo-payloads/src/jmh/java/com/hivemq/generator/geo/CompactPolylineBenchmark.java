@@ -0,0 +1,103 @@
+package com.hivemq.generator.geo;
+
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.PointList;
+import com.hivemq.generator.SyntheticRoutes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Locating the segment at a distance along the route, with the geometry in a GraphHopper {@link PointList} plus
+ * cumulative distances against the delta-encoded {@link CompactPolyline}. The setup prints the bytes per point of both.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactPolylineBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int points;
+
+    private PointList pointList;
+    private double[] cumulativeDistance;
+    private CompactPolyline compact;
+    private double[] segment;
+    private double distance;
+    private double position;
+
+    @Setup
+    public void setUp() {
+        final SharedRoute route = SyntheticRoutes.route(points, 10 * 60 * 60 * 1000L, 42);
+        final DistanceCalcEarth calc = new DistanceCalcEarth();
+        pointList = new PointList(points, false);
+        cumulativeDistance = new double[points];
+        final double[] lats = new double[points];
+        final double[] lons = new double[points];
+        final int[] segmentInstruction = new int[points - 1];
+        for (int i = 0; i < points; ++i) {
+            lats[i] = route.getLat(i);
+            lons[i] = route.getLon(i);
+            pointList.add(lats[i], lons[i]);
+            if (i > 0) {
+                cumulativeDistance[i] = cumulativeDistance[i - 1] + calc.calcDist(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+                segmentInstruction[i - 1] = route.getSegmentInstruction(i - 1);
+            }
+        }
+        compact = CompactPolyline.encode(lats, lons, cumulativeDistance, segmentInstruction);
+        distance = compact.getDistance();
+        segment = new double[SharedRoute.POINT_SIZE];
+        // Two double arrays in the PointList and the cumulative distances
+        System.out.printf("%nBytes per point: PointList %.1f, with distances %.1f, SharedRoute arrays %.1f, compact %.1f%n",
+                2D * Double.BYTES, 3D * Double.BYTES, route.estimatedBytes() / (double) points,
+                compact.estimatedBytes() / (double) points);
+    }
+
+    private double next() {
+        // Advance like a vehicle does, wrapping around at the end of the route
+        position += 0.000123;
+        if (position > 1) {
+            position -= 1;
+        }
+        return position * distance;
+    }
+
+    @Benchmark
+    public void pointList(final Blackhole blackhole) {
+        final double distanceToTraverse = next();
+        int low = 1;
+        int high = cumulativeDistance.length - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (cumulativeDistance[mid] >= distanceToTraverse) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        blackhole.consume(pointList.getLat(low - 1));
+        blackhole.consume(pointList.getLon(low - 1));
+        blackhole.consume(pointList.getLat(low));
+        blackhole.consume(pointList.getLon(low));
+    }
+
+    @Benchmark
+    public void compact(final Blackhole blackhole) {
+        blackhole.consume(compact.locate(next(), segment));
+        blackhole.consume(segment);
+    }
+}
@@ -0,0 +1,77 @@
+package com.hivemq.generator.geo;
+
+import com.hivemq.generator.GeoPayloadGenerator;
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicData;
+import net.sf.geographiclib.GeodesicMask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distance and edge traversal of the shape file based {@link GeoPayloadGenerator}, which steps along a precomputed
+ * {@link GeoTour}, against the geodesic stepping it replaced.
+ * The fork runs with a warn log level to measure the computation only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class GeoEdgeBenchmark {
+
+    private GeoPayloadGenerator.LinePoint start;
+    private GeoPayloadGenerator.LinePoint end;
+    private GeoEdge edge;
+    private GeoTour.Cursor cursor;
+    private int segmentCount;
+    private int iteration;
+
+    @Setup
+    public void setUp() {
+        start = new GeoPayloadGenerator.LinePoint(53.55, 9.99);
+        end = new GeoPayloadGenerator.LinePoint(53.56, 10.02);
+        final double distance = GeoPayloadGenerator.distance(start, end);
+        edge = new GeoEdge(start, end, distance);
+        // 10m steps
+        segmentCount = (int) (distance / 0.01);
+        cursor = GeoTour.of(List.of(edge), false, GeoPayloadGenerator.STEP_DISTANCE).cursor();
+    }
+
+    @Benchmark
+    public double distance() {
+        return GeoPayloadGenerator.distance(start.lat, start.lon, end.lat, end.lon);
+    }
+
+    @Benchmark
+    public GeoPayloadGenerator.LinePoint traverse() {
+        iteration = iteration < segmentCount ? iteration + 1 : 0;
+        return edge.traverse(iteration, 0.01, false);
+    }
+
+    @Benchmark
+    public GeodesicData geodesicStep() {
+        iteration = iteration < segmentCount ? iteration + 1 : 0;
+        // What GeoPayloadGenerator.nextPayload did for every publish
+        return Geodesic.WGS84.InverseLine(start.lat, start.lon, end.lat, end.lon)
+                .Position(GeoPayloadGenerator.STEP_DISTANCE * iteration, GeodesicMask.LATITUDE | GeodesicMask.LONGITUDE);
+    }
+
+    @Benchmark
+    public double tourStep() {
+        // What GeoPayloadGenerator.nextPayload does for every publish
+        cursor.advance();
+        return cursor.getLat() + cursor.getLon();
+    }
+}
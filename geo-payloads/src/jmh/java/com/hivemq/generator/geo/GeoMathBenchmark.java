@@ -0,0 +1,90 @@
+package com.hivemq.generator.geo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distances from one point to all locations, as done when indexing warehouses and looking up the nearest one.
+ * {@link #legacy} is the haversine formula with {@code Math.pow} and {@code Math.toRadians} that {@link GeoMath}
+ * replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoMathBenchmark {
+
+    /* Number of locations, the German warehouse file has about 9000 */
+    @Param({"10000"})
+    public int locations;
+
+    private double[] lats;
+    private double[] lons;
+    private double[] cosLats;
+    private double[] distances;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        lats = new double[locations];
+        lons = new double[locations];
+        for (int i = 0; i < locations; ++i) {
+            lats[i] = 47 + random.nextDouble() * 8;
+            lons[i] = 6 + random.nextDouble() * 9;
+        }
+        cosLats = GeoMath.cosLatitudes(lats);
+        distances = new double[locations];
+    }
+
+    @Benchmark
+    public void legacy(final Blackhole blackhole) {
+        for (int i = 0; i < locations; ++i) {
+            blackhole.consume(legacyDistance(50.1, 8.7, lats[i], lons[i]));
+        }
+    }
+
+    @Benchmark
+    public void haversine(final Blackhole blackhole) {
+        for (int i = 0; i < locations; ++i) {
+            blackhole.consume(GeoMath.haversine(50.1, 8.7, lats[i], lons[i]));
+        }
+    }
+
+    @Benchmark
+    public double[] haversineBatch() {
+        GeoMath.haversine(50.1, 8.7, lats, lons, cosLats, distances);
+        return distances;
+    }
+
+    @Benchmark
+    public void equirectangular(final Blackhole blackhole) {
+        for (int i = 0; i < locations; ++i) {
+            blackhole.consume(GeoMath.equirectangular(50.1, 8.7, lats[i], lons[i]));
+        }
+    }
+
+    private static double legacyDistance(double startLat, double startLong, double endLat, double endLong) {
+        double dLat = Math.toRadians((endLat - startLat));
+        double dLong = Math.toRadians((endLong - startLong));
+        startLat = Math.toRadians(startLat);
+        endLat = Math.toRadians(endLat);
+        double a = Math.pow(Math.sin(dLat / 2), 2) + Math.cos(startLat) * Math.cos(endLat) * Math.pow(Math.sin(dLong / 2), 2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return GeoMath.EARTH_RADIUS_KM * c;
+    }
+}
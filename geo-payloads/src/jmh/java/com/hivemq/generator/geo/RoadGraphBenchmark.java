@@ -0,0 +1,101 @@
+package com.hivemq.generator.geo;
+
+import com.hivemq.generator.GeoPayloadGenerator;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.AStarShortestPath;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.WeightedMultigraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shortest paths between random street starts, which every in-city {@link GeoPayloadGenerator} searches at least three
+ * of, on {@link RoadGraph} and on a jgrapht graph of boxed points. Both use edge lengths and the same heuristic, so
+ * they search the same paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoadGraphBenchmark {
+
+    private static final double METER = 0.001 / 111.195;
+
+    /* Streets per direction, the network has the square of it as points */
+    @Param({"100"})
+    public int streets;
+
+    private RoadGraph graph;
+    private RoadGraph.Search search;
+    private AStarShortestPath<GeoPayloadGenerator.LinePoint, DefaultWeightedEdge> jgrapht;
+    private GeoPayloadGenerator.LinePoint[] points;
+    private int[] pairs;
+    private int pair;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        points = new GeoPayloadGenerator.LinePoint[streets * streets];
+        for (int row = 0; row < streets; ++row) {
+            for (int column = 0; column < streets; ++column) {
+                points[row * streets + column] = new GeoPayloadGenerator.LinePoint(53.5 + (row * 100 + random.nextInt(40)) * METER,
+                        9.9 + (column * 160 + random.nextInt(60)) * METER);
+            }
+        }
+        // All rows before the columns, so the vertex ids of the road graph are the point indices
+        final List<List<GeoPayloadGenerator.LinePoint>> lines = new ArrayList<>();
+        for (int direction = 0; direction < 2; ++direction) {
+            for (int i = 0; i < streets; ++i) {
+                final List<GeoPayloadGenerator.LinePoint> line = new ArrayList<>();
+                for (int k = 0; k < streets; ++k) {
+                    line.add(direction == 0 ? points[i * streets + k] : points[k * streets + i]);
+                }
+                lines.add(line);
+            }
+        }
+
+        graph = RoadGraph.of(lines, List.of());
+        search = graph.search();
+        final WeightedMultigraph<GeoPayloadGenerator.LinePoint, DefaultWeightedEdge> multigraph = new WeightedMultigraph<>(DefaultWeightedEdge.class);
+        for (List<GeoPayloadGenerator.LinePoint> line : lines) {
+            line.forEach(multigraph::addVertex);
+            for (int i = 0; i < line.size() - 1; ++i) {
+                multigraph.setEdgeWeight(multigraph.addEdge(line.get(i), line.get(i + 1)), GeoPayloadGenerator.distance(line.get(i), line.get(i + 1)));
+            }
+        }
+        jgrapht = new AStarShortestPath<>(multigraph, (first, second) -> GeoMath.haversine(first.lat, first.lon, second.lat, second.lon));
+
+        pairs = new int[2 * 1024];
+        for (int i = 0; i < pairs.length; ++i) {
+            pairs[i] = random.nextInt(points.length);
+        }
+    }
+
+    @Benchmark
+    public int[] roadGraph() {
+        pair = (pair + 2) % pairs.length;
+        return search.path(pairs[pair], pairs[pair + 1]);
+    }
+
+    @Benchmark
+    public GraphPath<GeoPayloadGenerator.LinePoint, DefaultWeightedEdge> jgrapht() {
+        pair = (pair + 2) % pairs.length;
+        return jgrapht.getPath(points[pairs[pair]], points[pairs[pair + 1]]);
+    }
+}
@@ -0,0 +1,61 @@
+package com.hivemq.generator.geo;
+
+import com.hivemq.generator.SyntheticRoutes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interpolation along a route, done for every sample of every vehicle. The cost should grow with the logarithm of the
+ * route length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedRouteBenchmark {
+
+    /* Number of route points, real routes between warehouses have 1000 to 50000 */
+    @Param({"1000", "10000", "100000"})
+    public int points;
+
+    /* Geometry as double arrays or delta-encoded, see SharedRoute#compact() */
+    @Param({"arrays", "compact"})
+    public String encoding;
+
+    private SharedRoute route;
+    private Random random;
+    private double percentage;
+
+    @Setup
+    public void setUp() {
+        route = SyntheticRoutes.route(points, 10 * 60 * 60 * 1000L, 42);
+        if ("compact".equals(encoding)) {
+            route = route.compact();
+        }
+        random = new Random(42);
+    }
+
+    @Benchmark
+    public SharedRoute.InterpResult getPoint() {
+        // Advance like a vehicle does, wrapping around at the end of the route
+        percentage += 0.000123;
+        if (percentage > 1) {
+            percentage -= 1;
+        }
+        return route.getPoint(percentage, random);
+    }
+}
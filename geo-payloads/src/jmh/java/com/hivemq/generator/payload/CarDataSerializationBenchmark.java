@@ -0,0 +1,142 @@
+package com.hivemq.generator.payload;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.model.CarData;
+import com.hivemq.model.CarDataBatch;
+import com.hivemq.model.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Telemetry serialization in every payload format, with Jackson on the generated model as the baseline the encoders
+ * replaced, and decoding the JSON and binary payloads into that model as subscribers do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarDataSerializationBenchmark {
+
+    /* Samples per batch payload */
+    @Param({"10"})
+    public int batchSize;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CarDataEncoder encoder = new CarDataEncoder();
+    private final BinaryCarDataCodec binaryCodec = new BinaryCarDataCodec(false);
+    private final BinaryCarDataCodec binary64Codec = new BinaryCarDataCodec(true);
+
+    private UUID routeUuid;
+    private String routeId;
+    private CarDataSamples samples;
+
+    /* Encoded once, to benchmark decoding */
+    private byte[] jsonPayload;
+    private byte[] jsonBatchPayload;
+    private ByteBuffer binaryPayload;
+    private ByteBuffer binaryBatchPayload;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        routeUuid = new UUID(random.nextLong(), random.nextLong());
+        routeId = routeUuid.toString();
+        samples = new CarDataSamples(batchSize);
+        long time = 1_600_000_000_000L;
+        double lat = 9.99;
+        double lon = 53.55;
+        for (int i = 0; i < batchSize; ++i) {
+            samples.add(time, lat, lon, routeUuid, routeId, 60 + random.nextDouble() * 40, 80, false);
+            time += 1000;
+            lat += (random.nextDouble() - 0.5) * 1e-3;
+            lon += (random.nextDouble() - 0.5) * 1e-3;
+        }
+        jsonPayload = copy(json());
+        jsonBatchPayload = copy(jsonBatch());
+        binaryPayload = ByteBuffer.wrap(copy(binary()));
+        binaryBatchPayload = ByteBuffer.wrap(copy(binaryBatch()));
+    }
+
+    private static byte[] copy(final ByteBuffer payload) {
+        final byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        final CarData carData = new CarData();
+        final Location location = new Location();
+        location.setLat(samples.getLat(0));
+        location.setLon(samples.getLon(0));
+        carData.setLocation(location);
+        carData.setRouteId(routeId);
+        carData.setSpeed(samples.getSpeed(0));
+        carData.setSpeedLimit(samples.getSpeedLimit(0));
+        carData.setBreak(false);
+        return mapper.writeValueAsBytes(carData);
+    }
+
+    @Benchmark
+    public ByteBuffer json() {
+        return encoder.encode(samples.getLat(0), samples.getLon(0), routeId, samples.getSpeed(0), samples.getSpeedLimit(0), false);
+    }
+
+    @Benchmark
+    public ByteBuffer jsonBatch() {
+        return encoder.encodeBatch(samples);
+    }
+
+    @Benchmark
+    public ByteBuffer binary() {
+        return binaryCodec.encode(samples.getLat(0), samples.getLon(0), routeUuid, samples.getSpeed(0), samples.getSpeedLimit(0), false);
+    }
+
+    @Benchmark
+    public ByteBuffer binary64() {
+        return binary64Codec.encode(samples.getLat(0), samples.getLon(0), routeUuid, samples.getSpeed(0), samples.getSpeedLimit(0), false);
+    }
+
+    @Benchmark
+    public ByteBuffer binaryBatch() {
+        return binaryCodec.encodeBatch(samples);
+    }
+
+    @Benchmark
+    public CarData jacksonDecode() throws IOException {
+        return mapper.readValue(jsonPayload, CarData.class);
+    }
+
+    @Benchmark
+    public CarDataBatch jacksonDecodeBatch() throws IOException {
+        return mapper.readValue(jsonBatchPayload, CarDataBatch.class);
+    }
+
+    @Benchmark
+    public CarData binaryDecode() {
+        return BinaryCarDataCodec.decode(binaryPayload);
+    }
+
+    @Benchmark
+    public CarDataBatch binaryDecodeBatch() {
+        return BinaryCarDataCodec.decodeBatch(binaryBatchPayload);
+    }
+}
@@ -0,0 +1,65 @@
+package com.hivemq.loader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a street network message with {@link LineParser} and with the nested {@code String.split} it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineParserBenchmark {
+
+    /* Number of points, spread over lines of 50 points */
+    @Param({"100000"})
+    public int points;
+
+    private String message;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final StringBuilder builder = new StringBuilder(points * 22);
+        for (int i = 0; i < points; ++i) {
+            if (i > 0) {
+                builder.append(i % 50 == 0 ? '_' : ';');
+            }
+            builder.append(String.format(Locale.ROOT, "%.7f,%.7f", 53.5 + random.nextDouble() * 0.1, 9.9 + random.nextDouble() * 0.1));
+        }
+        message = builder.toString();
+    }
+
+    @Benchmark
+    public CoordinateLines streaming() {
+        return LineParser.parse(message);
+    }
+
+    @Benchmark
+    public double split() {
+        double checksum = 0;
+        for (String line : message.split("_")) {
+            for (String coordinates : line.split(";")) {
+                final String[] coordinatesSplit = coordinates.split(",");
+                checksum += Double.parseDouble(coordinatesSplit[0]) + Double.parseDouble(coordinatesSplit[1]);
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,69 @@
+package com.hivemq;
+
+import com.hivemq.generator.offline.OfflineSimulation;
+import com.hivemq.generator.offline.TelemetryWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/* Generates the telemetry of a fleet into a file in simulated time, e.g. for database ingestion tests. */
+public class ExportMain {
+
+    @NotNull
+    public static final String EXPORT_FILE_ENV = "EXPORT_FILE";
+    @NotNull
+    public static final String EXPORT_VEHICLES_ENV = "EXPORT_VEHICLES";
+    @NotNull
+    public static final String EXPORT_MINUTES_ENV = "EXPORT_MINUTES";
+    @NotNull
+    public static final String EXPORT_INTERVAL_MILLIS_ENV = "EXPORT_INTERVAL_MILLIS";
+    @NotNull
+    public static final String EXPORT_SEED_ENV = "EXPORT_SEED";
+    @NotNull
+    public static final String EXPORT_START_MILLIS_ENV = "EXPORT_START_MILLIS";
+    /* Threads advancing the vehicles, the output is the same for any number */
+    @NotNull
+    public static final String EXPORT_THREADS_ENV = "EXPORT_THREADS";
+
+    /* 2020-01-01T00:00:00Z, a fixed start keeps the output reproducible */
+    public static final long DEFAULT_START_MILLIS = 1_577_836_800_000L;
+
+    public static void main(String[] args) throws Exception {
+        // Same configuration as the simulator's generators, route data comes from OSM_FILE or ROUTE_CORPUS_FILE
+        final String config = System.getenv(InitMain.CONFIG_FILE_ENV);
+        final String file = System.getenv(EXPORT_FILE_ENV);
+        if (config == null || file == null) {
+            System.err.println("Set " + InitMain.CONFIG_FILE_ENV + " to the payload configuration and " + EXPORT_FILE_ENV + " to the output file");
+            System.exit(1);
+        }
+        final int vehicles = (int) longFromEnv(EXPORT_VEHICLES_ENV, 100);
+        final long minutes = longFromEnv(EXPORT_MINUTES_ENV, 60);
+        final long interval = longFromEnv(EXPORT_INTERVAL_MILLIS_ENV, 1000);
+        final long seed = longFromEnv(EXPORT_SEED_ENV, 0);
+        final long start = longFromEnv(EXPORT_START_MILLIS_ENV, DEFAULT_START_MILLIS);
+        final int threads = (int) longFromEnv(EXPORT_THREADS_ENV, Runtime.getRuntime().availableProcessors());
+
+        final long started = System.nanoTime();
+        final long records;
+        try (OfflineSimulation simulation = new OfflineSimulation(config, vehicles, seed, start);
+             TelemetryWriter writer = new TelemetryWriter(Files.newOutputStream(Paths.get(file)))) {
+            records = simulation.run(TimeUnit.MINUTES.toMillis(minutes), interval, writer, threads > 1 ? new ForkJoinPool(threads) : null);
+        }
+        System.out.println("Wrote " + records + " payloads of " + vehicles + " vehicles over " + minutes + " simulated minutes to "
+                + Paths.get(file).toAbsolutePath() + " in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) + "s");
+        // The route planner and config watcher threads are daemons, but the metrics server may not be
+        System.exit(0);
+    }
+
+    private static long longFromEnv(final @NotNull String name, final long defaultValue) {
+        final @Nullable String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return Long.parseLong(value.trim());
+    }
+}
@@ -1,6 +1,7 @@
 package com.hivemq;
 
 import com.hivemq.generator.RoutePayloadGenerator;
+import com.hivemq.generator.route.RouteBootstrap;
 import com.hivemq.simulator.plugin.sdk.load.generators.PluginPayloadGeneratorInput;
 import org.jetbrains.annotations.NotNull;
 
@@ -14,6 +15,12 @@ public class InitMain {
     
     public static void main(String[] args) throws Exception{
         // Note: this will take a good while first time because graphhopper will load the entire map and write an index to the graphhopper data directory first.
+        // With bootstrapVehicles in the config, time planning the first routes of the whole fleet
+        final RouteBootstrap bootstrap = RoutePayloadGenerator.bootstrap(System.getenv(CONFIG_FILE_ENV));
+        if (bootstrap != null) {
+            final long millis = bootstrap.getCompletion().join();
+            System.out.println("Planned the first routes of " + bootstrap.size() + " vehicles in " + millis + "ms, " + bootstrap.getFailedCount() + " failed");
+        }
         final RoutePayloadGenerator routePayloadGenerator = new RoutePayloadGenerator();
         for (int i = 0; i < 10; ++i) {
             final ByteBuffer byteBuffer = routePayloadGenerator.nextPayload(new PluginPayloadGeneratorInput() {
@@ -1,106 +1,82 @@
 package com.hivemq.generator;
 
 import com.hivemq.generator.geo.GeoEdge;
+import com.hivemq.generator.geo.GeoMath;
+import com.hivemq.generator.geo.GeoTour;
+import com.hivemq.generator.geo.RoadGraph;
 import com.hivemq.simulator.plugin.sdk.load.generators.PluginPayloadGenerator;
 import com.hivemq.simulator.plugin.sdk.load.generators.PluginPayloadGeneratorInput;
-import net.sf.geographiclib.Geodesic;
-import net.sf.geographiclib.GeodesicData;
-import net.sf.geographiclib.GeodesicLine;
-import net.sf.geographiclib.GeodesicMask;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.AStarShortestPath;
-import org.jgrapht.graph.Multigraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Generates lat,lon formatted, interpolated coordinate pairs which simulate a moving car.
  * Dumb implementation that can only work on a small bounding box with few streets (i.e. within cities)
  */
 public class GeoPayloadGenerator implements PluginPayloadGenerator {
-    public static final int EARTH_RADIUS = 6371;
-
     private static final Logger log = LoggerFactory.getLogger(GeoPayloadGenerator.class);
 
     // distance in m per publish to travel
     public static final double STEP_DISTANCE = 8D;
 
     private final int agentOffset;
-    private final Geodesic geodesic;
-    private GraphPath<LinePoint, GeoEdge> path3;
-    private Multigraph<LinePoint, GeoEdge> graph;
-    private GraphPath<LinePoint, GeoEdge> path;
-    private GraphPath<LinePoint, GeoEdge> path2;
+    @NotNull
+    private final RoadGraph graph;
+    private int[] path;
+    private int[] path2;
+    private int[] path3;
 
-    private AtomicInteger iterator;
-    private AtomicInteger edgeIterator;
-    private LinePoint previousPoint;
-    private AtomicBoolean reverseTraversal;
+    /* The three paths as one loop, and this generator's position on it */
+    private final GeoTour tour;
+    private final GeoTour.Cursor cursor;
 
     //FIXME: the constructor must be no-arg; have to initialize elsewhere, probably statically.
-    public GeoPayloadGenerator(final @NotNull String message, final int agentOffset, Multigraph<LinePoint, GeoEdge> graph, List<List<LinePoint>> linesList) {
+    public GeoPayloadGenerator(final @NotNull String message, final int agentOffset, final @NotNull RoadGraph graph) {
         this.agentOffset = agentOffset;
-        this.iterator = new AtomicInteger(0);
-        this.edgeIterator = new AtomicInteger(0);
-        this.reverseTraversal = new AtomicBoolean(false);
         this.graph = graph;
 
-        geodesic = Geodesic.WGS84;
-
-        final AStarShortestPath<LinePoint, GeoEdge> astarPath = new AStarShortestPath<>(this.graph, (firstPoint, secondPoint) -> distance(
-                firstPoint.lat, firstPoint.lon,
-                secondPoint.lat, secondPoint.lon));
+        final RoadGraph.Search search = graph.search();
+        final int lineCount = graph.lineCount();
 
-        double randomIndexStart = Math.random() * linesList.size();
-        double randomIndexEnd = Math.random() * linesList.size();
+        double randomIndexStart = Math.random() * lineCount;
+        double randomIndexEnd = Math.random() * lineCount;
         log.info("Generating path for indices {}, {}", randomIndexStart, randomIndexEnd);
-        path = astarPath.getPath(linesList.get((int) randomIndexStart).get(0), linesList.get((int) randomIndexEnd).get(0));
-        while (path == null || path.getEdgeList().size() < 4 || path2 == null || path2.getEdgeList().size() < 3 || path3 == null || path3.getEdgeList().size() < 2) {
-            randomIndexStart = Math.random() * linesList.size();
-            randomIndexEnd = Math.random() * linesList.size();
+        path = search.path(graph.getLineHead((int) randomIndexStart), graph.getLineHead((int) randomIndexEnd));
+        while (path == null || path.length - 1 < 4 || path2 == null || path2.length - 1 < 3 || path3 == null || path3.length - 1 < 2) {
+            randomIndexStart = Math.random() * lineCount;
+            randomIndexEnd = Math.random() * lineCount;
             log.info("Generating initial path for indices {}, {}", randomIndexStart, randomIndexEnd);
-            path = astarPath.getPath(linesList.get((int) randomIndexStart).get(0), linesList.get((int) randomIndexEnd).get(0));
-            LinePoint middlePoint = linesList.get((int) (Math.random() * linesList.size())).get(0);
-            middlePoint = linesList.get((int) (Math.random() * linesList.size())).get(0);
+            path = search.path(graph.getLineHead((int) randomIndexStart), graph.getLineHead((int) randomIndexEnd));
+            final int middlePoint = graph.getLineHead((int) (Math.random() * lineCount));
             log.info("Generating secondary path for indices {}, {}", randomIndexEnd, middlePoint);
-            path2 = astarPath.getPath(linesList.get((int) randomIndexEnd).get(0), middlePoint);
+            path2 = search.path(graph.getLineHead((int) randomIndexEnd), middlePoint);
 
             log.info("Generating tertiary path for indices {}, {}", middlePoint, randomIndexStart);
-            path3 = astarPath.getPath(middlePoint, linesList.get((int) randomIndexStart).get(0));
+            path3 = search.path(middlePoint, graph.getLineHead((int) randomIndexStart));
         }
-        log.info("Initial path: {}", path);
-
-        // Determine initial traversal direction
-        final GeoEdge firstEdge = path.getEdgeList().get(0);
-        final GeoEdge secondEdge = path.getEdgeList().get(1);
-        reverseTraversal.set(
-                distance(firstEdge.getStart(), secondEdge.
-                        getStart()) < distance(firstEdge.getEnd(), secondEdge.getStart()));
+        log.info("Initial path of {} vertices", path.length);
+
+        // Edges point along the paths, so the tour starts forwards
+        final List<GeoEdge> edgeList = new ArrayList<>(graph.toEdges(path));
+        edgeList.addAll(graph.toEdges(path2));
+        edgeList.addAll(graph.toEdges(path3));
+        tour = GeoTour.of(edgeList, false, STEP_DISTANCE);
+        cursor = tour.cursor();
     }
 
+    /**
+     * @return great-circle distance in km, see {@link GeoMath#haversine(double, double, double, double)}
+     */
     public static double distance(double startLat, double startLong,
                                   double endLat, double endLong) {
-        double dLat = Math.toRadians((endLat - startLat));
-        double dLong = Math.toRadians((endLong - startLong));
-
-        startLat = Math.toRadians(startLat);
-        endLat = Math.toRadians(endLat);
-
-        double a = haversin(dLat) + Math.cos(startLat) * Math.cos(endLat) * haversin(dLong);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return EARTH_RADIUS * c; // <-- d
+        return GeoMath.haversine(startLat, startLong, endLat, endLong);
     }
 
     public static double distance(@Nullable LinePoint o1, @Nullable LinePoint o2) {
@@ -110,44 +86,15 @@ public class GeoPayloadGenerator implements PluginPayloadGenerator {
         return Math.abs(distance(o1.lat, o1.lon, o2.lat, o2.lon));
     }
 
-    public static double haversin(double val) {
-        return Math.pow(Math.sin(val / 2), 2);
-    }
-
     @Override
     public @NotNull ByteBuffer nextPayload(@NotNull PluginPayloadGeneratorInput pluginPayloadGeneratorInput) {
         final String topic = pluginPayloadGeneratorInput.getTopic();
         try {
-            final List<GeoEdge> edgeList = Stream.of(path.getEdgeList(), path2.getEdgeList(), path3.getEdgeList())
-                    .flatMap(Collection::stream)
-                    .collect(Collectors.toList());
-            if(edgeIterator.get() >= edgeList.size()) {
-                edgeIterator.set(0);
+            if (cursor.advance()) {
                 log.info("Rolling over edge list for topic {}", topic);
             }
-            final GeoEdge currentEdge = edgeList.get(edgeIterator.get());
-
-            final int iteratorValue = iterator.getAndIncrement();
-            final GeodesicLine line = geodesic.InverseLine(currentEdge.getStart().getLat(), currentEdge.getStart().getLon(), currentEdge.getEnd().getLat(), currentEdge.getEnd().getLon());
-            final double currentPosition = reverseTraversal.get() ? line.Distance() - STEP_DISTANCE * iteratorValue : STEP_DISTANCE * iteratorValue;
-            final GeodesicData position = line.Position(currentPosition,
-                    GeodesicMask.LATITUDE |
-                            GeodesicMask.LONGITUDE);
-            LinePoint nextPoint = new LinePoint(position.lat2, position.lon2);
-            if (STEP_DISTANCE * (iteratorValue + 1) > line.Distance()) {
-                iterator.set(0);
-                final int nextEdgeIteration = edgeIterator.incrementAndGet();
-                final GeoEdge nextEdge = edgeList.get(nextEdgeIteration % edgeList.size());
-                log.debug("Next edge: {}, current edge: {}, reverse traversal: {}", nextEdge, currentEdge, reverseTraversal.get());
-                if (distance(nextPoint, nextEdge.getStart()) < distance(nextPoint, nextEdge.getEnd())) {
-                    reverseTraversal.set(false);
-                } else {
-                    reverseTraversal.set(true);
-                }
-            }
-            //log.info("Generating publish for topic {} using generator {}", topic, this);
-            previousPoint = nextPoint;
-            return ByteBuffer.wrap(Objects.requireNonNullElse(nextPoint, "none").toString().getBytes());
+            // Same format as LinePoint.toString
+            return ByteBuffer.wrap((cursor.getLat() + "," + cursor.getLon()).getBytes());
         } catch (Exception ex) {
             log.error("Exception generating payload:", ex);
         }
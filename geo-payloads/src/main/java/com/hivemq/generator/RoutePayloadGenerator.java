@@ -1,44 +1,36 @@
 package com.hivemq.generator;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.graphhopper.GHRequest;
-import com.graphhopper.GHResponse;
-import com.graphhopper.GraphHopper;
-import com.graphhopper.PathWrapper;
-import com.graphhopper.config.ProfileConfig;
-import com.graphhopper.reader.osm.GraphHopperOSM;
-import com.graphhopper.routing.util.EncodingManager;
-import com.graphhopper.util.InstructionList;
-import com.graphhopper.util.PointList;
-import com.graphhopper.util.shapes.GHPoint;
-import com.graphhopper.util.shapes.GHPoint3D;
-import com.hivemq.generator.geo.RouteInterpolator;
-import com.hivemq.model.CarData;
-import com.hivemq.model.Location;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hivemq.generator.config.ConfigRegistry;
+import com.hivemq.generator.config.ResolvedConfig;
+import com.hivemq.generator.fleet.FleetEngine;
+import com.hivemq.generator.geo.SharedRoute;
+import com.hivemq.generator.metrics.GeneratorMetrics;
+import com.hivemq.generator.payload.BinaryCarDataCodec;
+import com.hivemq.generator.payload.CarDataEncoder;
+import com.hivemq.generator.payload.CarDataSamples;
+import com.hivemq.generator.route.GraphLoader;
+import com.hivemq.generator.route.RouteBootstrap;
+import com.hivemq.generator.route.RouteCorpus;
+import com.hivemq.generator.route.RoutePlanner;
 import com.hivemq.model.RoutePayloadConfig;
 import com.hivemq.simulator.plugin.sdk.load.generators.PluginPayloadGenerator;
 import com.hivemq.simulator.plugin.sdk.load.generators.PluginPayloadGeneratorInput;
-import org.geojson.Feature;
-import org.geojson.FeatureCollection;
-import org.geojson.LngLatAlt;
-import org.geojson.Point;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.locationtech.jts.geom.Coordinate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
 import java.nio.ByteBuffer;
-import java.util.List;
+import java.time.Clock;
 import java.util.Random;
-import java.util.UUID;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A payload generator that simulates vehicles on actual roads based on a list of points to navigate between.
@@ -58,290 +50,343 @@ public class RoutePayloadGenerator implements PluginPayloadGenerator {
 
     @NotNull
     public static final String OSM_FILE_ENV = "OSM_FILE";
-
+    /**
+     * Route corpus written by the GraphPreprocessor. If set, routes are picked from it and no graph is loaded.
+     */
     @NotNull
-    private final static GraphHopper hopper;
+    public static final String ROUTE_CORPUS_FILE_ENV = "ROUTE_CORPUS_FILE";
+    /* Takes precedence over ROUTE_CORPUS_FILE, so benchmarks can run without a graph in-process */
     @NotNull
-    private final Random random;
+    public static final String ROUTE_CORPUS_FILE_PROPERTY = "geo.payloads.routeCorpusFile";
+    /**
+     * Advance all trucks together at this interval in ms instead of one by one on every publish, publishes then carry
+     * the latest tick. Unset or 0 disables ticking.
+     */
     @NotNull
-    private final ObjectMapper mapper;
+    public static final String FLEET_TICK_MILLIS_ENV = "FLEET_TICK_MILLIS";
 
-    /* Central static location cache for all payload generators */
+    /* Background route planning shared by all payload generators */
+    @NotNull
+    private final static RoutePlanner planner;
+    /* Source of the sample timestamps, the system clock unless simulated */
+    @NotNull
+    private final Clock clock;
     @NotNull
-    private final static Cache<String, List<GHPoint>> locationCache = CacheBuilder.newBuilder().build();
+    private final CarDataEncoder encoder;
+    /* Only created if a binary payload format is configured */
+    @Nullable
+    private BinaryCarDataCodec binaryCodec;
+    /* Samples of the current publish, grown if the configured batch size increases */
+    @NotNull
+    private CarDataSamples samples = new CarDataSamples(1);
+    /* Time the truck was last stepped to, 0 before the first publish */
+    private long lastSampleTime;
+    /* The truck's latest sample is of a new route and was held back from the last batch, it starts the next one */
+    private boolean carriedSample;
+    /* Scratch for the route point of each step */
+    @NotNull
+    private final double[] point = new double[SharedRoute.POINT_SIZE];
 
+    /* Config and location snapshots shared by all payload generators, swapped when the files change */
+    @NotNull
+    private final static ConfigRegistry configRegistry = new ConfigRegistry();
 
+    /* Exported over JMX and optionally HTTP, shared by all payload generators */
     @NotNull
-    private final static Cache<String, RoutePayloadConfig> configCache = CacheBuilder.newBuilder().build();
+    private final static GeneratorMetrics metrics;
+    /* Generator object with its fields, the truck itself is in the fleet */
+    private static final long GENERATOR_BYTES = 64;
 
+    /* State of all trucks, a generator only knows its truck's id */
+    @NotNull
+    private final static FleetEngine fleet;
+    /* Ticks the fleet in the background if FLEET_TICK_MILLIS is set */
+    @Nullable
+    private final static ScheduledExecutorService fleetTicker;
+    /* Releases the trucks of generators the simulator dropped, a generator has no close hook */
+    @NotNull
+    private final static Cleaner cleaner = Cleaner.create();
 
     // We don't want to load this for every generator that's created, also won't implement proper dependency injection for now.
     static {
-        final String path = System.getenv(OSM_FILE_ENV);
-        hopper = new GraphHopperOSM()
-                .forServer();
-        hopper.setDataReaderFile(path);
-        hopper.setGraphHopperLocation("/tmp/graphhopper");
-        final EncodingManager car = EncodingManager.create("car");
-        final ProfileConfig profileConfig = new ProfileConfig("car");
-        profileConfig.setWeighting("fastest").setVehicle("car").setTurnCosts(false);
-        hopper.setProfiles(profileConfig);
-        hopper.setEncodingManager(car);
-        final long startTime = System.currentTimeMillis();
-        hopper.importOrLoad();
-        log.info("Loaded OSM file at {} in {}ms", path, System.currentTimeMillis() - startTime);
+        final String corpusFile = System.getProperty(ROUTE_CORPUS_FILE_PROPERTY, System.getenv(ROUTE_CORPUS_FILE_ENV));
+        if (corpusFile != null && !corpusFile.isBlank()) {
+            try {
+                planner = RoutePlanner.fromEnvironment(RouteCorpus.open(corpusFile.trim()));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open route corpus " + corpusFile, e);
+            }
+        } else {
+            planner = RoutePlanner.fromEnvironment(GraphLoader.fromEnvironment(System.getenv(OSM_FILE_ENV)));
+        }
+        // Routes between the old warehouses are useless once a location file changed
+        configRegistry.addLocationListener(planner::retainOnly);
+        metrics = GeneratorMetrics.fromEnvironment(planner, configRegistry);
+        fleet = new FleetEngine(planner, metrics);
+        final long tickMillis = millisFromEnv(FLEET_TICK_MILLIS_ENV, 0);
+        if (tickMillis > 0) {
+            fleetTicker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("fleet-ticker").setDaemon(true).build());
+            // A fixed rate never runs two ticks at once, a tick that takes too long delays the next one
+            fleetTicker.scheduleAtFixedRate(() -> {
+                try {
+                    fleet.tick(System.currentTimeMillis(), ForkJoinPool.commonPool());
+                } catch (Exception e) {
+                    log.error("Failed to advance the fleet", e);
+                }
+            }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+            log.info("Advancing the fleet every {}ms", tickMillis);
+        } else {
+            fleetTicker = null;
+        }
     }
 
 
-    private PathWrapper currentRoute;
-    private String routeId;
+    /* Message the config was resolved for, the simulator passes the same one on every publish */
+    @Nullable
+    private String configFile;
+    @Nullable
+    private AtomicReference<ResolvedConfig> configReference;
 
+    /* This generator's truck in the fleet */
+    private final int vehicle;
+    /* Publish the truck's latest tick instead of advancing it on every publish */
+    private final boolean ticked;
+    /* Releases the truck once, explicitly or when this generator is garbage collected */
+    @NotNull
+    private final Cleaner.Cleanable release;
+    private boolean released;
 
-    /* Pause state */
-    /* pause end timestamp, only set if a pause is in progress */
-    private Long pauseUntil;
-    private Coordinate pauseLocation;
+    /**
+     * A payload generator is instantiated for each client publishing to the broker.
+     * The payload generators are instantiated each time a publish command in the scenario is executed.
+     */
+    public RoutePayloadGenerator() {
+        this(Clock.systemUTC(), new Random(), false, fleetTicker != null);
+    }
 
+    /**
+     * @param clock          time of each sample, a simulated clock runs the vehicle faster than real time
+     * @param random         all random choices of this vehicle, seeded for reproducible output
+     * @param inlinePlanning plan routes on the calling thread, so a vehicle never waits for the planner without a
+     *                       location and its output only depends on the clock and the seed
+     */
+    public RoutePayloadGenerator(final @NotNull Clock clock, final @NotNull Random random, final boolean inlinePlanning) {
+        this(clock, random, inlinePlanning, false);
+    }
+
+    /**
+     * @param ticked the truck is advanced by {@link FleetEngine#tick} and every publish carries its latest sample,
+     *               otherwise the truck is advanced to the clock's time on every publish
+     */
+    public RoutePayloadGenerator(final @NotNull Clock clock, final @NotNull Random random, final boolean inlinePlanning, final boolean ticked) {
+        this.encoder = new CarDataEncoder();
+        this.clock = clock;
+        this.ticked = ticked;
+        this.vehicle = fleet.add(random, inlinePlanning, ticked);
+        this.release = cleaner.register(this, new Release(vehicle));
+        metrics.vehicleCreated();
+    }
 
     /**
-     * The instructions local to this instance (a single "vehicle")
+     * Releases this generator's truck from the fleet, see {@link FleetEngine#release}. Happens at the latest once the
+     * generator is garbage collected, a released generator only returns the {@link #FAILURE_PAYLOAD}.
+     */
+    public void release() {
+        released = true;
+        release.clean();
+    }
+
+    /**
+     * @return id of this generator's truck in the {@link #getFleet fleet}
+     */
+    public int getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * @return true if the fleet is advanced by the {@link #FLEET_TICK_MILLIS_ENV} ticker
+     */
+    public static boolean isFleetTicked() {
+        return fleetTicker != null;
+    }
+
+    /**
+     * @return the trucks of all payload generators
+     */
+    @NotNull
+    public static FleetEngine getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Starts planning the first routes of the config's {@code bootstrapVehicles} in parallel, so trucks created later
+     * find them ready. The first truck starts it otherwise.
+     *
+     * @param configFile path of the config file, as passed to the generators
+     * @return the bootstrap, or null if the config doesn't expect a number of vehicles
      */
     @Nullable
-    private InstructionList instructions;
+    public static RouteBootstrap bootstrap(final @NotNull String configFile) throws IOException {
+        final ResolvedConfig config = configRegistry.resolve(configFile).get();
+        if (config.getBootstrapVehicles() == 0) {
+            return null;
+        }
+        return planner.bootstrap(config.getLocations(), config.getBootstrapVehicles(), config.getRouteSimplifier(), new Random().nextLong());
+    }
 
     /**
-     * The current index of the instruction within the current {@link #instructions} we are handling
+     * Resolves the config and binds the truck to it, which {@link #nextPayload} does with the first message. Ticked
+     * trucks are only advanced once bound.
+     *
+     * @param message path of the config file, the simulator passes it as message
+     * @param topic   topic of the truck, for logging
      */
-    private int currentInstruction;
-    private Double currentSegmentTime;
-    private RouteInterpolator interpolator;
-    private boolean breakTaken = false;
+    public void bind(final @NotNull String message, final @NotNull String topic) throws IOException {
+        if (released) {
+            throw new IllegalStateException("Truck " + topic + " was released");
+        }
+        configReference = configRegistry.resolve(message);
+        configFile = message;
+        fleet.bind(vehicle, configReference, topic);
+    }
 
     /**
-     * A payload generator is instantiated for each client publishing to the broker.
-     * The payload generators are instantiated each time a publish command in the scenario is executed.
+     * @return approximate heap size of this vehicle's own state and buffers, excluding the shared route
      */
-    public RoutePayloadGenerator() {
-        this.mapper = new ObjectMapper();
-        this.random = new Random();
+    public long estimatedBytes() {
+        return GENERATOR_BYTES + FleetEngine.VEHICLE_STATE_BYTES + encoder.estimatedBytes() + samples.estimatedBytes()
+                + (binaryCodec == null ? 0 : binaryCodec.estimatedBytes());
     }
 
     @Override
     public @NotNull ByteBuffer nextPayload(@NotNull PluginPayloadGeneratorInput pluginPayloadGeneratorInput) {
+        final long start = System.nanoTime();
         try {
-            final RoutePayloadConfig config = configCache.get(pluginPayloadGeneratorInput.getMessage(), () -> mapper.readValue(new File(pluginPayloadGeneratorInput.getMessage()), RoutePayloadConfig.class));
-            final String locationFile = config.getLocationFile();
+            final String message = pluginPayloadGeneratorInput.getMessage();
             final String topic = pluginPayloadGeneratorInput.getTopic();
-            final long rateNanos = pluginPayloadGeneratorInput.getRate();
-
-            // Is the truck on a break?
-            if (pauseUntil != null) {
-                final long currentTime = System.currentTimeMillis();
-                if (currentTime < pauseUntil) {
-                    log.info("Truck {} is on a break at location {}, {}ms real-time left", topic, pauseLocation, pauseUntil - currentTime);
-                    final CarData carData = new CarData();
-                    final Location location = new Location();
-                    location.setLon(pauseLocation.y);
-                    location.setLat(pauseLocation.x);
-                    carData.setLocation(location);
-                    carData.setSpeed(0D);
-                    carData.setSpeedLimit(0D);
-                    carData.setBreak(true);
-                    carData.setRouteId(routeId);
-                    return ByteBuffer.wrap(mapper.writeValueAsBytes(carData));
-                } else {
-                    log.info("Break for truck {} is over, resuming operation", topic);
-                    pauseUntil = null;
+            if (released) {
+                throw new IllegalStateException("Truck " + topic + " was released");
+            }
+            if (configReference == null || !message.equals(configFile)) {
+                bind(message, topic);
+            }
+            final ResolvedConfig config = configReference.get();
+            // We use the absolute current time to calculate the position in case processing takes longer sometimes
+            final long now = clock.millis();
+            final int batchSize = config.getBatchSize();
+            if (samples.capacity() < batchSize) {
+                samples = new CarDataSamples(batchSize);
+            }
+            samples.clear();
+
+            if (ticked) {
+                // The fleet is sampled once per tick, a batch only carries the latest sample
+                fleet.readSample(vehicle, samples);
+            } else if (batchSize == 1 || lastSampleTime == 0 || now <= lastSampleTime) {
+                // A held back sample is superseded by this one
+                carriedSample = false;
+                fleet.step(vehicle, now, samples, point);
+            } else {
+                if (carriedSample) {
+                    // Still the truck's latest sample, it was stepped to lastSampleTime
+                    fleet.readSample(vehicle, samples);
+                    carriedSample = false;
+                }
+                // Spread the samples evenly over the time since the last published sample, the last one is now
+                final int steps = batchSize - samples.size();
+                final double interval = (double) (now - lastSampleTime) / steps;
+                for (int i = 1; i <= steps; ++i) {
+                    final long time = i == steps ? now : lastSampleTime + (long) (interval * i);
+                    if (fleet.step(vehicle, time, samples, point) && samples.size() > 1
+                            && samples.getRouteUuid(samples.size() - 1) != samples.getRouteUuid(0)) {
+                        // A batch only covers one route, the new route's sample starts the next batch
+                        samples.removeLast();
+                        carriedSample = true;
+                        // The truck was stepped to this time, the next publish must not step it back
+                        lastSampleTime = time;
+                        break;
+                    }
                 }
             }
 
-            // Initial route plot
-            if (instructions == null) {
-                if (nextRoute(config, null, topic)) {
-                    return nextLocation(rateNanos, config, topic);
-                } else {
-                    log.error("Failed to generate a route.");
-                    return FAILURE_PAYLOAD;
+            if (samples.size() > 0) {
+                if (!carriedSample) {
+                    lastSampleTime = samples.getTimestamp(samples.size() - 1);
                 }
-            } else {
-                return nextLocation(rateNanos, config, topic);
+                return batchSize == 1 ? encode(config) : encodeBatch(config);
             }
+            metrics.failurePayload();
+            return FAILURE_PAYLOAD;
         } catch (Exception ex) {
             log.error("Unexpected error occurred while generating payload", ex);
+        } finally {
+            metrics.recordPayload(System.nanoTime() - start);
         }
         log.error("Failed to generate location payload");
+        metrics.failurePayload();
         return FAILURE_PAYLOAD;
     }
 
+    /**
+     * Writes the single sample in the configured {@link RoutePayloadConfig.PayloadFormat}.
+     */
     @NotNull
-    private ByteBuffer nextLocation(long rateNanos,
-                                    final RoutePayloadConfig config,
-                                    final @NotNull String topic) {
-        final String locationFile = config.getLocationFile();
-        assert instructions != null;
-        // We use the absolute current time to calculate the position in case processing takes longer sometimes
-        final double curTime = System.currentTimeMillis();
-        if (currentSegmentTime == null) {
-            currentSegmentTime = curTime;
-        }
-        // plotted time for completing the entire route
-        final double actualTime = ((long) (currentRoute.getTime() * config.getTimeMultiplier()));
-
-        final double temporalOffset = curTime - currentSegmentTime;
-        double percentageTime = temporalOffset / actualTime;
-
-        boolean routeEnd = false;
-        if (percentageTime > 1) {
-            routeEnd = true;
-            percentageTime = 1;
-        }
-
-        // walk the instructions.
-        //  Use elapsed time (record it in the object state?),
-        //  "walk" along all route segments,
-        //  find the target segment and interpolate along it to find the current position
-        //  FIXME interpolate sanely (maybe based on angles between points?) to model sane driving behavior (no 90 degree turn at 130km/h)
-        final RouteInterpolator.InterpResult result = interpolator.getPoint(percentageTime);
-
-
-        // 10% chance the truck driver will 'hammer it' without taking a break at half time
-        if (random.nextDouble() > 0.1D && !breakTaken && percentageTime > 0.4D && percentageTime < 0.5D) {
-            log.info("Truck driver {} is not taking a break", topic);
-            if (result.getLocation() != null) {
-                pauseTruck(config, new GHPoint(result.getLocation().y, result.getLocation().x), 60);
-            } else {
-                log.error("Location not found");
-            }
-            breakTaken = true;
+    private ByteBuffer encode(final @NotNull ResolvedConfig config) {
+        if (config.isBinary()) {
+            return binaryCodec(config).encode(samples.getLat(0), samples.getLon(0), samples.getRouteUuid(0),
+                    samples.getSpeed(0), samples.getSpeedLimit(0), samples.isBreak(0));
         }
+        return encoder.encode(samples.getLat(0), samples.getLon(0), samples.getRouteId(0),
+                samples.getSpeed(0), samples.getSpeedLimit(0), samples.isBreak(0));
+    }
 
-        final Coordinate point = result.getLocation();
-        if (point != null) {
-            try {
-                log.debug("Current point at percentage {}: '{}', speed: '{}km/h', estimated limit: '{}km/h'", percentageTime, point, result.getSpeed(), result.getSpeedLimit());
-                if (routeEnd) {
-                    final GHPoint3D lastPoint = currentRoute.getPoints().get(currentRoute.getPoints().size() - 1);
-                    final GHPoint startPoint = new GHPoint(lastPoint.getLat(), lastPoint.getLon());
-                    final double distance = GeoPayloadGenerator.distance(startPoint.lat, startPoint.lon, point.y, point.x);
-                    log.info("Route ended, returning final point and generating next route. Starting point: {}. Distance from last point to actual position: {}", lastPoint, distance);
-                    nextRoute(config, new GHPoint(point.y, point.x), topic);
-                }
-                return payloadForPoint(result);
-            } catch (JsonProcessingException e) {
-                log.error("Error writing car payload", e);
-            }
+    /**
+     * Writes all samples as one batch in the configured {@link RoutePayloadConfig.PayloadFormat}.
+     */
+    @NotNull
+    private ByteBuffer encodeBatch(final @NotNull ResolvedConfig config) {
+        if (config.isBinary()) {
+            return binaryCodec(config).encodeBatch(samples);
         }
-        log.error("Failed to generate location payload");
-        return FAILURE_PAYLOAD;
+        return encoder.encodeBatch(samples);
     }
 
     @NotNull
-    private ByteBuffer payloadForPoint(RouteInterpolator.InterpResult result) throws JsonProcessingException {
-        final Coordinate point = result.getLocation();
-        final double speed = result.getSpeed();
-
-        final CarData value = new CarData();
-        final Location location = new Location();
-        location.setLat(point.x);
-        location.setLon(point.y);
-        value.setLocation(location);
-        value.setRouteId(routeId);
-        // average km/h speed
-        value.setSpeed(speed);
-        value.setSpeedLimit(result.getSpeedLimit());
-        return ByteBuffer.wrap(mapper.writeValueAsBytes(value));
+    private BinaryCarDataCodec binaryCodec(final @NotNull ResolvedConfig config) {
+        final boolean doubleCoordinates = config.getPayloadFormat() == RoutePayloadConfig.PayloadFormat.BINARY_64;
+        if (binaryCodec == null || binaryCodec.isDoubleCoordinates() != doubleCoordinates) {
+            binaryCodec = new BinaryCarDataCodec(doubleCoordinates);
+        }
+        return binaryCodec;
     }
 
     /**
-     * Plots the next route for this vehicle.
-     *
-     * @param config       message passed to the payload generator. Path to GeoJSON file containing points to travel between.
-     * @param prevLocation point to start from or null if this is the first route.
-     * @param topic
-     * @return true if generation succeeded, {@code false} if there was an error (e.g. file not found, file contains too few locations)
+     * Cleaning action of a generator, must not reference the generator itself.
      */
-    @NotNull
-    private boolean nextRoute(final RoutePayloadConfig config, final @Nullable GHPoint prevLocation, String topic) {
-        final String locationFile = config.getLocationFile();
-        try {
-            final List<GHPoint> locations = locationCache.get(locationFile, () -> {
-                // Map the GeoJSON file's points to GHPoints for graph hopper
-                final List<Feature> features = mapper.readValue(new File(locationFile), FeatureCollection.class).getFeatures();
-                return features.stream()
-                        .map(f -> {
-                            final LngLatAlt point = ((Point) f.getGeometry()).getCoordinates();
-                            return new GHPoint(point.getLatitude(), point.getLongitude());
-                        })
-                        .collect(Collectors.toList());
-            });
-
-            log.info("Choosing a route from {} locations", locations.size());
-
-            if (locations.size() < 2) {
-                log.error("Location file must contain at least 2 locations");
-                return false;
-            }
+    private static final class Release implements Runnable {
+        private final int vehicle;
 
-            final GHPoint startLocation;
-            final int firstPoint;
-            if (prevLocation == null) {
-                firstPoint = random.nextInt(locations.size());
-                startLocation = locations.get(firstPoint);
-            } else {
-                // Doesn't matter in this case
-                firstPoint = -1;
-                startLocation = prevLocation;
-            }
-
-            // Ensure second point is somewhere else
-            int secondPoint = random.nextInt(locations.size());
-            GHPoint endLocation = locations.get(secondPoint);
-            while (secondPoint == firstPoint || distance(startLocation, endLocation, MINIMUM_DISTANCE_KM)) {
-                secondPoint = random.nextInt(locations.size());
-                endLocation = locations.get(secondPoint);
-            }
-
-            final GHRequest ghRequest = new GHRequest(startLocation, endLocation);
-            ghRequest.setProfile("car");
-            final GHResponse route = hopper.route(ghRequest);
-
-            if (route.getErrors().size() > 0) {
-                log.warn("Errors in route planning: {}", route.getErrors());
-                log.debug("Retrying route planning");
-                // Will terminate at some point due to randomness
-                return nextRoute(config, prevLocation, topic);
-            }
-
-            final PathWrapper bestPath = route.getBest();
-            instructions = bestPath.getInstructions();
-
-            currentRoute = bestPath;
-            // store the interpolator
-            interpolator = new RouteInterpolator(currentRoute);
-            routeId = UUID.randomUUID().toString();
-            currentSegmentTime = (double) System.currentTimeMillis();
-            currentInstruction = 0;
-
-            // Pause for a bit after a trip, simulate a 30 minute break
-            if (prevLocation != null) {
-                pauseTruck(config, prevLocation, 30);
-                breakTaken = false;
-            }
-            log.info("Chose a new route for topic {} from start location {} to end location {}. Distance: {}km, Time (real-time): {}min", topic, startLocation, endLocation, (long) bestPath.getDistance() / 1000, TimeUnit.MINUTES.convert(bestPath.getTime(), TimeUnit.MILLISECONDS));
-        } catch (ExecutionException e) {
-            log.error("Failed to load file {} into cache:", config, e);
-            return false;
+        Release(final int vehicle) {
+            this.vehicle = vehicle;
         }
-        return true;
-    }
 
-    private void pauseTruck(RoutePayloadConfig config, @NotNull GHPoint pauseLocation, final int duration) {
-        pauseUntil = System.currentTimeMillis() + (long) ((double) TimeUnit.MILLISECONDS.convert(duration, TimeUnit.MINUTES) * config.getTimeMultiplier());
-        this.pauseLocation = new Coordinate(pauseLocation.lon, pauseLocation.lat);
+        @Override
+        public void run() {
+            fleet.release(vehicle);
+            metrics.vehicleReleased();
+        }
     }
 
-    private boolean distance(GHPoint start, GHPoint end, double minimum) {
-        return GeoPayloadGenerator.distance(start.lat, start.lon, end.lat, end.lon) > minimum;
+    private static long millisFromEnv(final @NotNull String name, final long defaultValue) {
+        final @Nullable String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value '{}' for {}, using {}", value, name, defaultValue);
+            return defaultValue;
+        }
     }
-
 }
@@ -0,0 +1,278 @@
+package com.hivemq.generator.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.route.LocationSet;
+import com.hivemq.model.RoutePayloadConfig;
+import org.geojson.Feature;
+import org.geojson.FeatureCollection;
+import org.geojson.LngLatAlt;
+import org.geojson.Point;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves payload generator configs into {@link ResolvedConfig} snapshots and keeps them up to date.
+ * <p>
+ * Each config file is loaded once, generators keep the returned reference and read the current snapshot on every
+ * publish. A background thread watches the config and location files and atomically swaps in a new snapshot when one
+ * of them changes, so e.g. a new time multiplier or warehouse set takes effect without restarting the agent.
+ * Files that fail to parse (e.g. while an editor is still writing them) keep the previous snapshot. Closing the
+ * registry stops the watcher, the snapshots stay as they are.
+ */
+public class ConfigRegistry implements Closeable {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(ConfigRegistry.class);
+
+    /* Editors often write a file in several steps, reload once the watched directories were quiet this long */
+    static final long DEBOUNCE_MILLIS = 200;
+    /* Reload anyway after this long, so a file written continuously is still picked up */
+    static final long MAX_DEBOUNCE_MILLIS = 5_000;
+
+    @NotNull
+    private final ObjectMapper mapper = new ObjectMapper();
+    @NotNull
+    private final AtomicLong generations = new AtomicLong();
+    /* Snapshots by config file as passed to the generators */
+    @NotNull
+    private final Map<String, AtomicReference<ResolvedConfig>> configs = new ConcurrentHashMap<>();
+    /* Loaded location files by absolute path, shared by all configs referencing them */
+    @NotNull
+    private final Map<Path, LocationSet> locations = new ConcurrentHashMap<>();
+    @NotNull
+    private final List<Consumer<LocationSet>> locationListeners = new CopyOnWriteArrayList<>();
+    @NotNull
+    private final Set<Path> watchedDirectories = new HashSet<>();
+    /* Created with the first config, null if the file system does not support watching */
+    @Nullable
+    private WatchService watchService;
+    private boolean watcherStarted;
+    private boolean closed;
+
+    @NotNull
+    private final AtomicLong configHits = new AtomicLong();
+    @NotNull
+    private final AtomicLong configMisses = new AtomicLong();
+    @NotNull
+    private final AtomicLong locationHits = new AtomicLong();
+    @NotNull
+    private final AtomicLong locationMisses = new AtomicLong();
+
+    /**
+     * Loads the config file and its location file unless that was done before.
+     *
+     * @return reference to the current snapshot of the config, updated whenever one of the files changes
+     * @throws IOException if the config or its location file could not be read
+     */
+    @NotNull
+    public AtomicReference<ResolvedConfig> resolve(final @NotNull String configFile) throws IOException {
+        final AtomicReference<ResolvedConfig> existing = configs.get(configFile);
+        if (existing != null) {
+            configHits.incrementAndGet();
+            return existing;
+        }
+        synchronized (this) {
+            AtomicReference<ResolvedConfig> reference = configs.get(configFile);
+            if (reference == null) {
+                configMisses.incrementAndGet();
+                reference = new AtomicReference<>(load(configFile, Set.of()));
+                configs.put(configFile, reference);
+                log.info("Loaded payload config {}", reference.get());
+            }
+            return reference;
+        }
+    }
+
+    /**
+     * @param listener called on the watcher thread with the new snapshot whenever a location file was reloaded
+     */
+    public void addLocationListener(final @NotNull Consumer<LocationSet> listener) {
+        locationListeners.add(listener);
+    }
+
+    /**
+     * Reads the config and resolves its location file, reloading the location file if it is contained in
+     * {@code changed}.
+     */
+    @NotNull
+    private ResolvedConfig load(final @NotNull String configFile, final @NotNull Set<Path> changed) throws IOException {
+        final RoutePayloadConfig config = mapper.readValue(new File(configFile), RoutePayloadConfig.class);
+        final String locationFile = config.getLocationFile();
+        if (locationFile == null) {
+            throw new IOException("No locationFile set in " + configFile);
+        }
+        final Path locationPath = absolute(locationFile);
+        LocationSet locationSet = locations.get(locationPath);
+        if (locationSet == null || changed.contains(locationPath)) {
+            locationMisses.incrementAndGet();
+            locationSet = new LocationSet(locationFile, generations.incrementAndGet(), readLocations(locationPath));
+            locations.put(locationPath, locationSet);
+            for (Consumer<LocationSet> listener : locationListeners) {
+                listener.accept(locationSet);
+            }
+        } else {
+            locationHits.incrementAndGet();
+        }
+        watch(absolute(configFile));
+        watch(locationPath);
+        return new ResolvedConfig(configFile, config, locationSet);
+    }
+
+    /**
+     * @return share of {@link #resolve(String)} calls answered without loading the config, NaN before the first call
+     */
+    public double getConfigHitRatio() {
+        return ratio(configHits.get(), configMisses.get());
+    }
+
+    /**
+     * @return share of config loads that reused an already loaded location file, NaN before the first load
+     */
+    public double getLocationHitRatio() {
+        return ratio(locationHits.get(), locationMisses.get());
+    }
+
+    private static double ratio(final long hits, final long misses) {
+        return hits + misses == 0 ? Double.NaN : hits / (double) (hits + misses);
+    }
+
+    @NotNull
+    private List<GHPoint> readLocations(final @NotNull Path locationFile) throws IOException {
+        // Map the GeoJSON file's points to GHPoints for graph hopper
+        final List<Feature> features = mapper.readValue(locationFile.toFile(), FeatureCollection.class).getFeatures();
+        return features.stream()
+                .map(f -> {
+                    final LngLatAlt point = ((Point) f.getGeometry()).getCoordinates();
+                    return new GHPoint(point.getLatitude(), point.getLongitude());
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reloads every config whose file or location file changed.
+     */
+    private synchronized void reload(final @NotNull Set<Path> changed) {
+        // A location file shared by several configs is only read once
+        final Set<Path> pending = new HashSet<>(changed);
+        for (Map.Entry<String, AtomicReference<ResolvedConfig>> entry : configs.entrySet()) {
+            final String configFile = entry.getKey();
+            final ResolvedConfig current = entry.getValue().get();
+            final Path locationPath = absolute(current.getLocations().getFile());
+            if (!changed.contains(absolute(configFile)) && !changed.contains(locationPath)) {
+                continue;
+            }
+            try {
+                final ResolvedConfig reloaded = load(configFile, pending);
+                pending.remove(absolute(reloaded.getLocations().getFile()));
+                entry.getValue().set(reloaded);
+                log.info("Reloaded payload config {}", reloaded);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to reload payload config {}, keeping the previous one", configFile, e);
+            }
+        }
+    }
+
+    /**
+     * Watches the file's directory for changes, starting the watcher thread if necessary.
+     */
+    private void watch(final @NotNull Path file) {
+        final Path directory = file.getParent();
+        if (closed || directory == null || watchedDirectories.contains(directory)) {
+            return;
+        }
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+            }
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.add(directory);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Cannot watch {} for changes, payload configs in it will not be reloaded", directory, e);
+            return;
+        }
+        if (!watcherStarted) {
+            watcherStarted = true;
+            final WatchService service = watchService;
+            final Thread thread = new Thread(() -> watchLoop(service), "config-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the watcher thread, config and location files are no longer reloaded.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watchLoop(final @NotNull WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DEBOUNCE_MILLIS);
+                final Set<Path> changed = new HashSet<>();
+                while (key != null) {
+                    final Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Lost track of the individual events, reload everything in the directory
+                            configs.keySet().forEach(configFile -> changed.add(absolute(configFile)));
+                            changed.addAll(locations.keySet());
+                        } else {
+                            changed.add(directory.resolve((Path) event.context()).normalize());
+                        }
+                    }
+                    key.reset();
+                    // Trailing debounce, every further event extends the burst until the deadline
+                    key = System.nanoTime() < deadline ? service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS) : null;
+                }
+                reload(changed);
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Config watcher stopped");
+        } catch (InterruptedException e) {
+            log.info("Config watcher stopped");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @NotNull
+    private static Path absolute(final @NotNull String file) {
+        return Paths.get(file).toAbsolutePath().normalize();
+    }
+
+    @NotNull
+    private static Path absolute(final @NotNull Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,96 @@
+package com.hivemq.generator.config;
+
+import com.hivemq.generator.geo.RouteSimplifier;
+import com.hivemq.generator.payload.BinaryCarDataCodec;
+import com.hivemq.generator.route.LocationSet;
+import com.hivemq.model.RoutePayloadConfig;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable view of a {@link RoutePayloadConfig} with defaults applied and its location file already loaded.
+ * Generators read it on every publish, a reload replaces the whole snapshot.
+ */
+public class ResolvedConfig {
+    @NotNull
+    private final String configFile;
+    @NotNull
+    private final LocationSet locations;
+    private final double timeMultiplier;
+    private final int prewarmRoutes;
+    private final int bootstrapVehicles;
+    @NotNull
+    private final RouteSimplifier routeSimplifier;
+    @NotNull
+    private final RoutePayloadConfig.PayloadFormat payloadFormat;
+    private final int batchSize;
+
+    ResolvedConfig(@NotNull String configFile, @NotNull RoutePayloadConfig config, @NotNull LocationSet locations) {
+        this.configFile = configFile;
+        this.locations = locations;
+        this.timeMultiplier = config.getTimeMultiplier() != null ? config.getTimeMultiplier() : 1D;
+        final Long prewarm = config.getPrewarmRoutes();
+        this.prewarmRoutes = prewarm != null ? (int) Math.max(0L, Math.min(Integer.MAX_VALUE, prewarm)) : 0;
+        final Long bootstrap = config.getBootstrapVehicles();
+        this.bootstrapVehicles = bootstrap != null ? (int) Math.max(0L, Math.min(Integer.MAX_VALUE, bootstrap)) : 0;
+        final Double tolerance = config.getSimplifyToleranceMeters();
+        final Double step = config.getResampleStepMeters();
+        this.routeSimplifier = new RouteSimplifier(tolerance != null && tolerance > 0 ? tolerance : 0D, step != null && step > 0 ? step : 0D);
+        this.payloadFormat = config.getPayloadFormat() != null ? config.getPayloadFormat() : RoutePayloadConfig.PayloadFormat.JSON;
+        final Long batch = config.getBatchSize();
+        this.batchSize = batch != null ? (int) Math.max(1L, Math.min(BinaryCarDataCodec.MAX_BATCH_SAMPLES, batch)) : 1;
+    }
+
+    @NotNull
+    public String getConfigFile() {
+        return configFile;
+    }
+
+    @NotNull
+    public LocationSet getLocations() {
+        return locations;
+    }
+
+    public double getTimeMultiplier() {
+        return timeMultiplier;
+    }
+
+    public int getPrewarmRoutes() {
+        return prewarmRoutes;
+    }
+
+    public int getBootstrapVehicles() {
+        return bootstrapVehicles;
+    }
+
+    @NotNull
+    public RouteSimplifier getRouteSimplifier() {
+        return routeSimplifier;
+    }
+
+    @NotNull
+    public RoutePayloadConfig.PayloadFormat getPayloadFormat() {
+        return payloadFormat;
+    }
+
+    public boolean isBinary() {
+        return payloadFormat == RoutePayloadConfig.PayloadFormat.BINARY || payloadFormat == RoutePayloadConfig.PayloadFormat.BINARY_64;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public String toString() {
+        return "ResolvedConfig{" +
+                "configFile='" + configFile + '\'' +
+                ", locations=" + locations +
+                ", timeMultiplier=" + timeMultiplier +
+                ", prewarmRoutes=" + prewarmRoutes +
+                ", bootstrapVehicles=" + bootstrapVehicles +
+                ", routeSimplifier=" + routeSimplifier +
+                ", payloadFormat=" + payloadFormat +
+                ", batchSize=" + batchSize +
+                '}';
+    }
+}
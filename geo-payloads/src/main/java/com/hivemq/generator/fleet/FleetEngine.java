@@ -0,0 +1,637 @@
+package com.hivemq.generator.fleet;
+
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.GeoPayloadGenerator;
+import com.hivemq.generator.config.ResolvedConfig;
+import com.hivemq.generator.geo.SharedRoute;
+import com.hivemq.generator.metrics.GeneratorMetrics;
+import com.hivemq.generator.payload.CarDataSamples;
+import com.hivemq.generator.route.LocationSet;
+import com.hivemq.generator.route.PlannedRoute;
+import com.hivemq.generator.route.RouteBootstrap;
+import com.hivemq.generator.route.RoutePlanner;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State of all simulated trucks, kept in primitive arrays instead of one object graph per truck.
+ * <p>
+ * Vehicles are int ids into fixed size blocks of arrays (route cursor, break timer, pause location and the latest
+ * sample), so advancing the fleet walks memory sequentially and blocks never move once created. A vehicle is advanced
+ * either by the thread owning it with {@link #step}, or together with all others by {@link #tick}, which splits the
+ * blocks across a fork/join pool. Ticked samples are read with {@link #readSample} from any thread.
+ * <p>
+ * A vehicle lives until it is {@link #release released}, which drops its references and frees its slot for the next
+ * vehicle added, so generators coming and going don't grow the fleet.
+ * <p>
+ * The driving model is the one of the {@link com.hivemq.generator.RoutePayloadGenerator}: a truck drives a planned
+ * route in its router estimated time scaled by the time multiplier, mostly takes a break around half time and rests
+ * after every route while its next route is planned.
+ */
+public class FleetEngine {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(FleetEngine.class);
+
+    private static final int BLOCK_SHIFT = 10;
+    public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private static final long NO_PAUSE = Long.MIN_VALUE;
+
+    /* Delay before requesting a route again after a request failed, doubled on every failure up to the maximum */
+    private static final long ROUTE_RETRY_MIN_MILLIS = 1000;
+    private static final long ROUTE_RETRY_MAX_MILLIS = 60_000;
+
+    /* Heap footprint is logged every FOOTPRINT_LOG_INTERVAL started routes */
+    private static final long FOOTPRINT_LOG_INTERVAL = 1000;
+    /*
+     * Per vehicle: eleven long and double slots, nine references and six booleans in the blocks, the random with its
+     * seed and the route UUID with its id string. Routes are shared and not counted.
+     */
+    public static final long VEHICLE_STATE_BYTES = 11 * 8 + 9 * 4 + 6 + 40 + 32 + 80;
+
+    @NotNull
+    private final RoutePlanner planner;
+    @NotNull
+    private final GeneratorMetrics metrics;
+    @NotNull
+    private final AtomicLong routesStarted = new AtomicLong();
+    /* Location sets the route cache was already pre-warmed for */
+    @NotNull
+    private final Set<LocationSet> prewarmedLocations = ConcurrentHashMap.newKeySet();
+
+    /* Replaced by a longer copy when a block is added, the blocks themselves stay */
+    @NotNull
+    private volatile Block[] blocks = new Block[0];
+    /* Slots ever used, including released ones */
+    private volatile int size;
+    /* Released slots, reused by add before the fleet grows */
+    @NotNull
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    /* Vehicles added and not released */
+    private volatile int active;
+
+    public FleetEngine(final @NotNull RoutePlanner planner, final @NotNull GeneratorMetrics metrics) {
+        this.planner = planner;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param random         all random choices of the vehicle
+     * @param inlinePlanning plan routes on the stepping thread, see {@link RoutePlanner#planInline}
+     * @param ticked         advanced by {@link #tick}, otherwise only by {@link #step}
+     * @return id of the new vehicle, possibly the id of a released one
+     */
+    public synchronized int add(final @NotNull Random random, final boolean inlinePlanning, final boolean ticked) {
+        final int vehicle;
+        if (freeCount > 0) {
+            vehicle = freeSlots[--freeCount];
+        } else {
+            vehicle = size;
+            if ((vehicle >> BLOCK_SHIFT) == blocks.length) {
+                final Block[] grown = Arrays.copyOf(blocks, blocks.length + 1);
+                grown[blocks.length] = new Block();
+                blocks = grown;
+            }
+        }
+        final Block block = blocks[vehicle >> BLOCK_SHIFT];
+        final int i = vehicle & BLOCK_MASK;
+        // A tick of the block may be running, it must see the whole slot or none of it
+        synchronized (block) {
+            block.randoms[i] = random;
+            block.inlinePlanning[i] = inlinePlanning;
+            block.ticked[i] = ticked;
+            block.pauseUntil[i] = NO_PAUSE;
+        }
+        if (vehicle == size) {
+            size = vehicle + 1;
+        }
+        active++;
+        return vehicle;
+    }
+
+    /**
+     * Stops the vehicle and frees its slot: its config, random and routes are dropped, it is skipped by {@link #tick}
+     * and counts no longer as driving or on a break. The id may be handed out again by {@link #add}, so the vehicle's
+     * owner must not use it afterwards. Releasing a vehicle twice is an error.
+     */
+    public synchronized void release(final int vehicle) {
+        final Block block = block(vehicle);
+        final int i = vehicle & BLOCK_MASK;
+        if (block.randoms[i] == null) {
+            throw new IllegalStateException("Vehicle " + vehicle + " is already released");
+        }
+        // Always the fleet's lock before a block's, a tick only takes the block's
+        synchronized (block) {
+            block.version++;
+            VarHandle.storeStoreFence();
+            try {
+                block.clear(i);
+            } finally {
+                block.version++;
+            }
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = vehicle;
+        active--;
+    }
+
+    /**
+     * Sets the config the vehicle drives by, a vehicle without config is skipped by {@link #tick}.
+     *
+     * @param name name of the vehicle in log messages, e.g. its topic
+     */
+    public void bind(final int vehicle, final @NotNull AtomicReference<ResolvedConfig> config, final @NotNull String name) {
+        final Block block = block(vehicle);
+        final int i = vehicle & BLOCK_MASK;
+        synchronized (block) {
+            block.names[i] = name;
+            block.configs[i] = config;
+        }
+    }
+
+    /**
+     * @return number of vehicles which were added and not released
+     */
+    public int size() {
+        return active;
+    }
+
+    /**
+     * Advances a bound vehicle to the given time and adds its sample to the target. Only the thread owning the vehicle
+     * may call this, and not for ticked vehicles. Never waits for the planner, a vehicle has no sample until its first
+     * route is planned.
+     *
+     * @param time  epoch milliseconds, never before the time of the previous step
+     * @param point scratch space of {@link SharedRoute#POINT_SIZE} for the owning thread, so stepping doesn't allocate
+     * @return true if a sample was added, {@code false} if there is no location yet or it could not be determined
+     */
+    public boolean step(final int vehicle, final long time, final @NotNull CarDataSamples target, final @NotNull double[] point) {
+        final Block block = block(vehicle);
+        final int i = vehicle & BLOCK_MASK;
+        final AtomicReference<ResolvedConfig> config = block.configs[i];
+        if (config == null) {
+            throw new IllegalStateException("Vehicle " + vehicle + " is not bound to a config");
+        }
+        if (!block.step(i, config.get(), time, point)) {
+            return false;
+        }
+        block.addSample(i, target);
+        return true;
+    }
+
+    /**
+     * Advances all bound, ticked vehicles to the given time, in parallel on the pool if there is more than one block.
+     * Returns once all vehicles were advanced. Ticks must not overlap.
+     */
+    public void tick(final long time, final @Nullable ForkJoinPool pool) {
+        final Block[] current = blocks;
+        if (pool == null || current.length < 2) {
+            final double[] point = new double[SharedRoute.POINT_SIZE];
+            for (Block block : current) {
+                block.tick(time, point);
+            }
+        } else {
+            pool.invoke(new TickAction(current, 0, current.length, time));
+        }
+    }
+
+    /**
+     * Adds the vehicle's sample of the latest {@link #tick} to the target, or of its latest {@link #step} on the owning
+     * thread. Never blocks a tick, retries if the vehicle's block was advanced while reading.
+     *
+     * @return true if a sample was added, {@code false} if the vehicle had no location in the latest tick
+     */
+    public boolean readSample(final int vehicle, final @NotNull CarDataSamples target) {
+        final Block block = block(vehicle);
+        final int i = vehicle & BLOCK_MASK;
+        while (true) {
+            final long version = block.version;
+            if ((version & 1) == 0) {
+                final boolean hasSample = block.hasSample[i];
+                final long time = block.times[i];
+                final double lat = block.lats[i];
+                final double lon = block.lons[i];
+                final UUID routeUuid = block.sampleRouteUuids[i];
+                final String routeId = block.sampleRouteIds[i];
+                final double speed = block.speeds[i];
+                final double speedLimit = block.speedLimits[i];
+                final boolean isBreak = block.breaks[i];
+                // The values must be read before the version is checked again
+                VarHandle.acquireFence();
+                if (block.version == version) {
+                    if (hasSample) {
+                        target.add(time, lat, lon, routeUuid, routeId, speed, speedLimit, isBreak);
+                    }
+                    return hasSample;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @return approximate heap size of the vehicle state, excluding the shared routes
+     */
+    public long estimatedBytes() {
+        return (long) blocks.length * BLOCK_SIZE * VEHICLE_STATE_BYTES;
+    }
+
+    @NotNull
+    private Block block(final int vehicle) {
+        if (vehicle < 0 || vehicle >= size) {
+            throw new IndexOutOfBoundsException("No vehicle " + vehicle + " in a fleet of " + size);
+        }
+        return blocks[vehicle >> BLOCK_SHIFT];
+    }
+
+    @NotNull
+    private static UUID randomUuid(final @NotNull Random random) {
+        // Version 4 UUID drawn from the vehicle's random, so seeded runs repeat their route ids
+        final long most = (random.nextLong() & ~0xF000L) | 0x4000L;
+        final long least = (random.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+        return new UUID(most, least);
+    }
+
+    private static final class TickAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @NotNull
+        private final Block[] blocks;
+        private final int from;
+        private final int to;
+        private final long time;
+
+        TickAction(@NotNull Block[] blocks, int from, int to, long time) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.time = time;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                blocks[from].tick(time, new double[SharedRoute.POINT_SIZE]);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new TickAction(blocks, from, middle, time), new TickAction(blocks, middle, to, time));
+        }
+    }
+
+    /**
+     * The state of {@link #BLOCK_SIZE} vehicles, one array element per vehicle.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final class Block {
+        /* Setup */
+        final Random[] randoms = new Random[BLOCK_SIZE];
+        final boolean[] inlinePlanning = new boolean[BLOCK_SIZE];
+        final boolean[] ticked = new boolean[BLOCK_SIZE];
+        final AtomicReference<ResolvedConfig>[] configs = new AtomicReference[BLOCK_SIZE];
+        final String[] names = new String[BLOCK_SIZE];
+
+        /* Route being driven, shared with the route cache and other vehicles on the same route */
+        final SharedRoute[] routes = new SharedRoute[BLOCK_SIZE];
+        /* Start of the current route in epoch milliseconds */
+        final long[] routeStarts = new long[BLOCK_SIZE];
+        final UUID[] routeUuids = new UUID[BLOCK_SIZE];
+        /* String form of the route UUID for the JSON payloads */
+        final String[] routeIds = new String[BLOCK_SIZE];
+        final boolean[] breakTaken = new boolean[BLOCK_SIZE];
+        /* Route being planned in the background, swapped in once it completed */
+        final CompletableFuture<PlannedRoute>[] pendingRoutes = new CompletableFuture[BLOCK_SIZE];
+        /* After a failed request, no route is requested before this time. Delay of the last retry, 0 after a success */
+        final long[] routeRetryAt = new long[BLOCK_SIZE];
+        final long[] routeRetryDelays = new long[BLOCK_SIZE];
+
+        /* Break end in epoch milliseconds, NO_PAUSE if no break is in progress */
+        final long[] pauseUntil = new long[BLOCK_SIZE];
+        /* Location of the last break in the sample's lat/lon order, only valid if hasPauseLocation */
+        final double[] pauseLats = new double[BLOCK_SIZE];
+        final double[] pauseLons = new double[BLOCK_SIZE];
+        final boolean[] hasPauseLocation = new boolean[BLOCK_SIZE];
+
+        /* Latest sample */
+        final boolean[] hasSample = new boolean[BLOCK_SIZE];
+        final long[] times = new long[BLOCK_SIZE];
+        final double[] lats = new double[BLOCK_SIZE];
+        final double[] lons = new double[BLOCK_SIZE];
+        /* Route of the sample, the last sample of a route is taken before the next one is swapped in */
+        final UUID[] sampleRouteUuids = new UUID[BLOCK_SIZE];
+        final String[] sampleRouteIds = new String[BLOCK_SIZE];
+        final double[] speeds = new double[BLOCK_SIZE];
+        final double[] speedLimits = new double[BLOCK_SIZE];
+        final boolean[] breaks = new boolean[BLOCK_SIZE];
+
+        /* Odd while a tick writes the block, readers of ticked samples retry until it is even and unchanged */
+        volatile long version;
+
+        /* Holds the block's lock, so vehicles are not added or released halfway through */
+        synchronized void tick(final long time, final @NotNull double[] point) {
+            version++;
+            // Sample writes must not become visible before the odd version
+            VarHandle.storeStoreFence();
+            try {
+                for (int i = 0; i < BLOCK_SIZE; ++i) {
+                    final AtomicReference<ResolvedConfig> config = configs[i];
+                    if (ticked[i] && config != null) {
+                        try {
+                            step(i, config.get(), time, point);
+                        } catch (Exception e) {
+                            log.error("Unexpected error advancing truck {}", names[i], e);
+                            hasSample[i] = false;
+                        }
+                    }
+                }
+            } finally {
+                version++;
+            }
+        }
+
+        /**
+         * Ends the vehicle's route and break and resets its slot to the state of a slot never used.
+         */
+        void clear(final int i) {
+            if (routes[i] != null) {
+                metrics.routeEnded();
+            }
+            if (pauseUntil[i] != NO_PAUSE) {
+                metrics.breakEnded();
+            }
+            // A route still being planned is dropped, the planner completes it for nobody
+            randoms[i] = null;
+            inlinePlanning[i] = false;
+            ticked[i] = false;
+            configs[i] = null;
+            names[i] = null;
+            routes[i] = null;
+            routeUuids[i] = null;
+            routeIds[i] = null;
+            breakTaken[i] = false;
+            pendingRoutes[i] = null;
+            routeRetryAt[i] = 0;
+            routeRetryDelays[i] = 0;
+            pauseUntil[i] = NO_PAUSE;
+            hasPauseLocation[i] = false;
+            hasSample[i] = false;
+            sampleRouteUuids[i] = null;
+            sampleRouteIds[i] = null;
+        }
+
+        void addSample(final int i, final @NotNull CarDataSamples target) {
+            target.add(times[i], lats[i], lons[i], sampleRouteUuids[i], sampleRouteIds[i], speeds[i], speedLimits[i], breaks[i]);
+        }
+
+        /**
+         * Advances the truck to the given time and stores its sample.
+         *
+         * @return true if a sample was stored, {@code false} if there is no location yet or it could not be determined
+         */
+        boolean step(final int i, final @NotNull ResolvedConfig config, final long time, final @NotNull double[] point) {
+            hasSample[i] = false;
+            // Initial route plot, or the next route once the retry delay of a failed one is over
+            if (routes[i] == null && pendingRoutes[i] == null && time >= routeRetryAt[i]) {
+                // The pause location is stored in the sample's lat/lon order, which is lon/lat
+                if (!requestRoute(i, config, -1, hasPauseLocation[i] ? new GHPoint(pauseLons[i], pauseLats[i]) : null)) {
+                    retryLater(i, time, "Failed to request a route");
+                }
+            }
+
+            // Only swap in routes which are already planned, never wait for the planner here
+            if (routes[i] == null && !swapInRoute(i, config, time)) {
+                if (!hasPauseLocation[i]) {
+                    log.debug("Initial route for truck {} is not planned yet", names[i]);
+                    return false;
+                }
+                // The truck waits at its last location until the next route is ready
+                return breakSample(i, time);
+            }
+
+            // Is the truck on a break?
+            if (pauseUntil[i] != NO_PAUSE) {
+                if (time < pauseUntil[i]) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Truck {} is on a break at location {}, {}, {}ms real-time left", names[i], pauseLats[i], pauseLons[i], pauseUntil[i] - time);
+                    }
+                    return breakSample(i, time);
+                } else {
+                    log.debug("Break for truck {} is over, resuming operation", names[i]);
+                    pauseUntil[i] = NO_PAUSE;
+                    metrics.breakEnded();
+                }
+            }
+
+            return nextLocation(i, config, time, point);
+        }
+
+        /**
+         * Requests the next route only after a delay, doubled for every failure in a row.
+         */
+        private void retryLater(final int i, final long time, final @NotNull String reason) {
+            final long delay = routeRetryDelays[i] == 0 ? ROUTE_RETRY_MIN_MILLIS : Math.min(routeRetryDelays[i] * 2, ROUTE_RETRY_MAX_MILLIS);
+            routeRetryDelays[i] = delay;
+            routeRetryAt[i] = time + delay;
+            log.warn("{} for truck {}, retrying in {}ms", reason, names[i], delay);
+        }
+
+        private boolean breakSample(final int i, final long time) {
+            return sample(i, time, pauseLats[i], pauseLons[i], 0D, 0D, true);
+        }
+
+        private boolean sample(final int i, final long time, final double lat, final double lon,
+                               final double speed, final double speedLimit, final boolean isBreak) {
+            times[i] = time;
+            lats[i] = lat;
+            lons[i] = lon;
+            sampleRouteUuids[i] = routeUuids[i];
+            sampleRouteIds[i] = routeIds[i];
+            speeds[i] = speed;
+            speedLimits[i] = speedLimit;
+            breaks[i] = isBreak;
+            hasSample[i] = true;
+            return true;
+        }
+
+        private boolean nextLocation(final int i, final @NotNull ResolvedConfig config, final long time, final @NotNull double[] point) {
+            final SharedRoute route = routes[i];
+            // plotted time for completing the entire route
+            final double actualTime = ((long) (route.getTime() * config.getTimeMultiplier()));
+            double percentageTime = (time - routeStarts[i]) / actualTime;
+
+            boolean routeEnd = false;
+            if (percentageTime > 1) {
+                routeEnd = true;
+                percentageTime = 1;
+            }
+
+            final Random random = randoms[i];
+            final boolean located = route.getPoint(percentageTime, random, point);
+
+            // 10% chance the truck driver will 'hammer it' without taking a break at half time
+            if (random.nextDouble() > 0.1D && !breakTaken[i] && percentageTime > 0.4D && percentageTime < 0.5D) {
+                log.info("Truck driver {} is not taking a break", names[i]);
+                if (located) {
+                    pauseTruck(i, config, point[SharedRoute.X], point[SharedRoute.Y], 60, time);
+                } else {
+                    log.error("Location not found");
+                }
+                breakTaken[i] = true;
+            }
+
+            if (!located) {
+                log.error("Failed to generate location payload");
+                return false;
+            }
+            // The published lat is the point's x
+            final double lat = point[SharedRoute.X];
+            final double lon = point[SharedRoute.Y];
+            if (log.isDebugEnabled()) {
+                log.debug("Current point at percentage {}: '{}, {}', speed: '{}km/h', estimated limit: '{}km/h'", percentageTime, lat, lon, point[SharedRoute.SPEED], point[SharedRoute.SPEED_LIMIT]);
+            }
+            sample(i, time, lat, lon, point[SharedRoute.SPEED], point[SharedRoute.SPEED_LIMIT], false);
+            if (routeEnd) {
+                final int last = route.size() - 1;
+                final GHPoint lastPoint = new GHPoint(route.getLat(last), route.getLon(last));
+                final double distance = GeoPayloadGenerator.distance(lastPoint.lat, lastPoint.lon, lon, lat);
+                log.info("Route ended, returning final point and switching to the next route. Starting point: {}. Distance from last point to actual position: {}", lastPoint, distance);
+                routes[i] = null;
+                metrics.routeEnded();
+                // Pause for a bit after a trip, simulate a 30 minute break
+                pauseTruck(i, config, lat, lon, 30, time);
+                swapInRoute(i, config, time);
+            }
+            return true;
+        }
+
+        /**
+         * Submits the next route for this vehicle to the {@link RoutePlanner}.
+         *
+         * @param startIndex    index of the location to start from, or -1 to start at {@code startLocation}
+         *                      (or a random location if that is null as well)
+         * @param startLocation point to start from or null if this is the first route.
+         * @return true if the request was submitted, {@code false} if the location file contains too few locations
+         */
+        private boolean requestRoute(final int i, final @NotNull ResolvedConfig config, int startIndex, @Nullable GHPoint startLocation) {
+            final LocationSet locations = config.getLocations();
+
+            log.debug("Choosing a route from {} locations", locations.size());
+
+            if (locations.size() < 2) {
+                log.error("Location file must contain at least 2 locations");
+                return false;
+            }
+
+            final Random random = randoms[i];
+            if (config.getPrewarmRoutes() > 0 && prewarmedLocations.add(locations)) {
+                planner.prewarm(locations, config.getPrewarmRoutes(), config.getRouteSimplifier(), random.nextLong());
+            }
+
+            // Bootstrap routes complete in the background, inline planning vehicles must not depend on when
+            if (startIndex < 0 && startLocation == null && config.getBootstrapVehicles() > 0 && !inlinePlanning[i]) {
+                // First route, taken from the routes planned for all expected vehicles at once
+                RouteBootstrap bootstrap = planner.getBootstrap(locations);
+                if (bootstrap == null) {
+                    bootstrap = planner.bootstrap(locations, config.getBootstrapVehicles(), config.getRouteSimplifier(), random.nextLong());
+                }
+                final CompletableFuture<PlannedRoute> claimed = bootstrap.claim();
+                if (claimed != null) {
+                    pendingRoutes[i] = claimed;
+                    return true;
+                }
+            }
+
+            if (startIndex < 0 && startLocation == null) {
+                startIndex = random.nextInt(locations.size());
+            }
+            if (startIndex >= 0) {
+                startLocation = locations.get(startIndex);
+            }
+            pendingRoutes[i] = inlinePlanning[i]
+                    ? planner.planInline(locations, startIndex, startLocation, config.getRouteSimplifier(), random.nextLong())
+                    : planner.plan(locations, startIndex, startLocation, config.getRouteSimplifier(), random.nextLong());
+            return true;
+        }
+
+        /**
+         * Replaces the current route with the pending one if the planner has finished it and requests the route after it.
+         *
+         * @return true if a new route was swapped in, {@code false} if none is ready yet
+         */
+        private boolean swapInRoute(final int i, final @NotNull ResolvedConfig config, final long time) {
+            final CompletableFuture<PlannedRoute> pending = pendingRoutes[i];
+            if (pending == null || !pending.isDone()) {
+                return false;
+            }
+            pendingRoutes[i] = null;
+            final PlannedRoute plannedRoute;
+            try {
+                plannedRoute = pending.join();
+            } catch (CompletionException | CancellationException e) {
+                log.debug("Route planning for truck {} failed", names[i], e.getCause());
+                retryLater(i, time, "Route planning failed");
+                return false;
+            }
+            routeRetryDelays[i] = 0;
+
+            final SharedRoute bestPath = plannedRoute.getRoute();
+            routes[i] = bestPath;
+            metrics.routeStarted();
+            if (routesStarted.incrementAndGet() % FOOTPRINT_LOG_INTERVAL == 0) {
+                log.info("Heap footprint: {} vehicles with ~{} bytes of state each, {}MB of routes shared through the cache, current route ~{}KB",
+                        active, VEHICLE_STATE_BYTES, planner.getRouteCache().estimatedBytes() / (1024 * 1024), bestPath.estimatedBytes() / 1024);
+            }
+            final UUID routeUuid = randomUuid(randoms[i]);
+            routeUuids[i] = routeUuid;
+            routeIds[i] = routeUuid.toString();
+            routeStarts[i] = time;
+            breakTaken[i] = false;
+            log.info("Chose a new route for topic {} from start location {} to end location {}. Distance: {}km, Time (real-time): {}min", names[i], plannedRoute.getStartLocation(), plannedRoute.getEndLocation(), (long) bestPath.getDistance() / 1000, TimeUnit.MINUTES.convert(bestPath.getTime(), TimeUnit.MILLISECONDS));
+
+            // Plan the following route while this one is being driven
+            if (plannedRoute.getLocations() == config.getLocations()) {
+                requestRoute(i, config, plannedRoute.getEndIndex(), null);
+            } else {
+                // The location file was reloaded while planning, the end index may point elsewhere now
+                requestRoute(i, config, -1, plannedRoute.getEndLocation());
+            }
+            return true;
+        }
+
+        /**
+         * @param lat sample lat of the break location
+         * @param lon sample lon of the break location
+         */
+        private void pauseTruck(final int i, final @NotNull ResolvedConfig config, final double lat, final double lon,
+                                final int duration, final long time) {
+            if (pauseUntil[i] == NO_PAUSE) {
+                metrics.breakStarted();
+            }
+            pauseUntil[i] = time + (long) ((double) TimeUnit.MILLISECONDS.convert(duration, TimeUnit.MINUTES) * config.getTimeMultiplier());
+            pauseLats[i] = lat;
+            pauseLons[i] = lon;
+            hasPauseLocation[i] = true;
+        }
+    }
+}
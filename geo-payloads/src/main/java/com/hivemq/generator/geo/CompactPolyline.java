@@ -0,0 +1,294 @@
+package com.hivemq.generator.geo;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Route geometry in a fraction of the memory of plain double arrays, see {@link SharedRoute#compact()}.
+ * <p>
+ * Every point is stored as the difference to the previous one in zigzag varints: lat and lon in millionths of a degree
+ * (as in the route corpus, about 0.1m), the distance from the route start in centimeters and the instruction of the
+ * segment starting at the point. Every {@link #BLOCK_SIZE}th point is a checkpoint with absolute values, so locating
+ * a distance binary searches the checkpoints and decodes only the one block around it.
+ * <p>
+ * Immutable, safe to share between threads.
+ */
+final class CompactPolyline {
+
+    static final int BLOCK_SIZE = 16;
+    static final double COORDINATE_SCALE = 1e6;
+    static final double DISTANCE_SCALE = 100D;
+
+    /* Object header and array length of a primitive array on a 64 bit JVM with compressed oops */
+    private static final long ARRAY_HEADER_BYTES = 16;
+    /* This object's header and fields */
+    private static final long OBJECT_BYTES = 48;
+
+    /* Fields of a point, in the order they are stored */
+    private static final int LAT = 0;
+    private static final int LON = 1;
+    private static final int DISTANCE = 2;
+    private static final int INSTRUCTION = 3;
+
+    private final int size;
+    /* Distance from the start to the last point in cm */
+    private final long distance;
+    /* Checkpoint per block: absolute values of its first point */
+    @NotNull
+    private final int[] blockLat;
+    @NotNull
+    private final int[] blockLon;
+    @NotNull
+    private final long[] blockDistance;
+    @NotNull
+    private final int[] blockInstruction;
+    /* Offset of the block's remaining points in data */
+    @NotNull
+    private final int[] blockOffset;
+    @NotNull
+    private final byte[] data;
+
+    private CompactPolyline(final int size,
+                            final long distance,
+                            final @NotNull int[] blockLat,
+                            final @NotNull int[] blockLon,
+                            final @NotNull long[] blockDistance,
+                            final @NotNull int[] blockInstruction,
+                            final @NotNull int[] blockOffset,
+                            final @NotNull byte[] data) {
+        this.size = size;
+        this.distance = distance;
+        this.blockLat = blockLat;
+        this.blockLon = blockLon;
+        this.blockDistance = blockDistance;
+        this.blockInstruction = blockInstruction;
+        this.blockOffset = blockOffset;
+        this.data = data;
+    }
+
+    /**
+     * @param cumulativeDistance distance from the start to each point in m, non-decreasing
+     * @param segmentInstruction index of the instruction covering each segment, one less than the points
+     */
+    @NotNull
+    static CompactPolyline encode(final @NotNull double[] lats,
+                                  final @NotNull double[] lons,
+                                  final @NotNull double[] cumulativeDistance,
+                                  final @NotNull int[] segmentInstruction) {
+        final int size = lats.length;
+        final int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int[] blockLat = new int[blocks];
+        final int[] blockLon = new int[blocks];
+        final long[] blockDistance = new long[blocks];
+        final int[] blockInstruction = new int[blocks];
+        final int[] blockOffset = new int[blocks];
+        // Enough for short deltas, grown for long ones
+        byte[] data = new byte[Math.max(16, size * 8)];
+        int position = 0;
+        int lat = 0;
+        int lon = 0;
+        long distance = 0;
+        int instruction = 0;
+        for (int i = 0; i < size; ++i) {
+            final int nextLat = (int) Math.round(lats[i] * COORDINATE_SCALE);
+            final int nextLon = (int) Math.round(lons[i] * COORDINATE_SCALE);
+            final long nextDistance = Math.round(cumulativeDistance[i] * DISTANCE_SCALE);
+            // The last point starts no segment, it keeps the instruction of the one before
+            final int nextInstruction = i < size - 1 ? segmentInstruction[i] : i > 0 ? segmentInstruction[i - 1] : -1;
+            if (i % BLOCK_SIZE == 0) {
+                final int block = i / BLOCK_SIZE;
+                blockLat[block] = nextLat;
+                blockLon[block] = nextLon;
+                blockDistance[block] = nextDistance;
+                blockInstruction[block] = nextInstruction;
+                blockOffset[block] = position;
+            } else {
+                if (position + 4 * 5 > data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                position = writeVarInt(data, position, zigzag(nextLat - lat));
+                position = writeVarInt(data, position, zigzag(nextLon - lon));
+                // A segment is far shorter than 20000km
+                position = writeVarInt(data, position, zigzag(Math.toIntExact(nextDistance - distance)));
+                position = writeVarInt(data, position, zigzag(nextInstruction - instruction));
+            }
+            lat = nextLat;
+            lon = nextLon;
+            distance = nextDistance;
+            instruction = nextInstruction;
+        }
+        return new CompactPolyline(size, distance, blockLat, blockLon, blockDistance, blockInstruction, blockOffset,
+                Arrays.copyOf(data, position));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return distance covered by the geometry in m, as rounded to centimeters
+     */
+    double getDistance() {
+        return distance / DISTANCE_SCALE;
+    }
+
+    double getLat(final int index) {
+        return decode(index, LAT) / COORDINATE_SCALE;
+    }
+
+    double getLon(final int index) {
+        return decode(index, LON) / COORDINATE_SCALE;
+    }
+
+    int getSegmentInstruction(final int segment) {
+        if (segment < 0 || segment >= size - 1) {
+            throw new ArrayIndexOutOfBoundsException(segment);
+        }
+        return (int) decode(segment, INSTRUCTION);
+    }
+
+    /**
+     * @return the field of the point, decoded from its block's checkpoint
+     */
+    private long decode(final int index, final int field) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        final int block = index / BLOCK_SIZE;
+        long lat = blockLat[block];
+        long lon = blockLon[block];
+        long pointDistance = blockDistance[block];
+        long instruction = blockInstruction[block];
+        int position = blockOffset[block];
+        for (int i = block * BLOCK_SIZE; i < index; ++i) {
+            long read = readVarInt(data, position);
+            lat += unzigzag((int) (read >>> 32));
+            read = readVarInt(data, (int) read);
+            lon += unzigzag((int) (read >>> 32));
+            read = readVarInt(data, (int) read);
+            pointDistance += unzigzag((int) (read >>> 32));
+            read = readVarInt(data, (int) read);
+            instruction += unzigzag((int) (read >>> 32));
+            position = (int) read;
+        }
+        return field == LAT ? lat : field == LON ? lon : field == DISTANCE ? pointDistance : instruction;
+    }
+
+    /**
+     * Finds the first segment whose end lies at or beyond the distance from the route start, the same segment as the
+     * binary search over a cumulative distance array.
+     *
+     * @param segment receives the segment's start and end, see {@link SharedRoute}'s PREV_ and NEXT_ indices, and its
+     *                instruction
+     * @return index of the segment's first point or -1 if the distance is not covered by the route
+     */
+    int locate(final double distanceToTraverse, final @NotNull double[] segment) {
+        if (size < 2 || !(distance / DISTANCE_SCALE >= distanceToTraverse)) {
+            return -1;
+        }
+        // Compared in centimeters, without dividing for every point. The product may round beyond the last point.
+        final double target = distanceToTraverse * DISTANCE_SCALE;
+        int block = 0;
+        if (target > 0) {
+            // Last checkpoint before the distance, the first point at or beyond it follows within the block
+            int low = 0;
+            // The block with the last segment, the last point may be a checkpoint of its own
+            int high = (size - 2) / BLOCK_SIZE;
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (blockDistance[mid] < target) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            block = low;
+        }
+        int lat = blockLat[block];
+        int lon = blockLon[block];
+        long pointDistance = blockDistance[block];
+        int instruction = blockInstruction[block];
+        int position = blockOffset[block];
+        for (int i = block * BLOCK_SIZE; i < size - 1; ++i) {
+            int nextLat = lat;
+            int nextLon = lon;
+            long nextDistance = pointDistance;
+            int nextInstruction = instruction;
+            if ((i + 1) % BLOCK_SIZE == 0) {
+                final int next = (i + 1) / BLOCK_SIZE;
+                nextLat = blockLat[next];
+                nextLon = blockLon[next];
+                nextDistance = blockDistance[next];
+                nextInstruction = blockInstruction[next];
+            } else {
+                long read = readVarInt(data, position);
+                nextLat += unzigzag((int) (read >>> 32));
+                read = readVarInt(data, (int) read);
+                nextLon += unzigzag((int) (read >>> 32));
+                read = readVarInt(data, (int) read);
+                nextDistance += unzigzag((int) (read >>> 32));
+                read = readVarInt(data, (int) read);
+                nextInstruction += unzigzag((int) (read >>> 32));
+                position = (int) read;
+            }
+            if (nextDistance >= target || i == size - 2) {
+                segment[SharedRoute.PREV_LAT] = lat / COORDINATE_SCALE;
+                segment[SharedRoute.PREV_LON] = lon / COORDINATE_SCALE;
+                segment[SharedRoute.NEXT_LAT] = nextLat / COORDINATE_SCALE;
+                segment[SharedRoute.NEXT_LON] = nextLon / COORDINATE_SCALE;
+                segment[SharedRoute.PREV_DISTANCE] = pointDistance / DISTANCE_SCALE;
+                segment[SharedRoute.NEXT_DISTANCE] = nextDistance / DISTANCE_SCALE;
+                segment[SharedRoute.INSTRUCTION] = instruction;
+                return i;
+            }
+            lat = nextLat;
+            lon = nextLon;
+            pointDistance = nextDistance;
+            instruction = nextInstruction;
+        }
+        return -1;
+    }
+
+    /**
+     * @return approximate heap size including the arrays
+     */
+    long estimatedBytes() {
+        return OBJECT_BYTES
+                + 4 * (ARRAY_HEADER_BYTES + (long) blockLat.length * Integer.BYTES)
+                + ARRAY_HEADER_BYTES + (long) blockDistance.length * Long.BYTES
+                + ARRAY_HEADER_BYTES + data.length;
+    }
+
+    private static int zigzag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return the varint at the position in the upper and the position after it in the lower 32 bits
+     */
+    private static long readVarInt(final @NotNull byte[] data, int position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (long) value << 32 | position;
+    }
+
+    private static int writeVarInt(final @NotNull byte[] data, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            data[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[position++] = (byte) value;
+        return position;
+    }
+}
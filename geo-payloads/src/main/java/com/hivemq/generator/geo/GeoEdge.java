@@ -1,7 +1,6 @@
 package com.hivemq.generator.geo;
 
 import com.hivemq.generator.GeoPayloadGenerator;
-import org.apache.commons.lang3.Range;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,13 +66,14 @@ public class GeoEdge {
         final double x = xStart + (segmentLength * (actualIteration));
 
         // Ensure x is in the closed range (x0, x1)
-        final Range<Double> range = Range.between(x0, x1);
-        if (!range.contains(x)) {
+        if (x < Math.min(x0, x1) || x > Math.max(x0, x1)) {
             log.error("interpolated value is out of range: {}, parameters: segment length: {}, step: {}", x, segmentLength, actualIteration);
         }
         final double y = y0 + (x - x0) * ((y1 - y0) / (x1 - x0));
         // TODO: make sure we don't go out of bounds on short segments using min/max
-        log.info("Returning new point. coordinates: ({}, {}), reverse: {}, actual: {}, iteration: {}, segment count: {}", x, y, reverse, actualIteration, iteration, segmentCount);
+        if (log.isDebugEnabled()) {
+            log.debug("Returning new point. coordinates: ({}, {}), reverse: {}, actual: {}, iteration: {}, segment count: {}", x, y, reverse, actualIteration, iteration, segmentCount);
+        }
         return new GeoPayloadGenerator.LinePoint(x, y);
     }
 
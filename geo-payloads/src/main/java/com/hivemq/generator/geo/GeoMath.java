@@ -0,0 +1,94 @@
+package com.hivemq.generator.geo;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Great-circle distances on a sphere with the mean earth radius, in km.
+ * <p>
+ * {@link #haversine} is exact on the sphere, which is within 0.6% of the distance on the WGS84 ellipsoid. The array
+ * variants measure from one point to many and take the cosines of the target latitudes precomputed, so loops over
+ * the same locations save a cosine per distance. {@link #equirectangular} needs a single cosine and no inverse
+ * trigonometry, it is meant for short-distance checks such as whether two nodes meet.
+ */
+public final class GeoMath {
+    public static final double EARTH_RADIUS_KM = 6371D;
+
+    /**
+     * Largest relative error of {@link #equirectangular} compared to {@link #haversine} for points at most
+     * {@link #EQUIRECTANGULAR_MAX_KM} apart and below 80 degrees latitude. The error grows with the square of the
+     * distance, it is about 4e-8 at 1km and negligible at a few meters.
+     */
+    public static final double EQUIRECTANGULAR_MAX_ERROR = 1e-5;
+    public static final double EQUIRECTANGULAR_MAX_KM = 10D;
+
+    private static final double DEG_TO_RAD = Math.PI / 180D;
+
+    private GeoMath() {
+    }
+
+    /**
+     * @return distance between the points in km
+     */
+    public static double haversine(final double lat1, final double lon1, final double lat2, final double lon2) {
+        final double sinLat = Math.sin((lat2 - lat1) * DEG_TO_RAD / 2);
+        final double sinLon = Math.sin((lon2 - lon1) * DEG_TO_RAD / 2);
+        final double a = sinLat * sinLat + Math.cos(lat1 * DEG_TO_RAD) * Math.cos(lat2 * DEG_TO_RAD) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1D, Math.sqrt(a)));
+    }
+
+    /**
+     * @return the cosine of each latitude, for {@link #haversine(double, double, double[], double[], double[], double[])}
+     */
+    @NotNull
+    public static double[] cosLatitudes(final @NotNull double[] lats) {
+        final double[] cosLats = new double[lats.length];
+        for (int i = 0; i < lats.length; ++i) {
+            cosLats[i] = Math.cos(lats[i] * DEG_TO_RAD);
+        }
+        return cosLats;
+    }
+
+    /**
+     * Distances from one point to many, the same as calling {@link #haversine(double, double, double, double)} for each.
+     *
+     * @param cosLats   cosines of the target latitudes, see {@link #cosLatitudes}
+     * @param distances receives the distance to each target in km, at least as long as the targets
+     */
+    public static void haversine(final double lat,
+                                 final double lon,
+                                 final @NotNull double[] lats,
+                                 final @NotNull double[] lons,
+                                 final @NotNull double[] cosLats,
+                                 final @NotNull double[] distances) {
+        final double cosLat = Math.cos(lat * DEG_TO_RAD);
+        for (int i = 0; i < lats.length; ++i) {
+            final double sinLat = Math.sin((lats[i] - lat) * DEG_TO_RAD / 2);
+            final double sinLon = Math.sin((lons[i] - lon) * DEG_TO_RAD / 2);
+            final double a = sinLat * sinLat + cosLat * cosLats[i] * sinLon * sinLon;
+            distances[i] = 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1D, Math.sqrt(a)));
+        }
+    }
+
+    /**
+     * Flat-earth approximation around the mean latitude, see {@link #EQUIRECTANGULAR_MAX_ERROR} for its accuracy.
+     * Longitude differences must not wrap around the antimeridian.
+     *
+     * @return approximate distance between the points in km
+     */
+    public static double equirectangular(final double lat1, final double lon1, final double lat2, final double lon2) {
+        return Math.sqrt(equirectangularSquared(lat1, lon1, lat2, lon2));
+    }
+
+    /**
+     * @return whether the points are at most the given distance apart, by {@link #equirectangular}
+     */
+    public static boolean isWithin(final double lat1, final double lon1, final double lat2, final double lon2, final double km) {
+        return equirectangularSquared(lat1, lon1, lat2, lon2) <= km * km;
+    }
+
+    private static double equirectangularSquared(final double lat1, final double lon1, final double lat2, final double lon2) {
+        final double x = (lon2 - lon1) * DEG_TO_RAD * Math.cos((lat1 + lat2) * DEG_TO_RAD / 2);
+        final double y = (lat2 - lat1) * DEG_TO_RAD;
+        return (x * x + y * y) * EARTH_RADIUS_KM * EARTH_RADIUS_KM;
+    }
+}
@@ -0,0 +1,177 @@
+package com.hivemq.generator.geo;
+
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicData;
+import net.sf.geographiclib.GeodesicLine;
+import net.sf.geographiclib.GeodesicMask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * A looped tour over graph edges with everything the stepping needs resolved up front: edge end points, geodesic
+ * lengths, and which way the next edge is driven.
+ * <p>
+ * Edges don't know which of their ends the tour enters, so the direction of the next edge depends on where the step
+ * sequence leaves the current one, which in turn depends on the current direction. Both outcomes are precomputed per
+ * edge, a {@link Cursor} then steps along the tour with array lookups only. Positions are interpolated linearly between
+ * the edge end points, which is within a few centimeters of the geodesic for street edges up to a kilometer.
+ */
+public final class GeoTour {
+
+    private final double stepDistance;
+    private final boolean initialReverse;
+    @NotNull
+    private final double[] startLats;
+    @NotNull
+    private final double[] startLons;
+    @NotNull
+    private final double[] endLats;
+    @NotNull
+    private final double[] endLons;
+    /* Geodesic length of each edge in m */
+    @NotNull
+    private final double[] lengths;
+    /* Direction of the next edge when leaving each edge forwards or in reverse */
+    @NotNull
+    private final boolean[] nextReverseAfterForward;
+    @NotNull
+    private final boolean[] nextReverseAfterReverse;
+
+    private GeoTour(final @NotNull List<GeoEdge> edges, final boolean initialReverse, final double stepDistance) {
+        final int size = edges.size();
+        this.stepDistance = stepDistance;
+        this.initialReverse = initialReverse;
+        startLats = new double[size];
+        startLons = new double[size];
+        endLats = new double[size];
+        endLons = new double[size];
+        lengths = new double[size];
+        nextReverseAfterForward = new boolean[size];
+        nextReverseAfterReverse = new boolean[size];
+        final GeodesicLine[] lines = new GeodesicLine[size];
+        for (int i = 0; i < size; ++i) {
+            final GeoEdge edge = edges.get(i);
+            startLats[i] = edge.getStart().getLat();
+            startLons[i] = edge.getStart().getLon();
+            endLats[i] = edge.getEnd().getLat();
+            endLons[i] = edge.getEnd().getLon();
+            lines[i] = Geodesic.WGS84.InverseLine(startLats[i], startLons[i], endLats[i], endLons[i]);
+            lengths[i] = lines[i].Distance();
+        }
+        for (int i = 0; i < size; ++i) {
+            final int next = i + 1 == size ? 0 : i + 1;
+            nextReverseAfterForward[i] = nextReverse(lines[i], lastPosition(i, false), next);
+            nextReverseAfterReverse[i] = nextReverse(lines[i], lastPosition(i, true), next);
+        }
+    }
+
+    /**
+     * @param edges          edges in tour order, the last one leads back to the first
+     * @param initialReverse whether the first edge is driven from its end to its start
+     * @param stepDistance   distance per step in m
+     */
+    @NotNull
+    public static GeoTour of(final @NotNull List<GeoEdge> edges, final boolean initialReverse, final double stepDistance) {
+        if (edges.isEmpty()) {
+            throw new IllegalArgumentException("A tour needs at least one edge");
+        }
+        return new GeoTour(edges, initialReverse, stepDistance);
+    }
+
+    /**
+     * @return position of the last step on the edge, in m from the edge start
+     */
+    private double lastPosition(final int edge, final boolean reverse) {
+        // The last step is the first one whose successor would leave the edge
+        final double length = lengths[edge];
+        double lastStep = Math.floor(length / stepDistance);
+        // Same comparison as the cursor, the division may round across a step boundary
+        while (stepDistance * (lastStep + 1) <= length) {
+            lastStep++;
+        }
+        while (lastStep > 0 && stepDistance * lastStep > length) {
+            lastStep--;
+        }
+        return reverse ? length - stepDistance * lastStep : stepDistance * lastStep;
+    }
+
+    /**
+     * The next edge is driven away from whichever of its ends is closer to the last position on this one.
+     */
+    private boolean nextReverse(final @NotNull GeodesicLine line, final double lastPosition, final int next) {
+        final GeodesicData last = line.Position(lastPosition, GeodesicMask.LATITUDE | GeodesicMask.LONGITUDE);
+        return !(GeoMath.haversine(last.lat2, last.lon2, startLats[next], startLons[next])
+                < GeoMath.haversine(last.lat2, last.lon2, endLats[next], endLons[next]));
+    }
+
+    public int size() {
+        return lengths.length;
+    }
+
+    /**
+     * @return geodesic length of the edge in m
+     */
+    public double getLength(final int edge) {
+        return lengths[edge];
+    }
+
+    /**
+     * @return a cursor at the start of the tour
+     */
+    @NotNull
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Position on the tour, advanced by one step at a time without allocating. Not thread safe.
+     */
+    public final class Cursor {
+        private int edge;
+        private int step;
+        private boolean reverse = initialReverse;
+        private double lat;
+        private double lon;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next step and updates {@link #getLat()} and {@link #getLon()}.
+         *
+         * @return true if this was the last step of the tour, the next one starts over at the first edge
+         */
+        public boolean advance() {
+            final double length = lengths[edge];
+            final double position = reverse ? length - stepDistance * step : stepDistance * step;
+            final double fraction = length > 0 ? position / length : 0;
+            lat = startLats[edge] + (endLats[edge] - startLats[edge]) * fraction;
+            lon = startLons[edge] + (endLons[edge] - startLons[edge]) * fraction;
+            if (stepDistance * (step + 1) <= length) {
+                step++;
+                return false;
+            }
+            step = 0;
+            reverse = reverse ? nextReverseAfterReverse[edge] : nextReverseAfterForward[edge];
+            edge = edge + 1 == lengths.length ? 0 : edge + 1;
+            return edge == 0;
+        }
+
+        public double getLat() {
+            return lat;
+        }
+
+        public double getLon() {
+            return lon;
+        }
+
+        public int getEdge() {
+            return edge;
+        }
+
+        public boolean isReverse() {
+            return reverse;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.hivemq.generator.geo;
+
+import com.hivemq.generator.GeoPayloadGenerator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, undirected street network in compressed sparse row form, for the in-city {@link GeoPayloadGenerator}.
+ * <p>
+ * Vertices are int ids with their coordinates in primitive arrays, the neighbours of vertex {@code v} are
+ * {@code targets[offsets[v]]} to {@code targets[offsets[v + 1] - 1]} with the edge lengths in km alongside. Points with
+ * equal coordinates are one vertex, like in the jgrapht graph of the loader. The graph is built once and can be shared
+ * by all generators, each searching it with its own {@link Search}.
+ */
+public final class RoadGraph {
+
+    @NotNull
+    private final double[] lats;
+    @NotNull
+    private final double[] lons;
+    @NotNull
+    private final int[] offsets;
+    @NotNull
+    private final int[] targets;
+    /* Edge lengths in km */
+    @NotNull
+    private final double[] weights;
+    /* Vertex of the first point of every non-empty line */
+    @NotNull
+    private final int[] lineHeads;
+
+    private RoadGraph(final @NotNull double[] lats, final @NotNull double[] lons, final @NotNull int[] offsets,
+                      final @NotNull int[] targets, final @NotNull double[] weights, final @NotNull int[] lineHeads) {
+        this.lats = lats;
+        this.lons = lons;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.lineHeads = lineHeads;
+    }
+
+    /**
+     * @param lines     street lines, consecutive points are connected
+     * @param junctions pairs of points of different lines to connect, see the loader
+     */
+    @NotNull
+    public static RoadGraph of(final @NotNull List<List<GeoPayloadGenerator.LinePoint>> lines,
+                               final @NotNull List<GeoPayloadGenerator.LinePoint[]> junctions) {
+        // Boxed lookups only while building
+        final Map<GeoPayloadGenerator.LinePoint, Integer> ids = new HashMap<>();
+        final List<GeoPayloadGenerator.LinePoint> points = new ArrayList<>();
+        int edgeCount = junctions.size();
+        int lineCount = 0;
+        for (List<GeoPayloadGenerator.LinePoint> line : lines) {
+            for (GeoPayloadGenerator.LinePoint point : line) {
+                if (ids.putIfAbsent(point, points.size()) == null) {
+                    points.add(point);
+                }
+            }
+            edgeCount += Math.max(0, line.size() - 1);
+            lineCount += line.isEmpty() ? 0 : 1;
+        }
+
+        final int[] from = new int[edgeCount];
+        final int[] to = new int[edgeCount];
+        int edges = 0;
+        final int[] lineHeads = new int[lineCount];
+        int line = 0;
+        for (List<GeoPayloadGenerator.LinePoint> current : lines) {
+            if (!current.isEmpty()) {
+                lineHeads[line++] = ids.get(current.get(0));
+            }
+            for (int i = 0; i < current.size() - 1; ++i) {
+                from[edges] = ids.get(current.get(i));
+                to[edges++] = ids.get(current.get(i + 1));
+            }
+        }
+        for (GeoPayloadGenerator.LinePoint[] junction : junctions) {
+            final Integer first = ids.get(junction[0]);
+            final Integer second = ids.get(junction[1]);
+            if (first == null || second == null) {
+                throw new IllegalArgumentException("Junction " + junction[0] + " - " + junction[1] + " is not on a line");
+            }
+            from[edges] = first;
+            to[edges++] = second;
+        }
+
+        final int vertexCount = points.size();
+        final double[] lats = new double[vertexCount];
+        final double[] lons = new double[vertexCount];
+        for (int v = 0; v < vertexCount; ++v) {
+            lats[v] = points.get(v).lat;
+            lons[v] = points.get(v).lon;
+        }
+
+        // Both directions of every edge, without loops on repeated points
+        final int[] offsets = new int[vertexCount + 1];
+        for (int e = 0; e < edges; ++e) {
+            if (from[e] != to[e]) {
+                offsets[from[e] + 1]++;
+                offsets[to[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < vertexCount; ++v) {
+            offsets[v + 1] += offsets[v];
+        }
+        final int[] fill = Arrays.copyOf(offsets, vertexCount);
+        final int[] targets = new int[offsets[vertexCount]];
+        final double[] weights = new double[offsets[vertexCount]];
+        for (int e = 0; e < edges; ++e) {
+            final int a = from[e];
+            final int b = to[e];
+            if (a != b) {
+                final double distance = GeoMath.haversine(lats[a], lons[a], lats[b], lons[b]);
+                targets[fill[a]] = b;
+                weights[fill[a]++] = distance;
+                targets[fill[b]] = a;
+                weights[fill[b]++] = distance;
+            }
+        }
+        return new RoadGraph(lats, lons, offsets, targets, weights, lineHeads);
+    }
+
+    public int vertexCount() {
+        return lats.length;
+    }
+
+    /**
+     * @return number of undirected edges
+     */
+    public int edgeCount() {
+        return targets.length / 2;
+    }
+
+    public double getLat(final int vertex) {
+        return lats[vertex];
+    }
+
+    public double getLon(final int vertex) {
+        return lons[vertex];
+    }
+
+    /**
+     * @return number of non-empty lines the graph was built from
+     */
+    public int lineCount() {
+        return lineHeads.length;
+    }
+
+    /**
+     * @return vertex of the first point of the non-empty line
+     */
+    public int getLineHead(final int line) {
+        return lineHeads[line];
+    }
+
+    /**
+     * @return the path as edges from each vertex to the next, as the payload generator traverses them
+     */
+    @NotNull
+    public List<GeoEdge> toEdges(final @NotNull int[] path) {
+        final List<GeoEdge> edges = new ArrayList<>(Math.max(0, path.length - 1));
+        GeoPayloadGenerator.LinePoint previous = path.length > 0 ? new GeoPayloadGenerator.LinePoint(lats[path[0]], lons[path[0]]) : null;
+        for (int i = 1; i < path.length; ++i) {
+            final GeoPayloadGenerator.LinePoint next = new GeoPayloadGenerator.LinePoint(lats[path[i]], lons[path[i]]);
+            edges.add(new GeoEdge(previous, next, GeoMath.haversine(previous.lat, previous.lon, next.lat, next.lon)));
+            previous = next;
+        }
+        return edges;
+    }
+
+    /**
+     * @return a new search with its own state, the graph itself is never modified
+     */
+    @NotNull
+    public Search search() {
+        return new Search();
+    }
+
+    /**
+     * A* over the graph with the great-circle distance to the target as heuristic, which is exact for these edge lengths,
+     * so the shortest path is found. The state arrays are allocated once and reused for every query. Not thread safe.
+     */
+    public final class Search {
+        /* Marks which vertices have state for the current query, so nothing is cleared between queries */
+        @NotNull
+        private final int[] visited = new int[lats.length];
+        @NotNull
+        private final double[] distances = new double[lats.length];
+        @NotNull
+        private final int[] parents = new int[lats.length];
+        /* Position of each vertex in the heap, or CLOSED once settled */
+        @NotNull
+        private final int[] heapIndex = new int[lats.length];
+        /* Binary min-heap of vertices by estimated total distance */
+        @NotNull
+        private final int[] heap = new int[lats.length];
+        @NotNull
+        private final double[] heapKeys = new double[lats.length];
+        private int heapSize;
+        private int query;
+
+        private static final int CLOSED = -1;
+
+        private Search() {
+        }
+
+        /**
+         * @return the vertices of the shortest path from source to target, both included, or null if the target can't
+         * be reached
+         */
+        @Nullable
+        public int[] path(final int source, final int target) {
+            if (++query == 0) {
+                // Wrapped around after 4 billion queries, forget all marks
+                Arrays.fill(visited, 0);
+                query = 1;
+            }
+            heapSize = 0;
+            visit(source, 0, -1);
+            push(source, heuristic(source, target));
+            while (heapSize > 0) {
+                final int vertex = pop();
+                if (vertex == target) {
+                    return reconstruct(target);
+                }
+                heapIndex[vertex] = CLOSED;
+                final double distance = distances[vertex];
+                for (int e = offsets[vertex]; e < offsets[vertex + 1]; ++e) {
+                    final int next = targets[e];
+                    final double candidate = distance + weights[e];
+                    if (visited[next] != query) {
+                        visit(next, candidate, vertex);
+                        push(next, candidate + heuristic(next, target));
+                    } else if (heapIndex[next] != CLOSED && candidate < distances[next]) {
+                        distances[next] = candidate;
+                        parents[next] = vertex;
+                        decrease(next, candidate + heuristic(next, target));
+                    }
+                }
+            }
+            return null;
+        }
+
+        private double heuristic(final int vertex, final int target) {
+            return GeoMath.haversine(lats[vertex], lons[vertex], lats[target], lons[target]);
+        }
+
+        private void visit(final int vertex, final double distance, final int parent) {
+            visited[vertex] = query;
+            distances[vertex] = distance;
+            parents[vertex] = parent;
+        }
+
+        @NotNull
+        private int[] reconstruct(final int target) {
+            int length = 1;
+            for (int vertex = target; parents[vertex] >= 0; vertex = parents[vertex]) {
+                length++;
+            }
+            final int[] path = new int[length];
+            for (int vertex = target, i = length - 1; i >= 0; vertex = parents[vertex], --i) {
+                path[i] = vertex;
+            }
+            return path;
+        }
+
+        private void push(final int vertex, final double key) {
+            heap[heapSize] = vertex;
+            heapKeys[heapSize] = key;
+            heapIndex[vertex] = heapSize;
+            siftUp(heapSize++);
+        }
+
+        private int pop() {
+            final int top = heap[0];
+            heapSize--;
+            if (heapSize > 0) {
+                move(heapSize, 0);
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void decrease(final int vertex, final double key) {
+            final int index = heapIndex[vertex];
+            heapKeys[index] = key;
+            siftUp(index);
+        }
+
+        private void siftUp(int index) {
+            final int vertex = heap[index];
+            final double key = heapKeys[index];
+            while (index > 0) {
+                final int parent = (index - 1) >>> 1;
+                if (heapKeys[parent] <= key) {
+                    break;
+                }
+                move(parent, index);
+                index = parent;
+            }
+            heap[index] = vertex;
+            heapKeys[index] = key;
+            heapIndex[vertex] = index;
+        }
+
+        private void siftDown(int index) {
+            final int vertex = heap[index];
+            final double key = heapKeys[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                    child++;
+                }
+                if (heapKeys[child] >= key) {
+                    break;
+                }
+                move(child, index);
+                index = child;
+            }
+            heap[index] = vertex;
+            heapKeys[index] = key;
+            heapIndex[vertex] = index;
+        }
+
+        private void move(final int from, final int to) {
+            heap[to] = heap[from];
+            heapKeys[to] = heapKeys[from];
+            heapIndex[heap[to]] = to;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.hivemq.generator.geo;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Optional preprocessing of planned routes: Douglas-Peucker simplification within a tolerance, then optionally
+ * resampling to points a fixed distance apart.
+ * <p>
+ * GraphHopper keeps every OSM shape node, so a motorway route carries far more points than a truck reporting once a
+ * second needs. Simplifying keeps every point whose removal would move the line by more than the tolerance, and every
+ * point where the instruction changes, so trucks stay on the road and speeds change where they did. Resampling spreads
+ * the points evenly, corners are cut by at most about half a step. Immutable, routes simplified differently are cached
+ * apart.
+ */
+public final class RouteSimplifier {
+
+    @NotNull
+    public static final RouteSimplifier NONE = new RouteSimplifier(0, 0);
+
+    private static final double DEG_TO_RAD = Math.PI / 180D;
+    private static final double METERS_PER_DEGREE = GeoMath.EARTH_RADIUS_KM * 1000D * DEG_TO_RAD;
+
+    private final double toleranceMeters;
+    private final double stepMeters;
+
+    /**
+     * @param toleranceMeters largest distance of a removed point from the simplified line, 0 keeps all points
+     * @param stepMeters      distance between resampled points, 0 doesn't resample
+     */
+    public RouteSimplifier(final double toleranceMeters, final double stepMeters) {
+        if (!(toleranceMeters >= 0) || !(stepMeters >= 0)) {
+            throw new IllegalArgumentException("Tolerance and step must not be negative, got " + toleranceMeters + " and " + stepMeters);
+        }
+        this.toleranceMeters = toleranceMeters;
+        this.stepMeters = stepMeters;
+    }
+
+    public boolean isEnabled() {
+        return toleranceMeters > 0 || stepMeters > 0;
+    }
+
+    public double getToleranceMeters() {
+        return toleranceMeters;
+    }
+
+    public double getStepMeters() {
+        return stepMeters;
+    }
+
+    /**
+     * @return the simplified route, or the route itself if nothing is to be done
+     */
+    @NotNull
+    public SharedRoute apply(final @NotNull SharedRoute route) {
+        if (!isEnabled() || route.size() < 2) {
+            return route;
+        }
+        final int size = route.size();
+        final int[] kept = toleranceMeters > 0 ? simplify(route) : null;
+        final int count = kept != null ? kept.length : size;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        int[] segmentInstruction = new int[count - 1];
+        for (int i = 0; i < count; ++i) {
+            final int point = kept != null ? kept[i] : i;
+            lats[i] = route.getLat(point);
+            lons[i] = route.getLon(point);
+            if (i < count - 1) {
+                segmentInstruction[i] = route.getSegmentInstruction(point);
+            }
+        }
+        if (stepMeters > 0) {
+            final Resampled resampled = resample(lats, lons, segmentInstruction, stepMeters);
+            lats = resampled.lats;
+            lons = resampled.lons;
+            segmentInstruction = resampled.segmentInstruction;
+        }
+        return route.withGeometry(lats, lons, segmentInstruction);
+    }
+
+    /**
+     * Iterative Douglas-Peucker between the points that must be kept, the first, the last and every instruction change.
+     *
+     * @return indices of the kept points in ascending order
+     */
+    @NotNull
+    private int[] simplify(final @NotNull SharedRoute route) {
+        final int size = route.size();
+        final boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        for (int i = 1; i < size - 1; ++i) {
+            keep[i] = route.getSegmentInstruction(i) != route.getSegmentInstruction(i - 1);
+        }
+
+        // Spans still to check as pairs of start and end, without recursion as routes have up to 50000 points
+        int[] stack = new int[64];
+        int top = 0;
+        int start = 0;
+        for (int end = 1; end < size; ++end) {
+            if (!keep[end]) {
+                continue;
+            }
+            stack[top++] = start;
+            stack[top++] = end;
+            while (top > 0) {
+                final int b = stack[--top];
+                final int a = stack[--top];
+                int farthest = -1;
+                double maxOffset = toleranceMeters;
+                // Flat projection around the span, exact enough for the short spans the tolerance decides on
+                final double cosLat = Math.cos((route.getLat(a) + route.getLat(b)) / 2 * DEG_TO_RAD);
+                for (int i = a + 1; i < b; ++i) {
+                    final double offset = offset(route, i, a, b, cosLat);
+                    if (offset > maxOffset) {
+                        maxOffset = offset;
+                        farthest = i;
+                    }
+                }
+                if (farthest >= 0) {
+                    keep[farthest] = true;
+                    if (top + 4 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = a;
+                    stack[top++] = farthest;
+                    stack[top++] = farthest;
+                    stack[top++] = b;
+                }
+            }
+            start = end;
+        }
+
+        int count = 0;
+        for (boolean k : keep) {
+            count += k ? 1 : 0;
+        }
+        final int[] kept = new int[count];
+        for (int i = 0, k = 0; i < size; ++i) {
+            if (keep[i]) {
+                kept[k++] = i;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return distance of the point from the segment between a and b in meters
+     */
+    private static double offset(final @NotNull SharedRoute route, final int point, final int a, final int b, final double cosLat) {
+        final double bx = (route.getLon(b) - route.getLon(a)) * cosLat * METERS_PER_DEGREE;
+        final double by = (route.getLat(b) - route.getLat(a)) * METERS_PER_DEGREE;
+        final double px = (route.getLon(point) - route.getLon(a)) * cosLat * METERS_PER_DEGREE;
+        final double py = (route.getLat(point) - route.getLat(a)) * METERS_PER_DEGREE;
+        final double length = bx * bx + by * by;
+        final double t = length > 0 ? Math.max(0, Math.min(1, (px * bx + py * by) / length)) : 0;
+        final double dx = px - t * bx;
+        final double dy = py - t * by;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Points every step along the line and its last point. A new segment gets the instruction of the segment it starts on.
+     */
+    @NotNull
+    private static Resampled resample(final @NotNull double[] lats, final @NotNull double[] lons,
+                                      final @NotNull int[] segmentInstruction, final double step) {
+        double total = 0;
+        for (int i = 1; i < lats.length; ++i) {
+            total += GeoMath.haversine(lats[i - 1], lons[i - 1], lats[i], lons[i]) * 1000D;
+        }
+        final int capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) (total / step) + 2);
+        final Resampled resampled = new Resampled(capacity);
+        resampled.add(lats[0], lons[0], segmentInstruction.length > 0 ? segmentInstruction[0] : -1);
+        double segmentStart = 0;
+        double next = step;
+        for (int i = 0; i < lats.length - 1; ++i) {
+            final double length = GeoMath.haversine(lats[i], lons[i], lats[i + 1], lons[i + 1]) * 1000D;
+            while (length > 0 && next < segmentStart + length && next < total) {
+                final double fraction = (next - segmentStart) / length;
+                resampled.add(lats[i] + (lats[i + 1] - lats[i]) * fraction, lons[i] + (lons[i + 1] - lons[i]) * fraction,
+                        segmentInstruction[i]);
+                next += step;
+            }
+            segmentStart += length;
+        }
+        resampled.add(lats[lats.length - 1], lons[lons.length - 1], -1);
+        return resampled.trim();
+    }
+
+    private static final class Resampled {
+        @NotNull
+        double[] lats;
+        @NotNull
+        double[] lons;
+        /* Instruction of the segment starting at each point, trimmed to one less than the points */
+        @NotNull
+        int[] segmentInstruction;
+        int size;
+
+        Resampled(final int capacity) {
+            lats = new double[capacity];
+            lons = new double[capacity];
+            segmentInstruction = new int[capacity];
+        }
+
+        void add(final double lat, final double lon, final int instruction) {
+            if (size == lats.length) {
+                lats = Arrays.copyOf(lats, size * 2);
+                lons = Arrays.copyOf(lons, size * 2);
+                segmentInstruction = Arrays.copyOf(segmentInstruction, size * 2);
+            }
+            lats[size] = lat;
+            lons[size] = lon;
+            segmentInstruction[size++] = instruction;
+        }
+
+        @NotNull
+        Resampled trim() {
+            lats = Arrays.copyOf(lats, size);
+            lons = Arrays.copyOf(lons, size);
+            segmentInstruction = Arrays.copyOf(segmentInstruction, Math.max(0, size - 1));
+            return this;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RouteSimplifier that = (RouteSimplifier) o;
+        return Double.compare(that.toleranceMeters, toleranceMeters) == 0 &&
+                Double.compare(that.stepMeters, stepMeters) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(toleranceMeters) + Double.hashCode(stepMeters);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteSimplifier{" +
+                "toleranceMeters=" + toleranceMeters +
+                ", stepMeters=" + stepMeters +
+                '}';
+    }
+}
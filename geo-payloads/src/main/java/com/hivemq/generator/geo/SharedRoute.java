@@ -0,0 +1,439 @@
+package com.hivemq.generator.geo;
+
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.locationtech.jts.geom.Coordinate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+
+/**
+ * Immutable route geometry and speed profile backed by primitive arrays.
+ * <p>
+ * Many trucks drive the same routes between warehouses, so one instance is shared by every vehicle on the route
+ * (through the route cache). Vehicles only keep a reference, the time they started and their own random for the speed
+ * noise; {@link #getPoint(double, Random)} is stateless.
+ * <p>
+ * {@link #compact()} keeps the geometry as a {@link CompactPolyline} instead, at a fraction of the memory.
+ */
+public final class SharedRoute {
+    private static final @NotNull Logger log = LoggerFactory.getLogger(SharedRoute.class);
+
+    /* Object header and array length of a primitive array on a 64 bit JVM with compressed oops */
+    private static final long ARRAY_HEADER_BYTES = 16;
+    /* This object's header and fields */
+    private static final long OBJECT_BYTES = 64;
+
+    @NotNull
+    private static final DistanceCalcEarth calc = new DistanceCalcEarth();
+
+    /* Layout of the point filled by getPoint(double, Random, double[]) */
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int SPEED = 2;
+    public static final int SPEED_LIMIT = 3;
+    /* Scratch space while locating the segment on a compact route */
+    static final int PREV_LAT = 4;
+    static final int PREV_LON = 5;
+    static final int NEXT_LAT = 6;
+    static final int NEXT_LON = 7;
+    static final int PREV_DISTANCE = 8;
+    static final int NEXT_DISTANCE = 9;
+    static final int INSTRUCTION = 10;
+    public static final int POINT_SIZE = 11;
+
+    private static final double[] NO_POINTS = new double[0];
+    private static final int[] NO_SEGMENTS = new int[0];
+
+    /* Route geometry, empty if the route is compact */
+    @NotNull
+    private final double[] lats;
+    @NotNull
+    private final double[] lons;
+    /* Distance from the route start to each point, cumulativeDistance[0] is always 0 */
+    @NotNull
+    private final double[] cumulativeDistance;
+    /* Index of the instruction covering each segment, -1 if no instruction covers it */
+    @NotNull
+    private final int[] segmentInstruction;
+    /* Route geometry and instruction per segment instead of the arrays */
+    @Nullable
+    private final CompactPolyline compact;
+    /* Average speed and estimated speed limit per instruction in km/h */
+    @NotNull
+    private final double[] instructionSpeed;
+    @NotNull
+    private final double[] instructionSpeedLimit;
+    /* Total distance covered by the geometry */
+    private final double distance;
+    /* Distance in m and time in ms as estimated by the router */
+    private final double routeDistance;
+    private final long time;
+
+    /**
+     * @param lats                lat of each point, not copied
+     * @param lons                lon of each point, not copied
+     * @param cumulativeDistance  distance from the start to each point, computed if null
+     * @param instructionLengths  number of points of each instruction
+     * @param instructionDistance distance of each instruction in m
+     * @param instructionTime     time of each instruction in ms
+     * @param routeDistance       total distance in m as estimated by the router
+     * @param time                total time in ms as estimated by the router
+     */
+    public SharedRoute(final @NotNull double[] lats,
+                       final @NotNull double[] lons,
+                       final @Nullable double[] cumulativeDistance,
+                       final @NotNull int[] instructionLengths,
+                       final @NotNull double[] instructionDistance,
+                       final @NotNull long[] instructionTime,
+                       final double routeDistance,
+                       final long time) {
+        final int size = lats.length;
+        this.lats = lats;
+        this.lons = lons;
+        this.compact = null;
+        this.routeDistance = routeDistance;
+        this.time = time;
+        if (cumulativeDistance != null) {
+            this.cumulativeDistance = cumulativeDistance;
+        } else {
+            this.cumulativeDistance = new double[size];
+            for (int i = 1; i < size; ++i) {
+                this.cumulativeDistance[i] = this.cumulativeDistance[i - 1] + calc.calcDist(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+            }
+        }
+        distance = size > 0 ? this.cumulativeDistance[size - 1] : 0D;
+
+        final int instructionCount = instructionLengths.length;
+        instructionSpeed = new double[instructionCount];
+        instructionSpeedLimit = new double[instructionCount];
+        for (int k = 0; k < instructionCount; ++k) {
+            final double actualSpeed = (instructionDistance[k] / 1000D) / ((double) instructionTime[k] / 1000 / 60 / 60);
+            instructionSpeed[k] = actualSpeed;
+            // Just round roughly for the speed limit
+            instructionSpeedLimit[k] = (Math.round(actualSpeed / 10)) * 10;
+        }
+
+        // A segment belongs to the first instruction whose accumulated point count reaches the segment index
+        segmentInstruction = new int[Math.max(0, size - 1)];
+        int k = 0;
+        int offsetAcc = instructionCount > 0 ? instructionLengths[0] : 0;
+        for (int i = 0; i < segmentInstruction.length; ++i) {
+            while (offsetAcc < i && k < instructionCount - 1) {
+                ++k;
+                offsetAcc += instructionLengths[k];
+            }
+            segmentInstruction[i] = instructionCount > 0 && offsetAcc >= i ? k : -1;
+        }
+    }
+
+    /**
+     * Route with other geometry and the same instructions, see {@link RouteSimplifier}.
+     *
+     * @param segmentInstruction index of the instruction covering each segment of the new geometry
+     */
+    private SharedRoute(final @NotNull SharedRoute route,
+                        final @NotNull double[] lats,
+                        final @NotNull double[] lons,
+                        final @NotNull int[] segmentInstruction) {
+        this.lats = lats;
+        this.lons = lons;
+        this.segmentInstruction = segmentInstruction;
+        this.compact = null;
+        this.instructionSpeed = route.instructionSpeed;
+        this.instructionSpeedLimit = route.instructionSpeedLimit;
+        this.routeDistance = route.routeDistance;
+        this.time = route.time;
+        this.cumulativeDistance = new double[lats.length];
+        for (int i = 1; i < lats.length; ++i) {
+            this.cumulativeDistance[i] = this.cumulativeDistance[i - 1] + calc.calcDist(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+        }
+        distance = lats.length > 0 ? this.cumulativeDistance[lats.length - 1] : 0D;
+    }
+
+    /**
+     * Compact copy of the route, see {@link #compact()}.
+     */
+    private SharedRoute(final @NotNull SharedRoute route, final @NotNull CompactPolyline compact) {
+        this.lats = NO_POINTS;
+        this.lons = NO_POINTS;
+        this.cumulativeDistance = NO_POINTS;
+        this.segmentInstruction = NO_SEGMENTS;
+        this.compact = compact;
+        this.instructionSpeed = route.instructionSpeed;
+        this.instructionSpeedLimit = route.instructionSpeedLimit;
+        this.routeDistance = route.routeDistance;
+        this.time = route.time;
+        this.distance = compact.getDistance();
+    }
+
+    /**
+     * Copy of the route with the geometry delta-encoded in a {@link CompactPolyline}. Coordinates are rounded to
+     * millionths of a degree and distances along the route to centimeters, locating a point decodes one block of
+     * {@value CompactPolyline#BLOCK_SIZE} points.
+     *
+     * @return the compact route, or the route itself if it already is compact
+     */
+    @NotNull
+    public SharedRoute compact() {
+        if (compact != null) {
+            return this;
+        }
+        return new SharedRoute(this, CompactPolyline.encode(lats, lons, cumulativeDistance, segmentInstruction));
+    }
+
+    public boolean isCompact() {
+        return compact != null;
+    }
+
+    /**
+     * @return this route's instructions along the given geometry
+     */
+    @NotNull
+    SharedRoute withGeometry(final @NotNull double[] lats, final @NotNull double[] lons, final @NotNull int[] segmentInstruction) {
+        return new SharedRoute(this, lats, lons, segmentInstruction);
+    }
+
+    /**
+     * Copies the geometry and instruction data out of a GraphHopper path, which can be discarded afterwards.
+     */
+    @NotNull
+    public static SharedRoute of(final @NotNull PathWrapper path) {
+        final PointList points = path.getPoints();
+        final int size = points.size();
+        final double[] lats = new double[size];
+        final double[] lons = new double[size];
+        for (int i = 0; i < size; ++i) {
+            lats[i] = points.getLat(i);
+            lons[i] = points.getLon(i);
+        }
+        final InstructionList instructions = path.getInstructions();
+        final int instructionCount = instructions == null ? 0 : instructions.size();
+        final int[] lengths = new int[instructionCount];
+        final double[] distances = new double[instructionCount];
+        final long[] times = new long[instructionCount];
+        for (int k = 0; k < instructionCount; ++k) {
+            final Instruction instruction = instructions.get(k);
+            lengths[k] = instruction.getLength();
+            distances[k] = instruction.getDistance();
+            times[k] = instruction.getTime();
+        }
+        return new SharedRoute(lats, lons, null, lengths, distances, times, path.getDistance(), path.getTime());
+    }
+
+    /**
+     * Stateless traversal to an exact point in the line
+     *
+     * @param percentage percentage in the line to travel to (0..1)
+     * @param random     vehicle's random for the speed noise
+     * @return coordinate at the given percentage of distance or {@code null} if invalid input or out of bounds
+     */
+    @NotNull
+    public InterpResult getPoint(final double percentage, final @NotNull Random random) {
+        final double[] point = new double[POINT_SIZE];
+        if (!getPoint(percentage, random, point)) {
+            return new InterpResult(0, null, 0);
+        }
+        return new InterpResult(point[SPEED], new Coordinate(point[X], point[Y]), point[SPEED_LIMIT]);
+    }
+
+    /**
+     * {@link #getPoint(double, Random)} without allocating, for stepping many vehicles.
+     *
+     * @param point {@link #POINT_SIZE} values, receives x (lon), y (lat), speed and speed limit at the indices
+     *              {@link #X}, {@link #Y}, {@link #SPEED} and {@link #SPEED_LIMIT}, unchanged if there is no point.
+     *              The remaining values are scratch space.
+     * @return false where {@link #getPoint(double, Random)} has no location
+     */
+    public boolean getPoint(final double percentage, final @NotNull Random random, final @NotNull double[] point) {
+        final double distanceToTraverse = distance * percentage;
+        final int i = compact != null ? compact.locate(distanceToTraverse, point) : findSegment(distanceToTraverse);
+        if (i < 0) {
+            log.warn("Could not generate point at percentage {} for coordinate sequence of size {}." +
+                            " Final distance accumulator {}, distance to traverse: {}, total route distance: {}",
+                    percentage, size(),
+                    distance, distanceToTraverse, routeDistance);
+            return false;
+        }
+        final double prevLat;
+        final double prevLon;
+        final double nextLat;
+        final double nextLon;
+        final double segmentLength;
+        final double distanceAcc;
+        final int instruction;
+        if (compact != null) {
+            prevLat = point[PREV_LAT];
+            prevLon = point[PREV_LON];
+            nextLat = point[NEXT_LAT];
+            nextLon = point[NEXT_LON];
+            // From the rounded distances, so the traversed part never exceeds the segment before its end
+            segmentLength = Math.max(point[NEXT_DISTANCE] - point[PREV_DISTANCE], Double.MIN_VALUE);
+            distanceAcc = point[NEXT_DISTANCE];
+            instruction = (int) point[INSTRUCTION];
+        } else {
+            prevLat = lats[i];
+            prevLon = lons[i];
+            nextLat = lats[i + 1];
+            nextLon = lons[i + 1];
+            // length of the current segment
+            segmentLength = calc.calcDist(prevLat, prevLon, nextLat, nextLon);
+            distanceAcc = cumulativeDistance[i + 1];
+            instruction = segmentInstruction[i];
+        }
+
+        // Get the part of the target segment we're travelling to, measured the same way as the original linear walk
+        final double segDistance;
+        if (distanceAcc > distanceToTraverse || distanceToTraverse <= 0) {
+            if (i == 0) {
+                // First segment used
+                segDistance = distanceToTraverse;
+            } else {
+                segDistance = distanceAcc - distanceToTraverse;
+            }
+        } else {
+            segDistance = distanceToTraverse - distanceAcc;
+        }
+        // Percentage of the current/target segment to traverse
+        final double segPercentage = segDistance / segmentLength;
+
+        // Get the average speed and estimated speed limit in this segment
+        double speed = 0D;
+        double speedLimit = 0D;
+        if (instruction >= 0) {
+            final double randomFactor = Math.pow(random.nextInt(40) - 10, 3) / 1000;
+            if (log.isDebugEnabled()) {
+                log.debug("Random factor: {}", randomFactor);
+            }
+            speed = instructionSpeed[instruction] + randomFactor;
+            speedLimit = instructionSpeedLimit[instruction];
+        }
+        if (segPercentage > 1) {
+            // Start a new route, we have reached the end.
+            log.debug("Route end was reached");
+            return false;
+        }
+
+        // Same as LinearLocation.pointAlongSegmentByFraction
+        if (segPercentage <= 0) {
+            point[X] = prevLon;
+            point[Y] = prevLat;
+        } else if (segPercentage >= 1) {
+            point[X] = nextLon;
+            point[Y] = nextLat;
+        } else {
+            point[X] = (nextLon - prevLon) * segPercentage + prevLon;
+            point[Y] = (nextLat - prevLat) * segPercentage + prevLat;
+        }
+        point[SPEED] = speed;
+        point[SPEED_LIMIT] = speedLimit;
+        return true;
+    }
+
+    /**
+     * Binary search for the first segment whose end lies at or beyond the given distance from the route start.
+     *
+     * @param distanceToTraverse distance from the start of the route in meters
+     * @return index of the segment's first point or -1 if the distance is not covered by the route
+     */
+    private int findSegment(final double distanceToTraverse) {
+        if (lats.length < 2) {
+            return -1;
+        }
+        if (distanceToTraverse <= 0) {
+            return 0;
+        }
+        int low = 1;
+        int high = cumulativeDistance.length - 1;
+        if (!(cumulativeDistance[high] >= distanceToTraverse)) {
+            return -1;
+        }
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (cumulativeDistance[mid] >= distanceToTraverse) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low - 1;
+    }
+
+    public int size() {
+        return compact != null ? compact.size() : lats.length;
+    }
+
+    public double getLat(final int index) {
+        return compact != null ? compact.getLat(index) : lats[index];
+    }
+
+    public double getLon(final int index) {
+        return compact != null ? compact.getLon(index) : lons[index];
+    }
+
+    /**
+     * @return index of the instruction covering the segment from the point to the next one, -1 if there is none
+     */
+    int getSegmentInstruction(final int segment) {
+        return compact != null ? compact.getSegmentInstruction(segment) : segmentInstruction[segment];
+    }
+
+    /**
+     * @return distance in m as estimated by the router
+     */
+    public double getDistance() {
+        return routeDistance;
+    }
+
+    /**
+     * @return time in ms as estimated by the router
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return approximate heap size of this route including its arrays
+     */
+    public long estimatedBytes() {
+        if (compact != null) {
+            return OBJECT_BYTES + compact.estimatedBytes()
+                    + 2 * (ARRAY_HEADER_BYTES + (long) instructionSpeed.length * Double.BYTES);
+        }
+        return OBJECT_BYTES
+                + 3 * (ARRAY_HEADER_BYTES + (long) lats.length * Double.BYTES)
+                + ARRAY_HEADER_BYTES + (long) segmentInstruction.length * Integer.BYTES
+                + 2 * (ARRAY_HEADER_BYTES + (long) instructionSpeed.length * Double.BYTES);
+    }
+
+    public static final class InterpResult {
+        final double speed;
+        final @Nullable Coordinate location;
+        final double speedLimit;
+
+        public InterpResult(double speed, @Nullable Coordinate location, double speedLimit) {
+            this.speed = speed;
+            this.location = location;
+            this.speedLimit = speedLimit;
+        }
+
+        public double getSpeed() {
+            return speed;
+        }
+
+        @Nullable
+        public Coordinate getLocation() {
+            return location;
+        }
+
+        public double getSpeedLimit() {
+            return speedLimit;
+        }
+    }
+}
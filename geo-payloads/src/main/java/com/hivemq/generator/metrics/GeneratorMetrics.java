@@ -0,0 +1,291 @@
+package com.hivemq.generator.metrics;
+
+import com.hivemq.generator.config.ConfigRegistry;
+import com.hivemq.generator.route.RoutePlanner;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide metrics of the payload generators, the route planner and the config caches.
+ * <p>
+ * Always available over JMX as {@value #OBJECT_NAME}. With {@link #METRICS_PORT_ENV} set, they are also served as
+ * plain text in the Prometheus exposition format on {@code http://<host>:<port>/metrics}.
+ * Comparing the publish latency with the simulator's publish rate shows whether the generators or the broker limit a
+ * load test.
+ */
+public class GeneratorMetrics implements GeneratorMetricsMXBean {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(GeneratorMetrics.class);
+
+    @NotNull
+    public static final String OBJECT_NAME = "com.hivemq.generator:type=GeneratorMetrics";
+    @NotNull
+    public static final String METRICS_PORT_ENV = "METRICS_PORT";
+
+    @NotNull
+    private final RoutePlanner planner;
+    @NotNull
+    private final ConfigRegistry configRegistry;
+
+    @NotNull
+    private final LatencyHistogram payloadLatency = new LatencyHistogram();
+    @NotNull
+    private final LongAdder failurePayloads = new LongAdder();
+    /* Vehicles created and not released yet */
+    @NotNull
+    private final AtomicInteger vehicles = new AtomicInteger();
+    @NotNull
+    private final LongAdder vehiclesCreated = new LongAdder();
+    @NotNull
+    private final AtomicInteger drivingVehicles = new AtomicInteger();
+    @NotNull
+    private final AtomicInteger vehiclesOnBreak = new AtomicInteger();
+
+    public GeneratorMetrics(@NotNull RoutePlanner planner, @NotNull ConfigRegistry configRegistry) {
+        this.planner = planner;
+        this.configRegistry = configRegistry;
+    }
+
+    /**
+     * Creates the metrics, registers them with the platform MBean server and starts the HTTP exporter if
+     * {@link #METRICS_PORT_ENV} is set. Failing to export only logs a warning.
+     */
+    @NotNull
+    public static GeneratorMetrics fromEnvironment(final @NotNull RoutePlanner planner,
+                                                   final @NotNull ConfigRegistry configRegistry) {
+        final GeneratorMetrics metrics = new GeneratorMetrics(planner, configRegistry);
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            // Plugins may be loaded more than once per JVM, the latest one wins
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            log.warn("Failed to register generator metrics with JMX", e);
+        }
+        final @Nullable String port = System.getenv(METRICS_PORT_ENV);
+        if (port != null && !port.isBlank()) {
+            try {
+                MetricsHttpExporter.start(Integer.parseInt(port.trim()), metrics);
+            } catch (IOException | NumberFormatException e) {
+                log.warn("Failed to start the metrics exporter on port '{}'", port, e);
+            }
+        }
+        return metrics;
+    }
+
+    public void recordPayload(final long nanos) {
+        payloadLatency.record(nanos);
+    }
+
+    public void failurePayload() {
+        failurePayloads.increment();
+    }
+
+    public void vehicleCreated() {
+        vehicles.incrementAndGet();
+        vehiclesCreated.increment();
+    }
+
+    public void vehicleReleased() {
+        vehicles.decrementAndGet();
+    }
+
+    public void routeStarted() {
+        drivingVehicles.incrementAndGet();
+    }
+
+    public void routeEnded() {
+        drivingVehicles.decrementAndGet();
+    }
+
+    public void breakStarted() {
+        vehiclesOnBreak.incrementAndGet();
+    }
+
+    public void breakEnded() {
+        vehiclesOnBreak.decrementAndGet();
+    }
+
+    @NotNull
+    public LatencyHistogram getPayloadLatency() {
+        return payloadLatency;
+    }
+
+    @Override
+    public long getPayloadCount() {
+        return payloadLatency.getCount();
+    }
+
+    @Override
+    public double getPayloadLatencyMeanMillis() {
+        return payloadLatency.getMeanMillis();
+    }
+
+    @Override
+    public double getPayloadLatencyP50Millis() {
+        return payloadLatency.getPercentileMillis(0.5);
+    }
+
+    @Override
+    public double getPayloadLatencyP99Millis() {
+        return payloadLatency.getPercentileMillis(0.99);
+    }
+
+    @Override
+    public double getPayloadLatencyMaxMillis() {
+        return payloadLatency.getMaxMillis();
+    }
+
+    @Override
+    public long getFailurePayloadCount() {
+        return failurePayloads.sum();
+    }
+
+    @Override
+    public int getVehicleCount() {
+        return vehicles.get();
+    }
+
+    @Override
+    public long getVehiclesCreatedCount() {
+        return vehiclesCreated.sum();
+    }
+
+    @Override
+    public int getDrivingVehicleCount() {
+        return drivingVehicles.get();
+    }
+
+    @Override
+    public int getVehiclesOnBreakCount() {
+        return vehiclesOnBreak.get();
+    }
+
+    @Override
+    public long getRouteQueryCount() {
+        return planner.getQueryLatency().getCount();
+    }
+
+    @Override
+    public long getRouteQueryErrorCount() {
+        return planner.getQueryErrorCount();
+    }
+
+    @Override
+    public double getRouteQueryLatencyMeanMillis() {
+        return planner.getQueryLatency().getMeanMillis();
+    }
+
+    @Override
+    public double getRouteQueryLatencyP99Millis() {
+        return planner.getQueryLatency().getPercentileMillis(0.99);
+    }
+
+    @Override
+    public double getRouteQueryLatencyMaxMillis() {
+        return planner.getQueryLatency().getMaxMillis();
+    }
+
+    @Override
+    public long getRoutePlanningRetryCount() {
+        return planner.getRetryCount();
+    }
+
+    @Override
+    public long getRoutePlanningFailureCount() {
+        return planner.getFailedCount();
+    }
+
+    @Override
+    public long getRoutePlanningRejectedCount() {
+        return planner.getRejectedCount();
+    }
+
+    @Override
+    public int getRoutePlannerQueueDepth() {
+        return planner.getQueueDepth();
+    }
+
+    @Override
+    public long getRouteBootstrapMillis() {
+        return planner.getBootstrapMillis();
+    }
+
+    @Override
+    public double getRouteCacheHitRatio() {
+        return planner.getRouteCache().stats().hitRate();
+    }
+
+    @Override
+    public double getConfigCacheHitRatio() {
+        return configRegistry.getConfigHitRatio();
+    }
+
+    @Override
+    public double getLocationCacheHitRatio() {
+        return configRegistry.getLocationHitRatio();
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format
+     */
+    @NotNull
+    public String toText() {
+        final StringBuilder text = new StringBuilder(4096);
+        histogram(text, "geo_payload_seconds", "Time to generate a payload", payloadLatency);
+        counter(text, "geo_payload_failures_total", "Failure payloads returned", getFailurePayloadCount());
+        gauge(text, "geo_vehicles", "Vehicles in the fleet, created and not released", getVehicleCount());
+        counter(text, "geo_vehicles_created_total", "Payload generators created", getVehiclesCreatedCount());
+        gauge(text, "geo_vehicles_driving", "Vehicles driving a route", getDrivingVehicleCount());
+        gauge(text, "geo_vehicles_on_break", "Vehicles on a break", getVehiclesOnBreakCount());
+        histogram(text, "geo_route_query_seconds", "GraphHopper route query latency", planner.getQueryLatency());
+        counter(text, "geo_route_query_errors_total", "GraphHopper queries that failed or found no route", getRouteQueryErrorCount());
+        counter(text, "geo_route_planning_retries_total", "Destinations retried while planning", getRoutePlanningRetryCount());
+        counter(text, "geo_route_planning_failures_total", "Planning requests without a route", getRoutePlanningFailureCount());
+        counter(text, "geo_route_planning_rejected_total", "Planning requests rejected by the full queue", getRoutePlanningRejectedCount());
+        gauge(text, "geo_route_planner_queue_depth", "Planning requests waiting for a thread", getRoutePlannerQueueDepth());
+        gauge(text, "geo_route_bootstrap_seconds", "Wall-clock time of the last first-route bootstrap, -1 before", getRouteBootstrapMillis() < 0 ? -1 : getRouteBootstrapMillis() / 1000D);
+        gauge(text, "geo_route_cache_hit_ratio", "Route cache hit ratio", getRouteCacheHitRatio());
+        gauge(text, "geo_config_cache_hit_ratio", "Config cache hit ratio", getConfigCacheHitRatio());
+        gauge(text, "geo_location_cache_hit_ratio", "Location file cache hit ratio", getLocationCacheHitRatio());
+        return text.toString();
+    }
+
+    private static void counter(final @NotNull StringBuilder text, final @NotNull String name, final @NotNull String help, final long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(final @NotNull StringBuilder text, final @NotNull String name, final @NotNull String help, final double value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" gauge\n");
+        text.append(name).append(' ').append(Double.toString(value)).append('\n');
+    }
+
+    private static void histogram(final @NotNull StringBuilder text, final @NotNull String name, final @NotNull String help,
+                                  final @NotNull LatencyHistogram histogram) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" histogram\n");
+        for (int i = 0; i < LatencyHistogram.getBucketCount(); ++i) {
+            text.append(name).append("_bucket{le=\"").append(Double.toString(LatencyHistogram.getBucketBoundMicros(i) / 1_000_000D))
+                    .append("\"} ").append(histogram.getCumulativeCount(i)).append('\n');
+        }
+        text.append(name).append("_bucket{le=\"+Inf\"} ").append(histogram.getCount()).append('\n');
+        text.append(name).append("_sum ").append(Double.toString(histogram.getTotalSeconds())).append('\n');
+        text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+}
@@ -0,0 +1,54 @@
+package com.hivemq.generator.metrics;
+
+/**
+ * JMX view of {@link GeneratorMetrics}, registered as {@value GeneratorMetrics#OBJECT_NAME}.
+ * Latencies are in milliseconds.
+ */
+public interface GeneratorMetricsMXBean {
+
+    long getPayloadCount();
+
+    double getPayloadLatencyMeanMillis();
+
+    double getPayloadLatencyP50Millis();
+
+    double getPayloadLatencyP99Millis();
+
+    double getPayloadLatencyMaxMillis();
+
+    long getFailurePayloadCount();
+
+    int getVehicleCount();
+
+    long getVehiclesCreatedCount();
+
+    int getDrivingVehicleCount();
+
+    int getVehiclesOnBreakCount();
+
+    long getRouteQueryCount();
+
+    long getRouteQueryErrorCount();
+
+    double getRouteQueryLatencyMeanMillis();
+
+    double getRouteQueryLatencyP99Millis();
+
+    double getRouteQueryLatencyMaxMillis();
+
+    long getRoutePlanningRetryCount();
+
+    long getRoutePlanningFailureCount();
+
+    long getRoutePlanningRejectedCount();
+
+    int getRoutePlannerQueueDepth();
+
+    long getRouteBootstrapMillis();
+
+    double getRouteCacheHitRatio();
+
+    double getConfigCacheHitRatio();
+
+    double getLocationCacheHitRatio();
+}
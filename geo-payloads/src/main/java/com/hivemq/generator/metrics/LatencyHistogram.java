@@ -0,0 +1,113 @@
+package com.hivemq.generator.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed 1-2-5 buckets from 1us to 100s, cheap enough to record on every publish.
+ * Percentiles are reported as the upper bound of the bucket they fall into.
+ */
+public class LatencyHistogram {
+    /* Upper bucket bounds in microseconds, a last bucket catches everything above */
+    @NotNull
+    private static final long[] BOUNDS_MICROS = bounds();
+
+    @NotNull
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+    @NotNull
+    private final LongAdder count = new LongAdder();
+    @NotNull
+    private final LongAdder totalNanos = new LongAdder();
+    @NotNull
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    @NotNull
+    private static long[] bounds() {
+        final long[] bounds = new long[3 * 8 + 1];
+        long decade = 1;
+        int i = 0;
+        while (i < bounds.length) {
+            bounds[i++] = decade;
+            if (i < bounds.length) {
+                bounds[i++] = 2 * decade;
+                bounds[i++] = 5 * decade;
+            }
+            decade *= 10;
+        }
+        return bounds;
+    }
+
+    public void record(final long nanos) {
+        final long micros = nanos / 1000;
+        int bucket = 0;
+        while (bucket < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMillis() {
+        final long count = getCount();
+        return count == 0 ? 0D : totalNanos.sum() / (double) count / 1_000_000D;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000D;
+    }
+
+    /**
+     * @param percentile 0..1
+     * @return upper bound of the bucket containing the percentile in ms, the maximum for the overflow bucket
+     */
+    public double getPercentileMillis(final double percentile) {
+        final long count = getCount();
+        if (count == 0) {
+            return 0D;
+        }
+        final long rank = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MICROS.length; ++i) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(BOUNDS_MICROS[i] / 1000D, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * @return number of bucket bounds, excluding the overflow bucket
+     */
+    public static int getBucketCount() {
+        return BOUNDS_MICROS.length;
+    }
+
+    public static long getBucketBoundMicros(final int bucket) {
+        return BOUNDS_MICROS[bucket];
+    }
+
+    /**
+     * @return number of recorded latencies up to and including the bucket's bound
+     */
+    public long getCumulativeCount(final int bucket) {
+        long cumulative = 0;
+        for (int i = 0; i <= bucket; ++i) {
+            cumulative += buckets.get(i);
+        }
+        return cumulative;
+    }
+
+    public double getTotalSeconds() {
+        return totalNanos.sum() / 1_000_000_000D;
+    }
+}
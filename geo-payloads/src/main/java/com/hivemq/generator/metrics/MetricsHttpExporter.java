@@ -0,0 +1,56 @@
+package com.hivemq.generator.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link GeneratorMetrics#toText()} on {@code /metrics} with the JDK's built-in HTTP server, so scraping needs
+ * no additional dependency in the simulator plugin.
+ */
+public final class MetricsHttpExporter {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(MetricsHttpExporter.class);
+
+    private MetricsHttpExporter() {
+    }
+
+    @NotNull
+    public static HttpServer start(final int port, final @NotNull GeneratorMetrics metrics) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> respond(exchange, metrics));
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "metrics-exporter");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        // The dispatcher thread inherits the daemon flag of the thread starting the server, it must not keep the JVM alive
+        final Thread starter = new Thread(server::start, "metrics-exporter-start");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Serving generator metrics on http://0.0.0.0:{}/metrics", port);
+        return server;
+    }
+
+    private static void respond(final @NotNull HttpExchange exchange, final @NotNull GeneratorMetrics metrics) throws IOException {
+        final byte[] body = metrics.toText().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.hivemq.generator.offline;
+
+import com.hivemq.generator.RoutePayloadGenerator;
+import com.hivemq.generator.fleet.FleetEngine;
+import com.hivemq.simulator.plugin.sdk.load.generators.PluginPayloadGeneratorInput;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a fleet of {@link RoutePayloadGenerator}s through simulated time without a broker, as fast as the payloads
+ * can be computed.
+ * <p>
+ * All vehicles read one {@link SimulatedClock}, which advances by the publish interval after every vehicle published
+ * once. Each vehicle has its own random seeded from the simulation seed and plans its routes inline, also its first
+ * one instead of claiming a bootstrap route, so the same seed, configuration and route data always produce the same
+ * payloads.
+ * <p>
+ * The vehicles are advanced together by the {@link FleetEngine}, in parallel on a fork/join pool, and their samples are
+ * written in vehicle order afterwards. A vehicle only reads its own state and random, so the payloads don't depend on
+ * the number of threads.
+ * <p>
+ * The vehicles stay in the process-wide fleet until the simulation is closed. The simulation ticks that fleet itself,
+ * so it refuses to run while the {@link RoutePayloadGenerator#FLEET_TICK_MILLIS_ENV} ticker advances it in real time.
+ */
+public class OfflineSimulation implements Closeable {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(OfflineSimulation.class);
+
+    /* Log progress about this often, in simulated time steps */
+    private static final int PROGRESS_LOG_STEPS = 100;
+
+    @NotNull
+    private final SimulatedClock clock;
+    @NotNull
+    private final RoutePayloadGenerator[] vehicles;
+    @NotNull
+    private final PluginPayloadGeneratorInput[] inputs;
+    @NotNull
+    private final FleetEngine fleet;
+
+    /**
+     * @param configFile  payload generator config, as passed to the simulator's generators
+     * @param vehicles    number of vehicles
+     * @param seed        seed for all vehicles
+     * @param startMillis simulated epoch milliseconds of the first publish
+     * @throws IllegalStateException if the fleet ticker is enabled
+     */
+    public OfflineSimulation(final @NotNull String configFile, final int vehicles, final long seed, final long startMillis) throws IOException {
+        if (vehicles < 1) {
+            throw new IllegalArgumentException("At least one vehicle is needed, got " + vehicles);
+        }
+        if (RoutePayloadGenerator.isFleetTicked()) {
+            throw new IllegalStateException("The fleet is advanced in real time, unset "
+                    + RoutePayloadGenerator.FLEET_TICK_MILLIS_ENV + " for the offline simulation");
+        }
+        this.clock = new SimulatedClock(startMillis);
+        this.vehicles = new RoutePayloadGenerator[vehicles];
+        this.inputs = new PluginPayloadGeneratorInput[vehicles];
+        // Seeds drawn from one random, neighbouring seeds give correlated first values
+        final Random seeds = new Random(seed);
+        for (int i = 0; i < vehicles; ++i) {
+            this.vehicles[i] = new RoutePayloadGenerator(clock, new Random(seeds.nextLong()), true, true);
+            this.inputs[i] = new Input("vehicle/" + i, configFile);
+            this.vehicles[i].bind(configFile, inputs[i].getTopic());
+        }
+        this.fleet = RoutePayloadGenerator.getFleet();
+    }
+
+    /**
+     * Lets every vehicle publish once per interval and writes the payloads. Vehicles without a location yet are skipped.
+     *
+     * @param pool advances the vehicles in parallel, or null to advance them on the calling thread
+     * @return number of payloads written
+     */
+    public long run(final long durationMillis, final long intervalMillis, final @NotNull TelemetryWriter writer,
+                    final @Nullable ForkJoinPool pool) throws IOException {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Publish interval must be positive, got " + intervalMillis);
+        }
+        final long steps = durationMillis / intervalMillis;
+        final long start = System.nanoTime();
+        long written = 0;
+        for (long step = 0; step < steps; ++step) {
+            final long time = clock.millis();
+            // The first tick requests the initial routes, sequentially so the same vehicle pre-warms the route cache
+            fleet.tick(time, step == 0 ? null : pool);
+            for (int i = 0; i < vehicles.length; ++i) {
+                final ByteBuffer payload = vehicles[i].nextPayload(inputs[i]);
+                if (payload != RoutePayloadGenerator.FAILURE_PAYLOAD) {
+                    writer.write(i, time, payload);
+                    written++;
+                }
+            }
+            clock.advance(intervalMillis);
+            if ((step + 1) % (Math.max(1, steps / PROGRESS_LOG_STEPS)) == 0) {
+                final long elapsed = Math.max(1, System.nanoTime() - start);
+                log.info("Simulated {} of {} steps, {} payloads, {} payloads/s", step + 1, steps, written,
+                        written * TimeUnit.SECONDS.toNanos(1) / elapsed);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Releases all vehicles from the fleet, the simulation can't run afterwards.
+     */
+    @Override
+    public void close() {
+        for (RoutePayloadGenerator vehicle : vehicles) {
+            vehicle.release();
+        }
+    }
+
+    /**
+     * @return the simulated time of the next publish
+     */
+    public long getMillis() {
+        return clock.millis();
+    }
+
+    private static class Input implements PluginPayloadGeneratorInput {
+        @NotNull
+        private final String topic;
+        @NotNull
+        private final String configFile;
+
+        Input(@NotNull String topic, @NotNull String configFile) {
+            this.topic = topic;
+            this.configFile = configFile;
+        }
+
+        @Override
+        public @NotNull String getTopic() {
+            return topic;
+        }
+
+        @Override
+        public long getRate() {
+            return 0;
+        }
+
+        @Override
+        public long getCount() {
+            return 1;
+        }
+
+        @Override
+        public @NotNull String getMessage() {
+            return configFile;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.hivemq.generator.offline;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock that only moves when it is told to, so vehicles can be driven through simulated time as fast as they can be
+ * computed. The time is set between simulation steps and read by every vehicle of the step.
+ */
+public class SimulatedClock extends Clock {
+
+    /* Epoch milliseconds */
+    private volatile long millis;
+
+    public SimulatedClock(final long millis) {
+        this.millis = millis;
+    }
+
+    public void setMillis(final long millis) {
+        this.millis = millis;
+    }
+
+    public void advance(final long millis) {
+        this.millis += millis;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public @NotNull Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public @NotNull ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    /**
+     * The zone is only informational, the simulated time is always UTC epoch milliseconds.
+     */
+    @Override
+    public @NotNull Clock withZone(final @NotNull ZoneId zone) {
+        return this;
+    }
+}
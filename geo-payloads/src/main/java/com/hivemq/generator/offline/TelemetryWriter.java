@@ -0,0 +1,128 @@
+package com.hivemq.generator.offline;
+
+import com.hivemq.generator.payload.BinaryCarDataCodec;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams the payloads of an offline simulation to a file, each with the vehicle and the time it was generated at.
+ * <p>
+ * JSON payloads are written as newline delimited JSON, one document per line, e.g. for {@code mongoimport}:
+ * <pre>
+ * {"vehicle":12,"timestamp":1577836800000,"data":{"location":{"lat":53.55,"lon":9.99},...}}
+ * </pre>
+ * Binary payloads ({@link BinaryCarDataCodec}) are written as frames after an 8 byte header (big endian):
+ * <pre>
+ * offset  size  field
+ * 0       4     magic 0x43445846 ("CDXF")
+ * 4       4     format version, currently 1
+ * frame:
+ * 0       4     vehicle
+ * 4       8     timestamp in epoch milliseconds
+ * 12      2     payload length n (unsigned)
+ * 14      n     payload
+ * </pre>
+ * The format is chosen by the first payload, so it follows the payload format of the configuration. Not thread safe.
+ */
+public class TelemetryWriter implements Closeable {
+    public static final int MAGIC = 0x43445846;
+    public static final int VERSION = 1;
+
+    private static final byte[] VEHICLE = "{\"vehicle\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMESTAMP = ",\"timestamp\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA = ",\"data\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "}\n".getBytes(StandardCharsets.US_ASCII);
+
+    @NotNull
+    private final DataOutputStream out;
+    /* Scratch space for the digits of a long */
+    @NotNull
+    private final byte[] digits = new byte[20];
+    /* Decided by the first payload */
+    private boolean started;
+    private boolean binary;
+    private long records;
+
+    public TelemetryWriter(final @NotNull OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 20));
+    }
+
+    /**
+     * @param payload the remaining bytes are written, the buffer is left unchanged
+     */
+    public void write(final int vehicle, final long timestamp, final @NotNull ByteBuffer payload) throws IOException {
+        final int length = payload.remaining();
+        if (length == 0) {
+            throw new IllegalArgumentException("Empty payload for vehicle " + vehicle);
+        }
+        if (!started) {
+            started = true;
+            binary = payload.get(payload.position()) == BinaryCarDataCodec.MAGIC;
+            if (binary) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+        }
+        if (binary) {
+            if (length > 0xFFFF) {
+                throw new IllegalArgumentException("Payload of " + length + " bytes is too large for a frame");
+            }
+            out.writeInt(vehicle);
+            out.writeLong(timestamp);
+            out.writeShort(length);
+        } else {
+            out.write(VEHICLE);
+            writeLong(vehicle);
+            out.write(TIMESTAMP);
+            writeLong(timestamp);
+            out.write(DATA);
+        }
+        if (payload.hasArray()) {
+            out.write(payload.array(), payload.arrayOffset() + payload.position(), length);
+        } else {
+            for (int i = payload.position(); i < payload.limit(); ++i) {
+                out.write(payload.get(i));
+            }
+        }
+        if (!binary) {
+            out.write(END);
+        }
+        records++;
+    }
+
+    /**
+     * @return number of payloads written so far
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value < 0) {
+            out.write('-');
+            if (value == Long.MIN_VALUE) {
+                out.write("9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        out.write(digits, position, digits.length - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,285 @@
+package com.hivemq.generator.payload;
+
+import com.hivemq.model.CarData;
+import com.hivemq.model.CarDataBatch;
+import com.hivemq.model.Location;
+import com.hivemq.model.Sample;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Fixed layout binary encoding of the car-data.json telemetry, roughly a quarter of the JSON size.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * offset  size  field
+ * 0       1     magic byte 0xCD, never the first byte of a JSON document
+ * 1       1     format version, currently 1
+ * 2       1     flags: bit 0 break, bit 1 double coordinates, bit 2 route id present, bit 3 batch
+ * 3       4/8   lat (float or double depending on bit 1)
+ * 7/11    4/8   lon
+ * 11/19   4     speed in km/h (float)
+ * 15/23   4     speed limit in km/h (float)
+ * 19/27   16    route id as UUID (most significant bits first), only if bit 2 is set
+ * </pre>
+ * The lat/lon fields carry the same values as the JSON format's location.
+ * <p>
+ * Batches (bit 3 set, bit 0 unused) mirror car-data-batch.json:
+ * <pre>
+ * offset  size  field
+ * 3       1     number of samples n (unsigned)
+ * 4       8     timestamp of the first sample in epoch milliseconds
+ * 12      4/8   lat of the first sample (float or double depending on bit 1)
+ * 16/20   4/8   lon of the first sample
+ * 20/28   16    route id, only if bit 2 is set
+ * ...     21*n  samples: dt in ms (int), dLat and dLon in millionths of a degree (int), speed and speed limit (float),
+ *               flags (bit 0 break)
+ * </pre>
+ * Encoding writes into scratch buffers owned by the codec and returns a copy of the payload, which stays valid while
+ * the next one is encoded. Decoding is stateless.
+ */
+public class BinaryCarDataCodec {
+    public static final byte MAGIC = (byte) 0xCD;
+    public static final byte VERSION = 1;
+
+    public static final int FLAG_BREAK = 1;
+    public static final int FLAG_DOUBLE_COORDINATES = 1 << 1;
+    public static final int FLAG_ROUTE_ID = 1 << 2;
+    public static final int FLAG_BATCH = 1 << 3;
+
+    /* Header plus two doubles, two floats and a UUID */
+    public static final int MAX_SIZE = 3 + 2 * Double.BYTES + 2 * Float.BYTES + 2 * Long.BYTES;
+
+    public static final int MAX_BATCH_SAMPLES = 255;
+    public static final int BATCH_SAMPLE_SIZE = 3 * Integer.BYTES + 2 * Float.BYTES + 1;
+    /* Batch header up to the first sample with double coordinates and a route id */
+    public static final int MAX_BATCH_HEADER_SIZE = 4 + Long.BYTES + 2 * Double.BYTES + 2 * Long.BYTES;
+
+    private final boolean doubleCoordinates;
+    @NotNull
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_SIZE);
+    /* Only allocated once a batch is encoded, grows with the batch size */
+    @Nullable
+    private ByteBuffer batchBuffer;
+
+    /**
+     * @param doubleCoordinates write lat/lon as doubles instead of floats (~0.5m resolution)
+     */
+    public BinaryCarDataCodec(boolean doubleCoordinates) {
+        this.doubleCoordinates = doubleCoordinates;
+    }
+
+    /**
+     * @return approximate heap size of this codec and its buffers
+     */
+    public long estimatedBytes() {
+        return 24 + 64 + MAX_SIZE + (batchBuffer == null ? 0 : 64 + batchBuffer.capacity());
+    }
+
+    public boolean isDoubleCoordinates() {
+        return doubleCoordinates;
+    }
+
+    /**
+     * @param routeId id of the current route or {@code null} if none was chosen yet
+     * @return the encoded payload, owned by the caller
+     */
+    @NotNull
+    public ByteBuffer encode(final double lat,
+                             final double lon,
+                             final @Nullable UUID routeId,
+                             final double speed,
+                             final double speedLimit,
+                             final boolean isBreak) {
+        int flags = 0;
+        if (isBreak) {
+            flags |= FLAG_BREAK;
+        }
+        if (doubleCoordinates) {
+            flags |= FLAG_DOUBLE_COORDINATES;
+        }
+        if (routeId != null) {
+            flags |= FLAG_ROUTE_ID;
+        }
+        buffer.clear();
+        buffer.put(MAGIC).put(VERSION).put((byte) flags);
+        if (doubleCoordinates) {
+            buffer.putDouble(lat).putDouble(lon);
+        } else {
+            buffer.putFloat((float) lat).putFloat((float) lon);
+        }
+        buffer.putFloat((float) speed).putFloat((float) speedLimit);
+        if (routeId != null) {
+            buffer.putLong(routeId.getMostSignificantBits()).putLong(routeId.getLeastSignificantBits());
+        }
+        return ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    /**
+     * Writes all samples as a batch with the route id of the first sample.
+     *
+     * @return the encoded payload, owned by the caller
+     * @throws IllegalArgumentException if there are no or more than {@link #MAX_BATCH_SAMPLES} samples
+     */
+    @NotNull
+    public ByteBuffer encodeBatch(final @NotNull CarDataSamples samples) {
+        final int count = samples.size();
+        if (count == 0 || count > MAX_BATCH_SAMPLES) {
+            throw new IllegalArgumentException("Batch must contain 1 to " + MAX_BATCH_SAMPLES + " samples, got " + count);
+        }
+        final int size = MAX_BATCH_HEADER_SIZE + count * BATCH_SAMPLE_SIZE;
+        if (batchBuffer == null || batchBuffer.capacity() < size) {
+            batchBuffer = ByteBuffer.allocate(size);
+        }
+        final ByteBuffer out = batchBuffer;
+        final UUID routeId = samples.getRouteUuid(0);
+        int flags = FLAG_BATCH;
+        if (doubleCoordinates) {
+            flags |= FLAG_DOUBLE_COORDINATES;
+        }
+        if (routeId != null) {
+            flags |= FLAG_ROUTE_ID;
+        }
+        out.clear();
+        out.put(MAGIC).put(VERSION).put((byte) flags).put((byte) count);
+        out.putLong(samples.getTimestamp(0));
+        if (doubleCoordinates) {
+            out.putDouble(samples.getLat(0)).putDouble(samples.getLon(0));
+        } else {
+            out.putFloat((float) samples.getLat(0)).putFloat((float) samples.getLon(0));
+        }
+        if (routeId != null) {
+            out.putLong(routeId.getMostSignificantBits()).putLong(routeId.getLeastSignificantBits());
+        }
+        for (int i = 0; i < count; ++i) {
+            out.putInt((int) (samples.getTimestamp(i) - samples.getTimestamp(0)));
+            out.putInt((int) samples.getLatDelta(i));
+            out.putInt((int) samples.getLonDelta(i));
+            out.putFloat((float) samples.getSpeed(i)).putFloat((float) samples.getSpeedLimit(i));
+            out.put((byte) (samples.isBreak(i) ? FLAG_BREAK : 0));
+        }
+        return ByteBuffer.wrap(Arrays.copyOf(out.array(), out.position()));
+    }
+
+    /**
+     * @return true if the payload starts with the binary format's magic byte
+     */
+    public static boolean isBinary(final @NotNull ByteBuffer payload) {
+        return payload.remaining() > 0 && payload.get(payload.position()) == MAGIC;
+    }
+
+    /**
+     * @return true if the payload is a binary batch
+     */
+    public static boolean isBatch(final @NotNull ByteBuffer payload) {
+        return isBinary(payload) && payload.remaining() > 2 && (payload.get(payload.position() + 2) & FLAG_BATCH) != 0;
+    }
+
+    /**
+     * Decodes a binary payload into the model used for the JSON format.
+     *
+     * @throws IllegalArgumentException if the payload is not a single sample in the binary format or truncated
+     */
+    @NotNull
+    public static CarData decode(final @NotNull ByteBuffer payload) {
+        final ByteBuffer in = payload.duplicate();
+        final int flags = readHeader(in);
+        if ((flags & FLAG_BATCH) != 0) {
+            throw new IllegalArgumentException("Binary car data payload is a batch");
+        }
+        final boolean doubles = (flags & FLAG_DOUBLE_COORDINATES) != 0;
+        final boolean hasRouteId = (flags & FLAG_ROUTE_ID) != 0;
+        final int expected = (doubles ? 2 * Double.BYTES : 2 * Float.BYTES) + 2 * Float.BYTES + (hasRouteId ? 2 * Long.BYTES : 0);
+        if (in.remaining() < expected) {
+            throw new IllegalArgumentException("Truncated binary car data payload, expected " + expected + " more bytes but got " + in.remaining());
+        }
+        final Location location = new Location();
+        if (doubles) {
+            location.setLat(in.getDouble());
+            location.setLon(in.getDouble());
+        } else {
+            location.setLat((double) in.getFloat());
+            location.setLon((double) in.getFloat());
+        }
+        final CarData carData = new CarData();
+        carData.setLocation(location);
+        carData.setSpeed((double) in.getFloat());
+        carData.setSpeedLimit((double) in.getFloat());
+        carData.setBreak((flags & FLAG_BREAK) != 0);
+        if (hasRouteId) {
+            carData.setRouteId(new UUID(in.getLong(), in.getLong()).toString());
+        }
+        return carData;
+    }
+
+    /**
+     * Decodes a binary batch into the model used for the JSON batch format.
+     *
+     * @throws IllegalArgumentException if the payload is not a batch in the binary format or truncated
+     */
+    @NotNull
+    public static CarDataBatch decodeBatch(final @NotNull ByteBuffer payload) {
+        final ByteBuffer in = payload.duplicate();
+        final int flags = readHeader(in);
+        if ((flags & FLAG_BATCH) == 0) {
+            throw new IllegalArgumentException("Binary car data payload is not a batch");
+        }
+        final boolean doubles = (flags & FLAG_DOUBLE_COORDINATES) != 0;
+        final boolean hasRouteId = (flags & FLAG_ROUTE_ID) != 0;
+        if (!in.hasRemaining()) {
+            throw new IllegalArgumentException("Truncated binary car data batch");
+        }
+        final int count = in.get() & 0xFF;
+        final int expected = Long.BYTES + (doubles ? 2 * Double.BYTES : 2 * Float.BYTES) + (hasRouteId ? 2 * Long.BYTES : 0) + count * BATCH_SAMPLE_SIZE;
+        if (in.remaining() < expected) {
+            throw new IllegalArgumentException("Truncated binary car data batch, expected " + expected + " more bytes but got " + in.remaining());
+        }
+        final CarDataBatch batch = new CarDataBatch();
+        batch.setTimestamp(in.getLong());
+        if (doubles) {
+            batch.setLat(in.getDouble());
+            batch.setLon(in.getDouble());
+        } else {
+            batch.setLat((double) in.getFloat());
+            batch.setLon((double) in.getFloat());
+        }
+        if (hasRouteId) {
+            batch.setRouteId(new UUID(in.getLong(), in.getLong()).toString());
+        }
+        final List<Sample> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            final Sample sample = new Sample();
+            sample.setDt((long) in.getInt());
+            sample.setdLat((long) in.getInt());
+            sample.setdLon((long) in.getInt());
+            sample.setSpeed((double) in.getFloat());
+            sample.setSpeedLimit((double) in.getFloat());
+            sample.setBreak((in.get() & FLAG_BREAK) != 0);
+            samples.add(sample);
+        }
+        batch.setSamples(samples);
+        return batch;
+    }
+
+    /**
+     * Reads magic byte and version.
+     *
+     * @return the flags
+     */
+    private static int readHeader(final @NotNull ByteBuffer in) {
+        if (in.remaining() < 3 || in.get() != MAGIC) {
+            throw new IllegalArgumentException("Not a binary car data payload");
+        }
+        final byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary car data version " + version);
+        }
+        return in.get();
+    }
+}
@@ -0,0 +1,237 @@
+package com.hivemq.generator.payload;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes the car-data.json and car-data-batch.json telemetry formats without creating {@link com.hivemq.model.CarData}
+ * objects. The output is byte-for-byte identical to what Jackson writes for the generated model classes.
+ * <p>
+ * Payloads are written into a scratch buffer owned by the encoder and returned as a copy of exactly their size, as the
+ * client may still be sending a payload while the generator encodes the next one. Encoders are not thread safe, each
+ * payload generator keeps its own.
+ */
+public class CarDataEncoder {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    private static final byte[] LOCATION_LAT = "{\"location\":{\"lat\":".getBytes();
+    private static final byte[] LON = ",\"lon\":".getBytes();
+    private static final byte[] ROUTE_ID = ",\"routeId\":\"".getBytes();
+    private static final byte[] SPEED = ",\"speed\":".getBytes();
+    private static final byte[] SPEED_LIMIT = ",\"speedLimit\":".getBytes();
+    private static final byte[] BREAK_TRUE = ",\"break\":true}".getBytes();
+    private static final byte[] BREAK_FALSE = ",\"break\":false}".getBytes();
+
+    private static final byte[] BATCH_ROUTE_ID = "\"routeId\":\"".getBytes();
+    private static final byte[] TIMESTAMP = "\"timestamp\":".getBytes();
+    private static final byte[] LAT = ",\"lat\":".getBytes();
+    private static final byte[] SAMPLES = ",\"samples\":[".getBytes();
+    private static final byte[] DT = "{\"dt\":".getBytes();
+    private static final byte[] D_LAT = ",\"dLat\":".getBytes();
+    private static final byte[] D_LON = ",\"dLon\":".getBytes();
+
+    /* Scratch space for formatting doubles, StringBuilder appends them without an intermediate String */
+    @NotNull
+    private final StringBuilder number = new StringBuilder(32);
+    @NotNull
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    /**
+     * @return approximate heap size of this encoder and its scratch buffers
+     */
+    public long estimatedBytes() {
+        return 24 + 48 + number.capacity() * 2L + 16 + buffer.length;
+    }
+
+    /**
+     * @return the encoded payload, owned by the caller
+     */
+    @NotNull
+    public ByteBuffer encode(final double lat,
+                             final double lon,
+                             final @Nullable String routeId,
+                             final double speed,
+                             final double speedLimit,
+                             final boolean isBreak) {
+        position = 0;
+        write(LOCATION_LAT);
+        writeDouble(lat);
+        write(LON);
+        writeDouble(lon);
+        writeByte('}');
+        // Jackson omits null values for the generated model
+        if (routeId != null) {
+            write(ROUTE_ID);
+            writeString(routeId);
+            writeByte('"');
+        }
+        write(SPEED);
+        writeDouble(speed);
+        write(SPEED_LIMIT);
+        writeDouble(speedLimit);
+        write(isBreak ? BREAK_TRUE : BREAK_FALSE);
+
+        return ByteBuffer.wrap(Arrays.copyOf(buffer, position));
+    }
+
+    /**
+     * Writes all samples in the car-data-batch.json format, with the route id of the first sample.
+     *
+     * @return the encoded payload, owned by the caller
+     * @throws IllegalArgumentException if there are no samples
+     */
+    @NotNull
+    public ByteBuffer encodeBatch(final @NotNull CarDataSamples samples) {
+        if (samples.size() == 0) {
+            throw new IllegalArgumentException("Batch must contain at least one sample");
+        }
+        position = 0;
+        writeByte('{');
+        final String routeId = samples.getRouteId(0);
+        if (routeId != null) {
+            write(BATCH_ROUTE_ID);
+            writeString(routeId);
+            writeByte('"');
+            writeByte(',');
+        }
+        write(TIMESTAMP);
+        writeLong(samples.getTimestamp(0));
+        write(LAT);
+        writeDouble(samples.getLat(0));
+        write(LON);
+        writeDouble(samples.getLon(0));
+        write(SAMPLES);
+        for (int i = 0; i < samples.size(); ++i) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            write(DT);
+            writeLong(samples.getTimestamp(i) - samples.getTimestamp(0));
+            write(D_LAT);
+            writeLong(samples.getLatDelta(i));
+            write(D_LON);
+            writeLong(samples.getLonDelta(i));
+            write(SPEED);
+            writeDouble(samples.getSpeed(i));
+            write(SPEED_LIMIT);
+            writeDouble(samples.getSpeedLimit(i));
+            write(samples.isBreak(i) ? BREAK_TRUE : BREAK_FALSE);
+        }
+        writeByte(']');
+        writeByte('}');
+
+        return ByteBuffer.wrap(Arrays.copyOf(buffer, position));
+    }
+
+    private void writeLong(final long value) {
+        number.setLength(0);
+        number.append(value);
+        writeNumber();
+    }
+
+    private void writeDouble(final double value) {
+        number.setLength(0);
+        // Jackson quotes non-finite numbers by default
+        final boolean quote = Double.isNaN(value) || Double.isInfinite(value);
+        if (quote) {
+            writeByte('"');
+        }
+        number.append(value);
+        writeNumber();
+        if (quote) {
+            writeByte('"');
+        }
+    }
+
+    private void writeNumber() {
+        ensureCapacity(number.length());
+        for (int i = 0; i < number.length(); ++i) {
+            buffer[position++] = (byte) number.charAt(i);
+        }
+    }
+
+    /**
+     * Writes the string as UTF-8 with the same escaping rules Jackson uses by default.
+     */
+    private void writeString(final @NotNull String value) {
+        final int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeByte('\\');
+                    writeByte(c);
+                } else if (c < 0x20) {
+                    writeControlCharacter(c);
+                } else {
+                    writeByte(c);
+                }
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Jackson escapes characters outside of the BMP instead of writing them as four byte sequences
+                writeByte('\\');
+                writeUnicodeEscape(c);
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeControlCharacter(final char c) {
+        writeByte('\\');
+        switch (c) {
+            case '\b':
+                writeByte('b');
+                break;
+            case '\t':
+                writeByte('t');
+                break;
+            case '\n':
+                writeByte('n');
+                break;
+            case '\f':
+                writeByte('f');
+                break;
+            case '\r':
+                writeByte('r');
+                break;
+            default:
+                writeUnicodeEscape(c);
+        }
+    }
+
+    private void writeUnicodeEscape(final char c) {
+        writeByte('u');
+        writeByte(HEX[(c >> 12) & 0xF]);
+        writeByte(HEX[(c >> 8) & 0xF]);
+        writeByte(HEX[(c >> 4) & 0xF]);
+        writeByte(HEX[c & 0xF]);
+    }
+
+    private void write(final byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(final int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (position + additional > buffer.length) {
+            final byte[] grown = new byte[Math.max(buffer.length * 2, position + additional)];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.hivemq.generator.payload;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Fixed capacity buffer of telemetry samples stored in primitive arrays, reused for every publish of a generator.
+ */
+public class CarDataSamples {
+    /* Batch formats store positions as offsets from the first sample in millionths of a degree (~0.1m) */
+    public static final double DELTA_SCALE = 1e6;
+
+    @NotNull
+    private final long[] timestamps;
+    @NotNull
+    private final double[] lats;
+    @NotNull
+    private final double[] lons;
+    @NotNull
+    private final double[] speeds;
+    @NotNull
+    private final double[] speedLimits;
+    @NotNull
+    private final boolean[] breaks;
+    /* Route ids are only referenced, both forms are kept so neither encoder has to convert them */
+    @NotNull
+    private final UUID[] routeUuids;
+    @NotNull
+    private final String[] routeIds;
+    private int size;
+
+    public CarDataSamples(final int capacity) {
+        timestamps = new long[capacity];
+        lats = new double[capacity];
+        lons = new double[capacity];
+        speeds = new double[capacity];
+        speedLimits = new double[capacity];
+        breaks = new boolean[capacity];
+        routeUuids = new UUID[capacity];
+        routeIds = new String[capacity];
+    }
+
+    /**
+     * @throws IllegalStateException if the buffer is full
+     */
+    public void add(final long timestamp,
+                    final double lat,
+                    final double lon,
+                    final UUID routeUuid,
+                    final String routeId,
+                    final double speed,
+                    final double speedLimit,
+                    final boolean isBreak) {
+        if (size == timestamps.length) {
+            throw new IllegalStateException("Sample buffer is full, capacity " + timestamps.length);
+        }
+        timestamps[size] = timestamp;
+        lats[size] = lat;
+        lons[size] = lon;
+        routeUuids[size] = routeUuid;
+        routeIds[size] = routeId;
+        speeds[size] = speed;
+        speedLimits[size] = speedLimit;
+        breaks[size] = isBreak;
+        size++;
+    }
+
+    public void removeLast() {
+        if (size > 0) {
+            size--;
+            routeUuids[size] = null;
+            routeIds[size] = null;
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; ++i) {
+            routeUuids[i] = null;
+            routeIds[i] = null;
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    /**
+     * @return approximate heap size of the buffer, without the referenced route ids
+     */
+    public long estimatedBytes() {
+        // object plus 8 arrays with 16 byte headers
+        return 48 + 8 * 16 + (long) capacity() * (5 * Long.BYTES + 1 + 2 * Integer.BYTES);
+    }
+
+    public long getTimestamp(final int index) {
+        return timestamps[index];
+    }
+
+    public double getLat(final int index) {
+        return lats[index];
+    }
+
+    public double getLon(final int index) {
+        return lons[index];
+    }
+
+    public UUID getRouteUuid(final int index) {
+        return routeUuids[index];
+    }
+
+    public String getRouteId(final int index) {
+        return routeIds[index];
+    }
+
+    public double getSpeed(final int index) {
+        return speeds[index];
+    }
+
+    public double getSpeedLimit(final int index) {
+        return speedLimits[index];
+    }
+
+    public boolean isBreak(final int index) {
+        return breaks[index];
+    }
+
+    /**
+     * @return the sample's lat relative to the first sample in units of {@code 1 / DELTA_SCALE} degrees
+     */
+    public long getLatDelta(final int index) {
+        return Math.round((lats[index] - lats[0]) * DELTA_SCALE);
+    }
+
+    /**
+     * @return the sample's lon relative to the first sample in units of {@code 1 / DELTA_SCALE} degrees
+     */
+    public long getLonDelta(final int index) {
+        return Math.round((lons[index] - lons[0]) * DELTA_SCALE);
+    }
+}
@@ -0,0 +1,211 @@
+package com.hivemq.generator.route;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.config.CHProfileConfig;
+import com.graphhopper.config.LMProfileConfig;
+import com.graphhopper.config.ProfileConfig;
+import com.graphhopper.reader.osm.GraphHopperOSM;
+import com.graphhopper.routing.util.EncodingManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Loads (or imports) the GraphHopper graph used for route planning, with the storage configured by environment
+ * variables.
+ * <p>
+ * By default the graph is read into heap-backed storage. With memory-mapped storage the graph files stay in the page
+ * cache instead of the heap, which starts faster and keeps the JVM small. Read-only memory-mapped storage
+ * additionally lets several agent JVMs on one host share the same page cache for a graph written by the
+ * GraphPreprocessor.
+ * <p>
+ * Contraction hierarchies (CH) or landmarks (LM) prepared by the GraphPreprocessor are used when present, they speed up
+ * long distance queries by orders of magnitude compared to the plain bidirectional Dijkstra.
+ */
+public final class GraphLoader {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(GraphLoader.class);
+
+    @NotNull
+    public static final String GRAPH_LOCATION_ENV = "GRAPH_LOCATION";
+    @NotNull
+    public static final String DEFAULT_GRAPH_LOCATION = "/tmp/graphhopper";
+    @NotNull
+    public static final String GRAPH_STORAGE_ENV = "GRAPH_STORAGE";
+    /**
+     * Comma separated speed-up preparations to use: ch, lm or none. Defaults to the ones present in the graph
+     * directory.
+     */
+    @NotNull
+    public static final String GRAPH_PREPARATION_ENV = "GRAPH_PREPARATION";
+
+    @NotNull
+    public static final String PROFILE = "car";
+
+    public enum Storage {
+        /* Heap-backed, imports the OSM file if there is no graph yet */
+        RAM,
+        /* Memory-mapped, imports the OSM file if there is no graph yet */
+        MMAP,
+        /* Memory-mapped without writes, the graph must already exist */
+        MMAP_READONLY;
+
+        @NotNull
+        static Storage parse(final @Nullable String value) {
+            if (value == null || value.isBlank()) {
+                return RAM;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid value '{}' for {}, using {}", value, GRAPH_STORAGE_ENV, RAM);
+                return RAM;
+            }
+        }
+    }
+
+    public enum Preparation {
+        CH("nodes_ch_" + PROFILE),
+        LM("landmarks_" + PROFILE);
+
+        /* File GraphHopper writes the preparation to */
+        @NotNull
+        private final String file;
+
+        Preparation(@NotNull String file) {
+            this.file = file;
+        }
+
+        /**
+         * @return the preparations listed in the value, or the ones found in the graph location if it is not set
+         */
+        @NotNull
+        static Set<Preparation> parse(final @Nullable String value, final @NotNull String graphLocation) {
+            final Set<Preparation> preparations = EnumSet.noneOf(Preparation.class);
+            if (value == null || value.isBlank()) {
+                for (Preparation preparation : values()) {
+                    if (Files.exists(Paths.get(graphLocation, preparation.file))) {
+                        preparations.add(preparation);
+                    }
+                }
+                return preparations;
+            }
+            for (String name : value.split(",")) {
+                final String trimmed = name.trim().toUpperCase(Locale.ROOT);
+                if (trimmed.isEmpty() || trimmed.equals("NONE")) {
+                    continue;
+                }
+                try {
+                    preparations.add(valueOf(trimmed));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Ignoring unknown preparation '{}' in {}", name, GRAPH_PREPARATION_ENV);
+                }
+            }
+            return preparations;
+        }
+    }
+
+    private GraphLoader() {
+    }
+
+    /**
+     * Loads the graph from {@link #GRAPH_LOCATION_ENV} (default {@link #DEFAULT_GRAPH_LOCATION}) with the storage from
+     * {@link #GRAPH_STORAGE_ENV}, importing the OSM file first if necessary and allowed.
+     *
+     * @param osmFile OpenStreetMap file to import if there is no graph yet
+     */
+    @NotNull
+    public static GraphHopper fromEnvironment(final @Nullable String osmFile) {
+        final String location = System.getenv(GRAPH_LOCATION_ENV);
+        final String graphLocation = location == null || location.isBlank() ? DEFAULT_GRAPH_LOCATION : location.trim();
+        return load(osmFile, graphLocation, Storage.parse(System.getenv(GRAPH_STORAGE_ENV)),
+                Preparation.parse(System.getenv(GRAPH_PREPARATION_ENV), graphLocation));
+    }
+
+    /**
+     * @param preparations speed-up preparations to use, missing ones are prepared on startup unless the storage is
+     *                     read-only
+     */
+    @NotNull
+    public static GraphHopper load(final @Nullable String osmFile,
+                                   final @NotNull String graphLocation,
+                                   final @NotNull Storage storage,
+                                   final @NotNull Set<Preparation> preparations) {
+        final GraphHopper hopper = new GraphHopperOSM()
+                .forServer();
+        hopper.setDataReaderFile(osmFile);
+        hopper.setGraphHopperLocation(graphLocation);
+        if (storage != Storage.RAM) {
+            hopper.setMemoryMapped();
+        }
+        if (storage == Storage.MMAP_READONLY) {
+            hopper.setAllowWrites(false);
+        }
+        final EncodingManager car = EncodingManager.create("car");
+        final ProfileConfig profileConfig = new ProfileConfig(PROFILE);
+        profileConfig.setWeighting("fastest").setVehicle("car").setTurnCosts(false);
+        hopper.setProfiles(profileConfig);
+        hopper.setEncodingManager(car);
+        // Queries use CH if it is enabled, LM otherwise
+        if (preparations.contains(Preparation.CH)) {
+            hopper.getCHPreparationHandler().setCHProfileConfigs(new CHProfileConfig(PROFILE));
+        }
+        if (preparations.contains(Preparation.LM)) {
+            hopper.getLMPreparationHandler().setLMProfileConfigs(new LMProfileConfig(PROFILE));
+        }
+        for (Preparation preparation : preparations) {
+            if (!Files.exists(Paths.get(graphLocation, preparation.file)) && storage != Storage.MMAP_READONLY) {
+                log.warn("No {} preparation found in {}, preparing it now. This can take a long time, consider running the GraphPreprocessor", preparation, graphLocation);
+            }
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final long rssBefore = residentMemoryKb();
+        if (storage == Storage.MMAP_READONLY) {
+            // Importing needs writes, fail with a helpful message instead
+            if (!hopper.load(graphLocation)) {
+                throw new IllegalStateException("No graph found at " + graphLocation + ", " + Storage.MMAP_READONLY + " storage requires running the GraphPreprocessor first");
+            }
+        } else {
+            hopper.importOrLoad();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        log.info("Loaded graph for OSM file {} from {} with {} storage and preparations {} in {}ms. Resident memory: {}MB (+{}MB), heap used: {}MB",
+                osmFile, graphLocation, storage, preparations, System.currentTimeMillis() - startTime,
+                residentMemoryKb() / 1024, (residentMemoryKb() - rssBefore) / 1024,
+                (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+        return hopper;
+    }
+
+    /**
+     * @return resident set size of this process in kB, -1 if it is not available (only supported on Linux)
+     */
+    public static long residentMemoryKb() {
+        final Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            final List<String> lines = Files.readAllLines(status);
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    // e.g. "VmRSS:	  123456 kB"
+                    return Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Failed to read resident memory", e);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,62 @@
+package com.hivemq.generator.route;
+
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.RoutePayloadGenerator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Immutable snapshot of the warehouse locations loaded from a GeoJSON file.
+ * Every (re)load gets a new generation, so routes cached by location index never mix two versions of the file.
+ * The destination candidates of all locations are computed once on creation.
+ */
+public class LocationSet {
+    @NotNull
+    private final String file;
+    private final long generation;
+    @NotNull
+    private final List<GHPoint> points;
+    @NotNull
+    private final WarehouseIndex index;
+
+    public LocationSet(@NotNull String file, long generation, @NotNull List<GHPoint> points) {
+        this.file = file;
+        this.generation = generation;
+        this.points = List.copyOf(points);
+        this.index = new WarehouseIndex(this.points, RoutePayloadGenerator.MINIMUM_DISTANCE_KM);
+    }
+
+    @NotNull
+    public String getFile() {
+        return file;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    @NotNull
+    public List<GHPoint> getPoints() {
+        return points;
+    }
+
+    @NotNull
+    public WarehouseIndex getIndex() {
+        return index;
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    @NotNull
+    public GHPoint get(int index) {
+        return points.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return file + "@" + generation + "(" + points.size() + " locations)";
+    }
+}
@@ -0,0 +1,55 @@
+package com.hivemq.generator.route;
+
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.geo.SharedRoute;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A route that was planned in the background and is ready to be driven by a vehicle.
+ */
+public class PlannedRoute {
+    /* Possibly shared with other vehicles */
+    @NotNull
+    private final SharedRoute route;
+    /* Locations the route was planned against, the end index refers to these */
+    @NotNull
+    private final LocationSet locations;
+    @NotNull
+    private final GHPoint startLocation;
+    @NotNull
+    private final GHPoint endLocation;
+    /* Index of the destination within the location list, used as the start of the following route */
+    private final int endIndex;
+
+    public PlannedRoute(@NotNull SharedRoute route, @NotNull LocationSet locations, @NotNull GHPoint startLocation, @NotNull GHPoint endLocation, int endIndex) {
+        this.route = route;
+        this.locations = locations;
+        this.startLocation = startLocation;
+        this.endLocation = endLocation;
+        this.endIndex = endIndex;
+    }
+
+    @NotNull
+    public SharedRoute getRoute() {
+        return route;
+    }
+
+    @NotNull
+    public LocationSet getLocations() {
+        return locations;
+    }
+
+    @NotNull
+    public GHPoint getStartLocation() {
+        return startLocation;
+    }
+
+    @NotNull
+    public GHPoint getEndLocation() {
+        return endLocation;
+    }
+
+    public int getEndIndex() {
+        return endIndex;
+    }
+}
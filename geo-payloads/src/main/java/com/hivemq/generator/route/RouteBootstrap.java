@@ -0,0 +1,117 @@
+package com.hivemq.generator.route;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * First routes for the expected number of vehicles, planned together in parallel on all cores instead of one request
+ * per vehicle piling up in the planner queue during the scenario's ramp-up.
+ * <p>
+ * Vehicles claim the routes in order and swap them in once planned, a vehicle beyond the expected count plans its own.
+ * Each route starts at a random location and has its own seed, drawn from the bootstrap seed up front.
+ */
+public class RouteBootstrap {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(RouteBootstrap.class);
+
+    /**
+     * Plans the route from the start location, drawing the destination from the random.
+     */
+    @FunctionalInterface
+    interface Planner {
+        @NotNull
+        PlannedRoute plan(int startIndex, @NotNull Random random);
+    }
+
+    @NotNull
+    private final LocationSet locations;
+    @NotNull
+    private final CompletableFuture<PlannedRoute>[] routes;
+    @NotNull
+    private final long[] seeds;
+    @NotNull
+    private final AtomicInteger claimed = new AtomicInteger();
+    @NotNull
+    private final AtomicInteger failed = new AtomicInteger();
+    /* Completes with the wall-clock time in milliseconds once every route was planned or failed */
+    @NotNull
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+
+    @SuppressWarnings("unchecked")
+    RouteBootstrap(final @NotNull LocationSet locations, final int count, final long seed) {
+        this.locations = locations;
+        this.routes = new CompletableFuture[count];
+        this.seeds = new long[count];
+        final Random random = new Random(seed);
+        for (int i = 0; i < count; ++i) {
+            routes[i] = new CompletableFuture<>();
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Plans all routes with a parallel stream on a pool of their own, completing each vehicle's future as soon as its
+     * route is planned. Blocks until all are done.
+     */
+    void run(final @NotNull Planner planner) {
+        final long start = System.nanoTime();
+        log.info("Bootstrapping the first routes of {} vehicles from {}", routes.length, locations);
+        RoutePlanner.inParallelPool("route-bootstrap", () -> IntStream.range(0, routes.length).parallel().forEach(i -> {
+            final Random random = new Random(seeds[i]);
+            try {
+                routes[i].complete(planner.plan(random.nextInt(locations.size()), random));
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                routes[i].completeExceptionally(e);
+            }
+        }));
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Bootstrapped the first routes of {} vehicles in {}ms, {} failed", routes.length, millis, failed.get());
+        completion.complete(millis);
+    }
+
+    /**
+     * @return the next unclaimed route, done once planned, or null if all routes were claimed
+     */
+    @Nullable
+    public CompletableFuture<PlannedRoute> claim() {
+        // Checked first, so claims beyond the count can't overflow the counter
+        if (claimed.get() >= routes.length) {
+            return null;
+        }
+        final int index = claimed.getAndIncrement();
+        return index < routes.length ? routes[index] : null;
+    }
+
+    @NotNull
+    public LocationSet getLocations() {
+        return locations;
+    }
+
+    /**
+     * @return number of vehicles the routes are planned for
+     */
+    public int size() {
+        return routes.length;
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return future completing with the wall-clock time of the bootstrap in milliseconds
+     */
+    @NotNull
+    public CompletableFuture<Long> getCompletion() {
+        return completion;
+    }
+}
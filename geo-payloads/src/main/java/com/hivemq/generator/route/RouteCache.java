@@ -0,0 +1,168 @@
+package com.hivemq.generator.route;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.hivemq.generator.geo.RouteSimplifier;
+import com.hivemq.generator.geo.SharedRoute;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+
+/**
+ * Process-wide cache of planned routes between two locations of the same location file.
+ * Trucks mostly drive between the same fixed set of warehouses, so the same pair is requested over and over again.
+ * <p>
+ * The cache is bounded by the total number of route points it holds, least recently used routes are evicted first.
+ */
+public class RouteCache {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(RouteCache.class);
+
+    @NotNull
+    public static final String MAX_POINTS_ENV = "ROUTE_CACHE_MAX_POINTS";
+
+    /**
+     * Roughly 50 to 100 long distance routes across Germany
+     */
+    public static final long DEFAULT_MAX_POINTS = 1_000_000L;
+
+    @NotNull
+    private final Cache<RouteKey, SharedRoute> cache;
+    private final long maxPoints;
+
+    public RouteCache(long maxPoints) {
+        this.maxPoints = maxPoints;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxPoints)
+                .<RouteKey, SharedRoute>weigher((key, route) -> Math.max(1, route.size()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Creates a cache bounded by the {@link #MAX_POINTS_ENV} environment variable, 0 disables caching.
+     */
+    @NotNull
+    public static RouteCache fromEnvironment() {
+        long maxPoints = DEFAULT_MAX_POINTS;
+        final String value = System.getenv(MAX_POINTS_ENV);
+        if (value != null && !value.isBlank()) {
+            try {
+                maxPoints = Math.max(0L, Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value '{}' for {}, using {}", value, MAX_POINTS_ENV, DEFAULT_MAX_POINTS);
+            }
+        }
+        log.info("Caching up to {} route points", maxPoints);
+        return new RouteCache(maxPoints);
+    }
+
+    @Nullable
+    public SharedRoute get(@NotNull RouteKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(@NotNull RouteKey key, @NotNull SharedRoute route) {
+        if (maxPoints > 0) {
+            cache.put(key, route);
+        }
+    }
+
+    public boolean contains(@NotNull RouteKey key) {
+        return cache.asMap().containsKey(key);
+    }
+
+    /**
+     * Drops the routes of all other generations of the location file, their indices no longer match the file.
+     */
+    public void retainOnly(@NotNull LocationSet current) {
+        cache.asMap().keySet().removeIf(key -> key.locationFile.equals(current.getFile()) && key.generation != current.getGeneration());
+    }
+
+    /**
+     * @return hit, miss and eviction counts since the cache was created
+     */
+    @NotNull
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return number of cached routes
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return approximate heap size of the cached routes, iterates over all of them
+     */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (SharedRoute route : cache.asMap().values()) {
+            bytes += route.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        final CacheStats stats = stats();
+        return "RouteCache{" +
+                "size=" + size() +
+                ", estimatedMB=" + estimatedBytes() / (1024 * 1024) +
+                ", hits=" + stats.hitCount() +
+                ", misses=" + stats.missCount() +
+                ", hitRate=" + stats.hitRate() +
+                ", evictions=" + stats.evictionCount() +
+                '}';
+    }
+
+    /**
+     * Identifies a route by the indices of its start and end within a generation of a location file, and how it was
+     * simplified.
+     */
+    public static final class RouteKey {
+        @NotNull
+        private final String locationFile;
+        private final long generation;
+        private final int from;
+        private final int to;
+        @NotNull
+        private final RouteSimplifier simplifier;
+
+        public RouteKey(@NotNull LocationSet locations, int from, int to, @NotNull RouteSimplifier simplifier) {
+            this.locationFile = locations.getFile();
+            this.generation = locations.getGeneration();
+            this.from = from;
+            this.to = to;
+            this.simplifier = simplifier;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RouteKey routeKey = (RouteKey) o;
+            return from == routeKey.from &&
+                    to == routeKey.to &&
+                    generation == routeKey.generation &&
+                    locationFile.equals(routeKey.locationFile) &&
+                    simplifier.equals(routeKey.simplifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(locationFile, generation, from, to, simplifier);
+        }
+
+        @Override
+        public String toString() {
+            return locationFile + "@" + generation + "[" + from + "->" + to + "]";
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.hivemq.generator.route;
+
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.geo.GeoMath;
+import com.hivemq.generator.geo.SharedRoute;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only view of a route corpus file written by the GraphPreprocessor, so agents can drive precomputed routes
+ * without loading the OSM graph.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header      magic "RCPS", version (int), location count n (int), route count m (int)
+ * locations   n * (lat, lon) as doubles, in the order of the location file the corpus was built from
+ * index       m * (from index (int), to index (int), offset of the route record (long)), sorted by from index
+ * routes      distance in m (double), time in ms (long), point count p (int), instruction count k (int),
+ *             p * lat and then p * lon in millionths of a degree (int),
+ *             p * cumulative distance in m along the stored (rounded) points (double),
+ *             k * (point count (int), distance in m (float), time in ms (int), sign (int))
+ * </pre>
+ * The file is memory-mapped, only the locations and index are read on open. Route records are decoded on demand.
+ */
+public class RouteCorpus {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(RouteCorpus.class);
+
+    public static final int MAGIC = 0x52435053;
+    public static final int VERSION = 2;
+    public static final double COORDINATE_SCALE = 1e6;
+
+    @NotNull
+    private final String file;
+    @NotNull
+    private final LocationSet locations;
+    /* Routes of location i are firstRoute[i] until firstRoute[i + 1] (exclusive) */
+    @NotNull
+    private final int[] firstRoute;
+    @NotNull
+    private final int[] destinations;
+    /* Route records are mapped in segments of at most 2GB, no record crosses a segment border */
+    @NotNull
+    private final ByteBuffer[] segments;
+    @NotNull
+    private final int[] segmentOf;
+    @NotNull
+    private final int[] segmentOffsets;
+
+    private RouteCorpus(@NotNull String file, @NotNull FileChannel channel) throws IOException {
+        this.file = file;
+        final long size = channel.size();
+        final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 16));
+        if (size < 16 || header.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a route corpus");
+        }
+        final int version = header.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported route corpus version " + version + " in " + file);
+        }
+        final int locationCount = header.getInt(8);
+        final int routeCount = header.getInt(12);
+        final long indexEnd = 16 + locationCount * 2L * Double.BYTES + routeCount * (2L * Integer.BYTES + Long.BYTES);
+        if (indexEnd > Math.min(size, Integer.MAX_VALUE)) {
+            throw new IOException("Route corpus " + file + " is truncated");
+        }
+        final ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, indexEnd);
+        int position = 16;
+        final List<GHPoint> points = new ArrayList<>(locationCount);
+        for (int i = 0; i < locationCount; ++i) {
+            points.add(new GHPoint(index.getDouble(position), index.getDouble(position + Double.BYTES)));
+            position += 2 * Double.BYTES;
+        }
+        this.locations = new LocationSet(file, 0, points);
+
+        this.firstRoute = new int[locationCount + 1];
+        this.destinations = new int[routeCount];
+        final long[] offsets = new long[routeCount];
+        int previousFrom = 0;
+        for (int route = 0; route < routeCount; ++route) {
+            final int from = index.getInt(position);
+            if (from < previousFrom || from >= locationCount) {
+                throw new IOException("Route index of " + file + " is not sorted by start location");
+            }
+            // Locations without routes start where the next location starts
+            for (int location = previousFrom + 1; location <= from; ++location) {
+                firstRoute[location] = route;
+            }
+            previousFrom = from;
+            destinations[route] = index.getInt(position + Integer.BYTES);
+            offsets[route] = index.getLong(position + 2 * Integer.BYTES);
+            if (offsets[route] < indexEnd || offsets[route] >= size || (route > 0 && offsets[route] < offsets[route - 1])) {
+                throw new IOException("Invalid route offset in " + file);
+            }
+            position += 2 * Integer.BYTES + Long.BYTES;
+        }
+        for (int location = previousFrom + 1; location <= locationCount; ++location) {
+            firstRoute[location] = routeCount;
+        }
+
+        // Records are stored in index order, each one ends where the next one starts
+        this.segmentOf = new int[routeCount];
+        this.segmentOffsets = new int[routeCount];
+        final List<ByteBuffer> mapped = new ArrayList<>();
+        long segmentStart = routeCount > 0 ? offsets[0] : indexEnd;
+        for (int route = 0; route < routeCount; ++route) {
+            final long routeEnd = route + 1 < routeCount ? offsets[route + 1] : size;
+            if (routeEnd - segmentStart > Integer.MAX_VALUE) {
+                mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, offsets[route] - segmentStart));
+                segmentStart = offsets[route];
+                if (routeEnd - segmentStart > Integer.MAX_VALUE) {
+                    throw new IOException("Route record larger than 2GB in " + file);
+                }
+            }
+            segmentOf[route] = mapped.size();
+            segmentOffsets[route] = (int) (offsets[route] - segmentStart);
+        }
+        mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, size - segmentStart));
+        this.segments = mapped.toArray(new ByteBuffer[0]);
+    }
+
+    /**
+     * Memory-maps the corpus file and reads its index.
+     *
+     * @throws IOException if the file can't be read or is not a route corpus
+     */
+    @NotNull
+    public static RouteCorpus open(final @NotNull String file) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final Path path = Paths.get(file);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mappings stay valid after the channel is closed
+            final RouteCorpus corpus = new RouteCorpus(file, channel);
+            log.info("Opened route corpus {} with {} routes between {} locations in {}ms",
+                    file, corpus.getRouteCount(), corpus.locations.size(), System.currentTimeMillis() - startTime);
+            return corpus;
+        }
+    }
+
+    @NotNull
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @return the locations the corpus was built for, route start and end indices refer to these
+     */
+    @NotNull
+    public LocationSet getLocations() {
+        return locations;
+    }
+
+    public int getRouteCount() {
+        return destinations.length;
+    }
+
+    /**
+     * @return index of the corpus location closest to the point
+     */
+    public int nearestLocation(final @NotNull GHPoint point) {
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < locations.size(); ++i) {
+            final GHPoint location = locations.get(i);
+            final double distance = GeoMath.haversine(point.lat, point.lon, location.lat, location.lon);
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @return number of routes starting at the location
+     */
+    public int routeCount(final int from) {
+        return firstRoute[from + 1] - firstRoute[from];
+    }
+
+    /**
+     * @return id of the i-th route starting at the location
+     */
+    public int route(final int from, final int i) {
+        return firstRoute[from] + i;
+    }
+
+    /**
+     * @return index of the location the route ends at
+     */
+    public int getDestination(final int route) {
+        return destinations[route];
+    }
+
+    /**
+     * Decodes the route record, including the stored cumulative distances.
+     */
+    @NotNull
+    public SharedRoute load(final int route) {
+        // Only absolute reads, the shared buffer's position is never touched
+        final ByteBuffer buffer = segments[segmentOf[route]];
+        int position = segmentOffsets[route];
+        final double distance = buffer.getDouble(position);
+        final long time = buffer.getLong(position + Double.BYTES);
+        final int pointCount = buffer.getInt(position + Double.BYTES + Long.BYTES);
+        final int instructionCount = buffer.getInt(position + Double.BYTES + Long.BYTES + Integer.BYTES);
+        position += Double.BYTES + Long.BYTES + 2 * Integer.BYTES;
+
+        final double[] lats = new double[pointCount];
+        final double[] lons = new double[pointCount];
+        final double[] cumulativeDistance = new double[pointCount];
+        final int lonStart = position + pointCount * Integer.BYTES;
+        final int distanceStart = lonStart + pointCount * Integer.BYTES;
+        for (int i = 0; i < pointCount; ++i) {
+            lats[i] = buffer.getInt(position + i * Integer.BYTES) / COORDINATE_SCALE;
+            lons[i] = buffer.getInt(lonStart + i * Integer.BYTES) / COORDINATE_SCALE;
+            cumulativeDistance[i] = buffer.getDouble(distanceStart + i * Double.BYTES);
+        }
+        position = distanceStart + pointCount * Double.BYTES;
+
+        final int[] lengths = new int[instructionCount];
+        final double[] distances = new double[instructionCount];
+        final long[] times = new long[instructionCount];
+        for (int k = 0; k < instructionCount; ++k) {
+            lengths[k] = buffer.getInt(position);
+            distances[k] = buffer.getFloat(position + Integer.BYTES);
+            times[k] = buffer.getInt(position + Integer.BYTES + Float.BYTES);
+            // the instruction sign is not needed for driving the route
+            position += 3 * Integer.BYTES + Float.BYTES;
+        }
+        return new SharedRoute(lats, lons, cumulativeDistance, lengths, distances, times, distance, time);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteCorpus{" +
+                "file='" + file + '\'' +
+                ", locations=" + locations.size() +
+                ", routes=" + destinations.length +
+                '}';
+    }
+}
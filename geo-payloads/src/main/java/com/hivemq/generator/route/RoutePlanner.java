@@ -0,0 +1,565 @@
+package com.hivemq.generator.route;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.geo.RouteSimplifier;
+import com.hivemq.generator.geo.SharedRoute;
+import com.hivemq.generator.metrics.LatencyHistogram;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plans routes on a bounded background pool so GraphHopper queries never run on the simulator's publish path.
+ * Vehicles submit the request for their next route while they are still driving (or on a break) and only swap in
+ * the result once it is done.
+ * <p>
+ * Routes starting at a known location are shared through a {@link RouteCache}.
+ * <p>
+ * With a {@link RouteCorpus} instead of GraphHopper, routes are picked from the precomputed corpus. A start is
+ * snapped to the nearest corpus location and the destination is one of the corpus routes leaving it.
+ */
+public class RoutePlanner {
+    @NotNull
+    private static final Logger log = LoggerFactory.getLogger(RoutePlanner.class);
+
+    @NotNull
+    public static final String THREADS_ENV = "ROUTE_PLANNER_THREADS";
+    @NotNull
+    public static final String QUEUE_CAPACITY_ENV = "ROUTE_PLANNER_QUEUE_CAPACITY";
+    /**
+     * How planned routes are kept in memory, see {@link Encoding}.
+     */
+    @NotNull
+    public static final String ROUTE_ENCODING_ENV = "ROUTE_ENCODING";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Number of destinations tried for a single request before giving up, replaces the previous unbounded retry.
+     */
+    public static final int MAX_ATTEMPTS = 10;
+
+    /* Log a statistics summary every time this many routes have been planned */
+    private static final long STATS_LOG_INTERVAL = 100;
+
+    public enum Encoding {
+        /* Plain double arrays, the fastest to interpolate */
+        ARRAYS,
+        /* Delta-encoded geometry, see SharedRoute#compact() */
+        COMPACT;
+
+        @NotNull
+        static Encoding parse(final @Nullable String value) {
+            if (value == null || value.isBlank()) {
+                return ARRAYS;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid value '{}' for {}, using {}", value, ROUTE_ENCODING_ENV, ARRAYS);
+                return ARRAYS;
+            }
+        }
+    }
+
+    /* Exactly one of hopper and corpus is set */
+    @Nullable
+    private final GraphHopper hopper;
+    @Nullable
+    private final RouteCorpus corpus;
+    @NotNull
+    private final ThreadPoolExecutor executor;
+    @NotNull
+    private final RouteCache routeCache;
+    @NotNull
+    private final Encoding encoding;
+
+    @NotNull
+    private final AtomicLong planned = new AtomicLong();
+    @NotNull
+    private final AtomicLong failed = new AtomicLong();
+    @NotNull
+    private final AtomicLong rejected = new AtomicLong();
+    @NotNull
+    private final AtomicLong retries = new AtomicLong();
+    @NotNull
+    private final AtomicLong totalPlanningNanos = new AtomicLong();
+    @NotNull
+    private final AtomicLong maxPlanningNanos = new AtomicLong();
+    @NotNull
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    /* Single GraphHopper queries, a planning request may run several */
+    @NotNull
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    @NotNull
+    private final AtomicLong queryErrors = new AtomicLong();
+    /* At most one bootstrap per generation of a location file */
+    @NotNull
+    private final ConcurrentHashMap<LocationSet, RouteBootstrap> bootstraps = new ConcurrentHashMap<>();
+    /* Wall-clock time of the last finished bootstrap, -1 before */
+    private volatile long bootstrapMillis = -1;
+
+    public RoutePlanner(@NotNull GraphHopper hopper, @NotNull RouteCache routeCache, @NotNull Encoding encoding, int threads, int queueCapacity) {
+        this(hopper, null, routeCache, encoding, threads, queueCapacity);
+    }
+
+    public RoutePlanner(@NotNull RouteCorpus corpus, @NotNull RouteCache routeCache, @NotNull Encoding encoding, int threads, int queueCapacity) {
+        this(null, corpus, routeCache, encoding, threads, queueCapacity);
+    }
+
+    private RoutePlanner(@Nullable GraphHopper hopper, @Nullable RouteCorpus corpus, @NotNull RouteCache routeCache,
+                         @NotNull Encoding encoding, int threads, int queueCapacity) {
+        this.hopper = hopper;
+        this.corpus = corpus;
+        this.routeCache = routeCache;
+        this.encoding = encoding;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("route-planner-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("Started route planner with {} threads, a queue capacity of {} and {} route encoding", threads, queueCapacity, encoding);
+    }
+
+    /**
+     * Creates a planner sized by the {@link #THREADS_ENV} and {@link #QUEUE_CAPACITY_ENV} environment variables,
+     * defaulting to one thread per core, keeping routes as set by {@link #ROUTE_ENCODING_ENV}.
+     */
+    @NotNull
+    public static RoutePlanner fromEnvironment(@NotNull GraphHopper hopper) {
+        return new RoutePlanner(hopper, RouteCache.fromEnvironment(),
+                Encoding.parse(System.getenv(ROUTE_ENCODING_ENV)),
+                intFromEnv(THREADS_ENV, Runtime.getRuntime().availableProcessors()),
+                intFromEnv(QUEUE_CAPACITY_ENV, DEFAULT_QUEUE_CAPACITY));
+    }
+
+    /**
+     * Creates a planner picking routes from the corpus, sized like {@link #fromEnvironment(GraphHopper)}.
+     */
+    @NotNull
+    public static RoutePlanner fromEnvironment(@NotNull RouteCorpus corpus) {
+        return new RoutePlanner(corpus, RouteCache.fromEnvironment(),
+                Encoding.parse(System.getenv(ROUTE_ENCODING_ENV)),
+                intFromEnv(THREADS_ENV, Runtime.getRuntime().availableProcessors()),
+                intFromEnv(QUEUE_CAPACITY_ENV, DEFAULT_QUEUE_CAPACITY));
+    }
+
+    /**
+     * Asynchronously plans a route from the given start to a random destination out of the location list.
+     *
+     * @param locations     locations to choose the destination from, identifies cached routes
+     * @param startIndex    index of the start within the locations, or -1 if the start is an arbitrary point
+     * @param startLocation point to start from
+     * @param simplifier    preprocessing of the planned route, part of the cache key
+     * @param seed          seed for the destination choice, drawn from the vehicle's random so results are reproducible
+     * @return future completing with the planned route, or exceptionally if no route was found after
+     * {@link #MAX_ATTEMPTS} destinations or the planner queue is full
+     */
+    @NotNull
+    public CompletableFuture<PlannedRoute> plan(final @NotNull LocationSet locations,
+                                                final int startIndex,
+                                                final @NotNull GHPoint startLocation,
+                                                final @NotNull RouteSimplifier simplifier,
+                                                final long seed) {
+        final long submitted = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                totalQueueNanos.addAndGet(System.nanoTime() - submitted);
+                return planNow(locations, startIndex, startLocation, simplifier, new Random(seed));
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Plans like {@link #plan} but on the calling thread, so the result never depends on the queue or on timing.
+     *
+     * @return completed future with the planned route, or failed if no route was found
+     */
+    @NotNull
+    public CompletableFuture<PlannedRoute> planInline(final @NotNull LocationSet locations,
+                                                      final int startIndex,
+                                                      final @NotNull GHPoint startLocation,
+                                                      final @NotNull RouteSimplifier simplifier,
+                                                      final long seed) {
+        try {
+            return CompletableFuture.completedFuture(planNow(locations, startIndex, startLocation, simplifier, new Random(seed)));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @NotNull
+    private PlannedRoute planNow(final @NotNull LocationSet locations,
+                                 final int startIndex,
+                                 final @NotNull GHPoint startLocation,
+                                 final @NotNull RouteSimplifier simplifier,
+                                 final @NotNull Random random) {
+        final long start = System.nanoTime();
+        try {
+            if (corpus != null) {
+                return pickFromCorpus(corpus, startLocation, simplifier, random);
+            }
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+                if (attempt > 0) {
+                    retries.incrementAndGet();
+                    log.debug("Retrying route planning, attempt {}", attempt + 1);
+                }
+                // Destinations are drawn from precomputed candidates at least the minimum distance away
+                final int secondPoint = startIndex >= 0
+                        ? locations.getIndex().pick(startIndex, random)
+                        : locations.getIndex().pick(startLocation, random);
+                final GHPoint endLocation = locations.get(secondPoint);
+
+                final SharedRoute route = route(locations, startIndex, startLocation, secondPoint, endLocation, simplifier);
+                if (route != null) {
+                    return new PlannedRoute(route, locations, startLocation, endLocation, secondPoint);
+                }
+            }
+            failed.incrementAndGet();
+            throw new IllegalStateException("No route found from " + startLocation + " after " + MAX_ATTEMPTS + " attempts");
+        } finally {
+            final long duration = System.nanoTime() - start;
+            totalPlanningNanos.addAndGet(duration);
+            maxPlanningNanos.accumulateAndGet(duration, Math::max);
+            if (planned.incrementAndGet() % STATS_LOG_INTERVAL == 0) {
+                log.info("Route planner statistics: {}", this);
+            }
+        }
+    }
+
+    /**
+     * Picks a random corpus route leaving the corpus location nearest to the start. The planned route refers to the
+     * corpus locations, which may differ from the configured ones.
+     */
+    @NotNull
+    private PlannedRoute pickFromCorpus(final @NotNull RouteCorpus corpus,
+                                        final @NotNull GHPoint startLocation,
+                                        final @NotNull RouteSimplifier simplifier,
+                                        final @NotNull Random random) {
+        final LocationSet locations = corpus.getLocations();
+        final int from = corpus.nearestLocation(startLocation);
+        final int count = from >= 0 ? corpus.routeCount(from) : 0;
+        if (count == 0) {
+            failed.incrementAndGet();
+            throw new IllegalStateException("No route in " + corpus.getFile() + " starts near " + startLocation);
+        }
+        final int route = corpus.route(from, random.nextInt(count));
+        final int to = corpus.getDestination(route);
+        final RouteCache.RouteKey key = new RouteCache.RouteKey(locations, from, to, simplifier);
+        SharedRoute shared = routeCache.get(key);
+        if (shared == null) {
+            shared = prepare(corpus.load(route), simplifier);
+            routeCache.put(key, shared);
+        }
+        return new PlannedRoute(shared, locations, startLocation, locations.get(to), to);
+    }
+
+    /**
+     * Looks up the route in the cache if it starts at a known location, plans and caches it otherwise.
+     *
+     * @return the route or {@code null} if GraphHopper could not find one
+     */
+    @Nullable
+    private SharedRoute route(final @NotNull LocationSet locations,
+                              final int startIndex,
+                              final @NotNull GHPoint startLocation,
+                              final int endIndex,
+                              final @NotNull GHPoint endLocation,
+                              final @NotNull RouteSimplifier simplifier) {
+        final RouteCache.RouteKey key = startIndex >= 0 ? new RouteCache.RouteKey(locations, startIndex, endIndex, simplifier) : null;
+        if (key != null) {
+            final SharedRoute cached = routeCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final GHRequest ghRequest = new GHRequest(startLocation, endLocation);
+        ghRequest.setProfile(GraphLoader.PROFILE);
+        final long queryStart = System.nanoTime();
+        final GHResponse route;
+        try {
+            route = Objects.requireNonNull(hopper).route(ghRequest);
+        } catch (RuntimeException e) {
+            queryErrors.incrementAndGet();
+            throw e;
+        } finally {
+            queryLatency.record(System.nanoTime() - queryStart);
+        }
+        if (route.getErrors().size() > 0) {
+            queryErrors.incrementAndGet();
+            log.warn("Errors in route planning: {}", route.getErrors());
+            return null;
+        }
+        // Only the primitive arrays are kept, the path with its instruction objects can be collected
+        final SharedRoute best = prepare(SharedRoute.of(route.getBest()), simplifier);
+        if (key != null) {
+            routeCache.put(key, best);
+        }
+        return best;
+    }
+
+    /**
+     * Plans and caches routes for a random sample of eligible location pairs in parallel.
+     * Destinations are chosen uniformly, so every eligible pair is equally common and a sample is as good as any.
+     *
+     * @param locations    locations to plan routes between
+     * @param count        maximum number of routes to plan
+     * @param simplifier   preprocessing of the routes, as the vehicles request them
+     * @param seed         seed for sampling the pairs
+     * @return future completing once all routes were planned
+     */
+    @NotNull
+    public CompletableFuture<Void> prewarm(final @NotNull LocationSet locations,
+                                           final int count,
+                                           final @NotNull RouteSimplifier simplifier,
+                                           final long seed) {
+        if (corpus != null) {
+            // Corpus routes are decoded on first use, which is cheap compared to planning them
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            final long start = System.nanoTime();
+            final WarehouseIndex index = locations.getIndex();
+            final List<int[]> pairs = new ArrayList<>();
+            for (int from = 0; from < index.size(); ++from) {
+                for (int i = 0; i < index.candidateCount(from); ++i) {
+                    pairs.add(new int[]{from, index.candidate(from, i)});
+                }
+            }
+            Collections.shuffle(pairs, new Random(seed));
+            final List<int[]> sample = pairs.subList(0, Math.min(count, pairs.size()));
+            log.info("Pre-warming route cache with {} of {} eligible routes", sample.size(), pairs.size());
+            inParallelPool("route-cache-prewarm", () -> sample.parallelStream().forEach(pair -> {
+                try {
+                    route(locations, pair[0], locations.get(pair[0]), pair[1], locations.get(pair[1]), simplifier);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to pre-warm route {} -> {}", pair[0], pair[1], e);
+                }
+            }));
+            log.info("Pre-warmed route cache in {}ms: {}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), routeCache);
+        }, runnable -> {
+            final Thread thread = new Thread(runnable, "route-cache-prewarm");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Runs the task on a fork/join pool of its own with a thread per core, so the parallel streams in it don't block
+     * the common pool, which advances the fleet, with route planning. Blocks until the task is done.
+     *
+     * @param name prefix of the pool's thread names
+     */
+    static void inParallelPool(final @NotNull String name, final @NotNull Runnable task) {
+        final AtomicLong threads = new AtomicLong();
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), forkJoinPool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName(name + "-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        try {
+            // A parallel stream started in a fork/join task runs on that task's pool
+            pool.submit(task).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plans the first routes of the given number of vehicles in parallel, unless that was already started for the
+     * locations. Vehicles {@link RouteBootstrap#claim() claim} them instead of planning their first route.
+     *
+     * @param locations  locations to plan routes between
+     * @param count      expected number of vehicles
+     * @param simplifier preprocessing of the routes, as the vehicles request them
+     * @param seed       seed for the start locations and destinations
+     * @return the bootstrap for the locations, possibly started by an earlier call with another count
+     */
+    @NotNull
+    public RouteBootstrap bootstrap(final @NotNull LocationSet locations,
+                                    final int count,
+                                    final @NotNull RouteSimplifier simplifier,
+                                    final long seed) {
+        final RouteBootstrap existing = bootstraps.get(locations);
+        if (existing != null) {
+            return existing;
+        }
+        final RouteBootstrap bootstrap = new RouteBootstrap(locations, count, seed);
+        final RouteBootstrap raced = bootstraps.putIfAbsent(locations, bootstrap);
+        if (raced != null) {
+            return raced;
+        }
+        final Thread thread = new Thread(() -> {
+            bootstrap.run((startIndex, random) -> planNow(locations, startIndex, locations.get(startIndex), simplifier, random));
+            bootstrapMillis = bootstrap.getCompletion().join();
+        }, "route-bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+        return bootstrap;
+    }
+
+    /**
+     * @return the bootstrap started for the locations, or null if there is none
+     */
+    @Nullable
+    public RouteBootstrap getBootstrap(final @NotNull LocationSet locations) {
+        return bootstraps.get(locations);
+    }
+
+    /**
+     * Drops the cached routes and bootstraps of all other generations of the location file.
+     */
+    public void retainOnly(final @NotNull LocationSet current) {
+        routeCache.retainOnly(current);
+        bootstraps.keySet().removeIf(locations -> locations.getFile().equals(current.getFile()) && locations.getGeneration() != current.getGeneration());
+    }
+
+    /**
+     * @return wall-clock time of the last finished bootstrap in milliseconds, -1 if none has finished
+     */
+    public long getBootstrapMillis() {
+        return bootstrapMillis;
+    }
+
+    /**
+     * Simplifies the route and encodes it as configured, before it is cached and driven.
+     */
+    @NotNull
+    private SharedRoute prepare(final @NotNull SharedRoute route, final @NotNull RouteSimplifier simplifier) {
+        final SharedRoute simplified = simplifier.apply(route);
+        if (simplified != route && log.isDebugEnabled()) {
+            log.debug("Simplified route from {} to {} points", route.size(), simplified.size());
+        }
+        if (encoding == Encoding.COMPACT) {
+            final SharedRoute compact = simplified.compact();
+            if (log.isDebugEnabled()) {
+                log.debug("Encoded route of {} points in {} instead of {} bytes", compact.size(), compact.estimatedBytes(), simplified.estimatedBytes());
+            }
+            return compact;
+        }
+        return simplified;
+    }
+
+    private static int intFromEnv(final @NotNull String name, final int defaultValue) {
+        final @Nullable String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value '{}' for {}, using {}", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return number of route requests waiting for a planner thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return number of route requests currently being planned
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return number of finished planning requests, successful or not
+     */
+    public long getPlannedCount() {
+        return planned.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return number of requests rejected because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return latency of the GraphHopper queries, cache hits and corpus routes are not included
+     */
+    @NotNull
+    public LatencyHistogram getQueryLatency() {
+        return queryLatency;
+    }
+
+    /**
+     * @return number of GraphHopper queries that failed or found no route
+     */
+    public long getQueryErrorCount() {
+        return queryErrors.get();
+    }
+
+    public double getAveragePlanningMillis() {
+        final long count = planned.get();
+        return count == 0 ? 0D : totalPlanningNanos.get() / (double) count / 1_000_000D;
+    }
+
+    public double getMaxPlanningMillis() {
+        return maxPlanningNanos.get() / 1_000_000D;
+    }
+
+    @NotNull
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    public double getAverageQueueMillis() {
+        final long count = planned.get();
+        return count == 0 ? 0D : totalQueueNanos.get() / (double) count / 1_000_000D;
+    }
+
+    @Override
+    public String toString() {
+        return "RoutePlanner{" +
+                "queueDepth=" + getQueueDepth() +
+                ", active=" + getActiveCount() +
+                ", planned=" + getPlannedCount() +
+                ", failed=" + getFailedCount() +
+                ", rejected=" + getRejectedCount() +
+                ", retries=" + getRetryCount() +
+                ", avgPlanningMs=" + getAveragePlanningMillis() +
+                ", maxPlanningMs=" + getMaxPlanningMillis() +
+                ", avgQueueMs=" + getAverageQueueMillis() +
+                ", cache=" + routeCache +
+                '}';
+    }
+}
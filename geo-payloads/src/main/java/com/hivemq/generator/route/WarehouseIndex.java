@@ -0,0 +1,226 @@
+package com.hivemq.generator.route;
+
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.geo.GeoMath;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Precomputed destination candidates for a set of locations, so choosing a destination at least a minimum distance
+ * away is a single random draw instead of drawing until one happens to be far enough.
+ * <p>
+ * Every location gets the list of locations further away than the minimum distance. Arbitrary start points (e.g. where
+ * a truck stopped after a failed route) are looked up in a grid over the locations' bounding box. Each cell lists the
+ * locations that are far enough from every point in the cell; cells are filled on first use.
+ * If nothing is far enough, the farthest location is chosen.
+ */
+public class WarehouseIndex {
+    /* Cell edge length, small compared to typical minimum distances so few candidates are lost at cell borders */
+    static final double CELL_KM = 25D;
+    /* Upper bound for the grid size, location sets spanning continents get coarser cells */
+    private static final int MAX_CELLS = 65_536;
+    private static final double KM_PER_DEGREE = 111.195;
+
+    private final double minimumDistanceKm;
+    @NotNull
+    private final double[] lats;
+    @NotNull
+    private final double[] lons;
+    /* Cosines of the latitudes for the batch distance calculation */
+    @NotNull
+    private final double[] cosLats;
+    /* Eligible destinations per location */
+    @NotNull
+    private final int[][] candidates;
+    /* Farthest location from each location, the destination if there are no candidates */
+    @NotNull
+    private final int[] farthest;
+
+    /* Grid over the bounding box, extended by one cell on each side */
+    private final double gridLat;
+    private final double gridLon;
+    private final double cellLat;
+    private final double cellLon;
+    private final int rows;
+    private final int columns;
+    @NotNull
+    private final AtomicReferenceArray<int[]> cellCandidates;
+
+    public WarehouseIndex(final @NotNull List<GHPoint> locations, final double minimumDistanceKm) {
+        final int size = locations.size();
+        this.minimumDistanceKm = minimumDistanceKm;
+        this.lats = new double[size];
+        this.lons = new double[size];
+        for (int i = 0; i < size; ++i) {
+            lats[i] = locations.get(i).lat;
+            lons[i] = locations.get(i).lon;
+        }
+        this.cosLats = GeoMath.cosLatitudes(lats);
+
+        // The distance matrix is only needed one row at a time
+        this.candidates = new int[size][];
+        this.farthest = new int[size];
+        final int[] row = new int[size];
+        final double[] distances = new double[size];
+        for (int from = 0; from < size; ++from) {
+            GeoMath.haversine(lats[from], lons[from], lats, lons, cosLats, distances);
+            int count = 0;
+            int farthestIndex = from;
+            double farthestDistance = -1;
+            for (int to = 0; to < size; ++to) {
+                if (to == from) {
+                    continue;
+                }
+                final double distance = distances[to];
+                if (distance > minimumDistanceKm) {
+                    row[count++] = to;
+                }
+                if (distance > farthestDistance) {
+                    farthestDistance = distance;
+                    farthestIndex = to;
+                }
+            }
+            candidates[from] = Arrays.copyOf(row, count);
+            farthest[from] = farthestIndex;
+        }
+
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < size; ++i) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+        final double cosLat = Math.max(0.1, Math.cos(Math.toRadians(size > 0 ? (minLat + maxLat) / 2 : 0)));
+        double cellKm = CELL_KM;
+        while (cellCount(minLat, maxLat, minLon, maxLon, cellKm / KM_PER_DEGREE, cellKm / (KM_PER_DEGREE * cosLat)) > MAX_CELLS) {
+            cellKm *= 2;
+        }
+        this.cellLat = cellKm / KM_PER_DEGREE;
+        this.cellLon = cellKm / (KM_PER_DEGREE * cosLat);
+        this.gridLat = size > 0 ? minLat - cellLat : 0;
+        this.gridLon = size > 0 ? minLon - cellLon : 0;
+        this.rows = size > 0 ? (int) ((maxLat - minLat) / cellLat) + 3 : 0;
+        this.columns = size > 0 ? (int) ((maxLon - minLon) / cellLon) + 3 : 0;
+        this.cellCandidates = new AtomicReferenceArray<>(rows * columns);
+    }
+
+    private static long cellCount(double minLat, double maxLat, double minLon, double maxLon, double cellLat, double cellLon) {
+        return ((long) ((maxLat - minLat) / cellLat) + 3) * ((long) ((maxLon - minLon) / cellLon) + 3);
+    }
+
+    public int size() {
+        return lats.length;
+    }
+
+    /**
+     * @return number of locations further than the minimum distance away from the location
+     */
+    public int candidateCount(final int index) {
+        return candidates[index].length;
+    }
+
+    /**
+     * @return index of the i-th location further than the minimum distance away from the location
+     */
+    public int candidate(final int index, final int i) {
+        return candidates[index][i];
+    }
+
+    /**
+     * Chooses a random destination further than the minimum distance away from the location.
+     *
+     * @return index of the destination, the farthest location if none is far enough
+     */
+    public int pick(final int startIndex, final @NotNull Random random) {
+        final int[] eligible = candidates[startIndex];
+        if (eligible.length == 0) {
+            return farthest[startIndex];
+        }
+        return eligible[random.nextInt(eligible.length)];
+    }
+
+    /**
+     * Chooses a random destination further than the minimum distance away from an arbitrary point.
+     * Points outside of the grid, or in cells without candidates, fall back to scanning all locations once.
+     *
+     * @return index of the destination, the farthest location if none is far enough
+     */
+    public int pick(final @NotNull GHPoint start, final @NotNull Random random) {
+        final int cell = cell(start.lat, start.lon);
+        if (cell >= 0) {
+            final int[] eligible = cellCandidates(cell);
+            if (eligible.length > 0) {
+                return eligible[random.nextInt(eligible.length)];
+            }
+        }
+        final int[] eligible = new int[size()];
+        final double[] distances = new double[size()];
+        GeoMath.haversine(start.lat, start.lon, lats, lons, cosLats, distances);
+        int count = 0;
+        int farthestIndex = 0;
+        double farthestDistance = -1;
+        for (int to = 0; to < size(); ++to) {
+            final double distance = distances[to];
+            if (distance > minimumDistanceKm) {
+                eligible[count++] = to;
+            }
+            if (distance > farthestDistance) {
+                farthestDistance = distance;
+                farthestIndex = to;
+            }
+        }
+        return count > 0 ? eligible[random.nextInt(count)] : farthestIndex;
+    }
+
+    /**
+     * @return index of the grid cell containing the point or -1 if it is outside the grid
+     */
+    private int cell(final double lat, final double lon) {
+        final int row = (int) Math.floor((lat - gridLat) / cellLat);
+        final int column = (int) Math.floor((lon - gridLon) / cellLon);
+        if (row < 0 || row >= rows || column < 0 || column >= columns) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+
+    /**
+     * @return locations further than the minimum distance away from every point of the cell
+     */
+    @NotNull
+    private int[] cellCandidates(final int cell) {
+        final int[] cached = cellCandidates.get(cell);
+        if (cached != null) {
+            return cached;
+        }
+        final double south = gridLat + (cell / columns) * cellLat;
+        final double west = gridLon + (cell % columns) * cellLon;
+        final double centerLat = south + cellLat / 2;
+        final double centerLon = west + cellLon / 2;
+        // Any point of the cell is at most this far from its center
+        final double radius = Math.max(
+                GeoMath.haversine(centerLat, centerLon, south, west),
+                GeoMath.haversine(centerLat, centerLon, south + cellLat, west));
+        final double[] distances = new double[size()];
+        GeoMath.haversine(centerLat, centerLon, lats, lons, cosLats, distances);
+        final int[] row = new int[size()];
+        int count = 0;
+        for (int to = 0; to < size(); ++to) {
+            if (distances[to] > minimumDistanceKm + radius) {
+                row[count++] = to;
+            }
+        }
+        final int[] eligible = Arrays.copyOf(row, count);
+        // Concurrent first uses compute the same list, either one may win
+        cellCandidates.compareAndSet(cell, null, eligible);
+        return eligible;
+    }
+}
@@ -0,0 +1,75 @@
+package com.hivemq.loader;
+
+import com.hivemq.generator.GeoPayloadGenerator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lines of coordinates in primitive arrays, the points of all lines back to back.
+ */
+public final class CoordinateLines {
+    @NotNull
+    private final double[] lats;
+    @NotNull
+    private final double[] lons;
+    /* Index of each line's first point, followed by the total point count */
+    @NotNull
+    private final int[] lineStarts;
+
+    CoordinateLines(@NotNull double[] lats, @NotNull double[] lons, @NotNull int[] lineStarts) {
+        this.lats = lats;
+        this.lons = lons;
+        this.lineStarts = lineStarts;
+    }
+
+    public int lineCount() {
+        return lineStarts.length - 1;
+    }
+
+    /**
+     * @return total number of points of all lines
+     */
+    public int size() {
+        return lineStarts[lineStarts.length - 1];
+    }
+
+    /**
+     * @return index of the line's first point
+     */
+    public int lineStart(final int line) {
+        return lineStarts[line];
+    }
+
+    /**
+     * @return index after the line's last point
+     */
+    public int lineEnd(final int line) {
+        return lineStarts[line + 1];
+    }
+
+    public double getLat(final int point) {
+        return lats[point];
+    }
+
+    public double getLon(final int point) {
+        return lons[point];
+    }
+
+    /**
+     * @return the lines as graph vertices
+     */
+    @NotNull
+    public List<List<GeoPayloadGenerator.LinePoint>> toLinePoints() {
+        final List<List<GeoPayloadGenerator.LinePoint>> lines = new ArrayList<>(lineCount());
+        for (int line = 0; line < lineCount(); ++line) {
+            final List<GeoPayloadGenerator.LinePoint> points = new ArrayList<>(lineEnd(line) - lineStart(line));
+            for (int point = lineStart(line); point < lineEnd(line); ++point) {
+                points.add(new GeoPayloadGenerator.LinePoint(lats[point], lons[point]));
+            }
+            lines.add(points);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,248 @@
+package com.hivemq.loader;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for coordinate lines in the {@code lat,lon;lat,lon_lat,lon;...} format, writing straight into the
+ * primitive arrays of {@link CoordinateLines}.
+ * <p>
+ * The input is scanned once without creating substrings. Plain decimals of up to 15 significant digits are converted
+ * exactly without {@link Double#parseDouble}, anything else (exponents, more digits, surrounding whitespace) falls back
+ * to it, so the coordinates are bit-for-bit the same. Points that fail to parse are logged and skipped; empty lines are
+ * kept, except at the end of the input, like with {@link String#split}.
+ */
+public final class LineParser {
+    private static final @NotNull Logger log = LoggerFactory.getLogger(LineParser.class);
+
+    public static final char LINE_SEPARATOR = '_';
+    public static final char POINT_SEPARATOR = ';';
+    public static final char COORDINATE_SEPARATOR = ',';
+
+    /* Integers up to 15 digits and powers of ten up to 1e22 are exact doubles, so one division rounds correctly */
+    private static final int MAX_FAST_DIGITS = 15;
+    @NotNull
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    @NotNull
+    private final CharSequence input;
+    @NotNull
+    private double[] lats = new double[1024];
+    @NotNull
+    private double[] lons = new double[1024];
+    @NotNull
+    private int[] lineStarts = new int[64];
+    private int size;
+    private int lineCount;
+    /* Result of the last successful parseNumber */
+    private double value;
+
+    private LineParser(@NotNull CharSequence input) {
+        this.input = input;
+    }
+
+    @NotNull
+    public static CoordinateLines parse(final @NotNull CharSequence input) {
+        return new LineParser(input).parse();
+    }
+
+    /**
+     * Parses the remaining bytes of the buffer as ASCII, without changing its position.
+     */
+    @NotNull
+    public static CoordinateLines parse(final @NotNull ByteBuffer input) {
+        return new LineParser(new ByteSequence(input, input.position(), input.remaining())).parse();
+    }
+
+    /**
+     * Parses a memory-mapped file, which is never read into the heap as a whole.
+     *
+     * @throws IOException if the file can't be read or is larger than 2GB
+     */
+    @NotNull
+    public static CoordinateLines parse(final @NotNull Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Line file " + file + " is larger than 2GB");
+            }
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    @NotNull
+    private CoordinateLines parse() {
+        final int length = input.length();
+        int pendingEmptyLines = 0;
+        int lineStart = 0;
+        while (lineStart <= length) {
+            final int lineEnd = indexOf(LINE_SEPARATOR, lineStart, length);
+            if (lineEnd == lineStart) {
+                // Only kept if a non-empty line follows
+                pendingEmptyLines++;
+            } else {
+                for (; pendingEmptyLines > 0; --pendingEmptyLines) {
+                    startLine();
+                }
+                startLine();
+                int pointStart = lineStart;
+                while (pointStart < lineEnd) {
+                    final int pointEnd = indexOf(POINT_SEPARATOR, pointStart, lineEnd);
+                    if (pointEnd > pointStart) {
+                        parsePoint(pointStart, pointEnd);
+                    }
+                    pointStart = pointEnd + 1;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (length == 0) {
+            startLine();
+        }
+        final int[] starts = Arrays.copyOf(lineStarts, lineCount + 1);
+        starts[lineCount] = size;
+        return new CoordinateLines(Arrays.copyOf(lats, size), Arrays.copyOf(lons, size), starts);
+    }
+
+    private int indexOf(final char separator, final int from, final int to) {
+        for (int i = from; i < to; ++i) {
+            if (input.charAt(i) == separator) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private void startLine() {
+        if (lineCount + 1 >= lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+        }
+        lineStarts[lineCount++] = size;
+    }
+
+    private void parsePoint(final int start, final int end) {
+        final int latEnd = indexOf(COORDINATE_SEPARATOR, start, end);
+        if (latEnd == end) {
+            log.error("Failed to parse line point, no longitude: {}", input.subSequence(start, end));
+            return;
+        }
+        if (!parseNumber(start, latEnd, start, end)) {
+            return;
+        }
+        final double lat = value;
+        // Like splitting at the separator, anything after a second one is ignored
+        if (!parseNumber(latEnd + 1, indexOf(COORDINATE_SEPARATOR, latEnd + 1, end), start, end)) {
+            return;
+        }
+        if (size == lats.length) {
+            lats = Arrays.copyOf(lats, size * 2);
+            lons = Arrays.copyOf(lons, size * 2);
+        }
+        lats[size] = lat;
+        lons[size] = value;
+        size++;
+    }
+
+    /**
+     * Parses the number into {@link #value}.
+     *
+     * @param pointStart start of the whole point, for logging
+     * @param pointEnd   end of the whole point, for logging
+     * @return false if it is not a number, which is logged
+     */
+    private boolean parseNumber(final int start, final int end, final int pointStart, final int pointEnd) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+            negative = input.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; ++i) {
+            final char c = input.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if ((mantissa != 0 || c != '0') && ++digits > MAX_FAST_DIGITS) {
+                    return parseSlow(start, end, pointStart, pointEnd);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return parseSlow(start, end, pointStart, pointEnd);
+            }
+        }
+        if (!seenDigit || fractionDigits >= POWERS_OF_TEN.length) {
+            return parseSlow(start, end, pointStart, pointEnd);
+        }
+        final double absolute = mantissa / POWERS_OF_TEN[fractionDigits];
+        value = negative ? -absolute : absolute;
+        return true;
+    }
+
+    private boolean parseSlow(final int start, final int end, final int pointStart, final int pointEnd) {
+        try {
+            value = Double.parseDouble(input.subSequence(start, end).toString());
+            return true;
+        } catch (NumberFormatException ex) {
+            log.error("Failed to parse line point: {}", input.subSequence(pointStart, pointEnd), ex);
+            return false;
+        }
+    }
+
+    /**
+     * ASCII view of a byte buffer, reading with absolute gets.
+     */
+    private static final class ByteSequence implements CharSequence {
+        @NotNull
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+
+        ByteSequence(@NotNull ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public @NotNull CharSequence subSequence(final int start, final int end) {
+            return new ByteSequence(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            final byte[] bytes = new byte[length];
+            for (int i = 0; i < length; ++i) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
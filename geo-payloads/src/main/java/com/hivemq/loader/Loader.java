@@ -1,53 +1,44 @@
 package com.hivemq.loader;
 
-import com.google.common.collect.Lists;
 import com.hivemq.generator.GeoPayloadGenerator;
 import com.hivemq.generator.geo.GeoEdge;
+import com.hivemq.generator.geo.GeoMath;
+import com.hivemq.generator.geo.RoadGraph;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jgrapht.graph.Multigraph;
 import org.jgrapht.graph.builder.GraphBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
-import static com.hivemq.generator.GeoPayloadGenerator.distance;
-
 public class Loader {
     private static final @NotNull Logger log = LoggerFactory.getLogger(Loader.class);
 
+    /* Junctions connect points of different lines at most this far apart, in km */
+    static final double JUNCTION_KM = 0.003D;
+    private static final double KM_PER_DEGREE = 111.195;
+
     /* Store the graph for geo payloads */
-    AtomicReference<Multigraph<GeoPayloadGenerator.LinePoint, GeoEdge>> graph;
-    private AtomicReference<List<List<GeoPayloadGenerator.LinePoint>>> linesList;
+    final AtomicReference<Multigraph<GeoPayloadGenerator.LinePoint, GeoEdge>> graph = new AtomicReference<>();
+    private final AtomicReference<List<List<GeoPayloadGenerator.LinePoint>>> linesList = new AtomicReference<>();
+    /* Compact copy of the graph, shared read-only by all geo payload generators */
+    final AtomicReference<RoadGraph> roadGraph = new AtomicReference<>();
 
     @NotNull
-    private List<List<GeoPayloadGenerator.LinePoint>> initializeLines(String message) {
-        log.info("Initializing lines from message {}", message);
-        final String[] lines = message.split("_");
-        List<List<GeoPayloadGenerator.LinePoint>> linesList = Lists.newArrayList();
-        for (String line : lines) {
-            final String[] splitString = line.split(";");
-            List<GeoPayloadGenerator.LinePoint> pointsCurrent = Lists.newArrayList();
-            for (String coordinates : splitString) {
-                if (!coordinates.isEmpty()) {
-                    final String[] coordinatesSplit = coordinates.split(",");
-                    try {
-                        final double lat = Double.parseDouble(coordinatesSplit[0]);
-                        final double lon = Double.parseDouble(coordinatesSplit[1]);
-                        pointsCurrent.add(new GeoPayloadGenerator.LinePoint(lat, lon));
-                    } catch (NumberFormatException ex) {
-                        log.error("Failed to parse line point: {}", coordinates, ex);
-                    }
-                }
-            }
-            linesList.add(pointsCurrent);
-        }
-        return linesList;
+    List<List<GeoPayloadGenerator.LinePoint>> initializeLines(String message) {
+        log.info("Initializing lines from message of {} characters", message.length());
+        return LineParser.parse(message).toLinePoints();
     }
 
 
-    private void initializeGraph(List<List<GeoPayloadGenerator.LinePoint>> linesList) {
+    void initializeGraph(List<List<GeoPayloadGenerator.LinePoint>> linesList) {
         final GraphBuilder<GeoPayloadGenerator.LinePoint, GeoEdge, ? extends Multigraph<GeoPayloadGenerator.LinePoint, GeoEdge>> builder = Multigraph.createBuilder(GeoEdge.class);
 
         // Add nodes
@@ -62,33 +53,102 @@ public class Loader {
             for (int i = 0; i < line.size() - 1; ++i) {
                 final GeoPayloadGenerator.LinePoint firstPoint = line.get(i);
                 final GeoPayloadGenerator.LinePoint secondPoint = line.get(i + 1);
-                final double distance = distance(firstPoint.lat, firstPoint.lon, secondPoint.lat, secondPoint.lon);
+                final double distance = GeoMath.haversine(firstPoint.lat, firstPoint.lon, secondPoint.lat, secondPoint.lon);
                 builder.addEdge(firstPoint, secondPoint, new GeoEdge(firstPoint, secondPoint, distance));
             }
         }
         graph.compareAndSet(null, builder.build());
 
-        // Add junctions between lines where applicable (e.g. less than 1m distance between nodes)
+        // Add junctions between lines where applicable (e.g. less than 3m distance between nodes)
         log.info("Generating junctions");
+        final List<GeoPayloadGenerator.LinePoint[]> junctions = findJunctions(linesList);
+        for (GeoPayloadGenerator.LinePoint[] junction : junctions) {
+            final double distance = GeoMath.haversine(junction[0].lat, junction[0].lon, junction[1].lat, junction[1].lon);
+            graph.get().addEdge(junction[0], junction[1], new GeoEdge(junction[0], junction[1], distance));
+        }
+        log.info("Generated {} junctions", junctions.size());
+        roadGraph.compareAndSet(null, RoadGraph.of(linesList, junctions));
+    }
+
+    /**
+     * Finds the pairs of points of different lines which are at most {@link #JUNCTION_KM} apart.
+     * Points are bucketed into a grid with cells at least that wide, so only points in neighbouring cells are compared.
+     *
+     * @return each junction once, as the two points to connect
+     */
+    @NotNull
+    static List<GeoPayloadGenerator.LinePoint[]> findJunctions(final @NotNull List<List<GeoPayloadGenerator.LinePoint>> linesList) {
+        return findJunctions(linesList, null);
+    }
+
+    /**
+     * @param comparisons if not null, incremented by the number of point pairs whose distance was compared
+     */
+    @NotNull
+    static List<GeoPayloadGenerator.LinePoint[]> findJunctions(final @NotNull List<List<GeoPayloadGenerator.LinePoint>> linesList,
+                                                               final @Nullable AtomicLong comparisons) {
+        int size = 0;
+        double maxAbsLat = 0;
+        for (List<GeoPayloadGenerator.LinePoint> line : linesList) {
+            size += line.size();
+            for (GeoPayloadGenerator.LinePoint point : line) {
+                maxAbsLat = Math.max(maxAbsLat, Math.abs(point.lat));
+            }
+        }
+        final GeoPayloadGenerator.LinePoint[] points = new GeoPayloadGenerator.LinePoint[size];
+        final int[] lineOf = new int[size];
+        int index = 0;
         for (int i = 0; i < linesList.size(); ++i) {
-            for (int k = 0; k < linesList.size() && k != i; ++k) {
-                final List<GeoPayloadGenerator.LinePoint> firstPoint = linesList.get(i);
-                final List<GeoPayloadGenerator.LinePoint> secondPoint = linesList.get(k);
-                for (GeoPayloadGenerator.LinePoint firstActualPoint : firstPoint) {
-                    for (GeoPayloadGenerator.LinePoint secondActualPoint : secondPoint) {
-                        final double distance = distance(firstActualPoint.lat, firstActualPoint.lon, secondActualPoint.lat, secondActualPoint.lon);
-                        // Distances are in km
-                        if (distance < 0.003D) {
-                            // Avoid loops
-                            if (!firstActualPoint.equals(secondActualPoint)) {
-                                graph.get().addEdge(firstActualPoint, secondActualPoint, new GeoEdge(firstActualPoint, secondActualPoint, distance));
-                            }
+            for (GeoPayloadGenerator.LinePoint point : linesList.get(i)) {
+                points[index] = point;
+                lineOf[index++] = i;
+            }
+        }
+
+        // Cells are at least the junction distance wide at the highest latitude, so junctions only span neighbouring cells
+        final double cellLat = JUNCTION_KM / KM_PER_DEGREE;
+        final double cellLon = cellLat / Math.cos(Math.toRadians(Math.min(89D, maxAbsLat)));
+        final Map<Long, List<Integer>> cells = new HashMap<>();
+        final long[] rows = new long[size];
+        final long[] columns = new long[size];
+        for (int i = 0; i < size; ++i) {
+            rows[i] = (long) Math.floor(points[i].lat / cellLat);
+            columns[i] = (long) Math.floor(points[i].lon / cellLon);
+            cells.computeIfAbsent(cellKey(rows[i], columns[i]), key -> new ArrayList<>()).add(i);
+        }
+
+        final List<GeoPayloadGenerator.LinePoint[]> junctions = new ArrayList<>();
+        long compared = 0;
+        for (int i = 0; i < size; ++i) {
+            for (long row = rows[i] - 1; row <= rows[i] + 1; ++row) {
+                for (long column = columns[i] - 1; column <= columns[i] + 1; ++column) {
+                    final List<Integer> cell = cells.get(cellKey(row, column));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int k : cell) {
+                        // Each pair once, and only between lines
+                        if (k <= i || lineOf[k] == lineOf[i]) {
+                            continue;
+                        }
+                        compared++;
+                        // Distances are in km, the flat approximation is exact enough at 3m
+                        if (GeoMath.isWithin(points[i].lat, points[i].lon, points[k].lat, points[k].lon, JUNCTION_KM)
+                                // Avoid loops
+                                && !points[i].equals(points[k])) {
+                            junctions.add(new GeoPayloadGenerator.LinePoint[]{points[i], points[k]});
                         }
                     }
                 }
             }
         }
+        if (comparisons != null) {
+            comparisons.addAndGet(compared);
+        }
+        return junctions;
     }
 
-
+    private static long cellKey(final long row, final long column) {
+        return (row << 32) ^ (column & 0xFFFFFFFFL);
+    }
 }
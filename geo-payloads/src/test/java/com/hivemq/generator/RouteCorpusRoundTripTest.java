@@ -0,0 +1,220 @@
+package com.hivemq.generator;
+
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.InstructionAnnotation;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import com.hivemq.generator.geo.SharedRoute;
+import com.hivemq.generator.route.RouteCorpus;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Route records written by the preprocessor's {@link RouteCorpusWriter} must read back through {@link RouteCorpus}
+ * as the route the writer was given.
+ */
+public class RouteCorpusRoundTripTest {
+
+    private static final double[][] LOCATIONS = {{53.55, 9.99}, {48.14, 11.58}, {50.94, 6.96}, {52.52, 13.40}};
+    /* from, to; location 1 has no routes */
+    private static final int[][] INDEX = {{0, 1}, {0, 2}, {2, 0}, {3, 1}};
+
+    private Path directory;
+    private PathWrapper[] paths;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("route-corpus-test");
+        paths = new PathWrapper[INDEX.length];
+        for (int i = 0; i < INDEX.length; ++i) {
+            paths[i] = path(LOCATIONS[INDEX[i][0]], 50 + 40 * i, i);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRoutesReadBackAsWritten() throws IOException {
+        final Path file = write("corpus", INDEX);
+        final RouteCorpus corpus = RouteCorpus.open(file.toString());
+        assertEquals(LOCATIONS.length, corpus.getLocations().size());
+        for (int i = 0; i < LOCATIONS.length; ++i) {
+            assertEquals(LOCATIONS[i][0], corpus.getLocations().get(i).lat, 0);
+            assertEquals(LOCATIONS[i][1], corpus.getLocations().get(i).lon, 0);
+        }
+        assertEquals(INDEX.length, corpus.getRouteCount());
+        assertEquals(2, corpus.routeCount(0));
+        assertEquals(0, corpus.routeCount(1));
+        assertEquals(1, corpus.routeCount(2));
+        assertEquals(1, corpus.routeCount(3));
+
+        int expected = 0;
+        for (int from = 0; from < LOCATIONS.length; ++from) {
+            for (int i = 0; i < corpus.routeCount(from); ++i) {
+                final int route = corpus.route(from, i);
+                assertEquals(expected, route);
+                assertEquals(INDEX[expected][1], corpus.getDestination(route));
+                assertSameRoute(SharedRoute.of(paths[expected]), corpus.load(route));
+                expected++;
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsTruncatedFiles() throws IOException {
+        final Path file = write("corpus", INDEX);
+        assertRejected(truncate(file, 12), "is not a route corpus");
+        // Header complete, index cut off
+        assertRejected(truncate(file, 16 + LOCATIONS.length * 16 + 8), "is truncated");
+    }
+
+    @Test
+    public void testRejectsUnsortedIndex() throws IOException {
+        assertRejected(write("unsorted", new int[][]{{2, 0}, {0, 1}, {0, 2}, {3, 1}}), "is not sorted");
+    }
+
+    /**
+     * Driving both routes must give the same positions, speeds and speed limits, which depend on the points, the
+     * cumulative distances and the instructions.
+     */
+    private static void assertSameRoute(final @NotNull SharedRoute expected, final @NotNull SharedRoute actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.getLat(i), actual.getLat(i), 0);
+            assertEquals(expected.getLon(i), actual.getLon(i), 0);
+        }
+        assertEquals(expected.getDistance(), actual.getDistance(), 0);
+        assertEquals(expected.getTime(), actual.getTime());
+        final Random random = new Random(1);
+        final Random actualRandom = new Random(1);
+        final double[] expectedPoint = new double[SharedRoute.POINT_SIZE];
+        final double[] actualPoint = new double[SharedRoute.POINT_SIZE];
+        for (int i = 0; i <= 1000; ++i) {
+            final double percentage = i / 1000D;
+            assertEquals(expected.getPoint(percentage, random, expectedPoint), actual.getPoint(percentage, actualRandom, actualPoint));
+            for (int field : new int[]{SharedRoute.X, SharedRoute.Y, SharedRoute.SPEED, SharedRoute.SPEED_LIMIT}) {
+                assertEquals("percentage " + percentage, expectedPoint[field], actualPoint[field], 0);
+            }
+        }
+    }
+
+    private static void assertRejected(final @NotNull Path file, final @NotNull String message) {
+        try {
+            RouteCorpus.open(file.toString());
+            fail(file + " was opened");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    /**
+     * Writes the corpus in the layout of {@link RouteCorpusWriter#write}, the records in index order.
+     */
+    @NotNull
+    private Path write(final @NotNull String name, final @NotNull int[][] index) throws IOException {
+        final byte[][] records = new byte[index.length][];
+        for (int i = 0; i < index.length; ++i) {
+            records[i] = RouteCorpusWriter.encode(paths[i]);
+        }
+        final Path file = directory.resolve(name);
+        long offset = 16 + LOCATIONS.length * 16 + index.length * 16;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(RouteCorpus.MAGIC);
+            out.writeInt(RouteCorpus.VERSION);
+            out.writeInt(LOCATIONS.length);
+            out.writeInt(index.length);
+            for (double[] location : LOCATIONS) {
+                out.writeDouble(location[0]);
+                out.writeDouble(location[1]);
+            }
+            for (int i = 0; i < index.length; ++i) {
+                out.writeInt(index[i][0]);
+                out.writeInt(index[i][1]);
+                out.writeLong(offset);
+                offset += records[i].length;
+            }
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        }
+        return file;
+    }
+
+    @NotNull
+    private static Path truncate(final @NotNull Path file, final long size) throws IOException {
+        final Path truncated = file.resolveSibling(file.getFileName() + "-" + size);
+        Files.copy(file, truncated);
+        try (FileChannel channel = FileChannel.open(truncated, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+        return truncated;
+    }
+
+    /**
+     * A route with coordinates in millionths of a degree and float instruction distances, which the corpus stores
+     * exactly, so the route read back equals the one written.
+     */
+    @NotNull
+    private static PathWrapper path(final @NotNull double[] start, final int pointCount, final long seed) {
+        final Random random = new Random(seed);
+        final PointList points = new PointList(pointCount, false);
+        double lat = start[0];
+        double lon = start[1];
+        for (int i = 0; i < pointCount; ++i) {
+            points.add(Math.round(lat * 1e6) / 1e6, Math.round(lon * 1e6) / 1e6);
+            lat += (random.nextDouble() - 0.5) * 0.01;
+            lon += (random.nextDouble() - 0.5) * 0.01;
+        }
+        final DistanceCalcEarth calc = new DistanceCalcEarth();
+        final InstructionList instructions = new InstructionList(null);
+        long time = 0;
+        int from = 0;
+        while (from < pointCount) {
+            final int to = Math.min(pointCount, from + 1 + random.nextInt(12));
+            final PointList instructionPoints = new PointList(to - from, false);
+            double distance = 0D;
+            for (int i = from; i < to; ++i) {
+                instructionPoints.add(points.getLat(i), points.getLon(i));
+                if (i > from) {
+                    distance += calc.calcDist(points.getLat(i - 1), points.getLon(i - 1), points.getLat(i), points.getLon(i));
+                }
+            }
+            final Instruction instruction = new Instruction(Instruction.CONTINUE_ON_STREET, "street", InstructionAnnotation.EMPTY, instructionPoints);
+            instruction.setDistance((float) distance);
+            instruction.setTime((long) (distance / (10 + random.nextInt(30)) * 1000));
+            instructions.add(instruction);
+            time += instruction.getTime();
+            from = to;
+        }
+        final PathWrapper path = new PathWrapper();
+        path.setPoints(points);
+        path.setInstructions(instructions);
+        path.setDistance(points.calcDistance(calc));
+        path.setTime(time);
+        return path;
+    }
+}
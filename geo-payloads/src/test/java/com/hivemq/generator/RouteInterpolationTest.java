@@ -7,11 +7,13 @@ import com.graphhopper.config.ProfileConfig;
 import com.graphhopper.reader.osm.GraphHopperOSM;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.util.shapes.GHPoint;
-import com.hivemq.generator.geo.RouteInterpolator;
+import com.hivemq.generator.geo.SharedRoute;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
 
+import java.util.Random;
+
 public class RouteInterpolationTest {
 
     private GraphHopper hopper;
@@ -39,8 +41,8 @@ public class RouteInterpolationTest {
         ghRequest.setProfile("car");
         final PathWrapper best = hopper.route(ghRequest).getBest();
 
-        final RouteInterpolator routeInterpolator = new RouteInterpolator(best);
-        final RouteInterpolator.InterpResult point = routeInterpolator.getPoint(1);
+        final SharedRoute route = SharedRoute.of(best);
+        final SharedRoute.InterpResult point = route.getPoint(1, new Random());
         final Coordinate location = point.getLocation();
         System.out.println(location);
     }
@@ -0,0 +1,216 @@
+package com.hivemq.generator.config;
+
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import com.hivemq.generator.geo.RouteSimplifier;
+import com.hivemq.generator.geo.SharedRoute;
+import com.hivemq.generator.route.LocationSet;
+import com.hivemq.generator.route.RouteCache;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reloading through the file watcher, so every test waits for the watcher thread to pick up its writes.
+ */
+public class ConfigRegistryTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+    /* Long enough for the watcher to have reloaded, several times its debounce */
+    private static final long SETTLE_MILLIS = 1_000;
+    /* Between the writes of a burst, well within the debounce */
+    private static final long BURST_GAP_MILLIS = ConfigRegistry.DEBOUNCE_MILLIS / 4;
+
+    private static final double[][] WAREHOUSES = {{53.55, 9.99}, {48.14, 11.58}, {50.94, 6.96}, {52.52, 13.40}};
+
+    private Path directory;
+    private Path locationFile;
+    private ConfigRegistry registry;
+    private List<LocationSet> reloadedLocations;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("config-registry-test");
+        locationFile = directory.resolve("warehouses.geojson");
+        writeLocations(2);
+        registry = new ConfigRegistry();
+        reloadedLocations = new CopyOnWriteArrayList<>();
+        registry.addLocationListener(reloadedLocations::add);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        registry.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testSwapsSnapshotWhenConfigChanges() throws Exception {
+        final AtomicReference<ResolvedConfig> reference = registry.resolve(writeConfig("config.json", 1));
+        final ResolvedConfig initial = reference.get();
+        assertEquals(1, initial.getTimeMultiplier(), 0);
+        assertSame(reference, registry.resolve(initial.getConfigFile()));
+
+        writeConfig("config.json", 2.5);
+        await(() -> reference.get() != initial);
+        assertEquals(2.5, reference.get().getTimeMultiplier(), 0);
+        // Only the config changed, the locations are not read again
+        assertSame(initial.getLocations(), reference.get().getLocations());
+    }
+
+    @Test
+    public void testSwapsSnapshotWhenLocationFileChanges() throws Exception {
+        final AtomicReference<ResolvedConfig> reference = registry.resolve(writeConfig("config.json", 1));
+        final ResolvedConfig initial = reference.get();
+        assertEquals(2, initial.getLocations().size());
+
+        writeLocations(4);
+        await(() -> reference.get() != initial);
+        final LocationSet reloaded = reference.get().getLocations();
+        assertEquals(4, reloaded.size());
+        assertEquals(initial.getLocations().getFile(), reloaded.getFile());
+        assertTrue(reloaded.getGeneration() > initial.getLocations().getGeneration());
+        assertEquals(1, reference.get().getTimeMultiplier(), 0);
+    }
+
+    @Test
+    public void testKeepsSnapshotWhenRewriteIsMalformed() throws Exception {
+        final String configFile = writeConfig("config.json", 1);
+        final AtomicReference<ResolvedConfig> reference = registry.resolve(configFile);
+        final ResolvedConfig initial = reference.get();
+
+        Files.writeString(Path.of(configFile), "{\"locationFile\": ");
+        Thread.sleep(SETTLE_MILLIS);
+        assertSame(initial, reference.get());
+
+        // The watcher is still alive and picks up the repaired file
+        writeConfig("config.json", 3);
+        await(() -> reference.get() != initial);
+        assertEquals(3, reference.get().getTimeMultiplier(), 0);
+    }
+
+    @Test
+    public void testDebouncesBurstOfWrites() throws Exception {
+        final AtomicReference<ResolvedConfig> reference = registry.resolve(writeConfig("config.json", 1));
+        reloadedLocations.clear();
+
+        // Like an editor saving in several steps, the whole burst takes longer than the debounce but no gap does
+        for (int i = 0; i < 8; ++i) {
+            writeLocations(2 + i % 2);
+            Thread.sleep(BURST_GAP_MILLIS);
+        }
+        writeLocations(4);
+        await(() -> reference.get().getLocations().size() == 4);
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(1, reloadedLocations.size());
+        assertSame(reference.get().getLocations(), reloadedLocations.get(0));
+    }
+
+    @Test
+    public void testStopsReloadingWhenClosed() throws Exception {
+        final AtomicReference<ResolvedConfig> reference = registry.resolve(writeConfig("config.json", 1));
+        final ResolvedConfig initial = reference.get();
+        registry.close();
+
+        writeConfig("config.json", 2);
+        Thread.sleep(SETTLE_MILLIS);
+        assertSame(initial, reference.get());
+        // Closing again is a no-op
+        registry.close();
+    }
+
+    @Test
+    public void testSharedLocationFileIsReadOnce() throws Exception {
+        final AtomicReference<ResolvedConfig> first = registry.resolve(writeConfig("first.json", 1));
+        final AtomicReference<ResolvedConfig> second = registry.resolve(writeConfig("second.json", 2));
+        assertSame(first.get().getLocations(), second.get().getLocations());
+        assertEquals(0.5, registry.getLocationHitRatio(), 0);
+        final LocationSet initial = first.get().getLocations();
+        reloadedLocations.clear();
+
+        writeLocations(3);
+        await(() -> first.get().getLocations() != initial && second.get().getLocations() != initial);
+        assertSame(first.get().getLocations(), second.get().getLocations());
+        assertEquals(3, first.get().getLocations().size());
+        assertEquals(1, reloadedLocations.size());
+    }
+
+    @Test
+    public void testListenerDropsRoutesOfOldLocations() throws Exception {
+        final RouteCache cache = new RouteCache(1_000);
+        registry.addLocationListener(cache::retainOnly);
+        final AtomicReference<ResolvedConfig> reference = registry.resolve(writeConfig("config.json", 1));
+        final LocationSet initial = reference.get().getLocations();
+        final RouteCache.RouteKey key = new RouteCache.RouteKey(initial, 0, 1, RouteSimplifier.NONE);
+        cache.put(key, route(initial));
+        assertTrue(cache.contains(key));
+
+        writeLocations(3);
+        await(() -> reference.get().getLocations() != initial);
+        assertFalse(cache.contains(key));
+        assertNotSame(initial, reference.get().getLocations());
+    }
+
+    private static void await(final @NotNull BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Config was not reloaded within " + TIMEOUT_MILLIS + "ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @NotNull
+    private String writeConfig(final @NotNull String name, final double timeMultiplier) throws IOException {
+        final Path file = directory.resolve(name);
+        Files.writeString(file, "{\"locationFile\": \"" + locationFile + "\", \"timeMultiplier\": " + timeMultiplier + "}");
+        return file.toString();
+    }
+
+    /**
+     * Writes the first warehouses as GeoJSON points, which store lon before lat.
+     */
+    private void writeLocations(final int count) throws IOException {
+        final StringBuilder json = new StringBuilder("{\"type\": \"FeatureCollection\", \"features\": [");
+        for (int i = 0; i < count; ++i) {
+            json.append(i > 0 ? ", " : "")
+                    .append("{\"type\": \"Feature\", \"properties\": {}, \"geometry\": {\"type\": \"Point\", \"coordinates\": [")
+                    .append(WAREHOUSES[i][1]).append(", ").append(WAREHOUSES[i][0]).append("]}}");
+        }
+        Files.writeString(locationFile, json.append("]}"));
+    }
+
+    @NotNull
+    private static SharedRoute route(final @NotNull LocationSet locations) {
+        final PointList points = new PointList(2, false);
+        points.add(locations.get(0).lat, locations.get(0).lon);
+        points.add(locations.get(1).lat, locations.get(1).lon);
+        final PathWrapper path = new PathWrapper();
+        path.setPoints(points);
+        path.setInstructions(new InstructionList(null));
+        path.setDistance(points.calcDistance(new DistanceCalcEarth()));
+        return SharedRoute.of(path);
+    }
+}
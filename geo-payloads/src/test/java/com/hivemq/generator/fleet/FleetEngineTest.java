@@ -0,0 +1,330 @@
+package com.hivemq.generator.fleet;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.InstructionAnnotation;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.RoutePayloadGenerator;
+import com.hivemq.generator.config.ConfigRegistry;
+import com.hivemq.generator.config.ResolvedConfig;
+import com.hivemq.generator.geo.SharedRoute;
+import com.hivemq.generator.metrics.GeneratorMetrics;
+import com.hivemq.generator.payload.CarDataSamples;
+import com.hivemq.generator.route.RouteCache;
+import com.hivemq.generator.route.RouteCorpus;
+import com.hivemq.generator.route.RoutePlanner;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FleetEngineTest {
+
+    private static final long START = 1_577_836_800_000L;
+    /* Every stub route takes this long, whatever its distance */
+    private static final long ROUTE_MILLIS = TimeUnit.HOURS.toMillis(2);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final double[][] WAREHOUSES = {{53.55, 9.99}, {48.14, 11.58}, {50.94, 6.96}, {52.52, 13.40}};
+
+    private Path directory;
+    private ConfigRegistry registry;
+    private AtomicReference<ResolvedConfig> config;
+    private RoutePlanner planner;
+    private GeneratorMetrics metrics;
+    private FleetEngine fleet;
+    private final CarDataSamples samples = new CarDataSamples(1);
+    private final double[] point = new double[SharedRoute.POINT_SIZE];
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fleet-engine-test");
+        final Path locationFile = directory.resolve("warehouses.geojson");
+        final StringBuilder json = new StringBuilder("{\"type\": \"FeatureCollection\", \"features\": [");
+        for (int i = 0; i < WAREHOUSES.length; ++i) {
+            json.append(i > 0 ? ", " : "")
+                    .append("{\"type\": \"Feature\", \"properties\": {}, \"geometry\": {\"type\": \"Point\", \"coordinates\": [")
+                    .append(WAREHOUSES[i][1]).append(", ").append(WAREHOUSES[i][0]).append("]}}");
+        }
+        Files.writeString(locationFile, json.append("]}"));
+        final Path configFile = directory.resolve("config.json");
+        Files.writeString(configFile, "{\"locationFile\": \"" + locationFile + "\", \"timeMultiplier\": 1}");
+
+        registry = new ConfigRegistry();
+        config = registry.resolve(configFile.toString());
+        planner = new RoutePlanner(new StraightRoutes(), new RouteCache(100_000), RoutePlanner.Encoding.ARRAYS, 1, 16);
+        metrics = new GeneratorMetrics(planner, registry);
+        fleet = new FleetEngine(planner, metrics);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        registry.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testBreaksAndRouteChanges() {
+        final int vehicle = add(fleet, 1, false);
+
+        assertTrue(step(vehicle, START));
+        assertFalse(samples.isBreak(0));
+        final UUID firstRoute = samples.getRouteUuid(0);
+        assertEquals(1, metrics.getDrivingVehicleCount());
+
+        // Around half time the driver takes an hour's break where they are
+        assertTrue(step(vehicle, START + ROUTE_MILLIS * 45 / 100));
+        final double breakLat = samples.getLat(0);
+        final double breakLon = samples.getLon(0);
+        assertTrue(step(vehicle, START + ROUTE_MILLIS * 45 / 100 + MINUTE));
+        assertTrue(samples.isBreak(0));
+        assertEquals(0D, samples.getSpeed(0), 0D);
+        assertEquals(breakLat, samples.getLat(0), 0D);
+        assertEquals(breakLon, samples.getLon(0), 0D);
+        assertEquals(firstRoute, samples.getRouteUuid(0));
+        assertEquals(1, metrics.getVehiclesOnBreakCount());
+
+        assertTrue(step(vehicle, START + ROUTE_MILLIS * 45 / 100 + 61 * MINUTE));
+        assertFalse(samples.isBreak(0));
+        assertEquals(0, metrics.getVehiclesOnBreakCount());
+
+        // The last sample of a route is its end, the truck then rests half an hour on the next route
+        final long end = START + ROUTE_MILLIS + MINUTE;
+        assertTrue(step(vehicle, end));
+        assertFalse(samples.isBreak(0));
+        assertEquals(firstRoute, samples.getRouteUuid(0));
+        final double endLat = samples.getLat(0);
+        final double endLon = samples.getLon(0);
+        assertEquals(1, metrics.getDrivingVehicleCount());
+        assertEquals(1, metrics.getVehiclesOnBreakCount());
+
+        assertTrue(step(vehicle, end + MINUTE));
+        assertTrue(samples.isBreak(0));
+        assertEquals(endLat, samples.getLat(0), 0D);
+        assertEquals(endLon, samples.getLon(0), 0D);
+        final UUID secondRoute = samples.getRouteUuid(0);
+        assertNotEquals(firstRoute, secondRoute);
+
+        assertTrue(step(vehicle, end + 31 * MINUTE));
+        assertFalse(samples.isBreak(0));
+        assertTrue(samples.getSpeed(0) > 0);
+        assertEquals(secondRoute, samples.getRouteUuid(0));
+        assertEquals(0, metrics.getVehiclesOnBreakCount());
+    }
+
+    @Test
+    public void testSameSeedDrivesTheSameWay() {
+        final int first = add(fleet, 5, false);
+        final int second = add(fleet, 5, false);
+        for (long time = START; time < START + 3 * ROUTE_MILLIS; time += 7 * MINUTE) {
+            assertTrue(step(first, time));
+            final double lat = samples.getLat(0);
+            final double lon = samples.getLon(0);
+            final UUID route = samples.getRouteUuid(0);
+            assertTrue(step(second, time));
+            assertEquals(lat, samples.getLat(0), 0D);
+            assertEquals(lon, samples.getLon(0), 0D);
+            assertEquals(route, samples.getRouteUuid(0));
+        }
+    }
+
+    @Test
+    public void testReleasedSlotIsReused() {
+        final int first = add(fleet, 1, false);
+        final int second = add(fleet, 2, false);
+        final int third = add(fleet, 3, false);
+        assertTrue(step(second, START));
+        assertEquals(3, fleet.size());
+        assertEquals(1, metrics.getDrivingVehicleCount());
+
+        fleet.release(second);
+        assertEquals(2, fleet.size());
+        assertEquals(0, metrics.getDrivingVehicleCount());
+        try {
+            step(second, START + MINUTE);
+            fail("Released vehicle was stepped");
+        } catch (IllegalStateException e) {
+            // Its config was dropped
+        }
+
+        // The next vehicle takes the free slot instead of growing the fleet, and starts over
+        final int reused = add(fleet, 4, false);
+        assertEquals(second, reused);
+        assertEquals(3, fleet.size());
+        assertTrue(step(reused, START + MINUTE));
+        assertEquals(1, metrics.getDrivingVehicleCount());
+        // No free slot left
+        assertEquals(Math.max(first, third) + 1, add(fleet, 5, false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasingTwiceFails() {
+        final int vehicle = add(fleet, 1, false);
+        fleet.release(vehicle);
+        fleet.release(vehicle);
+    }
+
+    /**
+     * Readers of ticked samples retry while a tick writes the block, so every sample read is a whole sample of one
+     * tick, the same one the vehicle gives when it is stepped to that time.
+     */
+    @Test
+    public void testReadSampleNeverSeesHalfATick() throws Exception {
+        // Few vehicles and many ticks, so reads often hit the vehicle a tick is writing
+        final int vehicles = 4;
+        final int ticks = 50_000;
+        // Reference run: the same vehicles stepped one by one
+        final FleetEngine reference = new FleetEngine(planner, metrics);
+        final int[][] expected = new int[vehicles][ticks];
+        final int[] ticked = new int[vehicles];
+        for (int v = 0; v < vehicles; ++v) {
+            final int stepped = add(reference, v, false);
+            ticked[v] = add(fleet, v, true);
+            for (int k = 0; k < ticks; ++k) {
+                expected[v][k] = step(reference, stepped, START + k * MINUTE) ? hash(samples) : 0;
+            }
+        }
+
+        final AtomicReference<Throwable> tickerError = new AtomicReference<>();
+        final Thread ticker = new Thread(() -> {
+            try {
+                for (int k = 0; k < ticks; ++k) {
+                    fleet.tick(START + k * MINUTE, null);
+                }
+            } catch (Throwable t) {
+                tickerError.set(t);
+            }
+        }, "fleet-engine-test-ticker");
+        ticker.start();
+        long reads = 0;
+        int v = 0;
+        while (ticker.isAlive()) {
+            v = (v + 1) % vehicles;
+            samples.clear();
+            if (fleet.readSample(ticked[v], samples)) {
+                final int k = (int) ((samples.getTimestamp(0) - START) / MINUTE);
+                assertEquals("vehicle " + v + " at tick " + k, expected[v][k], hash(samples));
+                reads++;
+            }
+        }
+        ticker.join();
+        if (tickerError.get() != null) {
+            throw new AssertionError(tickerError.get());
+        }
+        assertTrue(reads > 0);
+    }
+
+    @Test
+    public void testDroppedGeneratorsAreReleased() throws Exception {
+        // Generators are never bound here, so an empty corpus is enough for their planner
+        final Path corpus = directory.resolve("empty.corpus");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(corpus))) {
+            out.writeInt(RouteCorpus.MAGIC);
+            out.writeInt(RouteCorpus.VERSION);
+            out.writeInt(0);
+            out.writeInt(0);
+        }
+        System.setProperty(RoutePayloadGenerator.ROUTE_CORPUS_FILE_PROPERTY, corpus.toString());
+        final FleetEngine shared;
+        try {
+            shared = RoutePayloadGenerator.getFleet();
+        } finally {
+            System.clearProperty(RoutePayloadGenerator.ROUTE_CORPUS_FILE_PROPERTY);
+        }
+        final int before = shared.size();
+        final RoutePayloadGenerator kept = new RoutePayloadGenerator();
+        for (int i = 0; i < 1000; ++i) {
+            new RoutePayloadGenerator();
+        }
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (shared.size() > before + 1) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(shared.size() - before - 1 + " dropped generators were not released");
+            }
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(before + 1, shared.size());
+
+        kept.release();
+        assertEquals(before, shared.size());
+        // The cleaner runs once, also for a generator released explicitly
+        kept.release();
+        assertEquals(before, shared.size());
+    }
+
+    private int add(final @NotNull FleetEngine target, final long seed, final boolean ticked) {
+        final int vehicle = target.add(new Random(seed), true, ticked);
+        target.bind(vehicle, config, "truck/" + seed);
+        return vehicle;
+    }
+
+    private boolean step(final int vehicle, final long time) {
+        return step(fleet, vehicle, time);
+    }
+
+    private boolean step(final @NotNull FleetEngine target, final int vehicle, final long time) {
+        samples.clear();
+        return target.step(vehicle, time, samples, point);
+    }
+
+    private static int hash(final @NotNull CarDataSamples samples) {
+        return Objects.hash(samples.getTimestamp(0), samples.getLat(0), samples.getLon(0), samples.getRouteUuid(0),
+                samples.getSpeed(0), samples.getSpeedLimit(0), samples.isBreak(0));
+    }
+
+    /**
+     * Straight routes of 20 points between the requested locations, all taking {@link #ROUTE_MILLIS}.
+     */
+    private static final class StraightRoutes extends GraphHopper {
+        @Override
+        public GHResponse route(final @NotNull GHRequest request) {
+            final GHPoint from = request.getPoints().get(0);
+            final GHPoint to = request.getPoints().get(1);
+            final PointList points = new PointList(20, false);
+            for (int i = 0; i < 20; ++i) {
+                points.add(from.lat + (to.lat - from.lat) * i / 19, from.lon + (to.lon - from.lon) * i / 19);
+            }
+            final double distance = points.calcDistance(new DistanceCalcEarth());
+            final Instruction instruction = new Instruction(Instruction.CONTINUE_ON_STREET, "street", InstructionAnnotation.EMPTY, points);
+            instruction.setDistance(distance);
+            instruction.setTime(ROUTE_MILLIS);
+            final InstructionList instructions = new InstructionList(null);
+            instructions.add(instruction);
+            final PathWrapper path = new PathWrapper();
+            path.setPoints(points);
+            path.setInstructions(instructions);
+            path.setDistance(distance);
+            path.setTime(ROUTE_MILLIS);
+            final GHResponse response = new GHResponse();
+            response.add(path);
+            return response;
+        }
+    }
+}
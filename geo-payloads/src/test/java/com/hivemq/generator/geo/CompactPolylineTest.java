@@ -0,0 +1,90 @@
+package com.hivemq.generator.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactPolylineTest {
+
+    @Test
+    public void testGeometryRoundTrips() {
+        final SharedRoute route = SharedRoute.of(SharedRouteTest.syntheticRoute(1_000, 42));
+        final SharedRoute compact = route.compact();
+        assertTrue(compact.isCompact());
+        assertSame(compact, compact.compact());
+        assertEquals(route.size(), compact.size());
+        for (int i = 0; i < route.size(); ++i) {
+            assertEquals(route.getLat(i), compact.getLat(i), 0.5e-6);
+            assertEquals(route.getLon(i), compact.getLon(i), 0.5e-6);
+            if (i < route.size() - 1) {
+                assertEquals(route.getSegmentInstruction(i), compact.getSegmentInstruction(i));
+            }
+        }
+        assertTrue(compact.estimatedBytes() + " of " + route.estimatedBytes(), compact.estimatedBytes() < route.estimatedBytes() / 2);
+    }
+
+    @Test
+    public void testCorpusCoordinatesAreExact() {
+        // The route corpus already stores millionths of a degree
+        final SharedRoute planned = SharedRoute.of(SharedRouteTest.syntheticRoute(500, 3));
+        final double[] lats = new double[planned.size()];
+        final double[] lons = new double[planned.size()];
+        for (int i = 0; i < lats.length; ++i) {
+            lats[i] = Math.round(planned.getLat(i) * 1e6) / 1e6;
+            lons[i] = Math.round(planned.getLon(i) * 1e6) / 1e6;
+        }
+        final SharedRoute route = new SharedRoute(lats, lons, null, new int[]{lats.length}, new double[]{1000}, new long[]{60_000}, 1000, 60_000);
+        final SharedRoute compact = route.compact();
+        for (int i = 0; i < lats.length; ++i) {
+            assertEquals(lats[i], compact.getLat(i), 0);
+            assertEquals(lons[i], compact.getLon(i), 0);
+        }
+    }
+
+    @Test
+    public void testInterpolatesLikeTheArrays() {
+        final SharedRoute route = SharedRoute.of(SharedRouteTest.syntheticRoute(2_000, 7));
+        final SharedRoute compact = route.compact();
+        final Random percentages = new Random(5);
+        final Random random = new Random(1);
+        final Random compactRandom = new Random(1);
+        final double[] expected = new double[SharedRoute.POINT_SIZE];
+        final double[] actual = new double[SharedRoute.POINT_SIZE];
+        for (int i = 0; i < 10_000; ++i) {
+            final double percentage = i == 0 ? 0 : percentages.nextDouble();
+            final boolean located = route.getPoint(percentage, random, expected);
+            assertEquals("percentage " + percentage, located, compact.getPoint(percentage, compactRandom, actual));
+            if (located) {
+                assertEquals("percentage " + percentage, expected[SharedRoute.X], actual[SharedRoute.X], 1e-6);
+                assertEquals("percentage " + percentage, expected[SharedRoute.Y], actual[SharedRoute.Y], 1e-6);
+                assertEquals("percentage " + percentage, expected[SharedRoute.SPEED], actual[SharedRoute.SPEED], 0);
+                assertEquals("percentage " + percentage, expected[SharedRoute.SPEED_LIMIT], actual[SharedRoute.SPEED_LIMIT], 0);
+            }
+        }
+        assertEquals(route.getPoint(1, random).getLocation().x, compact.getPoint(1, random).getLocation().x, 1e-6);
+        assertNull(compact.getPoint(1.5, random).getLocation());
+        assertFalse(compact.getPoint(Double.NaN, random, actual));
+    }
+
+    @Test
+    public void testShortRoutes() {
+        final Random random = new Random(1);
+        final SharedRoute point = new SharedRoute(new double[]{53.55}, new double[]{9.99}, null, new int[0], new double[0], new long[0], 0, 0).compact();
+        assertEquals(1, point.size());
+        assertNull(point.getPoint(0, random).getLocation());
+        // Exactly one block and the first point of the next one
+        for (int size : new int[]{2, CompactPolyline.BLOCK_SIZE, CompactPolyline.BLOCK_SIZE + 1}) {
+            final SharedRoute route = SharedRoute.of(SharedRouteTest.syntheticRoute(size, size));
+            final SharedRoute compact = route.compact();
+            assertEquals(size, compact.size());
+            assertEquals(route.getLat(0), compact.getPoint(0, random).getLocation().y, 1e-6);
+            assertEquals(route.getPoint(1, random).getLocation().y, compact.getPoint(1, random).getLocation().y, 1e-6);
+        }
+    }
+}
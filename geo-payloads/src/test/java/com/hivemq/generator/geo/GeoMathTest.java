@@ -0,0 +1,83 @@
+package com.hivemq.generator.geo;
+
+import net.sf.geographiclib.Geodesic;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeoMathTest {
+
+    /* Spherical distances are within this relative error of the WGS84 ellipsoid */
+    private static final double SPHERE_MAX_ERROR = 0.006;
+
+    @Test
+    public void testHaversineMatchesGeographicLib() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100_000; ++i) {
+            final double lat1 = random.nextDouble() * 160 - 80;
+            final double lon1 = random.nextDouble() * 360 - 180;
+            final double lat2 = random.nextDouble() * 160 - 80;
+            final double lon2 = random.nextDouble() * 360 - 180;
+            final double expected = Geodesic.WGS84.Inverse(lat1, lon1, lat2, lon2).s12 / 1000;
+            assertEquals(expected, GeoMath.haversine(lat1, lon1, lat2, lon2), Math.max(1e-9, expected * SPHERE_MAX_ERROR));
+        }
+    }
+
+    @Test
+    public void testHaversineMatchesGeographicLibBetweenWarehouses() {
+        // Hamburg to Munich, 612km on the ellipsoid
+        final double expected = Geodesic.WGS84.Inverse(53.55, 9.99, 48.14, 11.58).s12 / 1000;
+        assertEquals(expected, GeoMath.haversine(53.55, 9.99, 48.14, 11.58), expected * 0.002);
+        assertEquals(0D, GeoMath.haversine(53.55, 9.99, 53.55, 9.99), 0D);
+        assertEquals(Math.PI * GeoMath.EARTH_RADIUS_KM, GeoMath.haversine(0, 0, 0, 180), 1e-9);
+    }
+
+    @Test
+    public void testBatchMatchesScalar() {
+        final Random random = new Random(42);
+        final double[] lats = new double[1000];
+        final double[] lons = new double[1000];
+        for (int i = 0; i < lats.length; ++i) {
+            lats[i] = 47 + random.nextDouble() * 8;
+            lons[i] = 6 + random.nextDouble() * 9;
+        }
+        final double[] distances = new double[lats.length];
+        GeoMath.haversine(50.1, 8.7, lats, lons, GeoMath.cosLatitudes(lats), distances);
+        for (int i = 0; i < lats.length; ++i) {
+            assertEquals(GeoMath.haversine(50.1, 8.7, lats[i], lons[i]), distances[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void testEquirectangularErrorBound() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100_000; ++i) {
+            final double lat1 = random.nextDouble() * 158 - 79;
+            final double lon1 = random.nextDouble() * 340 - 170;
+            // Up to 10km in a random direction
+            final double km = random.nextDouble() * GeoMath.EQUIRECTANGULAR_MAX_KM / Math.sqrt(2);
+            final double lat2 = lat1 + (random.nextDouble() * 2 - 1) * km / 111.2;
+            final double lon2 = lon1 + (random.nextDouble() * 2 - 1) * km / (111.2 * Math.cos(Math.toRadians(80)));
+            final double haversine = GeoMath.haversine(lat1, lon1, lat2, lon2);
+            if (haversine > GeoMath.EQUIRECTANGULAR_MAX_KM) {
+                continue;
+            }
+            assertEquals(haversine, GeoMath.equirectangular(lat1, lon1, lat2, lon2), haversine * GeoMath.EQUIRECTANGULAR_MAX_ERROR);
+            final double geodesic = Geodesic.WGS84.Inverse(lat1, lon1, lat2, lon2).s12 / 1000;
+            assertEquals(geodesic, GeoMath.equirectangular(lat1, lon1, lat2, lon2), Math.max(1e-9, geodesic * SPHERE_MAX_ERROR));
+        }
+    }
+
+    @Test
+    public void testIsWithinAtJunctionDistance() {
+        // 1m and 5m north of a point in Hamburg
+        final double meter = 0.001 / 111.195;
+        assertTrue(GeoMath.isWithin(53.55, 9.99, 53.55 + meter, 9.99, 0.003));
+        assertFalse(GeoMath.isWithin(53.55, 9.99, 53.55 + 5 * meter, 9.99, 0.003));
+        assertTrue(GeoMath.isWithin(53.55, 9.99, 53.55, 9.99, 0));
+    }
+}
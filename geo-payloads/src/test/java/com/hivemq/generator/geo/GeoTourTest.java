@@ -0,0 +1,105 @@
+package com.hivemq.generator.geo;
+
+import com.hivemq.generator.GeoPayloadGenerator;
+import net.sf.geographiclib.Geodesic;
+import net.sf.geographiclib.GeodesicData;
+import net.sf.geographiclib.GeodesicLine;
+import net.sf.geographiclib.GeodesicMask;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeoTourTest {
+
+    /**
+     * A loop of street edges around Hamburg, each stored in a random direction like the edges of an undirected graph.
+     */
+    private static List<GeoEdge> loop(final int size, final long seed) {
+        final Random random = new Random(seed);
+        final List<GeoPayloadGenerator.LinePoint> points = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            final double angle = 2 * Math.PI * i / size;
+            final double radius = 0.005 + random.nextDouble() * 0.003;
+            points.add(new GeoPayloadGenerator.LinePoint(53.55 + radius * Math.sin(angle), 9.99 + 1.6 * radius * Math.cos(angle)));
+        }
+        final List<GeoEdge> edges = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            final GeoPayloadGenerator.LinePoint from = points.get(i);
+            final GeoPayloadGenerator.LinePoint to = points.get((i + 1) % size);
+            final double distance = GeoPayloadGenerator.distance(from, to);
+            edges.add(random.nextBoolean() ? new GeoEdge(from, to, distance) : new GeoEdge(to, from, distance));
+        }
+        return edges;
+    }
+
+    @Test
+    public void testMatchesGeodesicStepping() {
+        final List<GeoEdge> edges = loop(40, 42);
+        final GeoTour.Cursor cursor = GeoTour.of(edges, false, GeoPayloadGenerator.STEP_DISTANCE).cursor();
+
+        // The stepping GeoPayloadGenerator did on every publish before
+        int iterator = 0;
+        int edgeIterator = 0;
+        boolean reverse = false;
+        int laps = 0;
+        for (int i = 0; i < 5_000; ++i) {
+            final GeoEdge edge = edges.get(edgeIterator);
+            final int step = iterator++;
+            final GeodesicLine line = Geodesic.WGS84.InverseLine(edge.getStart().getLat(), edge.getStart().getLon(), edge.getEnd().getLat(), edge.getEnd().getLon());
+            final double position = reverse ? line.Distance() - GeoPayloadGenerator.STEP_DISTANCE * step : GeoPayloadGenerator.STEP_DISTANCE * step;
+            final GeodesicData expected = line.Position(position, GeodesicMask.LATITUDE | GeodesicMask.LONGITUDE);
+            if (GeoPayloadGenerator.STEP_DISTANCE * (step + 1) > line.Distance()) {
+                iterator = 0;
+                edgeIterator = (edgeIterator + 1) % edges.size();
+                final GeoEdge next = edges.get(edgeIterator);
+                reverse = !(GeoMath.haversine(expected.lat2, expected.lon2, next.getStart().lat, next.getStart().lon)
+                        < GeoMath.haversine(expected.lat2, expected.lon2, next.getEnd().lat, next.getEnd().lon));
+            }
+
+            if (cursor.advance()) {
+                laps++;
+            }
+            // Linear interpolation stays within a few centimeters on edges of a few hundred meters
+            assertEquals(0D, GeoMath.haversine(expected.lat2, expected.lon2, cursor.getLat(), cursor.getLon()) * 1000, 0.05);
+            assertEquals(edgeIterator, cursor.getEdge());
+            assertEquals(reverse, cursor.isReverse());
+        }
+        assertTrue(laps > 1);
+    }
+
+    @Test
+    public void testStepsAreStepDistanceApart() {
+        final GeoTour tour = GeoTour.of(loop(10, 7), true, GeoPayloadGenerator.STEP_DISTANCE);
+        final GeoTour.Cursor cursor = tour.cursor();
+        int previousEdge = cursor.getEdge();
+        cursor.advance();
+        double lat = cursor.getLat();
+        double lon = cursor.getLon();
+        int steps = 0;
+        for (int i = 0; i < 1_000; ++i) {
+            // The position is on the edge the cursor was on before advancing
+            final int edge = cursor.getEdge();
+            cursor.advance();
+            if (edge == previousEdge) {
+                // Geodesic step on the ellipsoid against the spherical distance
+                final double step = GeoMath.haversine(lat, lon, cursor.getLat(), cursor.getLon()) * 1000;
+                assertEquals(GeoPayloadGenerator.STEP_DISTANCE, step, GeoPayloadGenerator.STEP_DISTANCE * 0.006);
+                steps++;
+            }
+            previousEdge = edge;
+            lat = cursor.getLat();
+            lon = cursor.getLon();
+        }
+        assertTrue(steps > 500);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyTour() {
+        GeoTour.of(new ArrayList<>(), false, GeoPayloadGenerator.STEP_DISTANCE);
+    }
+}
@@ -0,0 +1,122 @@
+package com.hivemq.generator.geo;
+
+import com.hivemq.generator.GeoPayloadGenerator;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.WeightedMultigraph;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class RoadGraphTest {
+
+    private static final double METER = 0.001 / 111.195;
+
+    /**
+     * Crooked streets around Hamburg which share a point wherever a street crosses the next one.
+     */
+    private static List<List<GeoPayloadGenerator.LinePoint>> streets(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final GeoPayloadGenerator.LinePoint[][] grid = new GeoPayloadGenerator.LinePoint[count][count];
+        for (int row = 0; row < count; ++row) {
+            for (int column = 0; column < count; ++column) {
+                grid[row][column] = new GeoPayloadGenerator.LinePoint(53.55 + (row * 100 + random.nextInt(40)) * METER,
+                        9.99 + (column * 160 + random.nextInt(60)) * METER);
+            }
+        }
+        final List<List<GeoPayloadGenerator.LinePoint>> lines = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            final List<GeoPayloadGenerator.LinePoint> row = new ArrayList<>();
+            final List<GeoPayloadGenerator.LinePoint> column = new ArrayList<>();
+            for (int k = 0; k < count; ++k) {
+                // Leave out some blocks, so the shortest path isn't always along the grid
+                if (random.nextInt(6) > 0 || row.isEmpty()) {
+                    row.add(grid[i][k]);
+                }
+                if (random.nextInt(6) > 0 || column.isEmpty()) {
+                    column.add(grid[k][i]);
+                }
+            }
+            lines.add(row);
+            lines.add(column);
+        }
+        return lines;
+    }
+
+    private static double length(final RoadGraph graph, final int[] path) {
+        double length = 0;
+        for (GeoEdge edge : graph.toEdges(path)) {
+            length += edge.getDistance();
+        }
+        return length;
+    }
+
+    @Test
+    public void testFindsShortestPaths() {
+        final List<List<GeoPayloadGenerator.LinePoint>> lines = streets(20, 42);
+        final List<GeoPayloadGenerator.LinePoint[]> junctions = new ArrayList<>();
+        // A shortcut between two streets, and a repeated point which must not become a loop
+        junctions.add(new GeoPayloadGenerator.LinePoint[]{lines.get(0).get(0), lines.get(5).get(1)});
+        lines.get(2).add(1, lines.get(2).get(0));
+
+        final WeightedMultigraph<GeoPayloadGenerator.LinePoint, DefaultWeightedEdge> expected = new WeightedMultigraph<>(DefaultWeightedEdge.class);
+        final List<GeoPayloadGenerator.LinePoint[]> edges = new ArrayList<>(junctions);
+        for (List<GeoPayloadGenerator.LinePoint> line : lines) {
+            line.forEach(expected::addVertex);
+            for (int i = 0; i < line.size() - 1; ++i) {
+                edges.add(new GeoPayloadGenerator.LinePoint[]{line.get(i), line.get(i + 1)});
+            }
+        }
+        for (GeoPayloadGenerator.LinePoint[] edge : edges) {
+            if (!edge[0].equals(edge[1])) {
+                expected.setEdgeWeight(expected.addEdge(edge[0], edge[1]), GeoPayloadGenerator.distance(edge[0], edge[1]));
+            }
+        }
+
+        final RoadGraph graph = RoadGraph.of(lines, junctions);
+        assertEquals(expected.vertexSet().size(), graph.vertexCount());
+        assertEquals(expected.edgeSet().size(), graph.edgeCount());
+
+        final DijkstraShortestPath<GeoPayloadGenerator.LinePoint, DefaultWeightedEdge> dijkstra = new DijkstraShortestPath<>(expected);
+        final RoadGraph.Search search = graph.search();
+        final Random random = new Random(7);
+        for (int i = 0; i < 500; ++i) {
+            final int source = graph.getLineHead(random.nextInt(graph.lineCount()));
+            final int target = random.nextInt(graph.vertexCount());
+            final GraphPath<GeoPayloadGenerator.LinePoint, DefaultWeightedEdge> path = dijkstra.getPath(
+                    new GeoPayloadGenerator.LinePoint(graph.getLat(source), graph.getLon(source)),
+                    new GeoPayloadGenerator.LinePoint(graph.getLat(target), graph.getLon(target)));
+            final int[] actual = search.path(source, target);
+            assertNotNull(actual);
+            assertEquals(source, actual[0]);
+            assertEquals(target, actual[actual.length - 1]);
+            assertEquals(path.getWeight(), length(graph, actual), 1e-9);
+        }
+    }
+
+    @Test
+    public void testUnreachableAndTrivialPaths() {
+        final List<List<GeoPayloadGenerator.LinePoint>> lines = new ArrayList<>();
+        lines.add(List.of(new GeoPayloadGenerator.LinePoint(53.55, 9.99), new GeoPayloadGenerator.LinePoint(53.551, 9.99)));
+        lines.add(List.of());
+        lines.add(List.of(new GeoPayloadGenerator.LinePoint(53.56, 9.99), new GeoPayloadGenerator.LinePoint(53.561, 9.99)));
+        final RoadGraph graph = RoadGraph.of(lines, List.of());
+        assertEquals(2, graph.lineCount());
+        assertEquals(2, graph.getLineHead(1));
+
+        final RoadGraph.Search search = graph.search();
+        assertNull(search.path(0, 3));
+        assertArrayEquals(new int[]{0, 1}, search.path(0, 1));
+        assertArrayEquals(new int[]{3}, search.path(3, 3));
+        // State of the failed query doesn't leak into the next ones
+        assertArrayEquals(new int[]{3, 2}, search.path(3, 2));
+    }
+}
@@ -0,0 +1,136 @@
+package com.hivemq.generator.geo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RouteSimplifierTest {
+
+    private static final double METER = 0.001 / 111.195;
+
+    /**
+     * A winding road around Hamburg with a shape node every 10m, each jittered by up to a meter, and instructions of
+     * 20 to 120 points.
+     */
+    private static SharedRoute road(final int pointCount, final long seed) {
+        final Random random = new Random(seed);
+        final double[] lats = new double[pointCount];
+        final double[] lons = new double[pointCount];
+        double heading = 0;
+        double lat = 53.55;
+        double lon = 9.99;
+        for (int i = 0; i < pointCount; ++i) {
+            heading += Math.sin(i / 150D) * 0.02;
+            lat += Math.cos(heading) * 10 * METER;
+            lon += Math.sin(heading) * 10 * METER / Math.cos(Math.toRadians(lat));
+            lats[i] = lat + (random.nextDouble() - 0.5) * 2 * METER;
+            lons[i] = lon + (random.nextDouble() - 0.5) * 2 * METER;
+        }
+        final int[] lengths = new int[pointCount];
+        int instructions = 0;
+        for (int start = 0; start < pointCount; ++instructions) {
+            lengths[instructions] = Math.min(pointCount - start, 20 + random.nextInt(100));
+            start += lengths[instructions];
+        }
+        final double[] distances = new double[instructions];
+        final long[] times = new long[instructions];
+        for (int k = 0; k < instructions; ++k) {
+            distances[k] = lengths[k] * 10D;
+            times[k] = (long) (distances[k] / (15 + random.nextInt(20)) * 1000);
+        }
+        return new SharedRoute(lats, lons, null, Arrays.copyOf(lengths, instructions), distances, times, pointCount * 10D, 3_600_000L);
+    }
+
+    /**
+     * @return distance of the point from the nearest segment of the route in meters
+     */
+    private static double distanceToLine(final SharedRoute route, final double lat, final double lon) {
+        double min = Double.MAX_VALUE;
+        final double cosLat = Math.cos(Math.toRadians(lat));
+        for (int i = 0; i < route.size() - 1; ++i) {
+            final double ax = (route.getLon(i) - lon) * cosLat / METER;
+            final double ay = (route.getLat(i) - lat) / METER;
+            final double bx = (route.getLon(i + 1) - lon) * cosLat / METER;
+            final double by = (route.getLat(i + 1) - lat) / METER;
+            final double dx = bx - ax;
+            final double dy = by - ay;
+            final double length = dx * dx + dy * dy;
+            final double t = length > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / length)) : 0;
+            min = Math.min(min, Math.hypot(ax + t * dx, ay + t * dy));
+        }
+        return min;
+    }
+
+    @Test
+    public void testSimplifiedRouteStaysWithinTolerance() {
+        final SharedRoute route = road(3_000, 42);
+        final SharedRoute simplified = new RouteSimplifier(5, 0).apply(route);
+        assertTrue("Kept " + simplified.size() + " of " + route.size(), simplified.size() < route.size() / 3);
+        assertTrue(simplified.estimatedBytes() < route.estimatedBytes() / 2);
+        for (int i = 0; i < route.size(); ++i) {
+            assertTrue(distanceToLine(simplified, route.getLat(i), route.getLon(i)) <= 5.01);
+        }
+        assertEquals(route.getLat(0), simplified.getLat(0), 0);
+        assertEquals(route.getLon(route.size() - 1), simplified.getLon(simplified.size() - 1), 0);
+        assertEquals(route.getTime(), simplified.getTime());
+        assertEquals(route.getDistance(), simplified.getDistance(), 0);
+    }
+
+    @Test
+    public void testInstructionChangesAreKept() {
+        final SharedRoute route = road(3_000, 7);
+        final SharedRoute simplified = new RouteSimplifier(20, 0).apply(route);
+        int k = 0;
+        for (int i = 0; i < route.size() - 1; ++i) {
+            // Find the kept point at or before the original point
+            while (k + 1 < simplified.size() && simplified.getLat(k + 1) == route.getLat(i) && simplified.getLon(k + 1) == route.getLon(i)) {
+                k++;
+            }
+            if (i > 0 && route.getSegmentInstruction(i) != route.getSegmentInstruction(i - 1)) {
+                assertEquals(route.getLat(i), simplified.getLat(k), 0);
+                assertEquals(route.getLon(i), simplified.getLon(k), 0);
+            }
+            if (simplified.getLat(k) == route.getLat(i) && simplified.getLon(k) == route.getLon(i)) {
+                assertEquals(route.getSegmentInstruction(i), simplified.getSegmentInstruction(k));
+            }
+        }
+    }
+
+    @Test
+    public void testResamplesToFixedSteps() {
+        final SharedRoute route = road(3_000, 3);
+        final SharedRoute resampled = new RouteSimplifier(5, 50).apply(route);
+        double length = 0;
+        for (int i = 1; i < route.size(); ++i) {
+            length += GeoMath.haversine(route.getLat(i - 1), route.getLon(i - 1), route.getLat(i), route.getLon(i)) * 1000;
+        }
+        assertEquals(Math.ceil(length / 50) + 1, resampled.size(), 15);
+        for (int i = 1; i < resampled.size(); ++i) {
+            final double step = GeoMath.haversine(resampled.getLat(i - 1), resampled.getLon(i - 1), resampled.getLat(i), resampled.getLon(i)) * 1000;
+            assertTrue("Step " + step, step <= 50.001);
+            // Corners are cut, but the road only bends gently
+            assertTrue("Step " + step, step > 49 || i == resampled.size() - 1);
+        }
+        for (int i = 0; i < route.size(); i += 7) {
+            assertTrue(distanceToLine(resampled, route.getLat(i), route.getLon(i)) < 10);
+        }
+        // Trucks still drive the whole route
+        final Random random = new Random(1);
+        final double[] point = new double[SharedRoute.POINT_SIZE];
+        for (int i = 0; i <= 100; ++i) {
+            assertTrue(resampled.getPoint(i / 100D, random, point));
+        }
+    }
+
+    @Test
+    public void testDisabledKeepsTheRoute() {
+        final SharedRoute route = road(100, 1);
+        assertSame(route, RouteSimplifier.NONE.apply(route));
+        assertEquals(RouteSimplifier.NONE, new RouteSimplifier(0, 0));
+    }
+}
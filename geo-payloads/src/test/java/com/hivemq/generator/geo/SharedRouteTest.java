@@ -0,0 +1,183 @@
+package com.hivemq.generator.geo;
+
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.InstructionAnnotation;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.linearref.LinearLocation;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SharedRouteTest {
+
+    /**
+     * Builds a synthetic zig-zag route around Hamburg with instructions of varying point counts.
+     */
+    static PathWrapper syntheticRoute(final int pointCount, final long seed) {
+        final Random random = new Random(seed);
+        final PointList points = new PointList(pointCount, false);
+        double lat = 53.55;
+        double lon = 9.99;
+        for (int i = 0; i < pointCount; ++i) {
+            points.add(lat, lon);
+            lat += (random.nextDouble() - 0.3) * 0.01;
+            lon += random.nextDouble() * 0.01;
+        }
+        final InstructionList instructions = new InstructionList(null);
+        final DistanceCalcEarth calc = new DistanceCalcEarth();
+        int start = 0;
+        while (start < pointCount) {
+            final int end = Math.min(pointCount, start + 1 + random.nextInt(12));
+            final PointList instructionPoints = new PointList(end - start, false);
+            double instructionDistance = 0D;
+            for (int i = start; i < end; ++i) {
+                instructionPoints.add(points.getLat(i), points.getLon(i));
+                if (i > start) {
+                    instructionDistance += calc.calcDist(points.getLat(i - 1), points.getLon(i - 1), points.getLat(i), points.getLon(i));
+                }
+            }
+            final Instruction instruction = new Instruction(Instruction.CONTINUE_ON_STREET, "street", InstructionAnnotation.EMPTY, instructionPoints);
+            instruction.setDistance(instructionDistance);
+            instruction.setTime((long) (instructionDistance / (10 + random.nextInt(30)) * 1000));
+            instructions.add(instruction);
+            start = end;
+        }
+        final PathWrapper route = new PathWrapper();
+        route.setPoints(points);
+        route.setInstructions(instructions);
+        route.setDistance(points.calcDistance(calc));
+        return route;
+    }
+
+    @Test
+    public void testMatchesLinearWalk() {
+        final PathWrapper route = syntheticRoute(500, 42);
+        final SharedRoute shared = SharedRoute.of(route);
+        final Random random = new Random(7);
+        final LinearWalk reference = new LinearWalk(route, new Random(7));
+
+        final Random percentages = new Random(1);
+        for (int i = 0; i < 5_000; ++i) {
+            final double percentage = i % 50 == 0 ? i / 5_000D : percentages.nextDouble();
+            assertSameResult(percentage, reference.getPoint(percentage), shared.getPoint(percentage, random));
+        }
+        for (double percentage : new double[]{0D, 1D, -0.1D, 1.1D, Double.NaN}) {
+            assertSameResult(percentage, reference.getPoint(percentage), shared.getPoint(percentage, random));
+        }
+    }
+
+    @Test
+    public void testMatchesLinearWalkOnVertices() {
+        final PathWrapper route = syntheticRoute(50, 3);
+        final SharedRoute shared = SharedRoute.of(route);
+        final Random random = new Random(11);
+        final LinearWalk reference = new LinearWalk(route, new Random(11));
+        final DistanceCalcEarth calc = new DistanceCalcEarth();
+        final double total = route.getPoints().calcDistance(calc);
+
+        double acc = 0D;
+        for (int i = 1; i < route.getPoints().size(); ++i) {
+            acc += calc.calcDist(route.getPoints().getLat(i - 1), route.getPoints().getLon(i - 1),
+                    route.getPoints().getLat(i), route.getPoints().getLon(i));
+            final double percentage = acc / total;
+            assertSameResult(percentage, reference.getPoint(percentage), shared.getPoint(percentage, random));
+        }
+    }
+
+    @Test
+    public void testEndOfRoute() {
+        final PathWrapper route = syntheticRoute(20, 5);
+        final SharedRoute shared = SharedRoute.of(route);
+        final Random random = new Random(1);
+        assertNotNull(shared.getPoint(1, random).getLocation());
+        assertNull(shared.getPoint(1.5, random).getLocation());
+    }
+
+    private static void assertSameResult(double percentage, SharedRoute.InterpResult expected, SharedRoute.InterpResult actual) {
+        final String message = "percentage " + percentage;
+        assertEquals(message, expected.getSpeed(), actual.getSpeed(), 0D);
+        assertEquals(message, expected.getSpeedLimit(), actual.getSpeedLimit(), 0D);
+        if (expected.getLocation() == null) {
+            assertNull(message, actual.getLocation());
+        } else {
+            assertNotNull(message, actual.getLocation());
+            assertEquals(message, expected.getLocation().x, actual.getLocation().x, 0D);
+            assertEquals(message, expected.getLocation().y, actual.getLocation().y, 0D);
+        }
+    }
+
+    /**
+     * The original linear walk over all points and instructions, kept as the reference behavior.
+     */
+    private static final class LinearWalk {
+        private final PathWrapper route;
+        private final Random random;
+        private final DistanceCalcEarth calc = new DistanceCalcEarth();
+        private final double distance;
+
+        LinearWalk(PathWrapper route, Random random) {
+            this.route = route;
+            this.random = random;
+            this.distance = route.getPoints().calcDistance(calc);
+        }
+
+        SharedRoute.InterpResult getPoint(final double percentage) {
+            final double distanceToTraverse = distance * percentage;
+            double distanceAcc = 0D;
+            final PointList points = route.getPoints();
+            for (int i = 0; i < points.size() - 1; ++i) {
+                final double prevLat = points.getLat(i);
+                final double prevLon = points.getLon(i);
+                final double nextLat = points.getLat(i + 1);
+                final double nextLon = points.getLon(i + 1);
+                final double segmentLength = calc.calcDist(prevLat, prevLon, nextLat, nextLon);
+                if (distanceAcc < distanceToTraverse) {
+                    distanceAcc += segmentLength;
+                }
+                if (distanceAcc >= distanceToTraverse) {
+                    final double segDistance;
+                    if (distanceAcc > distanceToTraverse) {
+                        if (i == 0) {
+                            segDistance = distanceToTraverse;
+                        } else {
+                            segDistance = distanceAcc - distanceToTraverse;
+                        }
+                    } else {
+                        segDistance = distanceToTraverse - distanceAcc;
+                    }
+                    final double segPercentage = segDistance / segmentLength;
+                    int offsetAcc = 0;
+                    final InstructionList instructions = route.getInstructions();
+                    double speed = 0D;
+                    double speedLimit = 0D;
+                    for (int k = 0; k < instructions.size(); ++k) {
+                        final Instruction currentInstr = instructions.get(k);
+                        offsetAcc += currentInstr.getLength();
+                        if (offsetAcc >= i) {
+                            final double randomFactor = Math.pow(random.nextInt(40) - 10, 3) / 1000;
+                            final double actualSpeed = (currentInstr.getDistance() / 1000D) / ((double) currentInstr.getTime() / 1000 / 60 / 60);
+                            speed = actualSpeed + randomFactor;
+                            speedLimit = (Math.round(actualSpeed / 10)) * 10;
+                            break;
+                        }
+                    }
+                    if (segPercentage > 1) {
+                        return new SharedRoute.InterpResult(0, null, 0);
+                    }
+                    final Coordinate currentPoint = new Coordinate(prevLon, prevLat);
+                    final Coordinate nextPoint = new Coordinate(nextLon, nextLat);
+                    return new SharedRoute.InterpResult(speed, LinearLocation.pointAlongSegmentByFraction(currentPoint, nextPoint, segPercentage), speedLimit);
+                }
+            }
+            return new SharedRoute.InterpResult(0, null, 0);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.hivemq.generator.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0D, histogram.getMeanMillis(), 0D);
+        assertEquals(0D, histogram.getPercentileMillis(0.99), 0D);
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        // 90 fast publishes, 10 slow ones
+        for (int i = 0; i < 90; ++i) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(30));
+        }
+        for (int i = 0; i < 10; ++i) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(15));
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals((90 * 0.03 + 10 * 15) / 100, histogram.getMeanMillis(), 1e-9);
+        // Upper bounds of the 50us and 20ms buckets, capped at the maximum
+        assertEquals(0.05, histogram.getPercentileMillis(0.5), 0D);
+        assertEquals(0.05, histogram.getPercentileMillis(0.9), 0D);
+        assertEquals(15D, histogram.getPercentileMillis(0.99), 0D);
+        assertEquals(15D, histogram.getMaxMillis(), 0D);
+    }
+
+    @Test
+    public void testCumulativeBuckets() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500);
+        histogram.record(TimeUnit.SECONDS.toNanos(1000));
+        assertEquals(1, histogram.getCumulativeCount(0));
+        assertEquals(1, histogram.getCumulativeCount(LatencyHistogram.getBucketCount() - 1));
+        assertEquals(100_000_000L, LatencyHistogram.getBucketBoundMicros(LatencyHistogram.getBucketCount() - 1));
+        assertEquals(2, histogram.getCount());
+    }
+}
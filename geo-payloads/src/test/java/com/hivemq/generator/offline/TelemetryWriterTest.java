@@ -0,0 +1,80 @@
+package com.hivemq.generator.offline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.generator.payload.BinaryCarDataCodec;
+import com.hivemq.generator.payload.CarDataEncoder;
+import com.hivemq.model.CarData;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryWriterTest {
+
+    @Test
+    public void testNdjson() throws Exception {
+        final CarDataEncoder encoder = new CarDataEncoder();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TelemetryWriter writer = new TelemetryWriter(bytes)) {
+            for (int i = 0; i < 3; ++i) {
+                writer.write(i * 1000, Long.MAX_VALUE - i, encoder.encode(53.55 + i, 9.99, "route-" + i, 80, 100, i == 2));
+            }
+            assertEquals(3, writer.getRecords());
+        }
+
+        final ObjectMapper mapper = new ObjectMapper();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes.toByteArray()), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < 3; ++i) {
+                final JsonNode line = mapper.readTree(reader.readLine());
+                assertEquals(i * 1000, line.get("vehicle").asInt());
+                assertEquals(Long.MAX_VALUE - i, line.get("timestamp").asLong());
+                final CarData data = mapper.treeToValue(line.get("data"), CarData.class);
+                assertEquals(53.55 + i, data.getLocation().getLat(), 0);
+                assertEquals("route-" + i, data.getRouteId());
+                assertEquals(i == 2, data.getBreak());
+            }
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testBinaryFrames() throws Exception {
+        final BinaryCarDataCodec codec = new BinaryCarDataCodec(true);
+        final UUID route = UUID.randomUUID();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TelemetryWriter writer = new TelemetryWriter(bytes)) {
+            writer.write(7, 1_577_836_800_000L, codec.encode(53.55, 9.99, route, 80, 100, false));
+            final ByteBuffer payload = codec.encode(48.14, 11.58, route, 0, 0, true);
+            writer.write(8, 1_577_836_801_000L, payload);
+            // The buffer is not consumed
+            assertEquals(0, payload.position());
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(TelemetryWriter.MAGIC, in.readInt());
+            assertEquals(TelemetryWriter.VERSION, in.readInt());
+            for (int i = 0; i < 2; ++i) {
+                assertEquals(7 + i, in.readInt());
+                assertEquals(1_577_836_800_000L + i * 1000, in.readLong());
+                final byte[] payload = new byte[in.readUnsignedShort()];
+                in.readFully(payload);
+                final CarData data = BinaryCarDataCodec.decode(ByteBuffer.wrap(payload));
+                assertEquals(i == 0 ? 53.55 : 48.14, data.getLocation().getLat(), 0);
+                assertEquals(route.toString(), data.getRouteId());
+                assertEquals(i == 1, data.getBreak());
+            }
+            assertTrue(in.read() < 0);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.hivemq.generator.payload;
+
+import com.hivemq.model.CarData;
+import com.hivemq.model.CarDataBatch;
+import com.hivemq.model.Sample;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryCarDataCodecTest {
+
+    private static final UUID ROUTE_ID = UUID.fromString("5bd3c108-2681-4135-80fb-1c73632b98fd");
+
+    @Test
+    public void testRoundTripDoubleCoordinates() {
+        final ByteBuffer payload = new BinaryCarDataCodec(true).encode(7.628477821925232, 51.48995060174505, ROUTE_ID, 140.01392213036448, 120D, false);
+        assertTrue(BinaryCarDataCodec.isBinary(payload));
+        assertEquals(BinaryCarDataCodec.MAX_SIZE, payload.remaining());
+
+        final CarData carData = BinaryCarDataCodec.decode(payload);
+        assertEquals(7.628477821925232, carData.getLocation().getLat(), 0D);
+        assertEquals(51.48995060174505, carData.getLocation().getLon(), 0D);
+        assertEquals(140.01392213036448, carData.getSpeed(), 1e-4);
+        assertEquals(120D, carData.getSpeedLimit(), 0D);
+        assertEquals(ROUTE_ID.toString(), carData.getRouteId());
+        assertFalse(carData.getBreak());
+    }
+
+    @Test
+    public void testRoundTripFloatCoordinates() {
+        final ByteBuffer payload = new BinaryCarDataCodec(false).encode(7.628477821925232, 51.48995060174505, ROUTE_ID, 0D, 0D, true);
+        assertEquals(BinaryCarDataCodec.MAX_SIZE - 2 * Float.BYTES, payload.remaining());
+
+        final CarData carData = BinaryCarDataCodec.decode(payload);
+        // float resolution is below a meter at these coordinates
+        assertEquals(7.628477821925232, carData.getLocation().getLat(), 1e-5);
+        assertEquals(51.48995060174505, carData.getLocation().getLon(), 1e-5);
+        assertTrue(carData.getBreak());
+    }
+
+    @Test
+    public void testWithoutRouteId() {
+        final ByteBuffer payload = new BinaryCarDataCodec(false).encode(1, 2, null, 3, 4, false);
+        assertEquals(3 + 4 * Float.BYTES, payload.remaining());
+        assertNull(BinaryCarDataCodec.decode(payload).getRouteId());
+    }
+
+    @Test
+    public void testPayloadSurvivesTheNextEncode() {
+        final BinaryCarDataCodec codec = new BinaryCarDataCodec(true);
+        final ByteBuffer first = codec.encode(1, 2, ROUTE_ID, 3, 4, false);
+        // The client may still be sending the first payload
+        codec.encode(5, 6, null, 7, 8, true);
+        final CarData carData = BinaryCarDataCodec.decode(first);
+        assertEquals(1D, carData.getLocation().getLat(), 0D);
+        assertEquals(ROUTE_ID.toString(), carData.getRouteId());
+        assertFalse(carData.getBreak());
+    }
+
+    @Test
+    public void testSmallerThanJson() {
+        final ByteBuffer json = new CarDataEncoder().encode(7.628477821925232, 51.48995060174505, ROUTE_ID.toString(), 140.01392213036448, 120D, false);
+        final ByteBuffer binary = new BinaryCarDataCodec(false).encode(7.628477821925232, 51.48995060174505, ROUTE_ID, 140.01392213036448, 120D, false);
+        assertFalse(BinaryCarDataCodec.isBinary(json));
+        assertTrue(binary.remaining() * 4 < json.remaining());
+    }
+
+    @Test
+    public void testBatchRoundTrip() {
+        final CarDataSamples samples = new CarDataSamples(10);
+        for (int i = 0; i < 10; ++i) {
+            samples.add(1_600_000_000_000L + i * 1000L, 7.628477821925232 + i * 1e-4, 51.48995060174505 - i * 2e-4,
+                    ROUTE_ID, ROUTE_ID.toString(), 100 + i, 120D, i % 2 == 0);
+        }
+        final ByteBuffer payload = new BinaryCarDataCodec(false).encodeBatch(samples);
+        assertTrue(BinaryCarDataCodec.isBatch(payload));
+        assertEquals(4 + Long.BYTES + 2 * Float.BYTES + 2 * Long.BYTES + 10 * BinaryCarDataCodec.BATCH_SAMPLE_SIZE, payload.remaining());
+
+        final CarDataBatch batch = BinaryCarDataCodec.decodeBatch(payload);
+        assertEquals(ROUTE_ID.toString(), batch.getRouteId());
+        assertEquals(1_600_000_000_000L, (long) batch.getTimestamp());
+        assertEquals(10, batch.getSamples().size());
+        for (int i = 0; i < 10; ++i) {
+            final Sample sample = batch.getSamples().get(i);
+            assertEquals(i * 1000L, (long) sample.getDt());
+            assertEquals(samples.getLat(i), batch.getLat() + sample.getdLat() / CarDataSamples.DELTA_SCALE, 1e-5);
+            assertEquals(samples.getLon(i), batch.getLon() + sample.getdLon() / CarDataSamples.DELTA_SCALE, 1e-5);
+            assertEquals(100D + i, sample.getSpeed(), 0D);
+            assertEquals(i % 2 == 0, sample.getBreak());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeBatchAsSingleSample() {
+        final CarDataSamples samples = new CarDataSamples(1);
+        samples.add(0, 1, 2, ROUTE_ID, ROUTE_ID.toString(), 3, 4, false);
+        BinaryCarDataCodec.decode(new BinaryCarDataCodec(true).encodeBatch(samples));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedPayload() {
+        final ByteBuffer payload = new BinaryCarDataCodec(true).encode(1, 2, ROUTE_ID, 3, 4, false);
+        payload.limit(payload.limit() - 1);
+        BinaryCarDataCodec.decode(payload);
+    }
+}
@@ -0,0 +1,129 @@
+package com.hivemq.generator.payload;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.model.CarData;
+import com.hivemq.model.CarDataBatch;
+import com.hivemq.model.Location;
+import com.hivemq.model.Sample;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CarDataEncoderTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CarDataEncoder encoder = new CarDataEncoder();
+
+    @Test
+    public void testMatchesJacksonForRandomPayloads() throws Exception {
+        final Random random = new Random(42);
+        for (int i = 0; i < 10_000; ++i) {
+            assertSameAsJackson(5 + random.nextDouble() * 10, 47 + random.nextDouble() * 8,
+                    UUID.randomUUID().toString(), random.nextDouble() * 140, Math.round(random.nextDouble() * 13) * 10D,
+                    random.nextBoolean());
+        }
+    }
+
+    @Test
+    public void testMatchesJacksonForSpecialNumbers() throws Exception {
+        final double[] values = {0D, -0D, 1D, -1D, 1e-7, 1e7, 123456789.125, Double.MIN_VALUE, Double.MAX_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            assertSameAsJackson(value, value, "route", value, value, false);
+        }
+    }
+
+    @Test
+    public void testMatchesJacksonForStrings() throws Exception {
+        final String[] routeIds = {null, "", "quote\"backslash\\slash/", "control\u0000\u0001\b\t\n\f\r\u001f\u007f",
+                "umlaut \u00e4\u00f6\u00fc", "euro \u20ac", "emoji \ud83d\ude9a"};
+        for (String routeId : routeIds) {
+            assertSameAsJackson(9.9, 53.5, routeId, 80, 80, true);
+        }
+    }
+
+    @Test
+    public void testPayloadSurvivesTheNextEncode() {
+        final ByteBuffer first = encoder.encode(1, 2, "a", 3, 4, false);
+        final byte[] expected = bytes(first);
+        // The client may still be sending the first payload
+        encoder.encode(5, 6, "b", 7, 8, true);
+        final CarDataSamples samples = new CarDataSamples(1);
+        samples.add(1_600_000_000_000L, 9, 10, null, null, 11, 12, false);
+        encoder.encodeBatch(samples);
+        assertArrayEquals(expected, bytes(first));
+    }
+
+    @Test
+    public void testBatchMatchesJackson() throws Exception {
+        final Random random = new Random(42);
+        final UUID routeUuid = UUID.randomUUID();
+        final CarDataSamples samples = new CarDataSamples(10);
+        long time = 1_600_000_000_000L;
+        double lat = 9.9;
+        double lon = 53.5;
+        for (int i = 0; i < 10; ++i) {
+            samples.add(time, lat, lon, routeUuid, routeUuid.toString(), random.nextDouble() * 140, 80, i == 9);
+            time += 1000 + random.nextInt(10);
+            lat += (random.nextDouble() - 0.5) * 1e-3;
+            lon += (random.nextDouble() - 0.5) * 1e-3;
+        }
+
+        final CarDataBatch batch = new CarDataBatch();
+        batch.setRouteId(routeUuid.toString());
+        batch.setTimestamp(samples.getTimestamp(0));
+        batch.setLat(samples.getLat(0));
+        batch.setLon(samples.getLon(0));
+        final List<Sample> expectedSamples = new ArrayList<>();
+        for (int i = 0; i < samples.size(); ++i) {
+            final Sample sample = new Sample();
+            sample.setDt(samples.getTimestamp(i) - samples.getTimestamp(0));
+            sample.setdLat(samples.getLatDelta(i));
+            sample.setdLon(samples.getLonDelta(i));
+            sample.setSpeed(samples.getSpeed(i));
+            sample.setSpeedLimit(samples.getSpeedLimit(i));
+            sample.setBreak(samples.isBreak(i));
+            expectedSamples.add(sample);
+        }
+        batch.setSamples(expectedSamples);
+        final byte[] expected = mapper.writeValueAsBytes(batch);
+
+        final byte[] actual = bytes(encoder.encodeBatch(samples));
+        assertArrayEquals(new String(expected) + " != " + new String(actual), expected, actual);
+
+        // deltas keep the position to about 0.1m
+        final CarDataBatch decoded = mapper.readValue(actual, CarDataBatch.class);
+        final Sample last = decoded.getSamples().get(9);
+        assertEquals(samples.getLat(9), decoded.getLat() + last.getdLat() / CarDataSamples.DELTA_SCALE, 1e-6);
+        assertEquals(samples.getLon(9), decoded.getLon() + last.getdLon() / CarDataSamples.DELTA_SCALE, 1e-6);
+    }
+
+    private void assertSameAsJackson(double lat, double lon, String routeId, double speed, double speedLimit, boolean isBreak) throws Exception {
+        final CarData carData = new CarData();
+        final Location location = new Location();
+        location.setLat(lat);
+        location.setLon(lon);
+        carData.setLocation(location);
+        carData.setRouteId(routeId);
+        carData.setSpeed(speed);
+        carData.setSpeedLimit(speedLimit);
+        carData.setBreak(isBreak);
+        final byte[] expected = mapper.writeValueAsBytes(carData);
+
+        final byte[] actual = bytes(encoder.encode(lat, lon, routeId, speed, speedLimit, isBreak));
+        assertArrayEquals(new String(expected) + " != " + new String(actual), expected, actual);
+    }
+
+    private static byte[] bytes(final ByteBuffer payload) {
+        final byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return bytes;
+    }
+}
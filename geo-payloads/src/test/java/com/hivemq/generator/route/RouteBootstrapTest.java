@@ -0,0 +1,137 @@
+package com.hivemq.generator.route;
+
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.geo.SharedRoute;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RouteBootstrapTest {
+
+    private static final LocationSet LOCATIONS = new LocationSet("warehouses.geojson", 1, List.of(
+            new GHPoint(53.55, 9.99), new GHPoint(48.14, 11.58), new GHPoint(50.94, 6.96), new GHPoint(52.52, 13.40)));
+
+    private static SharedRoute route(final GHPoint from, final GHPoint to) {
+        final PointList points = new PointList(2, false);
+        points.add(from.lat, from.lon);
+        points.add(to.lat, to.lon);
+        final PathWrapper path = new PathWrapper();
+        path.setPoints(points);
+        path.setInstructions(new InstructionList(null));
+        path.setDistance(points.calcDistance(new DistanceCalcEarth()));
+        return SharedRoute.of(path);
+    }
+
+    /**
+     * Routes to the destination the random picks, remembering the start indices.
+     */
+    private static RouteBootstrap.Planner planner(final List<Integer> starts) {
+        return (startIndex, random) -> {
+            synchronized (starts) {
+                starts.add(startIndex);
+            }
+            final int endIndex = LOCATIONS.getIndex().pick(startIndex, random);
+            return new PlannedRoute(route(LOCATIONS.get(startIndex), LOCATIONS.get(endIndex)), LOCATIONS,
+                    LOCATIONS.get(startIndex), LOCATIONS.get(endIndex), endIndex);
+        };
+    }
+
+    @Test
+    public void testVehiclesClaimTheRoutesInOrder() {
+        final RouteBootstrap bootstrap = new RouteBootstrap(LOCATIONS, 100, 42);
+        final List<CompletableFuture<PlannedRoute>> claimed = new ArrayList<>();
+        // Claims before the routes are planned complete later
+        for (int i = 0; i < 10; ++i) {
+            claimed.add(bootstrap.claim());
+        }
+        bootstrap.run(planner(new ArrayList<>()));
+        assertTrue(bootstrap.getCompletion().isDone());
+        for (int i = 10; i < 100; ++i) {
+            claimed.add(bootstrap.claim());
+        }
+        assertNull(bootstrap.claim());
+        assertNull(bootstrap.claim());
+
+        final Set<CompletableFuture<PlannedRoute>> distinct = new HashSet<>();
+        for (CompletableFuture<PlannedRoute> route : claimed) {
+            assertNotNull(route);
+            assertTrue(route.isDone());
+            assertTrue(route.join().getEndIndex() >= 0);
+            distinct.add(route);
+        }
+        assertEquals(100, distinct.size());
+        assertEquals(0, bootstrap.getFailedCount());
+    }
+
+    @Test
+    public void testSeedDecidesTheRoutes() {
+        final RouteBootstrap first = new RouteBootstrap(LOCATIONS, 200, 7);
+        final RouteBootstrap second = new RouteBootstrap(LOCATIONS, 200, 7);
+        first.run(planner(new ArrayList<>()));
+        second.run(planner(new ArrayList<>()));
+        final Set<Integer> starts = new HashSet<>();
+        for (int i = 0; i < 200; ++i) {
+            // Planned in parallel, but every vehicle's route only depends on its own seed
+            final PlannedRoute expected = first.claim().join();
+            final PlannedRoute actual = second.claim().join();
+            assertEquals(expected.getStartLocation(), actual.getStartLocation());
+            assertEquals(expected.getEndIndex(), actual.getEndIndex());
+            starts.add(LOCATIONS.getPoints().indexOf(expected.getStartLocation()));
+        }
+        assertEquals(LOCATIONS.size(), starts.size());
+    }
+
+    @Test
+    public void testPlansOffTheCommonPool() {
+        final RouteBootstrap bootstrap = new RouteBootstrap(LOCATIONS, 200, 11);
+        final RouteBootstrap.Planner planner = planner(new ArrayList<>());
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        bootstrap.run((startIndex, random) -> {
+            // The fleet ticks on the common pool, blocking planning must not take its threads
+            final Thread thread = Thread.currentThread();
+            assertFalse(thread instanceof ForkJoinWorkerThread
+                    && ((ForkJoinWorkerThread) thread).getPool() == ForkJoinPool.commonPool());
+            threads.add(thread.getName());
+            return planner.plan(startIndex, random);
+        });
+        assertEquals(0, bootstrap.getFailedCount());
+        assertTrue(threads.toString(), threads.stream().allMatch(name -> name.startsWith("route-bootstrap-")));
+    }
+
+    @Test
+    public void testFailedRoutesCompleteExceptionally() {
+        final RouteBootstrap bootstrap = new RouteBootstrap(LOCATIONS, 50, 3);
+        final List<Integer> starts = new ArrayList<>();
+        final RouteBootstrap.Planner planner = planner(starts);
+        bootstrap.run((startIndex, random) -> {
+            if (startIndex == 0) {
+                throw new IllegalStateException("No route found");
+            }
+            return planner.plan(startIndex, random);
+        });
+        int failed = 0;
+        for (int i = 0; i < 50; ++i) {
+            failed += bootstrap.claim().isCompletedExceptionally() ? 1 : 0;
+        }
+        assertTrue(failed > 0);
+        assertEquals(failed, bootstrap.getFailedCount());
+        assertEquals(50 - failed, starts.size());
+    }
+}
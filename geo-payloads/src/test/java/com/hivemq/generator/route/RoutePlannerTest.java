@@ -0,0 +1,204 @@
+package com.hivemq.generator.route;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.InstructionList;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.geo.RouteSimplifier;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RoutePlannerTest {
+
+    private static final LocationSet LOCATIONS = new LocationSet("warehouses.geojson", 1, List.of(
+            new GHPoint(53.55, 9.99), new GHPoint(48.14, 11.58), new GHPoint(50.94, 6.96), new GHPoint(52.52, 13.40)));
+
+    private static RoutePlanner planner(final @NotNull GraphHopper hopper, final int queueCapacity) {
+        return new RoutePlanner(hopper, new RouteCache(100_000), RoutePlanner.Encoding.ARRAYS, 1, queueCapacity);
+    }
+
+    /* Arbitrary starts are never cached, so every request queries the stub */
+    private static CompletableFuture<PlannedRoute> plan(final @NotNull RoutePlanner planner, final long seed) {
+        return planner.plan(LOCATIONS, -1, new GHPoint(51.0, 10.0), RouteSimplifier.NONE, seed);
+    }
+
+    private static Throwable failure(final @NotNull CompletableFuture<PlannedRoute> future) {
+        try {
+            future.join();
+            fail("Expected the future to fail");
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test
+    public void testRejectsRequestsWhenTheQueueIsFull() throws Exception {
+        final StubHopper hopper = new StubHopper();
+        hopper.gate = new CountDownLatch(1);
+        final RoutePlanner planner = planner(hopper, 2);
+
+        final List<CompletableFuture<PlannedRoute>> accepted = new ArrayList<>();
+        accepted.add(plan(planner, 1));
+        assertTrue(hopper.entered.await(10, TimeUnit.SECONDS));
+        accepted.add(plan(planner, 2));
+        accepted.add(plan(planner, 3));
+        assertEquals(1, planner.getActiveCount());
+        assertEquals(2, planner.getQueueDepth());
+
+        // The caller is never blocked, the request fails right away
+        final CompletableFuture<PlannedRoute> rejected = plan(planner, 4);
+        assertTrue(rejected.isCompletedExceptionally());
+        assertTrue(failure(rejected) instanceof RejectedExecutionException);
+        assertEquals(1, planner.getRejectedCount());
+
+        hopper.gate.countDown();
+        for (CompletableFuture<PlannedRoute> future : accepted) {
+            assertNotNull(future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(0, planner.getQueueDepth());
+        assertEquals(3, planner.getPlannedCount());
+        assertEquals(3, hopper.queries.get());
+        assertEquals(0, planner.getFailedCount());
+        assertEquals(1, planner.getRejectedCount());
+        // The queued requests waited for the first one
+        assertTrue(planner.getAverageQueueMillis() > 0);
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        final StubHopper hopper = new StubHopper();
+        hopper.noRoute = true;
+        final RoutePlanner planner = planner(hopper, 16);
+
+        final Throwable cause = failure(plan(planner, 1));
+        assertTrue(cause instanceof IllegalStateException);
+        assertTrue(cause.getMessage(), cause.getMessage().endsWith("after " + RoutePlanner.MAX_ATTEMPTS + " attempts"));
+        assertEquals(RoutePlanner.MAX_ATTEMPTS, hopper.queries.get());
+        assertEquals(RoutePlanner.MAX_ATTEMPTS - 1, planner.getRetryCount());
+        assertEquals(RoutePlanner.MAX_ATTEMPTS, planner.getQueryErrorCount());
+        assertEquals(RoutePlanner.MAX_ATTEMPTS, planner.getQueryLatency().getCount());
+        assertEquals(1, planner.getFailedCount());
+        assertEquals(1, planner.getPlannedCount());
+
+        // The planner keeps serving requests once routes are found again
+        hopper.noRoute = false;
+        assertNotNull(plan(planner, 2).join());
+        assertEquals(1, planner.getFailedCount());
+        assertEquals(2, planner.getPlannedCount());
+    }
+
+    @Test
+    public void testRetriesWithAnotherDestination() {
+        final StubHopper hopper = new StubHopper();
+        hopper.failures = 3;
+        final RoutePlanner planner = planner(hopper, 16);
+
+        assertNotNull(plan(planner, 1).join());
+        assertEquals(4, hopper.queries.get());
+        assertEquals(3, planner.getRetryCount());
+        assertEquals(3, planner.getQueryErrorCount());
+        assertEquals(0, planner.getFailedCount());
+    }
+
+    @Test
+    public void testRecordsPlanningLatency() {
+        final StubHopper hopper = new StubHopper();
+        hopper.delayMillis = 20;
+        final RoutePlanner planner = planner(hopper, 16);
+        assertEquals(0D, planner.getAveragePlanningMillis(), 0D);
+
+        for (int i = 0; i < 3; ++i) {
+            assertNotNull(plan(planner, i).join());
+        }
+        assertEquals(3, planner.getPlannedCount());
+        assertEquals(3, planner.getQueryLatency().getCount());
+        assertTrue(planner.getQueryLatency().getMeanMillis() >= 20);
+        assertTrue(planner.getAveragePlanningMillis() >= 20);
+        assertTrue(planner.getMaxPlanningMillis() >= planner.getAveragePlanningMillis());
+        assertEquals(0, planner.getQueryErrorCount());
+    }
+
+    @Test
+    public void testPlansInlineOnTheCallingThread() {
+        final StubHopper hopper = new StubHopper();
+        final RoutePlanner planner = planner(hopper, 16);
+
+        final CompletableFuture<PlannedRoute> route = planner.planInline(LOCATIONS, 0, LOCATIONS.get(0), RouteSimplifier.NONE, 1);
+        assertTrue(route.isDone());
+        assertEquals(Thread.currentThread().getName(), hopper.lastThread);
+        assertEquals(1, planner.getPlannedCount());
+
+        hopper.noRoute = true;
+        final CompletableFuture<PlannedRoute> failed = planner.planInline(LOCATIONS, -1, LOCATIONS.get(0), RouteSimplifier.NONE, 1);
+        assertTrue(failed.isCompletedExceptionally());
+        assertFalse(failed.isCancelled());
+        assertEquals(1, planner.getFailedCount());
+    }
+
+    /**
+     * Routes in a straight line, optionally waiting for a gate, sleeping or finding no route.
+     */
+    private static final class StubHopper extends GraphHopper {
+        final AtomicInteger queries = new AtomicInteger();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch gate;
+        volatile long delayMillis;
+        volatile boolean noRoute;
+        /* Number of queries finding no route before routes are found again */
+        volatile int failures;
+        volatile String lastThread;
+
+        @Override
+        public GHResponse route(final @NotNull GHRequest request) {
+            queries.incrementAndGet();
+            lastThread = Thread.currentThread().getName();
+            entered.countDown();
+            try {
+                if (gate != null) {
+                    gate.await();
+                }
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            final GHResponse response = new GHResponse();
+            if (noRoute || failures-- > 0) {
+                response.addError(new IllegalArgumentException("Connection between locations not found"));
+                return response;
+            }
+            final PointList points = new PointList(2, false);
+            for (GHPoint point : request.getPoints()) {
+                points.add(point.lat, point.lon);
+            }
+            final PathWrapper path = new PathWrapper();
+            path.setPoints(points);
+            path.setInstructions(new InstructionList(null));
+            path.setDistance(points.calcDistance(new DistanceCalcEarth()));
+            response.add(path);
+            return response;
+        }
+    }
+}
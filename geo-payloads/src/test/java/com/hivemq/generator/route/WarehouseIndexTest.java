@@ -0,0 +1,92 @@
+package com.hivemq.generator.route;
+
+import com.graphhopper.util.shapes.GHPoint;
+import com.hivemq.generator.GeoPayloadGenerator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WarehouseIndexTest {
+
+    private static final double MINIMUM_DISTANCE_KM = 200D;
+
+    /**
+     * Random locations roughly covering Germany
+     */
+    private static List<GHPoint> locations(int count, long seed) {
+        final Random random = new Random(seed);
+        final List<GHPoint> locations = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            locations.add(new GHPoint(47.5 + random.nextDouble() * 7, 6 + random.nextDouble() * 9));
+        }
+        return locations;
+    }
+
+    @Test
+    public void testCandidatesAreExactlyTheEligibleLocations() {
+        final List<GHPoint> locations = locations(300, 1);
+        final WarehouseIndex index = new WarehouseIndex(locations, MINIMUM_DISTANCE_KM);
+        for (int from = 0; from < locations.size(); ++from) {
+            final Set<Integer> expected = new HashSet<>();
+            for (int to = 0; to < locations.size(); ++to) {
+                if (to != from && distance(locations.get(from), locations.get(to)) > MINIMUM_DISTANCE_KM) {
+                    expected.add(to);
+                }
+            }
+            final Set<Integer> actual = new HashSet<>();
+            for (int i = 0; i < index.candidateCount(from); ++i) {
+                actual.add(index.candidate(from, i));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testPickFromLocation() {
+        final List<GHPoint> locations = locations(300, 2);
+        final WarehouseIndex index = new WarehouseIndex(locations, MINIMUM_DISTANCE_KM);
+        final Random random = new Random(3);
+        for (int i = 0; i < 10_000; ++i) {
+            final int from = random.nextInt(locations.size());
+            final int to = index.pick(from, random);
+            assertTrue(distance(locations.get(from), locations.get(to)) > MINIMUM_DISTANCE_KM);
+        }
+    }
+
+    @Test
+    public void testPickFromArbitraryPoint() {
+        final List<GHPoint> locations = locations(300, 4);
+        final WarehouseIndex index = new WarehouseIndex(locations, MINIMUM_DISTANCE_KM);
+        final Random random = new Random(5);
+        // Includes points outside of the grid
+        for (int i = 0; i < 10_000; ++i) {
+            final GHPoint start = new GHPoint(45 + random.nextDouble() * 12, 3 + random.nextDouble() * 15);
+            final int to = index.pick(start, random);
+            assertTrue(distance(start, locations.get(to)) > MINIMUM_DISTANCE_KM);
+        }
+    }
+
+    @Test
+    public void testFallsBackToFarthestLocation() {
+        final List<GHPoint> locations = List.of(
+                new GHPoint(53.55, 9.99),
+                new GHPoint(53.60, 10.05),
+                new GHPoint(53.40, 9.80));
+        final WarehouseIndex index = new WarehouseIndex(locations, MINIMUM_DISTANCE_KM);
+        final Random random = new Random(6);
+        assertEquals(0, index.candidateCount(1));
+        assertEquals(2, index.pick(1, random));
+        assertEquals(2, index.pick(new GHPoint(53.61, 10.06), random));
+    }
+
+    private static double distance(GHPoint from, GHPoint to) {
+        return GeoPayloadGenerator.distance(from.lat, from.lon, to.lat, to.lon);
+    }
+}
@@ -0,0 +1,110 @@
+package com.hivemq.loader;
+
+import com.hivemq.generator.GeoPayloadGenerator;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineParserTest {
+
+    /* Tokens that don't parse as a point, or only with Double.parseDouble */
+    private static final String[] ODD_TOKENS = {"abc", "1.5", ",", "1,", ",2", "1,,2", "1,2,3", " 53.5 , 9.9 ", "1e3,-2E-3",
+            "NaN,Infinity", "-0,+0", ".5,5.", ".,1", "-,1", "0x1p3,1", "1d,2f", "53.55123456789012345,9.99", "1.2.3,4",
+            "0.00000000000000000000000001,1"};
+
+    /**
+     * The split based parser this replaces; a token without a longitude used to fail with an exception and is skipped.
+     */
+    private static List<List<GeoPayloadGenerator.LinePoint>> splitParse(final String message) {
+        final List<List<GeoPayloadGenerator.LinePoint>> linesList = new ArrayList<>();
+        for (String line : message.split("_")) {
+            final List<GeoPayloadGenerator.LinePoint> pointsCurrent = new ArrayList<>();
+            for (String coordinates : line.split(";")) {
+                if (!coordinates.isEmpty()) {
+                    final String[] coordinatesSplit = coordinates.split(",");
+                    try {
+                        final double lat = Double.parseDouble(coordinatesSplit[0]);
+                        final double lon = Double.parseDouble(coordinatesSplit[1]);
+                        pointsCurrent.add(new GeoPayloadGenerator.LinePoint(lat, lon));
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                        // skipped
+                    }
+                }
+            }
+            linesList.add(pointsCurrent);
+        }
+        return linesList;
+    }
+
+    private static String randomMessage(final Random random, final int lines) {
+        final StringBuilder message = new StringBuilder();
+        for (int line = 0; line < lines; ++line) {
+            if (line > 0) {
+                message.append('_');
+            }
+            final int points = random.nextInt(20);
+            for (int point = 0; point < points; ++point) {
+                if (point > 0 || random.nextInt(10) == 0) {
+                    message.append(';');
+                }
+                if (random.nextInt(10) == 0) {
+                    message.append(ODD_TOKENS[random.nextInt(ODD_TOKENS.length)]);
+                } else if (random.nextBoolean()) {
+                    // Full precision, as written by Double.toString
+                    message.append(47 + random.nextDouble() * 8).append(',').append(6 + random.nextDouble() * 9);
+                } else {
+                    message.append(String.format(Locale.ROOT, "%.7f,%.7f", 47 + random.nextDouble() * 8, 6 + random.nextDouble() * 9));
+                }
+            }
+        }
+        return message.toString();
+    }
+
+    @Test
+    public void testMatchesSplitParser() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 2_000; ++i) {
+            final String message = randomMessage(random, random.nextInt(10));
+            assertEquals(message, splitParse(message), LineParser.parse(message).toLinePoints());
+        }
+    }
+
+    @Test
+    public void testEmptyLines() {
+        final String[] messages = {"", "_", "__", "_1,2", "1,2_", "1,2__3,4", ";", ";;_1,2", "1,2;;3,4;"};
+        for (String message : messages) {
+            assertEquals(message, splitParse(message), LineParser.parse(message).toLinePoints());
+        }
+    }
+
+    @Test
+    public void testByteBufferAndFile() throws Exception {
+        final String message = randomMessage(new Random(7), 50);
+        final List<List<GeoPayloadGenerator.LinePoint>> expected = splitParse(message);
+        final byte[] bytes = message.getBytes(StandardCharsets.US_ASCII);
+        // Only the remaining bytes are parsed
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 8);
+        buffer.put("9,9;9,9_".getBytes(StandardCharsets.US_ASCII)).put(bytes).flip().position(8);
+        assertEquals(expected, LineParser.parse(buffer).toLinePoints());
+        assertEquals(8, buffer.position());
+
+        final Path file = Files.createTempFile("lines", ".txt");
+        try {
+            Files.write(file, bytes);
+            final CoordinateLines lines = LineParser.parse(file);
+            assertEquals(expected, lines.toLinePoints());
+            assertEquals(expected.size(), lines.lineCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
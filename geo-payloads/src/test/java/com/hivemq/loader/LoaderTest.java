@@ -0,0 +1,112 @@
+package com.hivemq.loader;
+
+import com.hivemq.generator.GeoPayloadGenerator;
+import com.hivemq.generator.geo.GeoEdge;
+import com.hivemq.generator.geo.GeoMath;
+import org.jgrapht.graph.Multigraph;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoaderTest {
+
+    private static final double METER = 0.001 / 111.195;
+
+    /**
+     * A street grid around Hamburg with points every 10m. The crossing streets have points within 1m of each other at
+     * every intersection, a few of them are shifted further than the junction distance.
+     */
+    private static List<List<GeoPayloadGenerator.LinePoint>> streetGrid(final int streets, final long seed) {
+        final Random random = new Random(seed);
+        final double cosLat = Math.cos(Math.toRadians(53.55));
+        final List<List<GeoPayloadGenerator.LinePoint>> lines = new ArrayList<>();
+        for (int street = 0; street < streets; ++street) {
+            final List<GeoPayloadGenerator.LinePoint> northSouth = new ArrayList<>();
+            final List<GeoPayloadGenerator.LinePoint> eastWest = new ArrayList<>();
+            for (int i = 0; i < streets * 10; ++i) {
+                final double jitter = (random.nextDouble() - 0.5) * METER;
+                final double offset = random.nextInt(20) == 0 ? 5 * METER : 0;
+                northSouth.add(new GeoPayloadGenerator.LinePoint(53.55 + i * 10 * METER + jitter,
+                        9.99 + street * 100 * METER / cosLat + offset / cosLat));
+                eastWest.add(new GeoPayloadGenerator.LinePoint(53.55 + street * 100 * METER + offset,
+                        9.99 + (i * 10 * METER + jitter) / cosLat));
+            }
+            lines.add(northSouth);
+            lines.add(eastWest);
+        }
+        return lines;
+    }
+
+    private static Set<String> bruteForceJunctions(final List<List<GeoPayloadGenerator.LinePoint>> lines) {
+        final Set<String> junctions = new HashSet<>();
+        for (int i = 0; i < lines.size(); ++i) {
+            for (int k = i + 1; k < lines.size(); ++k) {
+                for (GeoPayloadGenerator.LinePoint first : lines.get(i)) {
+                    for (GeoPayloadGenerator.LinePoint second : lines.get(k)) {
+                        if (GeoMath.haversine(first.lat, first.lon, second.lat, second.lon) <= Loader.JUNCTION_KM && !first.equals(second)) {
+                            junctions.add(key(first, second));
+                        }
+                    }
+                }
+            }
+        }
+        return junctions;
+    }
+
+    private static String key(final GeoPayloadGenerator.LinePoint first, final GeoPayloadGenerator.LinePoint second) {
+        final String a = first.toString();
+        final String b = second.toString();
+        return a.compareTo(b) < 0 ? a + "|" + b : b + "|" + a;
+    }
+
+    @Test
+    public void testFindsTheSameJunctionsAsComparingAllPoints() {
+        final List<List<GeoPayloadGenerator.LinePoint>> lines = streetGrid(12, 1);
+        final Set<String> expected = bruteForceJunctions(lines);
+        final Set<String> actual = new HashSet<>();
+        for (GeoPayloadGenerator.LinePoint[] junction : Loader.findJunctions(lines)) {
+            assertTrue("Duplicate junction " + junction[0] + " " + junction[1], actual.add(key(junction[0], junction[1])));
+        }
+        assertTrue(expected.size() > 100);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testGraphContainsLinesAndJunctions() {
+        final List<List<GeoPayloadGenerator.LinePoint>> lines = streetGrid(5, 2);
+        final Loader loader = new Loader();
+        loader.initializeGraph(lines);
+        final Multigraph<GeoPayloadGenerator.LinePoint, GeoEdge> graph = loader.graph.get();
+        int lineEdges = 0;
+        for (List<GeoPayloadGenerator.LinePoint> line : lines) {
+            lineEdges += line.size() - 1;
+        }
+        assertEquals(lineEdges + bruteForceJunctions(lines).size(), graph.edgeSet().size());
+        assertEquals(graph.vertexSet().size(), loader.roadGraph.get().vertexCount());
+        assertEquals(graph.edgeSet().size(), loader.roadGraph.get().edgeCount());
+    }
+
+    @Test
+    public void testComparisonsGrowNearLinearly() {
+        // A network with 16 times the points of another, counting the distance checks instead of timing them
+        final long small = comparisons(streetGrid(25, 4));
+        final long large = comparisons(streetGrid(100, 5));
+        // Quadratic growth would be 256 times as many
+        assertTrue("Small network compared " + small + " pairs, large one " + large, large < small * 20);
+    }
+
+    private static long comparisons(final List<List<GeoPayloadGenerator.LinePoint>> lines) {
+        final AtomicLong comparisons = new AtomicLong();
+        Loader.findJunctions(lines, comparisons);
+        assertTrue(comparisons.get() > 0);
+        return comparisons.get();
+    }
+}
@@ -51,7 +51,15 @@ def on_message(client, userdata, message):
 	# We generate a timestamp here, this should be included by the trucks themselves so that we have both 
 	# timestamps: captured ts, and written ts
 	ts = datetime.today()
-	payload = json.loads(message.payload)
+	try:
+		payload = json.loads(message.payload)
+	except ValueError:
+		# Only the JSON format of single samples is understood, binary payloads and batches are skipped
+		return
+
+	# A truck without a location yet publishes {}
+	if not isinstance(payload, dict) or 'location' not in payload or 'routeId' not in payload:
+		return
 
 	#  {"location":{"lat":7.628477821925232,"lon":51.48995060174505},"routeId":"5bd3c108-2681-4135-80fb-1c73632b98fd","speed":140.01392213036448,"speedLimit":120.0,"break":false}
 	message_batch.append(pymongo.UpdateOne(
@@ -0,0 +1,135 @@
+package com.example.demomap;
+
+import com.hivemq.model.CarData;
+import com.hivemq.model.CarDataBatch;
+import com.hivemq.model.Location;
+import com.hivemq.model.Sample;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Decodes the fixed layout binary telemetry written by the geo-payloads BinaryCarDataCodec.
+ * See that class for the layout, both must be kept in sync.
+ */
+public class BinaryCarDataDecoder {
+    public static final byte MAGIC = (byte) 0xCD;
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_BREAK = 1;
+    private static final int FLAG_DOUBLE_COORDINATES = 1 << 1;
+    private static final int FLAG_ROUTE_ID = 1 << 2;
+    private static final int FLAG_BATCH = 1 << 3;
+
+    private static final int BATCH_SAMPLE_SIZE = 3 * 4 + 2 * 4 + 1;
+
+    /**
+     * @return true if the payload starts with the binary format's magic byte, JSON payloads never do
+     */
+    public static boolean isBinary(final @NotNull byte[] payload) {
+        return payload.length > 0 && payload[0] == MAGIC;
+    }
+
+    /**
+     * @return true if the payload is a binary batch of several samples
+     */
+    public static boolean isBatch(final @NotNull byte[] payload) {
+        return isBinary(payload) && payload.length > 2 && (payload[2] & FLAG_BATCH) != 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is not a single sample in the binary format or truncated
+     */
+    @NotNull
+    public static CarData decode(final @NotNull byte[] payload) {
+        final ByteBuffer in = ByteBuffer.wrap(payload);
+        final int flags = readHeader(in);
+        if ((flags & FLAG_BATCH) != 0) {
+            throw new IllegalArgumentException("Binary car data payload is a batch");
+        }
+        final boolean doubles = (flags & FLAG_DOUBLE_COORDINATES) != 0;
+        final boolean hasRouteId = (flags & FLAG_ROUTE_ID) != 0;
+        final int expected = (doubles ? 2 * Double.BYTES : 2 * Float.BYTES) + 2 * Float.BYTES + (hasRouteId ? 2 * Long.BYTES : 0);
+        if (in.remaining() < expected) {
+            throw new IllegalArgumentException("Truncated binary car data payload, expected " + expected + " more bytes but got " + in.remaining());
+        }
+        final Location location = new Location();
+        if (doubles) {
+            location.setLat(in.getDouble());
+            location.setLon(in.getDouble());
+        } else {
+            location.setLat((double) in.getFloat());
+            location.setLon((double) in.getFloat());
+        }
+        final CarData carData = new CarData();
+        carData.setLocation(location);
+        carData.setSpeed((double) in.getFloat());
+        carData.setSpeedLimit((double) in.getFloat());
+        carData.setBreak((flags & FLAG_BREAK) != 0);
+        if (hasRouteId) {
+            carData.setRouteId(new UUID(in.getLong(), in.getLong()).toString());
+        }
+        return carData;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is not a batch in the binary format or truncated
+     */
+    @NotNull
+    public static CarDataBatch decodeBatch(final @NotNull byte[] payload) {
+        final ByteBuffer in = ByteBuffer.wrap(payload);
+        final int flags = readHeader(in);
+        if ((flags & FLAG_BATCH) == 0) {
+            throw new IllegalArgumentException("Binary car data payload is not a batch");
+        }
+        final boolean doubles = (flags & FLAG_DOUBLE_COORDINATES) != 0;
+        final boolean hasRouteId = (flags & FLAG_ROUTE_ID) != 0;
+        if (!in.hasRemaining()) {
+            throw new IllegalArgumentException("Truncated binary car data batch");
+        }
+        final int count = in.get() & 0xFF;
+        final int expected = Long.BYTES + (doubles ? 2 * Double.BYTES : 2 * Float.BYTES) + (hasRouteId ? 2 * Long.BYTES : 0) + count * BATCH_SAMPLE_SIZE;
+        if (in.remaining() < expected) {
+            throw new IllegalArgumentException("Truncated binary car data batch, expected " + expected + " more bytes but got " + in.remaining());
+        }
+        final CarDataBatch batch = new CarDataBatch();
+        batch.setTimestamp(in.getLong());
+        if (doubles) {
+            batch.setLat(in.getDouble());
+            batch.setLon(in.getDouble());
+        } else {
+            batch.setLat((double) in.getFloat());
+            batch.setLon((double) in.getFloat());
+        }
+        if (hasRouteId) {
+            batch.setRouteId(new UUID(in.getLong(), in.getLong()).toString());
+        }
+        final List<Sample> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            final Sample sample = new Sample();
+            sample.setDt((long) in.getInt());
+            sample.setdLat((long) in.getInt());
+            sample.setdLon((long) in.getInt());
+            sample.setSpeed((double) in.getFloat());
+            sample.setSpeedLimit((double) in.getFloat());
+            sample.setBreak((in.get() & FLAG_BREAK) != 0);
+            samples.add(sample);
+        }
+        batch.setSamples(samples);
+        return batch;
+    }
+
+    private static int readHeader(final @NotNull ByteBuffer in) {
+        if (in.remaining() < 3 || in.get() != MAGIC) {
+            throw new IllegalArgumentException("Not a binary car data payload");
+        }
+        final byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary car data version " + version);
+        }
+        return in.get();
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.demomap;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hivemq.client.mqtt.MqttClient;
 import com.hivemq.client.mqtt.datatypes.MqttQos;
@@ -7,7 +8,9 @@ import com.hivemq.client.mqtt.lifecycle.MqttClientAutoReconnect;
 import com.hivemq.client.mqtt.mqtt3.Mqtt3AsyncClient;
 import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
 import com.hivemq.model.CarData;
+import com.hivemq.model.CarDataBatch;
 import com.hivemq.model.Location;
+import com.hivemq.model.Sample;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,7 +18,7 @@ import org.vaadin.addon.leaflet.shared.Point;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -26,26 +29,19 @@ public class Broadcaster implements Serializable {
 
     private static final @NotNull ObjectMapper mapper = new ObjectMapper();
 
+    /* Batched positions are offsets from the first sample in millionths of a degree */
+    private static final double DELTA_SCALE = 1e6;
+
     private static Mqtt3AsyncClient mqttClient;
 
     static ExecutorService executorService =
             Executors.newSingleThreadExecutor();
 
-    public interface BroadcastListener {
-        void receiveBroadcast(String topic, Point marker);
-    }
-
-    private static LinkedList<BroadcastListener> listeners =
-            new LinkedList<BroadcastListener>();
+    /* Written once per message, every map session reads the changes from here */
+    private static final @NotNull FleetPositionStore positions = new FleetPositionStore();
 
-    public static synchronized void register(
-            BroadcastListener listener) {
-        listeners.add(listener);
-    }
-
-    public static synchronized void unregister(
-            BroadcastListener listener) {
-        listeners.remove(listener);
+    public static @NotNull FleetPositionStore getPositions() {
+        return positions;
     }
 
     public static synchronized void start(final String broker, final String topic) {
@@ -119,9 +115,7 @@ public class Broadcaster implements Serializable {
             final Point newPoint = getPointFromPublish(publish);
             if (newPoint != null &&
                     key != null) {
-                for (BroadcastListener listener : listeners) {
-                    listener.receiveBroadcast(key, newPoint);
-                }
+                positions.put(key, newPoint);
             }
         } catch (NumberFormatException ex) {
             log.error("Could not parse publish payload {}", publish.toString());
@@ -129,17 +123,47 @@ public class Broadcaster implements Serializable {
     }
 
     private static Point getPointFromPublish(Mqtt3Publish publish) throws NumberFormatException {
+        final byte[] payload = publish.getPayloadAsBytes();
         try {
-            final CarData carData = mapper.readValue(publish.getPayloadAsBytes(), CarData.class);
-            final Location location = carData.getLocation();
+            final Location location;
+            if (BinaryCarDataDecoder.isBatch(payload)) {
+                location = newestLocation(BinaryCarDataDecoder.decodeBatch(payload));
+            } else if (BinaryCarDataDecoder.isBinary(payload)) {
+                location = BinaryCarDataDecoder.decode(payload).getLocation();
+            } else {
+                final JsonNode tree = mapper.readTree(payload);
+                if (tree != null && tree.has("samples")) {
+                    location = newestLocation(mapper.treeToValue(tree, CarDataBatch.class));
+                } else {
+                    location = mapper.treeToValue(tree, CarData.class).getLocation();
+                }
+            }
             if(location != null) {
                 return new Point(location.getLon(), location.getLat());
             }
-            log.warn("Location was not set in payload. Ignoring. Original payload: {}", new String(publish.getPayloadAsBytes()));
+            // The generator publishes {} while a truck has no location yet
+            log.debug("Location was not set in payload. Ignoring. Original payload: {}", new String(payload));
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Failed to read car info payload. Invalid format? Payload: {}, error:", new String(payload), e);
             return null;
-        } catch (IOException e) {
-            log.error("Failed to read car info payload. Invalid format? Payload: {}, error:", new String(publish.getPayloadAsBytes()), e);
+        }
+    }
+
+    /**
+     * The map only shows where a truck is now, so only the last sample of a batch is used.
+     *
+     * @return the absolute location of the newest sample, null if the batch is empty
+     */
+    private static Location newestLocation(final @NotNull CarDataBatch batch) {
+        final List<Sample> samples = batch.getSamples();
+        if (samples == null || samples.isEmpty() || batch.getLat() == null || batch.getLon() == null) {
             return null;
         }
+        final Sample newest = samples.get(samples.size() - 1);
+        final Location location = new Location();
+        location.setLat(batch.getLat() + newest.getdLat() / DELTA_SCALE);
+        location.setLon(batch.getLon() + newest.getdLon() / DELTA_SCALE);
+        return location;
     }
-}
\ No newline at end of file
+}
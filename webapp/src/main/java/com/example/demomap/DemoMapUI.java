@@ -18,7 +18,7 @@ import java.util.Map;
 import java.util.concurrent.*;
 
 @Theme("DemoMap")
-public class DemoMapUI extends UI implements Broadcaster.BroadcastListener {
+public class DemoMapUI extends UI {
     private static final @NotNull Logger log = LoggerFactory.getLogger(DemoMapUI.class);
 
     private LMap map;
@@ -27,13 +27,12 @@ public class DemoMapUI extends UI implements Broadcaster.BroadcastListener {
 
     private Map<String, LCircleMarker> markerMap;
 
-    private Map<String, Point> markerPoints;
+    /* Version of the fleet positions shown on the map */
+    private long positionsVersion;
 
     @Override
     protected void init(VaadinRequest request) {
 
-        markerPoints = new ConcurrentHashMap<>();
-        Broadcaster.register(this);
         final Bounds bounds = new Bounds();
         final double swLon = Double.parseDouble(System.getenv("BOUND_SW_LON"));
         final double swLat = Double.parseDouble(System.getenv("BOUND_SW_LAT"));
@@ -78,32 +77,18 @@ public class DemoMapUI extends UI implements Broadcaster.BroadcastListener {
         map.addMoveEndListener(event -> log.debug("New bounds: {}", map.getBounds()));
         setContent(map);
 
+        // All trucks known so far, right away
+        final FleetPositionStore positions = Broadcaster.getPositions();
+        positionsVersion = positions.changedSince(0, this::showMarker);
+        addDetachListener(event -> scheduledExecutorService.shutdownNow());
+
         // Initialize background task for marker updates
         scheduledExecutorService.scheduleAtFixedRate(() -> {
                     // Update marker locations
                     final UI ui = getUI();
                     log.debug("Updating UI");
                     ui.access(() -> {
-                        for (Map.Entry<String, Point> stringPointEntry : markerPoints.entrySet()) {
-                            final String key = stringPointEntry.getKey();
-                            final Point newPoint = stringPointEntry.getValue();
-                            if (markerMap.containsKey(key)) {
-                                final LCircleMarker lCircleMarker = markerMap.get(key);
-                                final Point oldPoint = lCircleMarker.getPoint();
-                                lCircleMarker.setPoint(newPoint);
-                            } else {
-                                final LCircleMarker lCircleMarker = new LCircleMarker(newPoint, 3);
-                                int rgb = (int) (Math.random() * (1 << 24));
-                                final String colorString = "#" + Integer.toHexString(rgb);
-                                lCircleMarker.setColor(colorString);
-                                lCircleMarker.setFillColor(colorString);
-                                lCircleMarker.setFillOpacity(1D);
-                                // FIXME broken in v-leaflet API lCircleMarker.setStyleName("leaflet-marker-pane");
-                                log.debug("New marker");
-                                markerMap.put(key, lCircleMarker);
-                                map.addComponent(lCircleMarker);
-                            }
-                        }
+                        positionsVersion = positions.changedSince(positionsVersion, this::showMarker);
                         ui.push();
                     });
                 },
@@ -111,30 +96,24 @@ public class DemoMapUI extends UI implements Broadcaster.BroadcastListener {
                 Integer.parseInt(updateRate), TimeUnit.MILLISECONDS);
     }
 
-
-    public static final int EARTH_RADIUS = 6371;
-
-    public static double distance(double startLat, double startLong,
-                                  double endLat, double endLong) {
-        double dLat = Math.toRadians((endLat - startLat));
-        double dLong = Math.toRadians((endLong - startLong));
-
-        startLat = Math.toRadians(startLat);
-        endLat = Math.toRadians(endLat);
-
-        double a = haversin(dLat) + Math.cos(startLat) * Math.cos(endLat) * haversin(dLong);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return EARTH_RADIUS * c; // <-- d
-    }
-
-    public static double haversin(double val) {
-        return Math.pow(Math.sin(val / 2), 2);
-    }
-
-
-    @Override
-    public void receiveBroadcast(String topic, Point marker) {
-        markerPoints.put(topic, marker);
+    /**
+     * Moves the truck's marker, adding it on the first position.
+     */
+    private void showMarker(final String key, final Point newPoint) {
+        final LCircleMarker existing = markerMap.get(key);
+        if (existing != null) {
+            existing.setPoint(newPoint);
+        } else {
+            final LCircleMarker lCircleMarker = new LCircleMarker(newPoint, 3);
+            int rgb = (int) (Math.random() * (1 << 24));
+            final String colorString = "#" + Integer.toHexString(rgb);
+            lCircleMarker.setColor(colorString);
+            lCircleMarker.setFillColor(colorString);
+            lCircleMarker.setFillOpacity(1D);
+            // FIXME broken in v-leaflet API lCircleMarker.setStyleName("leaflet-marker-pane");
+            log.debug("New marker");
+            markerMap.put(key, lCircleMarker);
+            map.addComponent(lCircleMarker);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.example.demomap;
+
+import org.jetbrains.annotations.NotNull;
+import org.vaadin.addon.leaflet.shared.Point;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Latest position of every truck, written once per MQTT message and read by all map sessions.
+ * <p>
+ * Each write stamps the position with the next version. A session remembers the version it has drawn and asks for the
+ * positions changed since, a new session starts at 0 and gets all of them. Neither side takes a lock, so ingest cost
+ * does not depend on the number of sessions.
+ * <p>
+ * The latest writes are also kept in a ring in version order, so a refresh walks only the writes since its version
+ * instead of every truck. Sessions that fell further behind than the ring, or than the fleet size, scan all trucks.
+ */
+public class FleetPositionStore {
+
+    /* Number of latest writes kept in the ring, a power of two */
+    private static final int RING_SIZE = 1 << 16;
+
+    private static final class Position {
+        final @NotNull String topic;
+        final @NotNull Point point;
+        final long version;
+
+        Position(final @NotNull String topic, final @NotNull Point point, final long version) {
+            this.topic = topic;
+            this.point = point;
+            this.version = version;
+        }
+    }
+
+    private final @NotNull ConcurrentHashMap<String, Position> positions = new ConcurrentHashMap<>();
+
+    /* Write of each version at index version % RING_SIZE, overwritten by the write RING_SIZE versions later */
+    private final @NotNull Position[] ring = new Position[RING_SIZE];
+
+    /* Version of the last write, only advanced once its position is in the map */
+    private volatile long version;
+
+    /**
+     * Stores the truck's position. Only called from the MQTT client's callback thread, a single writer.
+     */
+    public void put(final @NotNull String topic, final @NotNull Point point) {
+        final long next = version + 1;
+        final Position position = new Position(topic, point, next);
+        positions.put(topic, position);
+        ring[(int) (next & (RING_SIZE - 1))] = position;
+        version = next;
+    }
+
+    /**
+     * Passes every position written after the given version to the consumer. Positions written during the call may
+     * be passed now and again on the next call.
+     *
+     * @param since    version returned by the previous call, 0 for all positions
+     * @param consumer receives the topic and position of each changed truck
+     * @return the version to pass on the next call
+     */
+    public long changedSince(final long since, final @NotNull BiConsumer<String, Point> consumer) {
+        // Everything up to this version is in the map already
+        final long current = version;
+        if (current == since) {
+            return since;
+        }
+        if (since > 0 && current - since <= Math.min(RING_SIZE, positions.size()) && walk(since, current, consumer)) {
+            return current;
+        }
+        for (Map.Entry<String, Position> entry : positions.entrySet()) {
+            final Position position = entry.getValue();
+            if (position.version > since) {
+                consumer.accept(entry.getKey(), position.point);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Passes the positions of the writes after {@code since} up to {@code current} that are still the truck's latest.
+     * A truck written again after {@code current} is left to the next call, which walks that write.
+     *
+     * @return false if the writer overwrote part of the walk in the ring, the caller then scans all trucks
+     */
+    private boolean walk(final long since, final long current, final @NotNull BiConsumer<String, Point> consumer) {
+        for (long v = since + 1; v <= current; ++v) {
+            final Position written = ring[(int) (v & (RING_SIZE - 1))];
+            if (written == null || written.version != v) {
+                return false;
+            }
+            if (positions.get(written.topic) == written) {
+                consumer.accept(written.topic, written.point);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of trucks with a position
+     */
+    public int size() {
+        return positions.size();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}